@@ -0,0 +1,264 @@
+import java.util.logging.ErrorManager;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.SimpleFormatter;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class AsyncLogHandler extends Handler {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final long POLL_INTERVAL = 500; // Milliseconds.
+
+  // Maximum number of log records written before flushing.
+  private static final int BATCH_SIZE = 256;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Data members.                                                        ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private Writer writer = null;
+
+  // Log records waiting to be written (ring buffer).
+  private BlockingQueue<LogRecord> queue = null;
+
+  private Thread thread = null;
+
+  private volatile boolean running = false;
+
+  // Records below INFO are dropped when the buffer is full (the more
+  // important ones wait for room).
+  private AtomicLong droppedRecords = new AtomicLong();
+  private long reportedDroppedRecords = 0;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: Constructor
+  // Description: opens the log file (in append mode) and starts the thread
+  //              which writes the log records.
+  //
+  // Parameters:
+  //   - filename: name of the log file.
+  //   - bufferSize: maximum number of log records waiting to be written.
+  //
+  // Returns: nothing.
+  public AsyncLogHandler(String filename, int bufferSize) throws IOException
+  {
+    writer = new BufferedWriter(
+               new OutputStreamWriter(new FileOutputStream(filename, true)));
+
+    // Set the simple formatter (same format as the file handler).
+    setFormatter(new SimpleFormatter());
+
+    queue = new ArrayBlockingQueue<LogRecord>(bufferSize);
+
+    running = true;
+
+    thread = new Thread("Log-Writer") {
+      public void run()
+      {
+        work();
+      }
+    };
+
+    thread.setDaemon(true);
+    thread.start();
+  }
+
+
+  // Method: publish
+  // Description: queues a log record, it will be formatted and written by
+  //              the background thread.
+  //
+  // Parameters:
+  //   - record: log record.
+  //
+  // Returns: nothing.
+  @Override
+  public void publish(LogRecord record)
+  {
+    if ((!running) || (!isLoggable(record))) {
+      return;
+    }
+
+    if (!queue.offer(record)) {
+      if (record.getLevel().intValue() >= Level.INFO.intValue()) {
+        try {
+          queue.put(record);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+      } else {
+        droppedRecords.incrementAndGet();
+      }
+    }
+  }
+
+
+  // Method: flush
+  // Description: does nothing, the background thread flushes the log file
+  //              after each batch of records.
+  //
+  // Parameters: none.
+  // Returns: nothing.
+  @Override
+  public void flush()
+  {
+  }
+
+
+  // Method: close
+  // Description: waits until the queued log records have been written and
+  //              closes the log file.
+  //
+  // Parameters: none.
+  // Returns: nothing.
+  @Override
+  public void close()
+  {
+    if (!running) {
+      return;
+    }
+
+    running = false;
+
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+    }
+
+    try {
+      writer.close();
+    } catch (IOException e) {
+      reportError(null, e, ErrorManager.CLOSE_FAILURE);
+    }
+  }
+
+
+  // Method: getDroppedRecords
+  // Description: returns the number of log records which have been dropped
+  //              because the buffer was full.
+  //
+  // Parameters: none.
+  // Returns: number of dropped log records.
+  public long getDroppedRecords()
+  {
+    return droppedRecords.get();
+  }
+
+
+  // Method: work
+  // Description: main loop of the background thread: takes the queued log
+  //              records in batches, writes them and flushes the log file
+  //              when the queue is empty.
+  //              When the handler is closed, the thread writes the records
+  //              in the queue before exiting.
+  //
+  // Parameters: none.
+  // Returns: nothing.
+  private void work()
+  {
+    ArrayList<LogRecord> batch = new ArrayList<LogRecord>(BATCH_SIZE);
+
+    do {
+      LogRecord record = null;
+
+      try {
+        record = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+      }
+
+      if (record != null) {
+        batch.add(record);
+        queue.drainTo(batch, BATCH_SIZE - 1);
+
+        for (LogRecord r : batch) {
+          write(r);
+        }
+
+        batch.clear();
+
+        reportDroppedRecords();
+
+        if (queue.isEmpty()) {
+          try {
+            writer.flush();
+          } catch (IOException e) {
+            reportError(null, e, ErrorManager.FLUSH_FAILURE);
+          }
+        }
+      } else if (!running) {
+        return;
+      }
+    } while (true);
+  }
+
+
+  // Method: write
+  // Description: formats and writes a log record.
+  // Parameters:
+  //   - record: log record.
+  //
+  // Returns: nothing.
+  private void write(LogRecord record)
+  {
+    try {
+      writer.write(getFormatter().format(record));
+    } catch (Exception e) {
+      reportError(null, e, ErrorManager.WRITE_FAILURE);
+    }
+  }
+
+
+  // Method: reportDroppedRecords
+  // Description: writes a warning if some log records have been dropped
+  //              since the last warning.
+  //
+  // Parameters: none.
+  // Returns: nothing.
+  private void reportDroppedRecords()
+  {
+    long dropped = droppedRecords.get();
+
+    if (dropped > reportedDroppedRecords) {
+      LogRecord record = new LogRecord(Level.WARNING,
+                                       (dropped - reportedDroppedRecords) +
+                                       " log record(s) dropped (log buffer " +
+                                       "full).");
+
+      record.setSourceClassName(getClass().getName());
+      record.setSourceMethodName("work");
+
+      write(record);
+
+      reportedDroppedRecords = dropped;
+    }
+  }
+}
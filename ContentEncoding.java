@@ -0,0 +1,146 @@
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.io.IOException;
+
+public class ContentEncoding {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  public static final String IDENTITY = "identity";
+  public static final String GZIP = "gzip";
+  public static final String DEFLATE = "deflate";
+
+  // Value of the request header "Accept-Encoding".
+  public static final String ACCEPT_ENCODING = GZIP + ", " + DEFLATE;
+
+  // Header of the data files with the encoding of the stored body.
+  public static final String STORED_ENCODING_HEADER = "Stored-Encoding";
+
+  private static final int BUFFER_SIZE = 8 * 1024;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: normalize
+  // Description: normalizes the value of the header "Content-Encoding":
+  //              lowercase, "x-gzip" is "gzip" and no value is "identity".
+  //
+  // Parameters:
+  //   - encoding: value of the header "Content-Encoding" (can be null).
+  //
+  // Returns: encoding.
+  public static String normalize(String encoding)
+  {
+    if (encoding == null) {
+      return IDENTITY;
+    }
+
+    encoding = encoding.trim().toLowerCase(Locale.ROOT);
+
+    if (encoding.isEmpty()) {
+      return IDENTITY;
+    } else if (encoding.equals("x-gzip")) {
+      return GZIP;
+    }
+
+    return encoding;
+  }
+
+
+  // Method: isSupported
+  // Description: returns whether an encoding can be decoded.
+  // Parameters:
+  //   - encoding: normalized encoding.
+  //
+  // Returns: true: the encoding is supported; false: otherwise.
+  public static boolean isSupported(String encoding)
+  {
+    return ((encoding.equals(IDENTITY)) ||
+            (encoding.equals(GZIP)) ||
+            (encoding.equals(DEFLATE)));
+  }
+
+
+  // Method: decode
+  // Description: returns a stream which decodes another one while it is
+  //              being read. "deflate" is expected to be in zlib format, as
+  //              the HTTP specification says, but some servers send raw
+  //              deflate data, so the zlib header is checked. An empty
+  //              encoded body is an empty body (the decoders would fail).
+  //
+  // Parameters:
+  //   - in: encoded stream.
+  //   - encoding: normalized encoding (supported).
+  //
+  // Returns: decoded stream ("in" if the encoding is "identity").
+  public static InputStream decode(InputStream in, String encoding)
+    throws IOException
+  {
+    if (encoding.equals(GZIP)) {
+      PushbackInputStream pushback = new PushbackInputStream(in, 1);
+
+      int c;
+      if ((c = pushback.read()) == -1) {
+        return pushback;
+      }
+
+      pushback.unread(c);
+
+      return new GZIPInputStream(pushback, BUFFER_SIZE);
+    } else if (encoding.equals(DEFLATE)) {
+      PushbackInputStream pushback = new PushbackInputStream(in, 2);
+
+      byte[] header = new byte[2];
+      int len = 0;
+      int n;
+      while ((len < header.length) &&
+             ((n = pushback.read(header, len, header.length - len)) != -1)) {
+        len += n;
+      }
+
+      if (len == 0) {
+        return pushback;
+      }
+
+      pushback.unread(header, 0, len);
+
+      // zlib header: compression method 8 and (CMF * 256 + FLG) % 31 == 0.
+      boolean zlib = ((len == 2) &&
+                      ((header[0] & 0x0f) == 8) &&
+                      ((((header[0] & 0xff) << 8) | (header[1] & 0xff)) % 31 ==
+                       0));
+
+      return new InflaterInputStream(pushback,
+                                     new Inflater(!zlib),
+                                     BUFFER_SIZE) {
+        // The inflater is not the default one of the stream, it has to be
+        // released explicitly.
+        public void close() throws IOException
+        {
+          try {
+            super.close();
+          } finally {
+            inf.end();
+          }
+        }
+      };
+    }
+
+    return in;
+  }
+}
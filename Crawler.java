@@ -1,7 +1,7 @@
 import java.util.logging.Level;
 import java.net.URL;
 
-public class Crawler {
+public class Crawler implements StatusServer.Control {
   //////////////////////////////////////////////////////////////////////////////
   //////////////////////////////////////////////////////////////////////////////
   ////                                                                      ////
@@ -20,8 +20,43 @@ public class Crawler {
 
   private static final String DEFAULT_LOG_FILENAME = "crawler.log";
   private static final Level DEFAULT_LOG_LEVEL = Level.FINEST;
+  private static final int DEFAULT_LOG_BUFFER_SIZE = 8 * 1024;
+
+  private static final int DEFAULT_CONNECT_TIMEOUT = 30 * 1000; // ms.
+  private static final int DEFAULT_READ_TIMEOUT = 60 * 1000; // ms.
+  private static final long DEFAULT_MAX_BODY_SIZE = 64L * 1024 * 1024;
+  private static final long DEFAULT_FETCH_DEADLINE = 5 * 60 * 1000; // ms.
+
+  private static final int DEFAULT_DNS_THREADS = 4;
+  private static final int MAX_DNS_THREADS = 64;
+  private static final int DEFAULT_DNS_CACHE_SIZE = 16 * 1024;
+  private static final int MAX_PRECONNECT_THREADS = 64;
+  private static final int DEFAULT_TLS_SESSION_CACHE_SIZE = 64 * 1024;
+
+  private static final int DEFAULT_PARSER_THREADS = 2;
+  private static final int DEFAULT_PARSE_QUEUE_SIZE = 64;
+
+  private static final int DEFAULT_FILTER_CACHE_SIZE = 64 * 1024;
+
+  private static final Role DEFAULT_ROLE = Role.ALL;
 
   private static final long CHECK_INTERVAL = 500; // Milliseconds.
+  private static final long STATISTICS_INTERVAL = 60 * 1000; // Milliseconds.
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Type declarations.                                                   ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private enum Role {
+    ALL,     // Fetches the URLs and extracts the links.
+    FETCHER, // Only fetches the URLs.
+    PARSER   // Only extracts the links from the files of the final directory.
+  };
 
 
   //////////////////////////////////////////////////////////////////////////////
@@ -35,20 +70,55 @@ public class Crawler {
   private Thread mainThread = null;
 
   private Log log = null;
+  private Metrics metrics = null;
   private Database database = null;
+  private UrlCanonicalizer urlCanonicalizer = null;
+  private FetchPolicy fetchPolicy = null;
+  private DnsResolver dnsResolver = null;
+  private TlsContext tlsContext = null;
+  private Preconnector preconnector = null;
   private Downloader downloader = null;
+  private StorageCompressor storageCompressor = null;
   private UrlFilter urlFilter = null;
+  private UrlFilterWatcher urlFilterWatcher = null;
   private UrlsExtractor urlsExtractor = null;
+  private ParserPool parserPool = null;
+  private DataDirectoryWatcher dataDirectoryWatcher = null;
+  private HostStatistics hostStatistics = null;
+  private StatusServer statusServer = null;
 
   private String tempDir = null;
   private String finalDir = null;
   private String httpUserAgent = null;
+  private int connectTimeout = 0;
+  private int readTimeout = 0;
+  private long maxBodySize = 0;
+  private long fetchDeadline = 0;
+  private boolean storeCompressed = false;
+  private int compressionThreads = 0;
+  private boolean deduplicate = false;
+  private int dnsThreads = 0;
+  private int dnsCacheSize = 0;
+  private int preconnectThreads = 0;
+  private int tlsSessionCacheSize = 0;
   private String excludeFilename = null;
   private String includeFilename = null;
+  private String canonicalizationFilename = null;
+  private String fetchPolicyFilename = null;
+  private boolean headFirst = false;
   private String logFilename = null;
+  private String metricsFilename = null;
   private Level logLevel = null;
+  private int logBufferSize = 0;
+  private int parserThreads = 0;
+  private int parseQueueSize = 0;
+  private int filterCacheSize = 0;
+  private int nearDuplicateBits = 0;
+  private int statusPort = 0;
+  private Role role = null;
 
-  private boolean running = true;
+  private volatile boolean running = true;
+  private volatile boolean paused = false;
 
 
   //////////////////////////////////////////////////////////////////////////////
@@ -65,40 +135,127 @@ public class Crawler {
   //   - tempDir: temporary directory where to download the files.
   //   - finalDir: final directory where to save the downloaded files.
   //   - httpUserAgent: user agent to be used in the HTTP requests.
+  //   - connectTimeout: connect timeout in milliseconds (0: none).
+  //   - readTimeout: read timeout in milliseconds (0: none).
+  //   - maxBodySize: maximum size of a response body in bytes (0: none).
+  //   - fetchDeadline: maximum duration of a fetch in milliseconds (0: none).
+  //   - storeCompressed: whether the compressed bodies are stored as
+  //                      received (otherwise they are decoded).
+  //   - compressionThreads: number of threads compressing the data files
+  //                         (0: the data files are not compressed).
+  //   - deduplicate: whether the bodies which have already been stored are
+  //                  not stored again.
+  //   - dnsThreads: number of threads resolving the hosts.
+  //   - dnsCacheSize: maximum number of hosts in the DNS cache.
+  //   - preconnectThreads: number of threads warming up the HTTPS servers
+  //                        about to be visited (0: none).
+  //   - tlsSessionCacheSize: maximum number of cached TLS sessions (0: no
+  //                          limit).
   //   - excludeFilename: name of the file containing the URLs to be excluded.
   //   - includeFilename: name of the file containing the URLs to be included.
+  //   - canonicalizationFilename: name of the file containing the rules for
+  //                               stripping query parameters.
+  //   - fetchPolicyFilename: name of the file containing the actions per
+  //                          content type (null: everything is stored).
+  //   - headFirst: whether the URLs predicted not to be stored are checked
+  //                with a HEAD request first.
   //   - logFilename: name of the log file.
   //   - logLevel: log level to be used for logging.
+  //   - logBufferSize: number of log records which can be waiting to be
+  //                    written (0: synchronous logging).
+  //   - metricsFilename: name of the file where to dump the metrics
+  //                      periodically (null: no file).
+  //   - parserThreads: number of threads extracting the URLs.
+  //   - parseQueueSize: maximum number of files waiting to be parsed.
+  //   - filterCacheSize: maximum number of cached URL filter decisions.
+  //   - nearDuplicateBits: maximum Hamming distance between the SimHash of
+  //                        near-duplicate pages (0: the near-duplicates are
+  //                        not detected).
+  //   - statusPort: port of the status server (-1: no status server).
+  //   - role: role of the crawler (all, fetcher or parser).
   //
   // Returns: nothing.
   private Crawler(String tempDir,
                   String finalDir,
                   String httpUserAgent,
+                  int connectTimeout,
+                  int readTimeout,
+                  long maxBodySize,
+                  long fetchDeadline,
+                  boolean storeCompressed,
+                  int compressionThreads,
+                  boolean deduplicate,
+                  int dnsThreads,
+                  int dnsCacheSize,
+                  int preconnectThreads,
+                  int tlsSessionCacheSize,
                   String excludeFilename,
                   String includeFilename,
+                  String canonicalizationFilename,
+                  String fetchPolicyFilename,
+                  boolean headFirst,
                   String logFilename,
-                  Level logLevel)
+                  Level logLevel,
+                  int logBufferSize,
+                  String metricsFilename,
+                  int parserThreads,
+                  int parseQueueSize,
+                  int filterCacheSize,
+                  int nearDuplicateBits,
+                  int statusPort,
+                  Role role)
   {
     this.mainThread = Thread.currentThread();
 
     this.tempDir = tempDir;
     this.finalDir = finalDir;
     this.httpUserAgent = httpUserAgent;
+    this.connectTimeout = connectTimeout;
+    this.readTimeout = readTimeout;
+    this.maxBodySize = maxBodySize;
+    this.fetchDeadline = fetchDeadline;
+    this.storeCompressed = storeCompressed;
+    this.compressionThreads = compressionThreads;
+    this.deduplicate = deduplicate;
+    this.dnsThreads = dnsThreads;
+    this.dnsCacheSize = dnsCacheSize;
+    this.preconnectThreads = preconnectThreads;
+    this.tlsSessionCacheSize = tlsSessionCacheSize;
     this.excludeFilename = excludeFilename;
     this.includeFilename = includeFilename;
+    this.canonicalizationFilename = canonicalizationFilename;
+    this.fetchPolicyFilename = fetchPolicyFilename;
+    this.headFirst = headFirst;
     this.logFilename = logFilename;
     this.logLevel = logLevel;
+    this.logBufferSize = logBufferSize;
+    this.metricsFilename = metricsFilename;
+    this.parserThreads = parserThreads;
+    this.parseQueueSize = parseQueueSize;
+    this.filterCacheSize = filterCacheSize;
+    this.nearDuplicateBits = nearDuplicateBits;
+    this.statusPort = statusPort;
+    this.role = role;
   }
 
 
   // Method: initialize
   // Description: initializes the crawler:
   //                - Creates and initializes the logger object.
+  //                - Creates the metrics object and registers it (JMX).
   //                - Creates and initializes the database object.
-  //                - Creates and initializes the downloader object.
-  //                - Creates and initializes the URL filter object.
-  //                - Loads the URLs to be excluded and to be included.
-  //                - Creates and initializes the URLs extractor object.
+  //                - Creates and initializes the URL canonicalizer object.
+  //                - Loads the canonicalization rules.
+  //                - Creates and initializes the fetch policy object and
+  //                  loads the fetch policy.
+  //                - Initializes the fetch stage (unless the role is
+  //                  "parser").
+  //                - Initializes the parse stage (unless the role is
+  //                  "fetcher").
+  //                - Starts the storage compressor (if the data files are
+  //                  compressed).
+  //                - Starts the status server (if a port has been
+  //                  specified).
   //
   // Parameters:
   //   - host: name of the host containing the database server;
@@ -114,49 +271,233 @@ public class Crawler {
     log = new Log();
 
     // Initialize logger.
-    if (log.initialize(logFilename, logLevel)) {
-      // Create database object.
-      database = new Database(log);
-
-      // Initialize database.
-      boolean initialized = (host != null) ?
-                              database.initialize(host, port, databaseName) :
-                              database.initialize(databaseName);
-
-      if (initialized) {
-        // Create downloader object.
-        downloader = new Downloader(database,
-                                    tempDir,
-                                    finalDir,
-                                    httpUserAgent,
-                                    log);
+    if (log.initialize(logFilename, logLevel, logBufferSize)) {
+      // Create metrics object.
+      metrics = new Metrics(log);
+
+      // Register metrics.
+      if (metrics.initialize()) {
+        // Create database object.
+        database = new Database(metrics, log);
+
+        // Initialize database.
+        boolean initialized = (host != null) ?
+                                database.initialize(host, port, databaseName) :
+                                database.initialize(databaseName);
+
+        if (initialized) {
+          // Create URL canonicalizer object.
+          urlCanonicalizer = new UrlCanonicalizer(log);
+
+          // Create fetch policy object.
+          fetchPolicy = new FetchPolicy(headFirst, metrics, log);
+
+          // Create statistics of the requests per host.
+          hostStatistics = new HostStatistics();
+
+          // Initialize URL canonicalizer and load rules.
+          if ((urlCanonicalizer.initialize()) &&
+              ((canonicalizationFilename == null) ||
+               (urlCanonicalizer.load(canonicalizationFilename))) &&
+              (fetchPolicy.initialize()) &&
+              ((fetchPolicyFilename == null) ||
+               (fetchPolicy.load(fetchPolicyFilename))) &&
+              (initializeFetchStage()) &&
+              (initializeParseStage())) {
+            // Start compressing the data files.
+            if (((storageCompressor == null) ||
+                 (storageCompressor.initialize(parserPool))) &&
+                (initializeStatusServer())) {
+              log.log(Level.INFO, "Role: " + role.name().toLowerCase() + ".");
+
+              return true;
+            }
 
-        // Initialize downloader.
-        if (downloader.initialize()) {
-          // Create URL filter object.
-          urlFilter = new UrlFilter(log);
+            if (storageCompressor != null) {
+              storageCompressor.shutdown();
+            }
 
-          // Initialize URL filter object and load URLs.
-          if ((urlFilter.initialize()) &&
-              (urlFilter.load(excludeFilename, includeFilename))) {
-            // Create URLs extractor object.
-            urlsExtractor = new UrlsExtractor(database, urlFilter, log);
+            if (preconnector != null) {
+              preconnector.shutdown();
+            }
 
-            // Initialize URLs extractor.
-            if (urlsExtractor.initialize()) {
-              return true;
-            } else {
-              // Shutdown database.
-              database.shutdown();
+            if (dnsResolver != null) {
+              dnsResolver.shutdown();
             }
-          } else {
-            // Shutdown database.
-            database.shutdown();
+
+            shutdownParseStage();
           }
-        } else {
+
           // Shutdown database.
           database.shutdown();
         }
+
+        metrics.shutdown();
+      }
+    }
+
+    return false;
+  }
+
+
+  // Method: initializeFetchStage
+  // Description: creates the storage compressor object (if the data files
+  //              are compressed), creates and initializes the TLS context
+  //              object (shared by the HTTPS connections), the DNS resolver
+  //              object (which prefetches the hosts about to be visited),
+  //              the preconnector object (if the HTTPS servers about to be
+  //              visited are warmed up) and the downloader object.
+  //              Nothing is done if the role is "parser".
+  //
+  // Parameters: none.
+  // Returns: true: the fetch stage could be initialized; false: otherwise.
+  private boolean initializeFetchStage()
+  {
+    if (role == Role.PARSER) {
+      return true;
+    }
+
+    if (compressionThreads > 0) {
+      // Create storage compressor object (started once the parse stage has
+      // been initialized).
+      storageCompressor = new StorageCompressor(compressionThreads,
+                                                metrics,
+                                                log);
+    }
+
+    // Create TLS context object.
+    tlsContext = new TlsContext(tlsSessionCacheSize, metrics, log);
+
+    // Initialize TLS context.
+    if (!tlsContext.initialize()) {
+      return false;
+    }
+
+    // Create DNS resolver object.
+    dnsResolver = new DnsResolver(DnsResolver.SYSTEM_LOOKUP,
+                                  dnsThreads,
+                                  dnsCacheSize,
+                                  database,
+                                  metrics,
+                                  log);
+
+    // Initialize DNS resolver.
+    if (!dnsResolver.initialize()) {
+      return false;
+    }
+
+    if (preconnectThreads > 0) {
+      // Create preconnector object.
+      preconnector = new Preconnector(preconnectThreads,
+                                      connectTimeout,
+                                      readTimeout,
+                                      dnsResolver,
+                                      tlsContext,
+                                      database,
+                                      metrics,
+                                      log);
+
+      // Initialize preconnector.
+      if (!preconnector.initialize()) {
+        return false;
+      }
+    }
+
+    // Create downloader object.
+    downloader = new Downloader(database,
+                                urlCanonicalizer,
+                                fetchPolicy,
+                                dnsResolver,
+                                tlsContext,
+                                tempDir,
+                                finalDir,
+                                httpUserAgent,
+                                connectTimeout,
+                                readTimeout,
+                                maxBodySize,
+                                fetchDeadline,
+                                storeCompressed,
+                                storageCompressor,
+                                deduplicate,
+                                hostStatistics,
+                                metrics,
+                                log);
+
+    // Initialize downloader.
+    return downloader.initialize();
+  }
+
+
+  // Method: initializeParseStage
+  // Description: initializes the parse stage:
+  //                - Creates and initializes the URL filter object.
+  //                - Loads the URLs to be excluded and to be included.
+  //                - Starts watching the patterns files.
+  //                - Creates the index of near-duplicates (if they are
+  //                  detected).
+  //                - Creates and initializes the URLs extractor object.
+  //                - Creates and initializes the pool of parser threads.
+  //                - If the role is "parser", creates and initializes the
+  //                  watcher of the final directory.
+  //
+  //              Nothing is done if the role is "fetcher".
+  //
+  // Parameters: none.
+  // Returns: true: the parse stage could be initialized; false: otherwise.
+  private boolean initializeParseStage()
+  {
+    if (role == Role.FETCHER) {
+      return true;
+    }
+
+    // Create URL filter object.
+    urlFilter = new UrlFilter(filterCacheSize, metrics, log);
+
+    // Initialize URL filter object and load URLs.
+    if ((urlFilter.initialize()) &&
+        (urlFilter.load(excludeFilename, includeFilename)) &&
+        (initializeUrlFilterWatcher())) {
+      // Create index of near-duplicates.
+      NearDuplicateIndex nearDuplicateIndex =
+        (nearDuplicateBits > 0) ? new NearDuplicateIndex(nearDuplicateBits) :
+                                  null;
+
+      // Create URLs extractor object.
+      urlsExtractor = new UrlsExtractor(database,
+                                        urlCanonicalizer,
+                                        urlFilter,
+                                        fetchPolicy,
+                                        nearDuplicateIndex,
+                                        hostStatistics,
+                                        metrics,
+                                        log);
+
+      // Initialize URLs extractor.
+      if (urlsExtractor.initialize()) {
+        // Create pool of parser threads.
+        parserPool = new ParserPool(urlsExtractor,
+                                    parserThreads,
+                                    parseQueueSize,
+                                    log);
+
+        // Initialize pool of parser threads.
+        if (parserPool.initialize()) {
+          if (role != Role.PARSER) {
+            return true;
+          }
+
+          // Create watcher of the final directory.
+          dataDirectoryWatcher = new DataDirectoryWatcher(finalDir,
+                                                          parserPool,
+                                                          log);
+
+          // Initialize watcher.
+          if (dataDirectoryWatcher.initialize()) {
+            return true;
+          }
+
+          parserPool.shutdown();
+        }
       }
     }
 
@@ -164,16 +505,92 @@ public class Crawler {
   }
 
 
+  // Method: initializeUrlFilterWatcher
+  // Description: creates and initializes the watcher of the patterns files,
+  //              the URL filter is reloaded when they change.
+  //              Nothing is done if there are no patterns files.
+  //
+  // Parameters: none.
+  // Returns: true: the watcher could be initialized; false: otherwise.
+  private boolean initializeUrlFilterWatcher()
+  {
+    if ((excludeFilename == null) && (includeFilename == null)) {
+      return true;
+    }
+
+    // Create watcher of the patterns files.
+    urlFilterWatcher = new UrlFilterWatcher(urlFilter, log);
+
+    // Initialize watcher.
+    return urlFilterWatcher.initialize();
+  }
+
+
+  // Method: initializeStatusServer
+  // Description: creates and starts the status server.
+  //              Nothing is done if no port has been specified.
+  //
+  // Parameters: none.
+  // Returns: true: the status server could be started; false: otherwise.
+  private boolean initializeStatusServer()
+  {
+    if (statusPort == -1) {
+      return true;
+    }
+
+    // Create status server.
+    statusServer = new StatusServer(statusPort,
+                                    this,
+                                    database,
+                                    urlCanonicalizer,
+                                    parserPool,
+                                    hostStatistics,
+                                    metrics,
+                                    log);
+
+    // Start status server.
+    return statusServer.initialize();
+  }
+
+
+  // Method: setPaused
+  // Description: pauses or resumes fetching (status server).
+  // Parameters:
+  //   - paused: true: pause; false: resume.
+  //
+  // Returns: nothing.
+  public void setPaused(boolean paused)
+  {
+    if (this.paused != paused) {
+      this.paused = paused;
+
+      log.log(Level.INFO, paused ? "Fetching paused." : "Fetching resumed.");
+    }
+  }
+
+
+  // Method: isPaused
+  // Description: returns whether fetching is paused.
+  // Parameters: none.
+  // Returns: true: fetching is paused; false: otherwise.
+  public boolean isPaused()
+  {
+    return paused;
+  }
+
+
   // Method: run
   // Description: main loop:
-  //                - Gets the next URL to be visited.
-  //                  If some URL can be visited:
-  //                    - Makes an HTTP request and saves the response in a
-  //                      data file.
-  //                    - If the data file should be processed (the Content-Type
-  //                      is "text/html"):
-  //                        - Extracts the URLs from the data file and saves
-  //                          them in the database.
+  //                - If the role is "parser":
+  //                    - Queues the new files of the final directory, the
+  //                      parser threads will extract the URLs and save them in
+  //                      the database.
+  //                - Otherwise, calls the method fetchNextUrl() (unless
+  //                  fetching has been paused).
+  //                - Logs the statistics from time to time.
+  //
+  //              When the crawler is stopped, waits for the parser threads to
+  //              process the queued files.
   //
   // Parameters: none.
   // Returns: nothing.
@@ -183,33 +600,223 @@ public class Crawler {
     MutableBoolean process = new MutableBoolean();
     StringBuilder filename = new StringBuilder();
 
+    long lastStatistics = System.currentTimeMillis();
+
     do {
-      // Get from the database the next URL to visit.
-      URL url;
-      if ((url = database.getNextUrlToVisit(wait)) != null) {
-        process.value = false;
-        filename.setLength(0);
-
-        // Download file.
-        if (downloader.request(url, 0, process, filename)) {
-          // If the file should be processed...
-          if (process.value) {
-            urlsExtractor.processFile(filename.toString());
-          }
+      if (role == Role.PARSER) {
+        // Wait for new files in the final directory.
+        if (!dataDirectoryWatcher.poll(CHECK_INTERVAL)) {
+          break;
         }
-
-        // Remove URL from the list of URLs to visit.
-        database.removeUrlToVisit(url);
+      } else if (!paused) {
+        fetchNextUrl(wait, process, filename);
       } else {
-        long ms = (wait.value > 0) ? Math.min(wait.value, CHECK_INTERVAL) :
-                                     CHECK_INTERVAL;
-
         try {
-          Thread.sleep(ms);
+          Thread.sleep(CHECK_INTERVAL);
         } catch (InterruptedException e) {
         }
       }
+
+      long now = System.currentTimeMillis();
+      if (now - lastStatistics >= STATISTICS_INTERVAL) {
+        logStatistics();
+        dumpMetrics();
+        lastStatistics = now;
+      }
     } while (running);
+
+    if (statusServer != null) {
+      statusServer.shutdown();
+    }
+
+    if (downloader != null) {
+      downloader.shutdown();
+    }
+
+    if (preconnector != null) {
+      preconnector.shutdown();
+    }
+
+    if (dnsResolver != null) {
+      dnsResolver.shutdown();
+    }
+
+    if (storageCompressor != null) {
+      // Wait for the files being compressed (they might be queued in the
+      // pool of parser threads).
+      storageCompressor.shutdown();
+    }
+
+    if (parserPool != null) {
+      shutdownParseStage();
+
+      logStatistics();
+    }
+
+    dumpMetrics();
+
+    metrics.shutdown();
+  }
+
+
+  // Method: shutdownParseStage
+  // Description: stops the watcher of the patterns files, waits for the
+  //              parser threads to process the queued files and stops the
+  //              watcher of the final directory (the processed files are
+  //              written to its journal until then).
+  //
+  // Parameters: none.
+  // Returns: nothing.
+  private void shutdownParseStage()
+  {
+    if (urlFilterWatcher != null) {
+      urlFilterWatcher.shutdown();
+    }
+
+    if (parserPool != null) {
+      // Wait for the parser threads.
+      parserPool.shutdown();
+    }
+
+    if (dataDirectoryWatcher != null) {
+      dataDirectoryWatcher.shutdown();
+    }
+  }
+
+
+  // Method: fetchNextUrl
+  // Description: gets the next URL to be visited.
+  //              If some URL can be visited:
+  //                - If the fetch policy predicts that its type has to be
+  //                  skipped, marks it as visited without requesting it.
+  //                - Makes an HTTP request and saves the response in a data
+  //                  file.
+  //                - If the data file should be processed (the Content-Type
+  //                  is "text/html") and the role is not "fetcher":
+  //                    - Queues the data file, the parser threads will
+  //                      extract the URLs and save them in the database.
+  //
+  //              If no URL can be visited, sleeps until the next URL can be
+  //              visited (CHECK_INTERVAL at most).
+  //
+  // Parameters:
+  //   - wait: used for getting the next URL to visit.
+  //   - process: used for making the HTTP request.
+  //   - filename: used for making the HTTP request.
+  //
+  // Returns: nothing.
+  private void fetchNextUrl(MutableLong wait,
+                            MutableBoolean process,
+                            StringBuilder filename)
+  {
+    // Get from the database the next URL to visit.
+    URL url;
+    if ((url = database.getNextUrlToVisit(wait)) != null) {
+      process.value = false;
+      filename.setLength(0);
+
+      String host = url.getHost();
+
+      // Skip the URLs whose predicted type is not wanted.
+      if (fetchPolicy.skipFetch(host, url.getPath())) {
+        log.log(Level.FINE, "Skipping '" + url.toString() + "'.");
+
+        database.addVisitedUrl(url, "-", "-");
+        database.removeUrlToVisit(url);
+
+        return;
+      }
+
+      long start = hostStatistics.startRequest(host);
+
+      // Download file.
+      boolean downloaded = downloader.request(url, 0, process, filename);
+
+      hostStatistics.endRequest(host, start, downloaded);
+
+      if (downloaded) {
+        // If the file should be processed...
+        if ((process.value) && (parserPool != null)) {
+          // Queue file (blocks if the parser threads fall behind).
+          parserPool.submit(filename.toString());
+        }
+      }
+
+      // Remove URL from the list of URLs to visit.
+      database.removeUrlToVisit(url);
+    } else {
+      long ms = (wait.value > 0) ? Math.min(wait.value, CHECK_INTERVAL) :
+                                   CHECK_INTERVAL;
+
+      try {
+        Thread.sleep(ms);
+      } catch (InterruptedException e) {
+      }
+    }
+  }
+
+
+  // Method: logStatistics
+  // Description: logs the statistics of the URL canonicalizer, of the parse
+  //              queue and of the cache of URL filter decisions.
+  //
+  // Parameters: none.
+  // Returns: nothing.
+  private void logStatistics()
+  {
+    log.log(Level.INFO,
+            "Canonicalization: URLs: " +
+            urlCanonicalizer.getCanonicalizedUrls() +
+            ", rewritten: " +
+            urlCanonicalizer.getRewrittenUrls() +
+            ", stripped parameters: " +
+            urlCanonicalizer.getStrippedParameters() +
+            ".");
+
+    if (parserPool == null) {
+      return;
+    }
+
+    log.log(Level.INFO,
+            "Parse queue: depth: " +
+            parserPool.getQueueDepth() +
+            "/" +
+            parserPool.getQueueCapacity() +
+            ", max depth: " +
+            parserPool.getMaxQueueDepth() +
+            ", blocked submissions: " +
+            parserPool.getBlockedSubmissions() +
+            ", processed files: " +
+            parserPool.getProcessedFiles() +
+            ".");
+
+    long hits = urlFilter.getCacheHits();
+    long lookups = hits + urlFilter.getCacheMisses();
+
+    log.log(Level.INFO,
+            "Filter cache: size: " +
+            urlFilter.getCacheSize() +
+            ", hits: " +
+            hits +
+            "/" +
+            lookups +
+            " (" +
+            ((lookups > 0) ? (hits * 100 / lookups) : 0) +
+            "%), evictions: " +
+            urlFilter.getCacheEvictions() +
+            ".");
+  }
+
+
+  // Method: dumpMetrics
+  // Description: writes the metrics to the metrics file (if any).
+  // Parameters: none.
+  // Returns: nothing.
+  private void dumpMetrics()
+  {
+    if (metricsFilename != null) {
+      metrics.dump(metricsFilename);
+    }
   }
 
 
@@ -239,8 +846,53 @@ public class Crawler {
                        DEFAULT_HTTP_USER_AGENT +
                        ").");
 
+    System.out.println("\t--connect-timeout <milliseconds> (default: " +
+                       DEFAULT_CONNECT_TIMEOUT +
+                       ", 0: none).");
+
+    System.out.println("\t--read-timeout <milliseconds> (default: " +
+                       DEFAULT_READ_TIMEOUT +
+                       ", 0: none).");
+
+    System.out.println("\t--max-body-size <bytes> (default: " +
+                       DEFAULT_MAX_BODY_SIZE +
+                       ", 0: none).");
+
+    System.out.println("\t--fetch-deadline <milliseconds> (default: " +
+                       DEFAULT_FETCH_DEADLINE +
+                       ", 0: none).");
+
+    System.out.println("\t--store-compressed");
+
+    System.out.println("\t--compression-threads <number> (default: 0, " +
+                       "0: no compression).");
+
+    System.out.println("\t--deduplicate");
+
+    System.out.println("\t--dns-threads <number> (default: " +
+                       DEFAULT_DNS_THREADS +
+                       ", maximum: " +
+                       MAX_DNS_THREADS +
+                       ").");
+
+    System.out.println("\t--dns-cache-size <number> (default: " +
+                       DEFAULT_DNS_CACHE_SIZE +
+                       ").");
+
+    System.out.println("\t--preconnect-threads <number> (default: 0, " +
+                       "0: disabled, maximum: " +
+                       MAX_PRECONNECT_THREADS +
+                       ").");
+
+    System.out.println("\t--tls-session-cache-size <number> (default: " +
+                       DEFAULT_TLS_SESSION_CACHE_SIZE +
+                       ", 0: no limit).");
+
     System.out.println("\t--exclude-urls <filename>");
     System.out.println("\t--include-urls <filename>");
+    System.out.println("\t--canonicalization-rules <filename>");
+    System.out.println("\t--fetch-policy <filename>");
+    System.out.println("\t--head-first");
 
     System.out.println("\t--log-filename <log-filename> (default: " +
                        DEFAULT_LOG_FILENAME +
@@ -250,6 +902,35 @@ public class Crawler {
                        DEFAULT_LOG_LEVEL.getName() +
                        ").");
 
+    System.out.println("\t--log-buffer-size <number> (default: " +
+                       DEFAULT_LOG_BUFFER_SIZE +
+                       ", 0: synchronous).");
+
+    System.out.println("\t--metrics-file <filename>");
+
+    System.out.println("\t--parser-threads <number> (default: " +
+                       DEFAULT_PARSER_THREADS +
+                       ").");
+
+    System.out.println("\t--parse-queue-size <number> (default: " +
+                       DEFAULT_PARSE_QUEUE_SIZE +
+                       ").");
+
+    System.out.println("\t--filter-cache-size <number> (default: " +
+                       DEFAULT_FILTER_CACHE_SIZE +
+                       ", 0: disabled).");
+
+    System.out.println("\t--near-duplicate-bits <bits> (default: 0, " +
+                       "0: disabled, maximum: " +
+                       NearDuplicateIndex.MAX_DISTANCE +
+                       ").");
+
+    System.out.println("\t--status-port <port>");
+
+    System.out.println("\t--role all|fetcher|parser (default: " +
+                       DEFAULT_ROLE.name().toLowerCase() +
+                       ").");
+
     System.out.println();
   }
 
@@ -268,10 +949,32 @@ public class Crawler {
     String tempDir = DEFAULT_TEMP_DIRECTORY;
     String finalDir = DEFAULT_FINAL_DIRECTORY;
     String httpUserAgent = DEFAULT_HTTP_USER_AGENT;
+    int connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    int readTimeout = DEFAULT_READ_TIMEOUT;
+    long maxBodySize = DEFAULT_MAX_BODY_SIZE;
+    long fetchDeadline = DEFAULT_FETCH_DEADLINE;
+    boolean storeCompressed = false;
+    int compressionThreads = 0;
+    boolean deduplicate = false;
+    int dnsThreads = DEFAULT_DNS_THREADS;
+    int dnsCacheSize = DEFAULT_DNS_CACHE_SIZE;
+    int preconnectThreads = 0;
+    int tlsSessionCacheSize = DEFAULT_TLS_SESSION_CACHE_SIZE;
     String excludeFilename = null;
     String includeFilename = null;
+    String canonicalizationFilename = null;
+    String fetchPolicyFilename = null;
+    boolean headFirst = false;
     String logFilename = DEFAULT_LOG_FILENAME;
     Level logLevel = DEFAULT_LOG_LEVEL;
+    int logBufferSize = DEFAULT_LOG_BUFFER_SIZE;
+    String metricsFilename = null;
+    int parserThreads = DEFAULT_PARSER_THREADS;
+    int parseQueueSize = DEFAULT_PARSE_QUEUE_SIZE;
+    int filterCacheSize = DEFAULT_FILTER_CACHE_SIZE;
+    int nearDuplicateBits = 0;
+    int statusPort = -1;
+    Role role = DEFAULT_ROLE;
 
     // Check arguments.
     int i = 0;
@@ -345,6 +1048,250 @@ public class Crawler {
 
         httpUserAgent = args[i + 1];
 
+        i += 2;
+      } else if (args[i].equals("--connect-timeout")) {
+        // Last argument?
+        if (i + 1 == args.length) {
+          help();
+          return;
+        }
+
+        try {
+          connectTimeout = Integer.parseInt(args[i + 1]);
+
+          if (connectTimeout < 0) {
+            System.out.println("Invalid connect timeout '" +
+                               args[i + 1] +
+                               "'.");
+
+            return;
+          }
+        } catch (NumberFormatException e) {
+          System.out.println("Invalid connect timeout '" +
+                             args[i + 1] +
+                             "'.");
+
+          return;
+        }
+
+        i += 2;
+      } else if (args[i].equals("--read-timeout")) {
+        // Last argument?
+        if (i + 1 == args.length) {
+          help();
+          return;
+        }
+
+        try {
+          readTimeout = Integer.parseInt(args[i + 1]);
+
+          if (readTimeout < 0) {
+            System.out.println("Invalid read timeout '" +
+                               args[i + 1] +
+                               "'.");
+
+            return;
+          }
+        } catch (NumberFormatException e) {
+          System.out.println("Invalid read timeout '" +
+                             args[i + 1] +
+                             "'.");
+
+          return;
+        }
+
+        i += 2;
+      } else if (args[i].equals("--max-body-size")) {
+        // Last argument?
+        if (i + 1 == args.length) {
+          help();
+          return;
+        }
+
+        try {
+          maxBodySize = Long.parseLong(args[i + 1]);
+
+          if (maxBodySize < 0) {
+            System.out.println("Invalid maximum body size '" +
+                               args[i + 1] +
+                               "'.");
+
+            return;
+          }
+        } catch (NumberFormatException e) {
+          System.out.println("Invalid maximum body size '" +
+                             args[i + 1] +
+                             "'.");
+
+          return;
+        }
+
+        i += 2;
+      } else if (args[i].equals("--fetch-deadline")) {
+        // Last argument?
+        if (i + 1 == args.length) {
+          help();
+          return;
+        }
+
+        try {
+          fetchDeadline = Long.parseLong(args[i + 1]);
+
+          if (fetchDeadline < 0) {
+            System.out.println("Invalid fetch deadline '" +
+                               args[i + 1] +
+                               "'.");
+
+            return;
+          }
+        } catch (NumberFormatException e) {
+          System.out.println("Invalid fetch deadline '" +
+                             args[i + 1] +
+                             "'.");
+
+          return;
+        }
+
+        i += 2;
+      } else if (args[i].equals("--store-compressed")) {
+        storeCompressed = true;
+
+        i++;
+      } else if (args[i].equals("--compression-threads")) {
+        // Last argument?
+        if (i + 1 == args.length) {
+          help();
+          return;
+        }
+
+        try {
+          compressionThreads = Integer.parseInt(args[i + 1]);
+
+          if ((compressionThreads < 0) ||
+              (compressionThreads > ParserPool.MAX_THREADS)) {
+            System.out.println("Invalid number of compression threads '" +
+                               args[i + 1] +
+                               "'.");
+
+            return;
+          }
+        } catch (NumberFormatException e) {
+          System.out.println("Invalid number of compression threads '" +
+                             args[i + 1] +
+                             "'.");
+
+          return;
+        }
+
+        i += 2;
+      } else if (args[i].equals("--deduplicate")) {
+        deduplicate = true;
+
+        i++;
+      } else if (args[i].equals("--dns-threads")) {
+        // Last argument?
+        if (i + 1 == args.length) {
+          help();
+          return;
+        }
+
+        try {
+          dnsThreads = Integer.parseInt(args[i + 1]);
+
+          if ((dnsThreads < 1) || (dnsThreads > MAX_DNS_THREADS)) {
+            System.out.println("Invalid number of DNS threads '" +
+                               args[i + 1] +
+                               "'.");
+
+            return;
+          }
+        } catch (NumberFormatException e) {
+          System.out.println("Invalid number of DNS threads '" +
+                             args[i + 1] +
+                             "'.");
+
+          return;
+        }
+
+        i += 2;
+      } else if (args[i].equals("--dns-cache-size")) {
+        // Last argument?
+        if (i + 1 == args.length) {
+          help();
+          return;
+        }
+
+        try {
+          dnsCacheSize = Integer.parseInt(args[i + 1]);
+
+          if (dnsCacheSize < 1) {
+            System.out.println("Invalid DNS cache size '" +
+                               args[i + 1] +
+                               "'.");
+
+            return;
+          }
+        } catch (NumberFormatException e) {
+          System.out.println("Invalid DNS cache size '" +
+                             args[i + 1] +
+                             "'.");
+
+          return;
+        }
+
+        i += 2;
+      } else if (args[i].equals("--preconnect-threads")) {
+        // Last argument?
+        if (i + 1 == args.length) {
+          help();
+          return;
+        }
+
+        try {
+          preconnectThreads = Integer.parseInt(args[i + 1]);
+
+          if ((preconnectThreads < 0) ||
+              (preconnectThreads > MAX_PRECONNECT_THREADS)) {
+            System.out.println("Invalid number of preconnect threads '" +
+                               args[i + 1] +
+                               "'.");
+
+            return;
+          }
+        } catch (NumberFormatException e) {
+          System.out.println("Invalid number of preconnect threads '" +
+                             args[i + 1] +
+                             "'.");
+
+          return;
+        }
+
+        i += 2;
+      } else if (args[i].equals("--tls-session-cache-size")) {
+        // Last argument?
+        if (i + 1 == args.length) {
+          help();
+          return;
+        }
+
+        try {
+          tlsSessionCacheSize = Integer.parseInt(args[i + 1]);
+
+          if (tlsSessionCacheSize < 0) {
+            System.out.println("Invalid TLS session cache size '" +
+                               args[i + 1] +
+                               "'.");
+
+            return;
+          }
+        } catch (NumberFormatException e) {
+          System.out.println("Invalid TLS session cache size '" +
+                             args[i + 1] +
+                             "'.");
+
+          return;
+        }
+
         i += 2;
       } else if (args[i].equals("--exclude-urls")) {
         // Last argument?
@@ -366,6 +1313,30 @@ public class Crawler {
         includeFilename = args[i + 1];
 
         i += 2;
+      } else if (args[i].equals("--canonicalization-rules")) {
+        // Last argument?
+        if (i + 1 == args.length) {
+          help();
+          return;
+        }
+
+        canonicalizationFilename = args[i + 1];
+
+        i += 2;
+      } else if (args[i].equals("--fetch-policy")) {
+        // Last argument?
+        if (i + 1 == args.length) {
+          help();
+          return;
+        }
+
+        fetchPolicyFilename = args[i + 1];
+
+        i += 2;
+      } else if (args[i].equals("--head-first")) {
+        headFirst = true;
+
+        i++;
       } else if (args[i].equals("--log-filename")) {
         // Last argument?
         if (i + 1 == args.length) {
@@ -390,6 +1361,187 @@ public class Crawler {
           return;
         }
 
+        i += 2;
+      } else if (args[i].equals("--log-buffer-size")) {
+        // Last argument?
+        if (i + 1 == args.length) {
+          help();
+          return;
+        }
+
+        try {
+          logBufferSize = Integer.parseInt(args[i + 1]);
+
+          if (logBufferSize < 0) {
+            System.out.println("Invalid log buffer size '" +
+                               args[i + 1] +
+                               "'.");
+
+            return;
+          }
+        } catch (NumberFormatException e) {
+          System.out.println("Invalid log buffer size '" +
+                             args[i + 1] +
+                             "'.");
+
+          return;
+        }
+
+        i += 2;
+      } else if (args[i].equals("--metrics-file")) {
+        // Last argument?
+        if (i + 1 == args.length) {
+          help();
+          return;
+        }
+
+        metricsFilename = args[i + 1];
+
+        i += 2;
+      } else if (args[i].equals("--parser-threads")) {
+        // Last argument?
+        if (i + 1 == args.length) {
+          help();
+          return;
+        }
+
+        try {
+          parserThreads = Integer.parseInt(args[i + 1]);
+
+          if ((parserThreads < 1) ||
+              (parserThreads > ParserPool.MAX_THREADS)) {
+            System.out.println("Invalid number of parser threads '" +
+                               args[i + 1] +
+                               "'.");
+
+            return;
+          }
+        } catch (NumberFormatException e) {
+          System.out.println("Invalid number of parser threads '" +
+                             args[i + 1] +
+                             "'.");
+
+          return;
+        }
+
+        i += 2;
+      } else if (args[i].equals("--parse-queue-size")) {
+        // Last argument?
+        if (i + 1 == args.length) {
+          help();
+          return;
+        }
+
+        try {
+          parseQueueSize = Integer.parseInt(args[i + 1]);
+
+          if (parseQueueSize < 1) {
+            System.out.println("Invalid parse queue size '" +
+                               args[i + 1] +
+                               "'.");
+
+            return;
+          }
+        } catch (NumberFormatException e) {
+          System.out.println("Invalid parse queue size '" +
+                             args[i + 1] +
+                             "'.");
+
+          return;
+        }
+
+        i += 2;
+      } else if (args[i].equals("--filter-cache-size")) {
+        // Last argument?
+        if (i + 1 == args.length) {
+          help();
+          return;
+        }
+
+        try {
+          filterCacheSize = Integer.parseInt(args[i + 1]);
+
+          if (filterCacheSize < 0) {
+            System.out.println("Invalid filter cache size '" +
+                               args[i + 1] +
+                               "'.");
+
+            return;
+          }
+        } catch (NumberFormatException e) {
+          System.out.println("Invalid filter cache size '" +
+                             args[i + 1] +
+                             "'.");
+
+          return;
+        }
+
+        i += 2;
+      } else if (args[i].equals("--near-duplicate-bits")) {
+        // Last argument?
+        if (i + 1 == args.length) {
+          help();
+          return;
+        }
+
+        try {
+          nearDuplicateBits = Integer.parseInt(args[i + 1]);
+
+          if ((nearDuplicateBits < 0) ||
+              (nearDuplicateBits > NearDuplicateIndex.MAX_DISTANCE)) {
+            System.out.println("Invalid number of near-duplicate bits '" +
+                               args[i + 1] +
+                               "'.");
+
+            return;
+          }
+        } catch (NumberFormatException e) {
+          System.out.println("Invalid number of near-duplicate bits '" +
+                             args[i + 1] +
+                             "'.");
+
+          return;
+        }
+
+        i += 2;
+      } else if (args[i].equals("--status-port")) {
+        // Last argument?
+        if (i + 1 == args.length) {
+          help();
+          return;
+        }
+
+        try {
+          statusPort = Integer.parseInt(args[i + 1]);
+
+          if ((statusPort < 1) || (statusPort > 65535)) {
+            System.out.println("Invalid status port '" + args[i + 1] + "'.");
+            return;
+          }
+        } catch (NumberFormatException e) {
+          System.out.println("Invalid status port '" + args[i + 1] + "'.");
+          return;
+        }
+
+        i += 2;
+      } else if (args[i].equals("--role")) {
+        // Last argument?
+        if (i + 1 == args.length) {
+          help();
+          return;
+        }
+
+        if (args[i + 1].equals("all")) {
+          role = Role.ALL;
+        } else if (args[i + 1].equals("fetcher")) {
+          role = Role.FETCHER;
+        } else if (args[i + 1].equals("parser")) {
+          role = Role.PARSER;
+        } else {
+          System.out.println("Invalid role '" + args[i + 1] + "'.");
+          return;
+        }
+
         i += 2;
       } else {
         help();
@@ -407,16 +1559,51 @@ public class Crawler {
         System.out.println("A port has been specified but no host.");
         return;
       }
+
+      // The fetchers and the parsers have to share the database server.
+      if (role != Role.ALL) {
+        System.out.println("The role '" +
+                           role.name().toLowerCase() +
+                           "' requires a database server.");
+
+        return;
+      }
     }
 
+    // Use the TTLs of the DNS resolver for the address cache of the JVM
+    // (before any host is resolved).
+    DnsResolver.configureJvmCache();
+
     // Create crawler object.
     Crawler crawler = new Crawler(tempDir,
                                   finalDir,
                                   httpUserAgent,
+                                  connectTimeout,
+                                  readTimeout,
+                                  maxBodySize,
+                                  fetchDeadline,
+                                  storeCompressed,
+                                  compressionThreads,
+                                  deduplicate,
+                                  dnsThreads,
+                                  dnsCacheSize,
+                                  preconnectThreads,
+                                  tlsSessionCacheSize,
                                   excludeFilename,
                                   includeFilename,
+                                  canonicalizationFilename,
+                                  fetchPolicyFilename,
+                                  headFirst,
                                   logFilename,
-                                  logLevel);
+                                  logLevel,
+                                  logBufferSize,
+                                  metricsFilename,
+                                  parserThreads,
+                                  parseQueueSize,
+                                  filterCacheSize,
+                                  nearDuplicateBits,
+                                  statusPort,
+                                  role);
 
     // Initialize crawler.
     if (crawler.initialize(host, port, databaseName)) {
@@ -439,6 +1626,9 @@ public class Crawler {
 
       // Shutdown database.
       crawler.database.shutdown();
+
+      // Write the pending log records.
+      crawler.log.shutdown();
     }
   }
 }
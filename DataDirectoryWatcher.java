@@ -0,0 +1,343 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.StandardWatchEventKinds;
+import java.util.concurrent.TimeUnit;
+
+public class DataDirectoryWatcher {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // File of the directory with the names of the files already processed
+  // (one per line). The files whose name starts with '.' are not data files.
+  private static final String JOURNAL_FILENAME = ".parsed";
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Data members.                                                        ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private String directory = null;
+  private ParserPool parserPool = null;
+
+  private Path path = null;
+  private WatchService watchService = null;
+
+  // Names of the files which have been processed (in this or in a previous
+  // run) or queued, they are not queued again.
+  private Set<String> known = ConcurrentHashMap.newKeySet();
+
+  // Journal of the processed files (appended by the parser threads).
+  private BufferedWriter journal = null;
+
+  // Whether the whole directory has to be scanned (at startup and when some
+  // events have been lost), only used by the thread calling poll().
+  private boolean scan = false;
+
+  private Log log = null;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: Constructor
+  // Description: sets the data members.
+  // Parameters:
+  //   - directory: directory where the downloaded files are saved.
+  //   - parserPool: pool of parser threads.
+  //   - log: logger object.
+  //
+  // Returns: nothing.
+  public DataDirectoryWatcher(String directory,
+                              ParserPool parserPool,
+                              Log log)
+  {
+    this.directory = directory;
+    this.parserPool = parserPool;
+    this.log = log;
+  }
+
+
+  // Method: initialize
+  // Description: creates the directory (if not already done), loads the
+  //              journal of the processed files and starts watching the
+  //              directory for new files. The files which are already in the
+  //              directory and haven't been processed are queued by the first
+  //              call to poll().
+  //
+  // Parameters: none.
+  // Returns: true: the directory could be watched; false: otherwise.
+  public boolean initialize()
+  {
+    try {
+      path = Paths.get(directory);
+
+      Files.createDirectories(path);
+
+      Path journalPath = path.resolve(JOURNAL_FILENAME);
+
+      if (Files.exists(journalPath)) {
+        try (BufferedReader reader =
+               Files.newBufferedReader(journalPath,
+                                       StandardCharsets.UTF_8)) {
+          String line;
+          while ((line = reader.readLine()) != null) {
+            if (!line.isEmpty()) {
+              known.add(line);
+            }
+          }
+        }
+
+        log.log(Level.INFO,
+                "Loaded " + known.size() + " processed file(s) from '" +
+                journalPath +
+                "'.");
+      }
+
+      journal = Files.newBufferedWriter(journalPath,
+                                        StandardCharsets.UTF_8,
+                                        StandardOpenOption.CREATE,
+                                        StandardOpenOption.APPEND);
+
+      watchService = FileSystems.getDefault().newWatchService();
+
+      path.register(watchService, StandardWatchEventKinds.ENTRY_CREATE);
+
+      parserPool.setListener(this::processed);
+
+      scan = true;
+
+      log.log(Level.INFO, "Watching directory '" + directory + "'.");
+
+      return true;
+    } catch (IOException e) {
+      log.log(Level.SEVERE,
+              "Cannot watch directory '" +
+              directory +
+              "' (" +
+              e.toString() +
+              ").");
+    }
+
+    return false;
+  }
+
+
+  // Method: shutdown
+  // Description: stops watching the directory and closes the journal. It has
+  //              to be called after the pool of parser threads has been shut
+  //              down.
+  //
+  // Parameters: none.
+  // Returns: nothing.
+  public void shutdown()
+  {
+    parserPool.setListener(null);
+
+    try {
+      watchService.close();
+    } catch (IOException e) {
+      log.log(Level.WARNING, "Exception: '" + e.toString() + "'.");
+    }
+
+    synchronized (this) {
+      try {
+        journal.close();
+      } catch (IOException e) {
+        log.log(Level.WARNING, "Exception: '" + e.toString() + "'.");
+      }
+    }
+  }
+
+
+  // Method: poll
+  // Description: waits up to "timeout" milliseconds for new files in the
+  //              directory and queues them in the pool of parser threads.
+  //              The whole directory is scanned the first time and when some
+  //              events have been lost.
+  //
+  // Parameters:
+  //   - timeout: maximum number of milliseconds to wait.
+  //
+  // Returns: true: the directory is still being watched; false: otherwise.
+  public boolean poll(long timeout)
+  {
+    if (scan) {
+      // The files created from now on are queued when their event is
+      // received (or by the next scan).
+      scan = false;
+
+      if (!scan()) {
+        return false;
+      }
+    }
+
+    WatchKey key;
+
+    try {
+      if ((key = watchService.poll(timeout, TimeUnit.MILLISECONDS)) == null) {
+        return true;
+      }
+    } catch (InterruptedException e) {
+      return true;
+    }
+
+    for (WatchEvent<?> event : key.pollEvents()) {
+      if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+        log.log(Level.WARNING,
+                "Some events have been lost while watching directory '" +
+                directory +
+                "', it will be scanned.");
+
+        scan = true;
+
+        continue;
+      }
+
+      submit(path.resolve((Path) event.context()));
+    }
+
+    if (!key.reset()) {
+      log.log(Level.SEVERE,
+              "Directory '" + directory + "' cannot be watched anymore.");
+
+      return false;
+    }
+
+    return true;
+  }
+
+
+  // Method: scan
+  // Description: queues the files of the directory which haven't been
+  //              processed or queued, in order of name (the order in which
+  //              the downloader names them).
+  //
+  // Parameters: none.
+  // Returns: true: the directory could be scanned; false: otherwise.
+  private boolean scan()
+  {
+    List<Path> files = new ArrayList<Path>();
+
+    try (DirectoryStream<Path> stream = Files.newDirectoryStream(path)) {
+      for (Path file : stream) {
+        files.add(file);
+      }
+    } catch (IOException e) {
+      log.log(Level.SEVERE,
+              "Cannot scan directory '" +
+              directory +
+              "' (" +
+              e.toString() +
+              ").");
+
+      return false;
+    }
+
+    Collections.sort(files);
+
+    int queued = 0;
+
+    for (Path file : files) {
+      if (submit(file)) {
+        queued++;
+      }
+    }
+
+    log.log(Level.INFO,
+            "Scanned directory '" +
+            directory +
+            "', " +
+            queued +
+            " unprocessed file(s) queued.");
+
+    return true;
+  }
+
+
+  // Method: submit
+  // Description: queues a data file in the pool of parser threads, unless it
+  //              has already been processed or queued.
+  //
+  // Parameters:
+  //   - file: file of the directory.
+  //
+  // Returns: true: the file has been queued; false: otherwise.
+  private boolean submit(Path file)
+  {
+    String name = file.getFileName().toString();
+
+    // The files are renamed atomically to the directory once complete (the
+    // downloader checks at startup that it can).
+    if ((name.startsWith(".")) ||
+        (!Files.isRegularFile(file)) ||
+        (!known.add(name))) {
+      return false;
+    }
+
+    log.log(Level.FINEST, "New file '{0}'.", file);
+
+    if (!parserPool.submit(file.toString())) {
+      known.remove(name);
+      return false;
+    }
+
+    return true;
+  }
+
+
+  // Method: processed
+  // Description: appends a file processed successfully by a parser thread
+  //              to the journal, so it is not processed again in the next
+  //              run.
+  //
+  // Parameters:
+  //   - filename: name of the file.
+  //
+  // Returns: nothing.
+  private synchronized void processed(String filename)
+  {
+    try {
+      journal.write(Paths.get(filename).getFileName().toString());
+      journal.newLine();
+      journal.flush();
+    } catch (IOException e) {
+      log.log(Level.WARNING,
+              "Cannot update journal of directory '" +
+              directory +
+              "' (" +
+              e.toString() +
+              ").");
+    }
+  }
+}
@@ -1,4 +1,11 @@
 import java.util.Date;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.net.URI;
 import java.net.URL;
@@ -24,7 +31,13 @@ public class Database {
   private static final int HOST_MAX_LEN = 255;
   private static final int SERVER_MAX_LEN = 255;
   private static final int FILENAME_MAX_LEN = 255;
+  private static final int DIGEST_LEN = 64; // SHA-256 (hexadecimal).
   private static final long HOST_VISIT_INTERVAL = 5000; // Milliseconds.
+  private static final long MAX_HOST_VISIT_INTERVAL = 24 * 60 * 60 * 1000;
+
+  // Number of attempts of a batch of URLs to visit which has been rolled
+  // back by a lock timeout or a deadlock (e.g. with another process).
+  private static final int MAX_BATCH_ATTEMPTS = 3;
 
   private static final String EMBEDDED_DRIVER =
                               "org.apache.derby.jdbc.EmbeddedDriver";
@@ -74,6 +87,17 @@ public class Database {
                               ") NOT NULL, WHEN TIMESTAMP NOT NULL, " +
                               "PRIMARY KEY (URL))";
 
+  private static final String CONTENT_DIGESTS = "CONTENT_DIGESTS";
+
+  private static final String CREATE_CONTENT_DIGESTS =
+                              "CREATE TABLE " +
+                              CONTENT_DIGESTS +
+                              " (DIGEST CHAR(" +
+                              DIGEST_LEN +
+                              ") NOT NULL, FILENAME VARCHAR(" +
+                              FILENAME_MAX_LEN +
+                              ") NOT NULL, PRIMARY KEY (DIGEST))";
+
 
   //////////////////////////////////////////////////////////////////////////////
   //////////////////////////////////////////////////////////////////////////////
@@ -89,10 +113,12 @@ public class Database {
     VIEW_TABLE_VISITED_URLS,
     VIEW_TABLE_VISITED_HOSTS,
     VIEW_TABLE_URLS_TO_VISIT,
+    VIEW_TABLE_CONTENT_DIGESTS,
     DROP_TABLES,
     DROP_TABLE_VISITED_URLS,
     DROP_TABLE_VISITED_HOSTS,
     DROP_TABLE_URLS_TO_VISIT,
+    DROP_TABLE_CONTENT_DIGESTS,
     ADD_URL_TO_VISIT,
     REMOVE_URL_TO_VISIT
   };
@@ -106,8 +132,34 @@ public class Database {
   //////////////////////////////////////////////////////////////////////////////
   //////////////////////////////////////////////////////////////////////////////
 
+  // The connection is shared by the crawler thread and the parser threads,
+  // the public methods are synchronized.
   private Connection conn = null;
 
+  // Latency of each statement.
+  private Metrics metrics = null;
+  private Histogram insertVisitedUrlLatency = null;
+  private Histogram insertUrlToVisitLatency = null;
+  private Histogram deleteUrlToVisitLatency = null;
+  private Histogram selectNextUrlLatency = null;
+  private Histogram insertVisitedHostLatency = null;
+  private Histogram updateVisitedHostLatency = null;
+  private Histogram selectVisitedUrlLatency = null;
+  private Histogram selectUrlToVisitLatency = null;
+  private Histogram selectLatestWhenLatency = null;
+  private Histogram selectHostTimestampLatency = null;
+  private Histogram selectUrlsToVisitCountLatency = null;
+  private Histogram selectUpcomingHostsLatency = null;
+  private Histogram selectUpcomingUrlsLatency = null;
+  private Histogram insertContentDigestLatency = null;
+  private Histogram selectContentDigestLatency = null;
+  private Histogram commitLatency = null;
+  private LongAdder errors = null;
+
+  // Hosts whose visit interval is not HOST_VISIT_INTERVAL (milliseconds).
+  private ConcurrentHashMap<String, Long> hostVisitIntervals =
+    new ConcurrentHashMap<String, Long>();
+
   private Log log = null;
 
 
@@ -120,13 +172,15 @@ public class Database {
   //////////////////////////////////////////////////////////////////////////////
 
   // Method: Constructor
-  // Description: sets the data member "log".
+  // Description: sets the data members.
   // Parameters:
+  //   - metrics: metrics object.
   //   - log: logger object.
   //
   // Returns: nothing.
-  public Database(Log log)
+  public Database(Metrics metrics, Log log)
   {
+    this.metrics = metrics;
     this.log = log;
   }
 
@@ -170,6 +224,27 @@ public class Database {
   // Returns: true: the database could be initialized; false: otherwise.
   private boolean initialize(String driver, String url)
   {
+    // Get the metrics.
+    insertVisitedUrlLatency = metrics.latency("db.insert_visited_url");
+    insertUrlToVisitLatency = metrics.latency("db.insert_url_to_visit");
+    deleteUrlToVisitLatency = metrics.latency("db.delete_url_to_visit");
+    selectNextUrlLatency = metrics.latency("db.select_next_url");
+    insertVisitedHostLatency = metrics.latency("db.insert_visited_host");
+    updateVisitedHostLatency = metrics.latency("db.update_visited_host");
+    selectVisitedUrlLatency = metrics.latency("db.select_visited_url");
+    selectUrlToVisitLatency = metrics.latency("db.select_url_to_visit");
+    selectLatestWhenLatency = metrics.latency("db.select_latest_when");
+    selectHostTimestampLatency = metrics.latency("db.select_host_timestamp");
+    selectUrlsToVisitCountLatency =
+      metrics.latency("db.select_urls_to_visit_count");
+    selectUpcomingHostsLatency = metrics.latency("db.select_upcoming_hosts");
+    selectUpcomingUrlsLatency = metrics.latency("db.select_upcoming_urls");
+    insertContentDigestLatency = metrics.latency("db.insert_content_digest");
+    selectContentDigestLatency = metrics.latency("db.select_content_digest");
+
+    commitLatency = metrics.latency("db.commit");
+    errors = metrics.counter("db.errors");
+
     try {
       // Start the derby engine.
       Class.forName(driver);
@@ -187,7 +262,8 @@ public class Database {
       // Create tables.
       return createTable(VISITED_URLS, CREATE_VISITED_URLS) &&
              createTable(VISITED_HOSTS, CREATE_VISITED_HOSTS) &&
-             createTable(URLS_TO_VISIT, CREATE_URLS_TO_VISIT);
+             createTable(URLS_TO_VISIT, CREATE_URLS_TO_VISIT) &&
+             createTable(CONTENT_DIGESTS, CREATE_CONTENT_DIGESTS);
     } catch (SQLException e) {
       log.log(Level.SEVERE, "Database error: '" + e.toString() + "'.");
     }
@@ -196,6 +272,104 @@ public class Database {
   }
 
 
+  // Method: executeUpdate
+  // Description: executes an INSERT, UPDATE or DELETE statement, records its
+  //              latency and emits a JFR event (if enabled).
+  //
+  // Parameters:
+  //   - statement: statement to be executed.
+  //   - latency: histogram where to record the latency.
+  //
+  // Returns: number of rows.
+  private int executeUpdate(PreparedStatement statement, Histogram latency)
+    throws SQLException
+  {
+    DatabaseEvent event = new DatabaseEvent();
+    event.begin();
+
+    long start = System.nanoTime();
+
+    try {
+      event.rows = statement.executeUpdate();
+      event.success = true;
+
+      return event.rows;
+    } catch (SQLException e) {
+      errors.increment();
+      throw e;
+    } finally {
+      latency.recordSince(start);
+
+      event.operation = latency.getName();
+      event.commit();
+    }
+  }
+
+
+  // Method: executeQuery
+  // Description: executes a SELECT statement, records its latency and emits a
+  //              JFR event (if enabled).
+  //
+  // Parameters:
+  //   - statement: statement to be executed.
+  //   - latency: histogram where to record the latency.
+  //
+  // Returns: result set.
+  private ResultSet executeQuery(PreparedStatement statement,
+                                 Histogram latency) throws SQLException
+  {
+    DatabaseEvent event = new DatabaseEvent();
+    event.begin();
+
+    long start = System.nanoTime();
+
+    try {
+      ResultSet rs = statement.executeQuery();
+      event.success = true;
+
+      return rs;
+    } catch (SQLException e) {
+      errors.increment();
+      throw e;
+    } finally {
+      latency.recordSince(start);
+
+      event.operation = latency.getName();
+      event.commit();
+    }
+  }
+
+
+  // Method: commit
+  // Description: commits the current transaction, records its latency and
+  //              emits a JFR event (if enabled).
+  //
+  // Parameters:
+  //   - latency: histogram where to record the latency.
+  //
+  // Returns: nothing.
+  private void commit(Histogram latency) throws SQLException
+  {
+    DatabaseEvent event = new DatabaseEvent();
+    event.begin();
+
+    long start = System.nanoTime();
+
+    try {
+      conn.commit();
+      event.success = true;
+    } catch (SQLException e) {
+      errors.increment();
+      throw e;
+    } finally {
+      latency.recordSince(start);
+
+      event.operation = latency.getName();
+      event.commit();
+    }
+  }
+
+
   // Method: shutdown
   // Description: shutdowns the database.
   // Parameters: none.
@@ -288,7 +462,9 @@ public class Database {
   //            or:
   //              - The URL was already in the table of visited URLs.
   //          false: otherwise.
-  public boolean addVisitedUrl(URL url, String server, String filename)
+  public synchronized boolean addVisitedUrl(URL url,
+                                            String server,
+                                            String filename)
   {
     if ((server.length() <= SERVER_MAX_LEN) &&
         (filename.length() <= FILENAME_MAX_LEN)) {
@@ -312,16 +488,14 @@ public class Database {
             statement.setTimestamp(2, timestamp);
             statement.setString(3, filename);
 
-            statement.executeUpdate();
+            executeUpdate(statement, insertVisitedUrlLatency);
 
             log.log(Level.FINEST,
-                    "Added visited URL '" +
-                    urlStr +
-                    "', timestamp: '" +
-                    timestamp.toString() +
-                    "', filename: '" +
-                    filename +
-                    "'.");
+                    "Added visited URL '{0}', timestamp: '{1}', " +
+                    "filename: '{2}'.",
+                    urlStr,
+                    timestamp,
+                    filename);
 
             return addVisitedHost(host, timestamp, server);
           } catch (SQLException e) {
@@ -330,7 +504,8 @@ public class Database {
               // duplicate key value in a unique or primary key constraint or
               // unique index identified by '<value>' defined on '<value>'.
               log.log(Level.FINEST,
-                      "Visited URL '" + urlStr + "' already added.");
+                      "Visited URL '{0}' already added.",
+                      urlStr);
 
               return true;
             }
@@ -354,6 +529,104 @@ public class Database {
   }
 
 
+  // Method: addContentDigest
+  // Description: adds the digest of a stored body to the table of content
+  //              digests, so the same body is not stored again.
+  //
+  // Parameters:
+  //   - digest: SHA-256 of the body (hexadecimal).
+  //   - filename: name of the data file containing the body.
+  //
+  // Returns: true: the digest could be added or was already in the table;
+  //          false: otherwise.
+  public synchronized boolean addContentDigest(String digest, String filename)
+  {
+    if ((digest.length() == DIGEST_LEN) &&
+        (filename.length() <= FILENAME_MAX_LEN)) {
+      PreparedStatement statement = null;
+
+      try {
+        statement = conn.prepareStatement("INSERT INTO " +
+                                          CONTENT_DIGESTS +
+                                          " (DIGEST, FILENAME) " +
+                                          "VALUES (?, ?)");
+
+        statement.setString(1, digest);
+        statement.setString(2, filename);
+
+        executeUpdate(statement, insertContentDigestLatency);
+
+        log.log(Level.FINEST,
+                "Added content digest '{0}', filename: '{1}'.",
+                digest,
+                filename);
+
+        return true;
+      } catch (SQLException e) {
+        if (e.getSQLState().equals("23505")) {
+          // Duplicate key.
+          log.log(Level.FINEST,
+                  "Content digest '{0}' already added.",
+                  digest);
+
+          return true;
+        }
+
+        log.log(Level.WARNING,
+                "Error adding content digest (" + e.toString() + ").");
+      } finally {
+        if (statement != null) {
+          try {
+            statement.close();
+          } catch (SQLException e) {
+            log.log(Level.WARNING, "Exception: '" + e.toString() + "'.");
+          }
+        }
+      }
+    }
+
+    return false;
+  }
+
+
+  // Method: getContentDigestFilename
+  // Description: returns the name of the data file containing a body.
+  // Parameters:
+  //   - digest: SHA-256 of the body (hexadecimal).
+  //
+  // Returns: name of the data file; null if no body with such a digest has
+  //          been stored.
+  public synchronized String getContentDigestFilename(String digest)
+    throws SQLException
+  {
+    PreparedStatement statement = null;
+
+    try {
+      statement = conn.prepareStatement("SELECT FILENAME FROM " +
+                                        CONTENT_DIGESTS +
+                                        " WHERE DIGEST = ?");
+
+      statement.setString(1, digest);
+
+      ResultSet rs = executeQuery(statement, selectContentDigestLatency);
+
+      String filename = rs.next() ? rs.getString(1) : null;
+
+      rs.close();
+
+      return filename;
+    } finally {
+      if (statement != null) {
+        try {
+          statement.close();
+        } catch (SQLException e) {
+          log.log(Level.WARNING, "Exception: '" + e.toString() + "'.");
+        }
+      }
+    }
+  }
+
+
   // Method: addUrlToVisit
   // Description: adds a URL to the table of URLs to visit.
   //              If the URL has not been already visited and is not already
@@ -363,12 +636,12 @@ public class Database {
   //                    - Gets from the table of URLs to visit the latest "when"
   //                      for the same host.
   //                      If found: the URL can be visited, the earliest, at:
-  //                        "when" + HOST_VISIT_INTERVAL.
+  //                        "when" + visit interval of the host.
   //                      If not found:
   //                    - Gets from the table of visited hosts the timestamp
   //                      "timestamp" when the host was last visited.
   //                      If found: the URL can be visited, the earliest, at:
-  //                        "timestamp" + HOST_VISIT_INTERVAL.
+  //                        "timestamp" + visit interval of the host.
   //                      If not found:
   //                        Sets "when" to current time.
   //                - Adds the URL to visit.
@@ -377,8 +650,12 @@ public class Database {
   //              table of URLs to visit:
   //                - Returns success.
   //
+  //              The database errors (except a URL added in the meantime)
+  //              are thrown, so a batch can be rolled back.
+  //
   // Parameters:
-  //   - url: URL to visit.
+  //   - urlStr: URL to visit.
+  //   - host: URL's host.
   //
   // Returns: true:
   //            - The URL could be added to the table of URLs to visit.
@@ -386,12 +663,11 @@ public class Database {
   //              - The URL has been already visited.
   //            or:
   //              - The URL is already in the table of URLs to visit.
-  //          false: otherwise.
-  public boolean addUrlToVisit(URL url)
+  //          false: the URL or the host is too long.
+  private boolean insertUrlToVisit(String urlStr, String host)
+    throws SQLException
   {
-    String host = url.getHost();
     if (host.length() <= HOST_MAX_LEN) {
-      String urlStr = url.toString();
       if (urlStr.length() <= URL_MAX_LEN) {
         PreparedStatement statement = null;
 
@@ -400,14 +676,15 @@ public class Database {
             // Get the latest 'WHEN' for the host 'host' in the table
             // 'URLS_TO_VISIT'.
             Timestamp when = getLatestWhen(host);
+            long interval = getHostVisitInterval(host);
 
             if (when != null) {
-              when.setTime(when.getTime() + HOST_VISIT_INTERVAL);
+              when.setTime(when.getTime() + interval);
             } else {
               // Get the timestamp when the host was last visited.
               Timestamp timestamp;
               if ((timestamp = getHostTimestamp(host)) != null) {
-                when = new Timestamp(timestamp.getTime() + HOST_VISIT_INTERVAL);
+                when = new Timestamp(timestamp.getTime() + interval);
               } else {
                 // The host can be visited now.
                 Date now = new Date();
@@ -424,22 +701,28 @@ public class Database {
             statement.setString(2, host);
             statement.setTimestamp(3, when);
 
-            statement.executeUpdate();
+            executeUpdate(statement, insertUrlToVisitLatency);
 
             log.log(Level.FINEST,
-                    "Added URL to visit '" +
-                    urlStr +
-                    "', host: '" +
-                    host +
-                    "', when: '" +
-                    when.toString() +
-                    "'.");
+                    "Added URL to visit '{0}', host: '{1}', when: '{2}'.",
+                    urlStr,
+                    host,
+                    when);
           }
 
           return true;
         } catch (SQLException e) {
-          log.log(Level.WARNING,
-                  "Error adding URL to visit (" + e.toString() + ").");
+          if (e.getSQLState().equals("23505")) {
+            // The URL has been added by another process (parser) in the
+            // meantime.
+            log.log(Level.FINEST,
+                    "URL to visit '{0}' already added.",
+                    urlStr);
+
+            return true;
+          }
+
+          throw e;
         } finally {
           if (statement != null) {
             try {
@@ -456,6 +739,326 @@ public class Database {
   }
 
 
+  // Method: addUrlToVisit
+  // Description: adds a URL to the table of URLs to visit, calling the method
+  //              insertUrlToVisit().
+  //
+  // Parameters:
+  //   - urlStr: URL to visit.
+  //   - host: URL's host.
+  //
+  // Returns: true: the URL has been added or was already visited or to be
+  //          visited; false: otherwise.
+  private boolean addUrlToVisit(String urlStr, String host)
+  {
+    try {
+      return insertUrlToVisit(urlStr, host);
+    } catch (SQLException e) {
+      log.log(Level.WARNING,
+              "Error adding URL to visit (" + e.toString() + ").");
+    }
+
+    return false;
+  }
+
+
+  // Method: addUrlToVisit
+  // Description: adds a URL to the table of URLs to visit, calling the other
+  //              method addUrlToVisit() with the URL and its host.
+  //
+  // Parameters:
+  //   - url: URL to visit.
+  //
+  // Returns: the value returned by the other method addUrlToVisit().
+  public synchronized boolean addUrlToVisit(URL url)
+  {
+    return addUrlToVisit(url.toString(), url.getHost());
+  }
+
+
+  // Method: addUrlsToVisit
+  // Description: adds a batch of URLs to the table of URLs to visit in a
+  //              single transaction, calling the method insertUrlToVisit()
+  //              for each URL. A database error rolls back the whole batch;
+  //              if it is a lock timeout or a deadlock, the batch is tried
+  //              again (up to MAX_BATCH_ATTEMPTS times).
+  //
+  // Parameters:
+  //   - urls: canonical URLs to visit.
+  //
+  // Returns: true: the transaction could be committed; false: otherwise.
+  public synchronized boolean addUrlsToVisit(Collection<String> urls)
+  {
+    for (int attempt = 1; attempt <= MAX_BATCH_ATTEMPTS; attempt++) {
+      try {
+        conn.setAutoCommit(false);
+
+        try {
+          int count = 0;
+
+          for (String url : urls) {
+            if (insertUrlToVisit(url, UrlCanonicalizer.getHost(url))) {
+              count++;
+            }
+          }
+
+          commit(commitLatency);
+
+          log.log(Level.FINEST,
+                  "Added batch of {0}/{1} URLs to visit.",
+                  count,
+                  urls.size());
+
+          return true;
+        } catch (SQLException e) {
+          log.log(Level.WARNING,
+                  "Error adding batch of URLs to visit (" +
+                  e.toString() +
+                  "), attempt " +
+                  attempt +
+                  "/" +
+                  MAX_BATCH_ATTEMPTS +
+                  ".");
+
+          conn.rollback();
+
+          // Retry after a lock timeout or a deadlock.
+          if ((!e.getSQLState().equals("40XL1")) &&
+              (!e.getSQLState().equals("40001"))) {
+            return false;
+          }
+        } finally {
+          conn.setAutoCommit(true);
+        }
+      } catch (SQLException e) {
+        log.log(Level.WARNING, "Exception: '" + e.toString() + "'.");
+
+        return false;
+      }
+    }
+
+    return false;
+  }
+
+
+  // Method: getNumberUrlsToVisit
+  // Description: returns the number of URLs in the table of URLs to visit
+  //              (size of the frontier).
+  //
+  // Parameters: none.
+  // Returns: number of URLs to visit; -1 on error.
+  public synchronized long getNumberUrlsToVisit()
+  {
+    PreparedStatement statement = null;
+
+    try {
+      statement = conn.prepareStatement("SELECT COUNT(*) FROM " +
+                                        URLS_TO_VISIT);
+
+      ResultSet rs = executeQuery(statement, selectUrlsToVisitCountLatency);
+
+      long count = rs.next() ? rs.getLong(1) : 0;
+
+      rs.close();
+
+      return count;
+    } catch (SQLException e) {
+      log.log(Level.WARNING,
+              "Error counting URLs to visit (" + e.toString() + ").");
+    } finally {
+      if (statement != null) {
+        try {
+          statement.close();
+        } catch (SQLException e) {
+          log.log(Level.WARNING, "Exception: '" + e.toString() + "'.");
+        }
+      }
+    }
+
+    return -1;
+  }
+
+
+  // Method: getUpcomingHosts
+  // Description: returns the hosts with URLs which can be visited in the
+  //              next "horizon" milliseconds (or which can already be
+  //              visited), the hosts which can be visited first go first.
+  //
+  // Parameters:
+  //   - horizon: milliseconds from now.
+  //   - max: maximum number of hosts.
+  //
+  // Returns: hosts; null on error.
+  public synchronized List<String> getUpcomingHosts(long horizon, int max)
+  {
+    PreparedStatement statement = null;
+
+    try {
+      statement = conn.prepareStatement("SELECT HOST, MIN(WHEN) FROM " +
+                                        URLS_TO_VISIT +
+                                        " WHERE WHEN <= ? GROUP BY HOST " +
+                                        "ORDER BY 2 ASC");
+
+      statement.setTimestamp(1,
+                             new Timestamp(System.currentTimeMillis() +
+                                           horizon));
+
+      statement.setMaxRows(max);
+
+      ResultSet rs = executeQuery(statement, selectUpcomingHostsLatency);
+
+      List<String> hosts = new ArrayList<String>();
+      while (rs.next()) {
+        hosts.add(rs.getString(1));
+      }
+
+      rs.close();
+
+      return hosts;
+    } catch (SQLException e) {
+      log.log(Level.WARNING,
+              "Error getting upcoming hosts (" + e.toString() + ").");
+    } finally {
+      if (statement != null) {
+        try {
+          statement.close();
+        } catch (SQLException e) {
+          log.log(Level.WARNING, "Exception: '" + e.toString() + "'.");
+        }
+      }
+    }
+
+    return null;
+  }
+
+
+  // Method: getUpcomingUrls
+  // Description: returns the URLs which can be visited in the next "horizon"
+  //              milliseconds (or which can already be visited), in the
+  //              order in which they will be visited.
+  //
+  // Parameters:
+  //   - horizon: milliseconds from now.
+  //   - max: maximum number of URLs.
+  //
+  // Returns: URLs; null on error.
+  public synchronized List<String> getUpcomingUrls(long horizon, int max)
+  {
+    PreparedStatement statement = null;
+
+    try {
+      statement = conn.prepareStatement("SELECT URL FROM " +
+                                        URLS_TO_VISIT +
+                                        " WHERE WHEN <= ? ORDER BY WHEN ASC");
+
+      statement.setTimestamp(1,
+                             new Timestamp(System.currentTimeMillis() +
+                                           horizon));
+
+      statement.setMaxRows(max);
+
+      ResultSet rs = executeQuery(statement, selectUpcomingUrlsLatency);
+
+      List<String> urls = new ArrayList<String>();
+      while (rs.next()) {
+        urls.add(rs.getString(1));
+      }
+
+      rs.close();
+
+      return urls;
+    } catch (SQLException e) {
+      log.log(Level.WARNING,
+              "Error getting upcoming URLs (" + e.toString() + ").");
+    } finally {
+      if (statement != null) {
+        try {
+          statement.close();
+        } catch (SQLException e) {
+          log.log(Level.WARNING, "Exception: '" + e.toString() + "'.");
+        }
+      }
+    }
+
+    return null;
+  }
+
+
+  // Method: setHostVisitInterval
+  // Description: sets the minimum interval between two visits to the host
+  //              "host". It applies to the URLs added from now on, the URLs
+  //              already in the table of URLs to visit keep their "when".
+  //
+  // Parameters:
+  //   - host: host.
+  //   - interval: interval in milliseconds; -1: HOST_VISIT_INTERVAL.
+  //
+  // Returns: true: the interval has been set; false: invalid interval.
+  public boolean setHostVisitInterval(String host, long interval)
+  {
+    if (interval < 0) {
+      hostVisitIntervals.remove(host.toLowerCase());
+    } else if (interval <= MAX_HOST_VISIT_INTERVAL) {
+      hostVisitIntervals.put(host.toLowerCase(), interval);
+    } else {
+      return false;
+    }
+
+    log.log(Level.INFO,
+            "Visit interval of host '" +
+            host +
+            "': " +
+            ((interval < 0) ? HOST_VISIT_INTERVAL : interval) +
+            " ms.");
+
+    return true;
+  }
+
+
+  // Method: getHostVisitInterval
+  // Description: returns the minimum interval between two visits to the host
+  //              "host".
+  //
+  // Parameters:
+  //   - host: host.
+  //
+  // Returns: interval in milliseconds.
+  public long getHostVisitInterval(String host)
+  {
+    Long interval;
+    if ((hostVisitIntervals.isEmpty()) ||
+        ((interval = hostVisitIntervals.get(host.toLowerCase())) == null)) {
+      return HOST_VISIT_INTERVAL;
+    }
+
+    return interval;
+  }
+
+
+  // Method: getHostVisitIntervals
+  // Description: returns the hosts whose visit interval has been set with
+  //              setHostVisitInterval().
+  //
+  // Parameters: none.
+  // Returns: visit interval of each host (milliseconds), sorted by host.
+  public Map<String, Long> getHostVisitIntervals()
+  {
+    return new TreeMap<String, Long>(hostVisitIntervals);
+  }
+
+
+  // Method: getDefaultHostVisitInterval
+  // Description: returns the default minimum interval between two visits to
+  //              the same host.
+  //
+  // Parameters: none.
+  // Returns: HOST_VISIT_INTERVAL (milliseconds).
+  public static long getDefaultHostVisitInterval()
+  {
+    return HOST_VISIT_INTERVAL;
+  }
+
+
   // Method: removeUrlToVisit
   // Description: removes a URL from the table of URLs to visit.
   // Parameters:
@@ -466,7 +1069,7 @@ public class Database {
   //            or:
   //              - The URL is not in the table of URLs to visit.
   //          false: otherwise.
-  public boolean removeUrlToVisit(URL url)
+  public synchronized boolean removeUrlToVisit(URL url)
   {
     String host = url.getHost();
     if (host.length() <= HOST_MAX_LEN) {
@@ -500,9 +1103,9 @@ public class Database {
                                         " WHERE URL = ?");
 
       statement.setString(1, urlStr);
-      statement.executeUpdate();
+      executeUpdate(statement, deleteUrlToVisitLatency);
 
-      log.log(Level.FINEST, "Removed URL to visit '" + urlStr + "'.");
+      log.log(Level.FINEST, "Removed URL to visit '{0}'.", urlStr);
 
       return true;
     } catch (SQLException e) {
@@ -543,7 +1146,7 @@ public class Database {
   //           URLs to visit, set to 0.
   //
   // Returns: next URL to visit if some URL can be visited now; null: otherwise.
-  public URL getNextUrlToVisit(MutableLong wait)
+  public synchronized URL getNextUrlToVisit(MutableLong wait)
   {
     Date now = new Date();
 
@@ -555,7 +1158,7 @@ public class Database {
                                           URLS_TO_VISIT +
                                           " ORDER BY WHEN ASC");
 
-        ResultSet rs = statement.executeQuery();
+        ResultSet rs = executeQuery(statement, selectNextUrlLatency);
 
         if (rs.next()) {
           Timestamp when = rs.getTimestamp("WHEN");
@@ -784,6 +1387,60 @@ public class Database {
   }
 
 
+  // Method: printContentDigests
+  // Description: displays the table of content digests.
+  // Parameters: none.
+  // Returns: true: the table of content digests could be displayed;
+  //          false: otherwise.
+  private boolean printContentDigests()
+  {
+    PreparedStatement statement = null;
+
+    try {
+      statement = conn.prepareStatement("SELECT * from " + CONTENT_DIGESTS);
+      ResultSet rs = statement.executeQuery();
+
+      System.out.println("Content digests:");
+      System.out.println("===========================================");
+
+      int count = 0;
+
+      while (rs.next()) {
+        count++;
+
+        String digest = rs.getString("DIGEST");
+        String filename = rs.getString("FILENAME");
+
+        System.out.println("[" +
+                           count +
+                           "] Digest: '" +
+                           digest +
+                           "', filename: '" +
+                           filename +
+                           "'.");
+      }
+
+      rs.close();
+
+      System.out.println("===========================================");
+
+      return true;
+    } catch (SQLException e) {
+      System.out.println("Exception: '" + e.toString() + "'.");
+    } finally {
+      if (statement != null) {
+        try {
+          statement.close();
+        } catch (SQLException e) {
+          System.out.println("Exception: '" + e.toString() + "'.");
+        }
+      }
+    }
+
+    return false;
+  }
+
+
   // Method: createTable
   // Description: creates the table "table" using the SQL command "sql".
   // Parameters:
@@ -852,16 +1509,13 @@ public class Database {
       statement.setTimestamp(2, timestamp);
       statement.setString(3, server);
 
-      statement.executeUpdate();
+      executeUpdate(statement, insertVisitedHostLatency);
 
       log.log(Level.FINEST,
-              "Added visited host '" +
-              host +
-              "', timestamp: '" +
-              timestamp.toString() +
-              "', server: '" +
-              server +
-              "'.");
+              "Added visited host '{0}', timestamp: '{1}', server: '{2}'.",
+              host,
+              timestamp,
+              server);
 
       return true;
     } catch (SQLException e) {
@@ -912,16 +1566,13 @@ public class Database {
       statement.setString(2, server);
       statement.setString(3, host);
 
-      statement.executeUpdate();
+      executeUpdate(statement, updateVisitedHostLatency);
 
       log.log(Level.FINEST,
-              "Updated visited host '" +
-              host +
-              "', timestamp: '" +
-              timestamp.toString() +
-              "', server: '" +
-              server +
-              "'.");
+              "Updated visited host '{0}', timestamp: '{1}', server: '{2}'.",
+              host,
+              timestamp,
+              server);
 
       return true;
     } catch (SQLException e) {
@@ -947,7 +1598,7 @@ public class Database {
   //   - url: URL to check.
   //
   // Returns: true: the URL "url" has been already visited; false: otherwise.
-  public boolean urlVisited(String url) throws SQLException
+  public synchronized boolean urlVisited(String url) throws SQLException
   {
     PreparedStatement statement = null;
 
@@ -958,7 +1609,7 @@ public class Database {
 
       statement.setString(1, url);
 
-      ResultSet rs = statement.executeQuery();
+      ResultSet rs = executeQuery(statement, selectVisitedUrlLatency);
 
       boolean ret = rs.next();
 
@@ -986,7 +1637,7 @@ public class Database {
   //
   // Returns: true: the URL "url" is already in the table of URLs to visit;
   //          false: otherwise.
-  public boolean haveUrlToVisit(String url) throws SQLException
+  public synchronized boolean haveUrlToVisit(String url) throws SQLException
   {
     PreparedStatement statement = null;
 
@@ -997,7 +1648,7 @@ public class Database {
 
       statement.setString(1, url);
 
-      ResultSet rs = statement.executeQuery();
+      ResultSet rs = executeQuery(statement, selectUrlToVisitLatency);
 
       boolean ret = rs.next();
 
@@ -1036,7 +1687,7 @@ public class Database {
 
       statement.setString(1, host);
 
-      ResultSet rs = statement.executeQuery();
+      ResultSet rs = executeQuery(statement, selectLatestWhenLatency);
 
       Timestamp timestamp;
 
@@ -1082,7 +1733,7 @@ public class Database {
 
       statement.setString(1, host);
 
-      ResultSet rs = statement.executeQuery();
+      ResultSet rs = executeQuery(statement, selectHostTimestampLatency);
 
       Timestamp timestamp;
 
@@ -1107,6 +1758,35 @@ public class Database {
   }
 
 
+  // Method: canonicalize
+  // Description: returns the canonical form of the URL (using the default
+  //              canonicalization rules), as the crawler only adds canonical
+  //              URLs to the table of URLs to visit.
+  //
+  // Parameters:
+  //   - url: URL.
+  //
+  // Returns: canonical URL; null if the URL cannot be canonicalized.
+  private URL canonicalize(URL url)
+  {
+    UrlCanonicalizer urlCanonicalizer = new UrlCanonicalizer(log);
+    urlCanonicalizer.initialize();
+
+    String canonicalUrl;
+    if ((canonicalUrl = urlCanonicalizer.canonicalize(url.toString())) !=
+        null) {
+      try {
+        return new URL(canonicalUrl);
+      } catch (MalformedURLException e) {
+      }
+    }
+
+    System.out.println("Invalid URL '" + url.toString() + "'.");
+
+    return null;
+  }
+
+
   // Method: help
   // Description: shows the usage.
   // Parameters: none.
@@ -1127,10 +1807,12 @@ public class Database {
     System.out.println("\t--view-table-visited-urls");
     System.out.println("\t--view-table-visited-hosts");
     System.out.println("\t--view-table-urls-to-visit");
+    System.out.println("\t--view-table-content-digests");
     System.out.println("\t--drop-tables");
     System.out.println("\t--drop-table-visited-urls");
     System.out.println("\t--drop-table-visited-hosts");
     System.out.println("\t--drop-table-urls-to-visit");
+    System.out.println("\t--drop-table-content-digests");
     System.out.println("\t--add-url-to-visit <URL>");
     System.out.println("\t--remove-url-to-visit <URL>");
     System.out.println();
@@ -1144,10 +1826,12 @@ public class Database {
   //                - View table of visited URLs.
   //                - View table of visited hosts.
   //                - View table of URLs to visit.
+  //                - View table of content digests.
   //                - Drop tables.
   //                - Drop tables of visited URLs.
   //                - Drop tables of visited hosts.
   //                - Drop tables of URLs to visit.
+  //                - Drop tables of content digests.
   //                - Add URL to visit.
   //                - Remove URL to visit.
   //
@@ -1242,6 +1926,14 @@ public class Database {
 
         action = Action.VIEW_TABLE_URLS_TO_VISIT;
         i++;
+      } else if (args[i].equals("--view-table-content-digests")) {
+        if (action != Action.NONE) {
+          System.out.println("Only one action is allowed.");
+          return;
+        }
+
+        action = Action.VIEW_TABLE_CONTENT_DIGESTS;
+        i++;
       } else if (args[i].equals("--drop-tables")) {
         if (action != Action.NONE) {
           System.out.println("Only one action is allowed.");
@@ -1274,6 +1966,14 @@ public class Database {
 
         action = Action.DROP_TABLE_URLS_TO_VISIT;
         i++;
+      } else if (args[i].equals("--drop-table-content-digests")) {
+        if (action != Action.NONE) {
+          System.out.println("Only one action is allowed.");
+          return;
+        }
+
+        action = Action.DROP_TABLE_CONTENT_DIGESTS;
+        i++;
       } else if (args[i].equals("--add-url-to-visit")) {
         if (action != Action.NONE) {
           System.out.println("Only one action is allowed.");
@@ -1343,7 +2043,7 @@ public class Database {
 
     Log log = new Log();
     if (log.initialize(Level.FINEST)) {
-      Database db = new Database(log);
+      Database db = new Database(new Metrics(log), log);
 
       boolean initialized = (host != null) ?
                               db.initialize(host, port, databaseName) :
@@ -1355,6 +2055,7 @@ public class Database {
             db.printVisitedUrls();
             db.printVisitedHosts();
             db.printUrlsToVisit();
+            db.printContentDigests();
 
             break;
           case VIEW_TABLE_VISITED_URLS:
@@ -1366,10 +2067,14 @@ public class Database {
           case VIEW_TABLE_URLS_TO_VISIT:
             db.printUrlsToVisit();
             break;
+          case VIEW_TABLE_CONTENT_DIGESTS:
+            db.printContentDigests();
+            break;
           case DROP_TABLES:
             db.dropTable(VISITED_URLS);
             db.dropTable(VISITED_HOSTS);
             db.dropTable(URLS_TO_VISIT);
+            db.dropTable(CONTENT_DIGESTS);
 
             break;
           case DROP_TABLE_VISITED_URLS:
@@ -1381,11 +2086,20 @@ public class Database {
           case DROP_TABLE_URLS_TO_VISIT:
             db.dropTable(URLS_TO_VISIT);
             break;
+          case DROP_TABLE_CONTENT_DIGESTS:
+            db.dropTable(CONTENT_DIGESTS);
+            break;
           case ADD_URL_TO_VISIT:
-            db.addUrlToVisit(url);
+            if ((url = db.canonicalize(url)) != null) {
+              db.addUrlToVisit(url);
+            }
+
             break;
           case REMOVE_URL_TO_VISIT:
-            db.removeUrlToVisit(url);
+            if ((url = db.canonicalize(url)) != null) {
+              db.removeUrlToVisit(url);
+            }
+
             break;
         }
 
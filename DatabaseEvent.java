@@ -0,0 +1,25 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// JFR event: database statement or commit.
+@Name("crawler.Database")
+@Label("Database")
+@Category("Crawler")
+@Description("Database statement or commit")
+@StackTrace(false)
+public class DatabaseEvent extends Event {
+  @Label("Operation")
+  @Description("Name of the latency metric of the operation")
+  String operation = null;
+
+  @Label("Rows")
+  @Description("Number of rows (INSERT, UPDATE and DELETE)")
+  int rows = 0;
+
+  @Label("Success")
+  boolean success = false;
+}
@@ -0,0 +1,205 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.LongAdder;
+
+public class DecisionCache {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Type declarations.                                                   ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static class Entry {
+    private final String key;
+    private final boolean decision;
+
+    // Set on every hit, cleared by the clock hand.
+    private volatile boolean referenced = false;
+
+    private Entry(String key, boolean decision)
+    {
+      this.key = key;
+      this.decision = decision;
+    }
+  }
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Data members.                                                        ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private int capacity = 0;
+
+  // Lookups only read the map (no locks), the insertions and the evictions
+  // are serialized (and skipped under contention).
+  private ConcurrentHashMap<String, Entry> map = null;
+
+  // Clock: circular array of entries and position of the hand.
+  private Entry[] slots = null;
+  private int hand = 0;
+
+  private ReentrantLock lock = new ReentrantLock();
+
+  private LongAdder hits = new LongAdder();
+  private LongAdder misses = new LongAdder();
+  private LongAdder evictions = new LongAdder();
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: Constructor
+  // Description: creates an empty cache.
+  // Parameters:
+  //   - capacity: maximum number of decisions (> 0).
+  //
+  // Returns: nothing.
+  public DecisionCache(int capacity)
+  {
+    this.capacity = capacity;
+
+    map = new ConcurrentHashMap<String, Entry>(capacity * 4 / 3 + 1);
+    slots = new Entry[capacity];
+  }
+
+
+  // Method: get
+  // Description: returns the cached decision for "key".
+  // Parameters:
+  //   - key: key.
+  //
+  // Returns: Boolean.TRUE or Boolean.FALSE: cached decision;
+  //          null: the key is not in the cache.
+  public Boolean get(String key)
+  {
+    Entry entry;
+    if ((entry = map.get(key)) != null) {
+      // Avoid writing to the shared cache line when not needed.
+      if (!entry.referenced) {
+        entry.referenced = true;
+      }
+
+      hits.increment();
+
+      return entry.decision ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    misses.increment();
+
+    return null;
+  }
+
+
+  // Method: put
+  // Description: adds a decision to the cache. If the cache is full, the
+  //              clock hand evicts the first entry which hasn't been
+  //              referenced since the hand last passed over it.
+  //              The caller never waits: if another thread is adding a
+  //              decision, this one is not cached.
+  //
+  // Parameters:
+  //   - key: key.
+  //   - decision: decision.
+  //
+  // Returns: nothing.
+  public void put(String key, boolean decision)
+  {
+    if (!lock.tryLock()) {
+      return;
+    }
+
+    try {
+      insert(key, decision);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+
+  // Method: insert
+  // Description: adds a decision to the cache (the lock is held).
+  // Parameters:
+  //   - key: key.
+  //   - decision: decision.
+  //
+  // Returns: nothing.
+  private void insert(String key, boolean decision)
+  {
+    if (map.containsKey(key)) {
+      return;
+    }
+
+    Entry entry;
+    while (((entry = slots[hand]) != null) && (entry.referenced)) {
+      // Give the entry a second chance.
+      entry.referenced = false;
+
+      hand = (hand + 1) % capacity;
+    }
+
+    if (entry != null) {
+      map.remove(entry.key);
+      evictions.increment();
+    }
+
+    entry = new Entry(key, decision);
+
+    slots[hand] = entry;
+    map.put(key, entry);
+
+    hand = (hand + 1) % capacity;
+  }
+
+
+  // Method: size
+  // Description: returns the number of cached decisions.
+  // Parameters: none.
+  // Returns: number of cached decisions.
+  public int size()
+  {
+    return map.size();
+  }
+
+
+  // Method: getHits
+  // Description: returns the number of lookups which found a decision.
+  // Parameters: none.
+  // Returns: number of hits.
+  public long getHits()
+  {
+    return hits.sum();
+  }
+
+
+  // Method: getMisses
+  // Description: returns the number of lookups which didn't find a decision.
+  // Parameters: none.
+  // Returns: number of misses.
+  public long getMisses()
+  {
+    return misses.sum();
+  }
+
+
+  // Method: getEvictions
+  // Description: returns the number of decisions evicted to make room for new
+  //              ones.
+  //
+  // Parameters: none.
+  // Returns: number of evictions.
+  public long getEvictions()
+  {
+    return evictions.sum();
+  }
+}
@@ -0,0 +1,457 @@
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.security.Security;
+
+public class DnsResolver {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Time to live of the resolved and of the unknown hosts (the same in the
+  // address cache of the JVM).
+  private static final long POSITIVE_TTL = 300 * 1000; // Milliseconds.
+  private static final long NEGATIVE_TTL = 60 * 1000; // Milliseconds.
+
+  // The hosts with URLs which can be visited in the next PREFETCH_HORIZON
+  // milliseconds are resolved (if they are not cached or their cached lookup
+  // has expired) every PREFETCH_INTERVAL milliseconds.
+  private static final long PREFETCH_INTERVAL = 1000; // Milliseconds.
+  private static final long PREFETCH_HORIZON = 10 * 1000; // Milliseconds.
+
+  // Maximum number of hosts checked in each round of prefetching.
+  private static final int MAX_PREFETCH_HOSTS = 256;
+
+  // Resolver of the JVM (blocking).
+  public static final Lookup SYSTEM_LOOKUP = InetAddress::getAllByName;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Type declarations.                                                   ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Performs the actual lookups (a stub can be used for resolving the hosts
+  // locally, e.g. in tests).
+  public interface Lookup {
+    InetAddress[] lookup(String host) throws UnknownHostException;
+  }
+
+  // Cached result of a lookup.
+  private static class Entry {
+    private final InetAddress[] addresses; // null: unknown host.
+    private final long expires; // System.nanoTime().
+
+    private Entry(InetAddress[] addresses, long expires)
+    {
+      this.addresses = addresses;
+      this.expires = expires;
+    }
+  }
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Data members.                                                        ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private Lookup lookup = null;
+
+  private int numberThreads = 0;
+  private int cacheSize = 0;
+
+  // TTLs of the lookups (only changed by the checks of the resolver).
+  private long positiveTtl = POSITIVE_TTL; // Milliseconds.
+  private long negativeTtl = NEGATIVE_TTL; // Milliseconds.
+
+  // Database where to look for the hosts to be prefetched (null: no
+  // prefetching).
+  private Database database = null;
+
+  // Cached lookups (least recently used first).
+  private LinkedHashMap<String, Entry> cache = null;
+
+  // Lookups in progress.
+  private ConcurrentHashMap<String, CompletableFuture<Entry>> pending =
+    new ConcurrentHashMap<String, CompletableFuture<Entry>>();
+
+  private ExecutorService executor = null;
+
+  private Thread prefetcher = null;
+
+  private volatile boolean running = false;
+
+  private Metrics metrics = null;
+  private Histogram lookupLatency = null;
+  private LongAdder hits = null;
+  private LongAdder negativeHits = null;
+  private LongAdder misses = null;
+  private LongAdder prefetches = null;
+  private LongAdder failures = null;
+
+  private Log log = null;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: Constructor
+  // Description: sets the data members.
+  // Parameters:
+  //   - lookup: object performing the actual lookups (SYSTEM_LOOKUP: the
+  //             resolver of the JVM).
+  //   - numberThreads: number of threads resolving the hosts.
+  //   - cacheSize: maximum number of cached hosts.
+  //   - database: database where to look for the hosts to be prefetched
+  //               (null: no prefetching).
+  //   - metrics: metrics object.
+  //   - log: logger object.
+  //
+  // Returns: nothing.
+  public DnsResolver(Lookup lookup,
+                     int numberThreads,
+                     int cacheSize,
+                     Database database,
+                     Metrics metrics,
+                     Log log)
+  {
+    this.lookup = lookup;
+    this.numberThreads = numberThreads;
+    this.cacheSize = cacheSize;
+    this.database = database;
+    this.metrics = metrics;
+    this.log = log;
+  }
+
+
+  // Method: configureJvmCache
+  // Description: sets the TTLs of the address cache of the JVM to the ones of
+  //              the resolver. The connections resolve the hosts through the
+  //              JVM, which caches the addresses looked up by the resolver
+  //              (SYSTEM_LOOKUP) just before returning them: a lookup of the
+  //              resolver expires right after the one of the JVM, so a host
+  //              is resolved again by the resolver (and not by the
+  //              connection) and the new lookup is not answered from the
+  //              cache of the JVM.
+  //              It has to be called before the first lookup.
+  //
+  // Parameters: none.
+  // Returns: nothing.
+  public static void configureJvmCache()
+  {
+    Security.setProperty("networkaddress.cache.ttl",
+                         Long.toString(POSITIVE_TTL / 1000));
+
+    Security.setProperty("networkaddress.cache.negative.ttl",
+                         Long.toString(NEGATIVE_TTL / 1000));
+  }
+
+
+  // Method: setTtls
+  // Description: sets the TTLs of the lookups, which are otherwise the ones
+  //              of the address cache of the JVM. Only used by the checks of
+  //              the resolver (benchmarks/DnsCheck.java), with a
+  //              StaticLookup.
+  //
+  // Parameters:
+  //   - positiveTtl: TTL of the resolved hosts in milliseconds.
+  //   - negativeTtl: TTL of the unknown hosts in milliseconds.
+  //
+  // Returns: nothing.
+  void setTtls(long positiveTtl, long negativeTtl)
+  {
+    this.positiveTtl = positiveTtl;
+    this.negativeTtl = negativeTtl;
+  }
+
+
+  // Method: initialize
+  // Description: gets the metrics, creates the cache, starts the threads
+  //              resolving the hosts and the prefetching thread (if there is
+  //              a database).
+  //
+  // Parameters: none.
+  // Returns: true.
+  public boolean initialize()
+  {
+    lookupLatency = metrics.latency("dns.lookup");
+    hits = metrics.counter("dns.hits");
+    negativeHits = metrics.counter("dns.negative_hits");
+    misses = metrics.counter("dns.misses");
+    prefetches = metrics.counter("dns.prefetches");
+    failures = metrics.counter("dns.failures");
+
+    cache = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+      {
+        return size() > cacheSize;
+      }
+    };
+
+    AtomicInteger count = new AtomicInteger();
+
+    executor = Executors.newFixedThreadPool(numberThreads, r -> {
+      Thread thread = new Thread(r, "Resolver-" + count.getAndIncrement());
+      thread.setDaemon(true);
+      return thread;
+    });
+
+    running = true;
+
+    if (database != null) {
+      prefetcher = new Thread(this::prefetch, "DNS prefetcher");
+      prefetcher.setDaemon(true);
+      prefetcher.start();
+    }
+
+    log.log(Level.INFO,
+            "Started " + numberThreads + " resolver thread(s).");
+
+    return true;
+  }
+
+
+  // Method: shutdown
+  // Description: stops the prefetching thread and the threads resolving the
+  //              hosts.
+  //
+  // Parameters: none.
+  // Returns: nothing.
+  public void shutdown()
+  {
+    running = false;
+
+    if (prefetcher != null) {
+      prefetcher.interrupt();
+
+      try {
+        prefetcher.join();
+      } catch (InterruptedException e) {
+      }
+    }
+
+    executor.shutdownNow();
+  }
+
+
+  // Method: resolve
+  // Description: returns the addresses of a host. They are taken from the
+  //              cache if they haven't expired; otherwise the host is
+  //              resolved by a resolver thread (if the host is already being
+  //              resolved, e.g. prefetched, that lookup is awaited).
+  //
+  // Parameters:
+  //   - host: host.
+  //   - timeout: maximum time to wait for the lookup in milliseconds (0:
+  //              none).
+  //
+  // Returns: addresses of the host.
+  public InetAddress[] resolve(String host, int timeout)
+    throws UnknownHostException, SocketTimeoutException
+  {
+    Entry entry;
+    if ((entry = getEntry(host, System.nanoTime())) != null) {
+      if (entry.addresses == null) {
+        negativeHits.increment();
+        throw new UnknownHostException(host);
+      }
+
+      hits.increment();
+
+      return entry.addresses;
+    }
+
+    misses.increment();
+
+    CompletableFuture<Entry> future;
+    if ((future = lookupAsync(host)) == null) {
+      // Shutting down.
+      entry = lookup(host);
+    } else {
+      try {
+        entry = (timeout > 0) ? future.get(timeout, TimeUnit.MILLISECONDS) :
+                                future.get();
+      } catch (TimeoutException e) {
+        throw new SocketTimeoutException("DNS lookup of '" +
+                                         host +
+                                         "' timed out");
+      } catch (InterruptedException | ExecutionException e) {
+        throw new UnknownHostException(host);
+      }
+    }
+
+    if (entry.addresses == null) {
+      throw new UnknownHostException(host);
+    }
+
+    return entry.addresses;
+  }
+
+
+  // Method: getCacheSize
+  // Description: returns the number of cached hosts.
+  // Parameters: none.
+  // Returns: number of cached hosts.
+  public int getCacheSize()
+  {
+    synchronized (cache) {
+      return cache.size();
+    }
+  }
+
+
+  // Method: getEntry
+  // Description: returns the cached lookup of a host, if it hasn't expired.
+  // Parameters:
+  //   - host: host.
+  //   - now: current time (System.nanoTime()).
+  //
+  // Returns: cached lookup; null: not cached or expired.
+  private Entry getEntry(String host, long now)
+  {
+    synchronized (cache) {
+      Entry entry;
+      if (((entry = cache.get(host)) != null) && (entry.expires - now > 0)) {
+        return entry;
+      }
+
+      return null;
+    }
+  }
+
+
+  // Method: lookupAsync
+  // Description: resolves a host in a resolver thread, unless it is already
+  //              being resolved.
+  //
+  // Parameters:
+  //   - host: host.
+  //
+  // Returns: lookup in progress; null: the resolver is shutting down.
+  private CompletableFuture<Entry> lookupAsync(String host)
+  {
+    if (!running) {
+      return null;
+    }
+
+    try {
+      return pending.computeIfAbsent(
+               host,
+               h -> CompletableFuture.supplyAsync(() -> lookup(h), executor));
+    } catch (RejectedExecutionException e) {
+      return null;
+    }
+  }
+
+
+  // Method: lookup
+  // Description: resolves a host and caches the result (the unknown hosts
+  //              are cached too, with a shorter TTL). The TTL starts when the
+  //              lookup returns, after the JVM has cached it.
+  //
+  // Parameters:
+  //   - host: host.
+  //
+  // Returns: result of the lookup.
+  private Entry lookup(String host)
+  {
+    long start = System.nanoTime();
+
+    Entry entry;
+
+    try {
+      InetAddress[] addresses = lookup.lookup(host);
+
+      entry = new Entry(addresses,
+                        System.nanoTime() +
+                        TimeUnit.MILLISECONDS.toNanos(positiveTtl));
+    } catch (UnknownHostException e) {
+      long now = System.nanoTime();
+
+      log.log(Level.FINE, "Cannot resolve host '{0}'.", host);
+
+      failures.increment();
+
+      entry = new Entry(null,
+                        now + TimeUnit.MILLISECONDS.toNanos(negativeTtl));
+    }
+
+    lookupLatency.recordSince(start);
+
+    synchronized (cache) {
+      cache.put(host, entry);
+    }
+
+    pending.remove(host);
+
+    return entry;
+  }
+
+
+  // Method: prefetch
+  // Description: body of the prefetching thread: resolves the hosts with
+  //              URLs which can be visited in the next PREFETCH_HORIZON
+  //              milliseconds and which are not cached or whose cached
+  //              lookup has expired, so the lookups are done before the
+  //              fetches. A lookup is not refreshed before it expires: the
+  //              JVM would answer it from its cache, with the addresses
+  //              about to expire.
+  //
+  // Parameters: none.
+  // Returns: nothing.
+  private void prefetch()
+  {
+    do {
+      try {
+        Thread.sleep(PREFETCH_INTERVAL);
+      } catch (InterruptedException e) {
+        return;
+      }
+
+      List<String> hosts;
+      if ((hosts = database.getUpcomingHosts(PREFETCH_HORIZON,
+                                             MAX_PREFETCH_HOSTS)) == null) {
+        continue;
+      }
+
+      long now = System.nanoTime();
+
+      for (String host : hosts) {
+        if ((getEntry(host, now) == null) &&
+            (!pending.containsKey(host)) &&
+            (lookupAsync(host) != null)) {
+          prefetches.increment();
+        }
+      }
+    } while (running);
+  }
+}
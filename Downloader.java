@@ -1,10 +1,13 @@
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
 import java.io.InputStream;
+import java.io.FilterInputStream;
 import java.io.OutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.net.SocketTimeoutException;
 import java.net.URI;
 import java.net.URL;
 import java.net.HttpURLConnection;
@@ -16,9 +19,13 @@ import java.net.CookiePolicy;
 import javax.net.ssl.HttpsURLConnection;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardCopyOption;
 import java.sql.SQLException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 
 public class Downloader {
   //////////////////////////////////////////////////////////////////////////////
@@ -42,6 +49,73 @@ public class Downloader {
 
   private static final String FILENAME_FORMAT = "%06d.bin";
 
+  // Time after the deadline of a fetch before the watchdog aborts it.
+  private static final long WATCHDOG_GRACE = 10 * 1000; // Milliseconds.
+
+  private static final long WATCHDOG_INTERVAL = 1000; // Milliseconds.
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Type declarations.                                                   ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Reason why a request has been aborted.
+  public enum Abort {
+    CONNECT_TIMEOUT, // No connection within the connect timeout.
+    READ_TIMEOUT,    // No data within the read timeout.
+    BODY_TOO_LARGE,  // Body bigger than the maximum body size.
+    DEADLINE,        // Fetch (with its redirections) took too long.
+    WATCHDOG         // Fetch stuck after its deadline, closed by the watchdog.
+  };
+
+  // Stream which counts the bytes read (bytes received when the body is
+  // decoded).
+  private static class CountingInputStream extends FilterInputStream {
+    private long count = 0;
+
+    private CountingInputStream(InputStream in)
+    {
+      super(in);
+    }
+
+    public int read() throws IOException
+    {
+      int c;
+      if ((c = super.read()) != -1) {
+        count++;
+      }
+
+      return c;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+      int n;
+      if ((n = super.read(b, off, len)) > 0) {
+        count += n;
+      }
+
+      return n;
+    }
+  }
+
+  // Exception thrown for aborting a request (the response is discarded).
+  private static class AbortException extends IOException {
+    private static final long serialVersionUID = 1L;
+
+    private final Abort abort;
+
+    private AbortException(Abort abort)
+    {
+      super("Request aborted (" + abort.name().toLowerCase() + ")");
+      this.abort = abort;
+    }
+  }
+
 
   //////////////////////////////////////////////////////////////////////////////
   //////////////////////////////////////////////////////////////////////////////
@@ -52,11 +126,60 @@ public class Downloader {
   //////////////////////////////////////////////////////////////////////////////
 
   private Database database = null;
+  private UrlCanonicalizer urlCanonicalizer = null;
+  private FetchPolicy fetchPolicy = null;
+  private DnsResolver dnsResolver = null;
+  private TlsContext tlsContext = null;
 
   private String tempDir = null;
   private String finalDir = null;
   private String httpUserAgent = null;
 
+  // Limits of a request (0: no limit).
+  private int connectTimeout = 0; // Milliseconds.
+  private int readTimeout = 0; // Milliseconds.
+  private long maxBodySize = 0; // Bytes.
+  private long fetchDeadline = 0; // Milliseconds (including redirections).
+
+  // Whether the compressed bodies are stored as received (otherwise they are
+  // decoded).
+  private boolean storeCompressed = false;
+
+  // Compressor of the data files (null: the data files are not compressed).
+  private StorageCompressor storageCompressor = null;
+
+  // Whether the bodies which have already been stored are not stored again.
+  private boolean deduplicate = false;
+
+  // Digest of the body being downloaded (null: no deduplication).
+  private MessageDigest contentDigest = null;
+
+  private HostStatistics hostStatistics = null;
+
+  // Fetch in progress (watched by the watchdog).
+  private long deadline = 0; // System.nanoTime(), 0: no deadline.
+  private volatile long fetchStart = 0; // System.nanoTime(), 0: no fetch.
+  private volatile HttpURLConnection currentConnection = null;
+  private volatile Thread fetchThread = null;
+  private volatile boolean watchdogFired = false;
+
+  private Thread watchdog = null;
+
+  private Metrics metrics = null;
+  private Histogram dnsLatency = null;
+  private Histogram connectLatency = null;
+  private Histogram handshakeLatency = null;
+  private Histogram ttfbLatency = null;
+  private Histogram bodyLatency = null;
+  private LongAdder requests = null;
+  private LongAdder requestErrors = null;
+  private LongAdder downloadedBytes = null;
+  private LongAdder compressedResponses = null;
+  private LongAdder duplicates = null;
+  private LongAdder duplicateBytes = null;
+  private LongAdder[] statusCodes = null; // Indexed by class (1XX..5XX).
+  private LongAdder[] aborts = null; // Indexed by Abort.
+
   private Log log = null;
 
   private int dataFileCount = 0;
@@ -74,22 +197,64 @@ public class Downloader {
   // Description: sets the data members.
   // Parameters:
   //   - database: database object.
+  //   - urlCanonicalizer: URL canonicalizer object.
+  //   - fetchPolicy: fetch policy object.
+  //   - dnsResolver: DNS resolver object.
+  //   - tlsContext: TLS context of the HTTPS connections.
   //   - tempDir: temporary directory where to download the files.
   //   - finalDir: final directory where to save the downloaded files.
   //   - httpUserAgent: user agent to be used in the HTTP requests.
+  //   - connectTimeout: connect timeout in milliseconds (0: none).
+  //   - readTimeout: read timeout in milliseconds (0: none).
+  //   - maxBodySize: maximum size of a response body in bytes (0: none).
+  //   - fetchDeadline: maximum duration of a fetch, including its
+  //                    redirections, in milliseconds (0: none).
+  //   - storeCompressed: whether the compressed bodies are stored as
+  //                      received.
+  //   - storageCompressor: compressor of the data files (null: none).
+  //   - deduplicate: whether the bodies which have already been stored are
+  //                  not stored again.
+  //   - hostStatistics: statistics of the requests per host (aborts).
+  //   - metrics: metrics object.
   //   - log: logger object.
   //
   // Returns: nothing.
   public Downloader(Database database,
+                    UrlCanonicalizer urlCanonicalizer,
+                    FetchPolicy fetchPolicy,
+                    DnsResolver dnsResolver,
+                    TlsContext tlsContext,
                     String tempDir,
                     String finalDir,
                     String httpUserAgent,
+                    int connectTimeout,
+                    int readTimeout,
+                    long maxBodySize,
+                    long fetchDeadline,
+                    boolean storeCompressed,
+                    StorageCompressor storageCompressor,
+                    boolean deduplicate,
+                    HostStatistics hostStatistics,
+                    Metrics metrics,
                     Log log)
   {
     this.database = database;
+    this.urlCanonicalizer = urlCanonicalizer;
+    this.fetchPolicy = fetchPolicy;
+    this.dnsResolver = dnsResolver;
+    this.tlsContext = tlsContext;
     this.tempDir = tempDir;
     this.finalDir = finalDir;
     this.httpUserAgent = httpUserAgent;
+    this.connectTimeout = connectTimeout;
+    this.readTimeout = readTimeout;
+    this.maxBodySize = maxBodySize;
+    this.fetchDeadline = fetchDeadline;
+    this.storeCompressed = storeCompressed;
+    this.storageCompressor = storageCompressor;
+    this.deduplicate = deduplicate;
+    this.hostStatistics = hostStatistics;
+    this.metrics = metrics;
     this.log = log;
   }
 
@@ -99,6 +264,8 @@ public class Downloader {
   //                - Creates the temporary directory.
   //                - Creates the final directory.
   //                - Sets the default cookie manager.
+  //                - Gets the metrics.
+  //                - Starts the watchdog (if there is a fetch deadline).
   //
   // Parameters: none.
   // Returns: true: the downloader could be initialized; false: otherwise.
@@ -136,13 +303,234 @@ public class Downloader {
 
     log.log(Level.INFO, "Created final directory '" + finalDir + "'.");
 
+    // The files are renamed atomically from the temporary directory to the
+    // final directory (the parser processes the files as they appear).
+    if (!checkAtomicMove()) {
+      return false;
+    }
+
     // Set the default cookie manager.
     CookieHandler.setDefault(new CookieManager(null, CookiePolicy.ACCEPT_ALL));
 
+    // Get the metrics.
+    dnsLatency = metrics.latency("fetch.dns");
+    connectLatency = metrics.latency("fetch.connect");
+    handshakeLatency = metrics.latency("fetch.handshake");
+    ttfbLatency = metrics.latency("fetch.ttfb");
+    bodyLatency = metrics.latency("fetch.body");
+    requests = metrics.counter("fetch.requests");
+    requestErrors = metrics.counter("fetch.errors");
+    downloadedBytes = metrics.counter("fetch.bytes");
+    compressedResponses = metrics.counter("fetch.compressed");
+    duplicates = metrics.counter("fetch.duplicates");
+    duplicateBytes = metrics.counter("fetch.duplicate_bytes");
+
+    if (deduplicate) {
+      try {
+        contentDigest = MessageDigest.getInstance("SHA-256");
+      } catch (NoSuchAlgorithmException e) {
+        log.log(Level.SEVERE, "Exception: '" + e.toString() + "'.");
+        return false;
+      }
+    }
+
+    statusCodes = new LongAdder[6];
+    statusCodes[0] = metrics.counter("fetch.status.other");
+    for (int i = 1; i < statusCodes.length; i++) {
+      statusCodes[i] = metrics.counter("fetch.status." + i + "xx");
+    }
+
+    aborts = new LongAdder[Abort.values().length];
+    for (Abort abort : Abort.values()) {
+      aborts[abort.ordinal()] = metrics.counter("fetch.aborted." +
+                                                abort.name().toLowerCase());
+    }
+
+    if (fetchDeadline > 0) {
+      watchdog = new Thread(this::watch, "Downloader watchdog");
+      watchdog.setDaemon(true);
+      watchdog.start();
+    }
+
     return true;
   }
 
 
+  // Method: checkAtomicMove
+  // Description: checks that a file can be renamed atomically from the
+  //              temporary directory to the final directory (both have to be
+  //              in the same file system) by moving an empty file, whose name
+  //              starts with '.' so the parser ignores it.
+  //
+  // Parameters: none.
+  // Returns: true: the files can be renamed atomically; false: otherwise.
+  private boolean checkAtomicMove()
+  {
+    Path source = null;
+    Path target = null;
+
+    try {
+      source = Files.createTempFile(Paths.get(tempDir), ".atomic", null);
+      target = Paths.get(finalDir).resolve(source.getFileName());
+
+      Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+
+      Files.delete(target);
+
+      return true;
+    } catch (IOException e) {
+      log.log(Level.SEVERE,
+              "Cannot rename files from '" +
+              tempDir +
+              "' to '" +
+              finalDir +
+              "', both directories have to be in the same file system (" +
+              e.toString() +
+              ").");
+    }
+
+    try {
+      if (source != null) {
+        Files.deleteIfExists(source);
+      }
+
+      if (target != null) {
+        Files.deleteIfExists(target);
+      }
+    } catch (IOException e) {
+      log.log(Level.WARNING, "Exception: '" + e.toString() + "'.");
+    }
+
+    return false;
+  }
+
+
+  // Method: shutdown
+  // Description: stops the watchdog.
+  // Parameters: none.
+  // Returns: nothing.
+  public void shutdown()
+  {
+    if (watchdog != null) {
+      watchdog.interrupt();
+
+      try {
+        watchdog.join();
+      } catch (InterruptedException e) {
+      }
+    }
+  }
+
+
+  // Method: watch
+  // Description: body of the watchdog thread. If a fetch is still running
+  //              WATCHDOG_GRACE milliseconds after its deadline (blocked in
+  //              a call without timeout, e.g. a TLS handshake or a DNS
+  //              lookup), logs the stack trace of the fetch thread and closes
+  //              the connection, which makes the blocked call fail.
+  //              The thread is not interrupted: interrupting does not unblock
+  //              socket I/O and could break the database connection.
+  //
+  // Parameters: none.
+  // Returns: nothing.
+  private void watch()
+  {
+    long limit = (fetchDeadline + WATCHDOG_GRACE) * 1000000L;
+
+    do {
+      try {
+        Thread.sleep(WATCHDOG_INTERVAL);
+      } catch (InterruptedException e) {
+        return;
+      }
+
+      long start = fetchStart;
+      if ((start != 0) &&
+          (!watchdogFired) &&
+          (System.nanoTime() - start > limit)) {
+        watchdogFired = true;
+
+        HttpURLConnection conn = currentConnection;
+        Thread thread = fetchThread;
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("Watchdog: fetch of '")
+          .append((conn != null) ? conn.getURL() : null)
+          .append("' stuck for ")
+          .append((System.nanoTime() - start) / 1000000)
+          .append(" ms, closing the connection. Fetch thread:");
+
+        if (thread != null) {
+          for (StackTraceElement element : thread.getStackTrace()) {
+            sb.append("\n\tat ").append(element);
+          }
+        }
+
+        log.log(Level.SEVERE, sb.toString());
+
+        if (conn != null) {
+          conn.disconnect();
+        }
+      }
+    } while (true);
+  }
+
+
+  // Method: timeout
+  // Description: returns the timeout to be used for the next phase of the
+  //              request: the configured timeout, shortened to the time left
+  //              until the deadline of the fetch.
+  //
+  // Parameters:
+  //   - timeout: configured timeout in milliseconds (0: none).
+  //
+  // Returns: timeout in milliseconds (0: none).
+  private int timeout(int timeout) throws AbortException
+  {
+    if (deadline == 0) {
+      return timeout;
+    }
+
+    long left = (deadline - System.nanoTime()) / 1000000;
+    if (left <= 0) {
+      throw new AbortException(Abort.DEADLINE);
+    }
+
+    if ((timeout > 0) && (timeout < left)) {
+      return timeout;
+    }
+
+    return (int) Math.min(left, Integer.MAX_VALUE);
+  }
+
+
+  // Method: getAbort
+  // Description: returns the reason why a request failed, if it has been
+  //              aborted.
+  //
+  // Parameters:
+  //   - e: exception thrown by the request.
+  //   - timeoutAbort: reason if the exception is a timeout of the current
+  //                   phase (connect or read).
+  //
+  // Returns: reason; null: the request has not been aborted.
+  private Abort getAbort(IOException e, Abort timeoutAbort)
+  {
+    if (e instanceof AbortException) {
+      return ((AbortException) e).abort;
+    } else if (watchdogFired) {
+      return Abort.WATCHDOG;
+    } else if (e instanceof SocketTimeoutException) {
+      // Shortened timeout?
+      return ((deadline != 0) && (System.nanoTime() - deadline >= 0)) ?
+               Abort.DEADLINE :
+               timeoutAbort;
+    }
+
+    return null;
+  }
+
+
   // Method: getNextDataFilename
   // Description: returns the name of the next data file, checking that there is
   //              no file with such a name.
@@ -168,16 +556,21 @@ public class Downloader {
   //              checks the value of the HTTP header "Content-Type" and, if it
   //              is "text/html", sets the output parameter "process" to true,
   //              it also extracts the value of the HTTP header "Server".
+  //              The HTTP headers are written as received, followed by the
+  //              header "Stored-Encoding" with the encoding of the stored
+  //              body.
   //
   // Parameters:
   //   - urlConnection: HTTP connection containing the HTTP headers.
   //   - out: output stream where to write the headers.
+  //   - storedEncoding: encoding of the stored body ("identity": decoded).
   //   - process: set to true if the "Content-Type" is "text/html".
   //   - server: set to the value of the HTTP header "Server".
   //
   // Returns: nothing.
   private void writeFileHeaders(HttpURLConnection urlConnection,
                                 OutputStream out,
+                                String storedEncoding,
                                 MutableBoolean process,
                                 StringBuilder server) throws IOException
   {
@@ -185,6 +578,7 @@ public class Downloader {
     // Format:
     // URL: <URL>
     // *(<message-header>)
+    // Stored-Encoding: <encoding>
     // <empty-line>
     StringBuilder fileHeaders = new StringBuilder();
 
@@ -210,19 +604,25 @@ public class Downloader {
         }
 
         if (lastValue != null) {
-          if (key.equals("Content-Type")) {
+          if (key.equalsIgnoreCase("Content-Type")) {
             process.value = lastValue.startsWith("text/html");
 
-            log.log(Level.FINEST, "Content-Type: " + lastValue);
-          } else if (key.equals("Server")) {
+            log.log(Level.FINEST, "Content-Type: {0}", lastValue);
+          } else if (key.equalsIgnoreCase("Server")) {
             server.append(lastValue);
 
-            log.log(Level.FINEST, "Server: " + lastValue);
+            log.log(Level.FINEST, "Server: {0}", lastValue);
           }
         }
       }
     }
 
+    // Add encoding of the body.
+    fileHeaders.append(ContentEncoding.STORED_ENCODING_HEADER)
+               .append(": ")
+               .append(storedEncoding)
+               .append("\r\n");
+
     // Add empty line.
     fileHeaders.append("\r\n");
 
@@ -234,15 +634,28 @@ public class Downloader {
 
 
   // Method: performRequest
-  // Description: performs an HTTP request.
+  // Description: performs an HTTP request and emits a JFR event (if enabled).
+  //              The event ends before following a redirection, which is a
+  //              separate event.
   //              If the Status-Code is success (2XX):
-  //                - Saves the response in a data file.
+  //                - Learns the type of the URL (fetch policy).
+  //                - If the type has to be stored, saves the response in a
+  //                  data file (the compressed bodies are decoded unless
+  //                  they are stored as received), otherwise closes the
+  //                  connection without reading the body. If there is a
+  //                  storage compressor, the data file is handed to it
+  //                  ("process" is set to false, the compressor queues the
+  //                  file once it is in the final directory).
+  //                  If the same body has already been stored (when
+  //                  deduplicating), the data file is not stored and the
+  //                  visited URL points at the existing one.
   //                - Adds the URL to the table of visited URLs.
   //
   //              If the Status-Code is redirect (3XX):
   //                - Adds the URL to the table of visited URLs.
   //                - If we haven't performed too many redirections:
-  //                    - Extracts the "Location" header.
+  //                    - Extracts the "Location" header and calls the method
+  //                      getRedirectUrl() to get the canonical redirect URL.
   //                    - If the redirect URL has not been visited and is not
   //                      in the table of URLs to visit:
   //                        - Makes a new request.
@@ -264,67 +677,264 @@ public class Downloader {
   {
     String tempFilename = null;
     OutputStream out = null;
+    InputStream in = null;
+
+    FetchEvent event = new FetchEvent();
+    event.begin();
+
+    event.url = urlConnection.getURL().toString();
+    event.host = urlConnection.getURL().getHost();
+    event.redirects = numberRedirects;
+
+    // Reason of the abort if the current phase times out.
+    Abort timeoutAbort = Abort.CONNECT_TIMEOUT;
+
+    currentConnection = urlConnection;
 
     try {
       // Set request's HTTP headers.
       urlConnection.setRequestProperty("User-Agent", httpUserAgent);
       urlConnection.setRequestProperty("Accept", HTTP_ACCEPT);
       urlConnection.setRequestProperty("Accept-Language", HTTP_ACCEPT_LANGUAGE);
+      urlConnection.setRequestProperty("Accept-Encoding",
+                                       ContentEncoding.ACCEPT_ENCODING);
+
+      requests.increment();
+
+      // Set the timeouts (shortened to the deadline of the fetch).
+      urlConnection.setConnectTimeout(timeout(connectTimeout));
+      urlConnection.setReadTimeout(timeout(readTimeout));
+
+      // Resolve the host name, usually from the cache of the resolver
+      // (the JVM caches the address too, so the connection doesn't resolve
+      // it again).
+      long start = System.nanoTime();
+      dnsResolver.resolve(event.host, timeout(connectTimeout));
+      dnsLatency.record(event.dnsTime = System.nanoTime() - start);
+
+      // Connect (and perform the TLS handshake, which is measured
+      // separately).
+      start = System.nanoTime();
+      tlsContext.startConnect();
+      urlConnection.connect();
+      long connectTime = System.nanoTime() - start;
+
+      TlsContext.Handshake handshake;
+      if ((handshake = tlsContext.endConnect()) != null) {
+        handshakeLatency.record(event.handshakeTime = handshake.getTime());
+        event.resumed = handshake.isResumed();
+
+        connectTime -= handshake.getTime();
+      }
+
+      connectLatency.record(event.connectTime = connectTime);
+
+      timeoutAbort = Abort.READ_TIMEOUT;
 
-      // Get status code.
+      // Get status code (time to first byte).
+      start = System.nanoTime();
       int statusCode = urlConnection.getResponseCode();
+      ttfbLatency.record(event.ttfbTime = System.nanoTime() - start);
 
-      log.log(Level.FINEST, "Status-Code: " + statusCode);
+      event.statusCode = statusCode;
+
+      statusCodes[((statusCode >= 100) && (statusCode < 600)) ?
+                  statusCode / 100 :
+                  0].increment();
+
+      log.log(Level.FINEST, "Status-Code: {0}", statusCode);
 
       // Success response?
       if ((statusCode >= 200) && (statusCode < 300)) {
+        // Don't download a body which is known to be too big.
+        if ((maxBodySize > 0) &&
+            (urlConnection.getContentLengthLong() > maxBodySize)) {
+          throw new AbortException(Abort.BODY_TOO_LARGE);
+        }
+
+        String contentType = urlConnection.getContentType();
+        fetchPolicy.learn(event.host,
+                          urlConnection.getURL().getPath(),
+                          contentType);
+
+        // Don't download a body which is not going to be stored.
+        if (fetchPolicy.getAction(contentType) != FetchPolicy.Action.STORE) {
+          log.log(Level.FINE,
+                  "Discarding '{0}' ({1}).",
+                  event.url,
+                  contentType);
+
+          fetchPolicy.discard();
+
+          // Close connection (the body has not been read).
+          urlConnection.disconnect();
+
+          // Add visited URL.
+          database.addVisitedUrl(urlConnection.getURL(), "-", "-");
+
+          event.success = true;
+
+          return true;
+        }
+
         // Get name of the file where to save the response.
         tempFilename = tempDir + "/" + TEMP_FILENAME;
 
         // Create temporary file for saving the response.
         out = new FileOutputStream(tempFilename);
 
+        // Decode the compressed body, unless it has to be stored as
+        // received (or the encoding is not supported).
+        String encoding =
+          ContentEncoding.normalize(urlConnection.getContentEncoding());
+
+        boolean decode = ((!storeCompressed) &&
+                          (!encoding.equals(ContentEncoding.IDENTITY)) &&
+                          (ContentEncoding.isSupported(encoding)));
+
+        if (!encoding.equals(ContentEncoding.IDENTITY)) {
+          compressedResponses.increment();
+        }
+
         StringBuilder server = new StringBuilder();
 
         // Write file headers.
-        writeFileHeaders(urlConnection, out, process, server);
+        writeFileHeaders(urlConnection,
+                         out,
+                         decode ? ContentEncoding.IDENTITY : encoding,
+                         process,
+                         server);
 
         byte[] buf = new byte[READ_BUFFER_SIZE];
         int len;
 
-        InputStream in = urlConnection.getInputStream();
+        start = System.nanoTime();
+
+        // Count the bytes received (the stored body can be bigger).
+        CountingInputStream received =
+          new CountingInputStream(urlConnection.getInputStream());
+
+        in = decode ? ContentEncoding.decode(received, encoding) : received;
+
+        long stored = 0;
+
+        if (contentDigest != null) {
+          contentDigest.reset();
+        }
 
         // Read response and write it to the temporary file.
         while ((len = in.read(buf)) != -1) {
+          // The limit applies to the decoded body too.
+          if ((maxBodySize > 0) && (stored + len > maxBodySize)) {
+            throw new AbortException(Abort.BODY_TOO_LARGE);
+          }
+
+          // A slow server could keep sending data within the read timeout.
+          if ((deadline != 0) && (System.nanoTime() - deadline >= 0)) {
+            throw new AbortException(Abort.DEADLINE);
+          }
+
           out.write(buf, 0, len);
+
+          if (contentDigest != null) {
+            contentDigest.update(buf, 0, len);
+          }
+
+          stored += len;
+
+          downloadedBytes.add(received.count - event.bytes);
+          event.bytes = received.count;
         }
 
+        bodyLatency.record(event.bodyTime = System.nanoTime() - start);
+
         // Close temporary file.
         out.close();
         out = null;
 
         // Close connection.
         in.close();
+        in = null;
+
+        String digest = null;
+
+        if (contentDigest != null) {
+          digest = HexFormat.of().formatHex(contentDigest.digest());
+
+          // Has the same body already been stored?
+          String dataFilename;
+          if ((dataFilename = getDuplicate(digest)) != null) {
+            Files.delete(Paths.get(tempFilename));
+
+            duplicates.increment();
+            duplicateBytes.add(stored);
+
+            log.log(Level.FINE,
+                    "Duplicate of '{0}': '{1}'.",
+                    dataFilename,
+                    event.url);
+
+            finalFilename.append(finalDir).append("/").append(dataFilename);
+
+            // Add visited URL (pointing at the existing data file).
+            database.addVisitedUrl(urlConnection.getURL(),
+                                   server.toString(),
+                                   dataFilename);
+
+            // The links have already been extracted.
+            process.value = false;
+
+            event.success = true;
+
+            return true;
+          }
+        }
 
         String dataFilename = getNextDataFilename();
         finalFilename.append(finalDir).append("/").append(dataFilename);
 
-        // Move temporary file to the final directory.
-        Files.move(Paths.get(tempFilename),
-                   Paths.get(finalFilename.toString()),
-                   StandardCopyOption.REPLACE_EXISTING);
+        String filename = tempFilename;
+
+        if (storageCompressor != null) {
+          // Give the file a unique name, the compressor moves it to the final
+          // directory (and queues it for processing) once it is compressed.
+          filename = tempDir + "/" + dataFilename;
+          Files.move(Paths.get(tempFilename),
+                     Paths.get(filename),
+                     StandardCopyOption.REPLACE_EXISTING);
+
+          if (storageCompressor.submit(filename,
+                                       finalFilename.toString(),
+                                       process.value)) {
+            process.value = false;
+            filename = null;
+          }
+        }
 
-        log.log(Level.FINER,
-                "mv " +
-                tempFilename +
-                " -> " +
-                finalFilename.toString());
+        if (filename != null) {
+          // Move temporary file to the final directory.
+          Files.move(Paths.get(filename),
+                     Paths.get(finalFilename.toString()),
+                     StandardCopyOption.ATOMIC_MOVE);
+
+          log.log(Level.FINER,
+                  "mv " +
+                  filename +
+                  " -> " +
+                  finalFilename.toString());
+        }
 
         // Add visited URL.
         database.addVisitedUrl(urlConnection.getURL(),
                                server.toString(),
                                dataFilename);
 
+        if (digest != null) {
+          database.addContentDigest(digest, dataFilename);
+        }
+
+        event.success = true;
+
         return true;
       } else if ((statusCode >= 300) && (statusCode < 400)) {
         // Add visited URL.
@@ -332,7 +942,9 @@ public class Downloader {
 
         if (++numberRedirects <= MAX_REDIRECTS) {
           // Get Location header.
-          String url = urlConnection.getHeaderField("Location");
+          String url = getRedirectUrl(urlConnection.getURL(),
+                                      urlConnection.getHeaderField("Location"));
+
           if (url != null) {
             try {
               // If the URL has not been already visited...
@@ -341,16 +953,20 @@ public class Downloader {
                 if (!database.haveUrlToVisit(url)) {
                   log.log(Level.FINE, "Redirecting to: '" + url + "'...");
 
+                  event.success = true;
+                  event.end();
+
                   return request(url, numberRedirects, process, finalFilename);
                 } else {
                   log.log(Level.FINEST,
-                          "Redirection '" +
-                          url +
-                          "' is already in the table of URLs to visit.");
+                          "Redirection '{0}' is already in the table of URLs " +
+                          "to visit.",
+                          url);
                 }
               } else {
                 log.log(Level.FINEST,
-                        "Redirection '" + url + "' has been already visited.");
+                        "Redirection '{0}' has been already visited.",
+                        url);
               }
             } catch (SQLException e) {
               log.log(Level.WARNING, "Exception: '" + e.toString() + "'.");
@@ -364,6 +980,36 @@ public class Downloader {
     } catch (IOException e1) {
       log.log(Level.WARNING, "Exception: '" + e1.toString() + "'.");
 
+      requestErrors.increment();
+
+      event.error = e1.toString();
+
+      Abort abort;
+      if ((abort = getAbort(e1, timeoutAbort)) != null) {
+        aborts[abort.ordinal()].increment();
+        hostStatistics.abortRequest(event.host);
+
+        event.abort = abort.name().toLowerCase();
+
+        log.log(Level.WARNING,
+                "Aborted request '" +
+                event.url +
+                "' (" +
+                event.abort +
+                ").");
+
+        // Don't reuse the connection (the body has not been read).
+        urlConnection.disconnect();
+      }
+
+      try {
+        if (in != null) {
+          // Close stream (releases the decoder).
+          in.close();
+        }
+      } catch (IOException e2) {
+      }
+
       try {
         if (out != null) {
           // Close file.
@@ -376,12 +1022,117 @@ public class Downloader {
         }
       } catch (IOException e2) {
       }
+    } finally {
+      event.commit();
     }
 
     return false;
   }
 
 
+  // Method: getDuplicate
+  // Description: returns the data file which contains a body.
+  // Parameters:
+  //   - digest: SHA-256 of the body (hexadecimal).
+  //
+  // Returns: name of the data file; null if the body has not been stored (or
+  //          the table of content digests couldn't be checked).
+  private String getDuplicate(String digest)
+  {
+    try {
+      return database.getContentDigestFilename(digest);
+    } catch (SQLException e) {
+      log.log(Level.WARNING, "Exception: '" + e.toString() + "'.");
+    }
+
+    return null;
+  }
+
+
+  // Method: headRequest
+  // Description: performs an HTTP HEAD request to check the type of a URL
+  //              before downloading it. The fetch policy learns the type
+  //              of the response.
+  //
+  // Parameters:
+  //   - url: URL (HTTP or HTTPS).
+  //
+  // Returns: true: the URL should be downloaded (the type has to be stored,
+  //          the response is not a success or the request failed); false:
+  //          the body would be discarded.
+  private boolean headRequest(URL url)
+  {
+    HttpURLConnection urlConnection = null;
+
+    try {
+      urlConnection = (HttpURLConnection) url.openConnection();
+
+      urlConnection.setRequestMethod("HEAD");
+      urlConnection.setRequestProperty("User-Agent", httpUserAgent);
+      urlConnection.setRequestProperty("Accept", HTTP_ACCEPT);
+      urlConnection.setRequestProperty("Accept-Language", HTTP_ACCEPT_LANGUAGE);
+
+      urlConnection.setConnectTimeout(timeout(connectTimeout));
+      urlConnection.setReadTimeout(timeout(readTimeout));
+
+      currentConnection = urlConnection;
+
+      requests.increment();
+
+      int statusCode = urlConnection.getResponseCode();
+
+      log.log(Level.FINEST, "Status-Code (HEAD): {0}", statusCode);
+
+      if ((statusCode >= 200) && (statusCode < 300)) {
+        String contentType = urlConnection.getContentType();
+        fetchPolicy.learn(url.getHost(), url.getPath(), contentType);
+
+        return (fetchPolicy.getAction(contentType) ==
+                FetchPolicy.Action.STORE);
+      }
+    } catch (IOException e) {
+      log.log(Level.FINE, "Exception (HEAD): '" + e.toString() + "'.");
+
+      requestErrors.increment();
+
+      if (urlConnection != null) {
+        urlConnection.disconnect();
+      }
+    }
+
+    return true;
+  }
+
+
+  // Method: getRedirectUrl
+  // Description: resolves the value of the "Location" header against the URL
+  //              of the request and returns its canonical form.
+  //
+  // Parameters:
+  //   - url: URL of the request.
+  //   - location: value of the "Location" header.
+  //
+  // Returns: canonical redirect URL; null if there is no "Location" header or
+  //          it is not a valid HTTP or HTTPS URL.
+  private String getRedirectUrl(URL url, String location)
+  {
+    if (location != null) {
+      try {
+        String redirectUrl;
+        if ((redirectUrl = urlCanonicalizer.canonicalize(
+                             new URL(url, location).toString())) != null) {
+          return redirectUrl;
+        }
+      } catch (MalformedURLException e) {
+      }
+
+      log.log(Level.WARNING, "Invalid redirection '" + location + "'.");
+    }
+
+    return null;
+  }
+
+
   // Method: request
   // Description: if the URL passed as parameter is valid, calls the other
   //              method request() with a URL object.
@@ -416,6 +1167,11 @@ public class Downloader {
   // Description: checks the URL passed as parameter and, if the protocol
   //              is either HTTP or HTTPS, calls the method performRequest()
   //              to perform an HTTP request.
+  //              The first request of a fetch (not a redirection) starts the
+  //              deadline of the fetch and the watch of the watchdog.
+  //              If the fetch policy asks for it, the URL is checked with a
+  //              HEAD request first and it is not downloaded if the body
+  //              would be discarded.
   //
   // Parameters:
   //   - url: URL.
@@ -432,7 +1188,33 @@ public class Downloader {
   {
     log.log(Level.INFO, "Request: '" + url.toString() + "'.");
 
+    // First request of the fetch (not a redirection)?
+    boolean first = (numberRedirects == 0);
+
+    if (first) {
+      long now = System.nanoTime();
+
+      deadline = (fetchDeadline > 0) ? now + fetchDeadline * 1000000L : 0;
+      watchdogFired = false;
+      fetchThread = Thread.currentThread();
+      fetchStart = now;
+    }
+
     try {
+      if (((url.getProtocol().equals("http")) ||
+           (url.getProtocol().equals("https"))) &&
+          (fetchPolicy.checkWithHead(url.getHost(), url.getPath())) &&
+          (!headRequest(url))) {
+        log.log(Level.FINE, "Discarding '{0}' (HEAD).", url);
+
+        fetchPolicy.discard();
+
+        // Add visited URL.
+        database.addVisitedUrl(url, "-", "-");
+
+        return true;
+      }
+
       if (url.getProtocol().equals("http")) {
         return performRequest((HttpURLConnection) url.openConnection(),
                               numberRedirects,
@@ -448,6 +1230,11 @@ public class Downloader {
       }
     } catch (IOException e) {
       log.log(Level.WARNING, "Exception: '" + e.toString() + "'.");
+    } finally {
+      if (first) {
+        fetchStart = 0;
+        currentConnection = null;
+      }
     }
 
     return false;
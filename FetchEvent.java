@@ -0,0 +1,69 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+// JFR event: HTTP request performed by the downloader (one event per
+// request, the redirections are separate events).
+@Name("crawler.Fetch")
+@Label("Fetch")
+@Category("Crawler")
+@Description("HTTP request performed by the downloader")
+@StackTrace(false)
+public class FetchEvent extends Event {
+  @Label("URL")
+  String url = null;
+
+  @Label("Host")
+  String host = null;
+
+  @Label("Status Code")
+  int statusCode = 0;
+
+  @Label("Bytes")
+  @DataAmount
+  long bytes = 0;
+
+  @Label("DNS")
+  @Timespan
+  long dnsTime = 0;
+
+  @Label("Connect")
+  @Description("TCP connection")
+  @Timespan
+  long connectTime = 0;
+
+  @Label("TLS Handshake")
+  @Timespan
+  long handshakeTime = 0;
+
+  @Label("TLS Session Resumed")
+  boolean resumed = false;
+
+  @Label("Time To First Byte")
+  @Timespan
+  long ttfbTime = 0;
+
+  @Label("Body")
+  @Timespan
+  long bodyTime = 0;
+
+  @Label("Redirects")
+  @Description("Number of redirections before this request")
+  int redirects = 0;
+
+  @Label("Success")
+  boolean success = false;
+
+  @Label("Error")
+  String error = null;
+
+  @Label("Abort")
+  @Description("Reason why the request was aborted (timeout, body size, " +
+               "deadline, watchdog)")
+  String abort = null;
+}
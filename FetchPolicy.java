@@ -0,0 +1,530 @@
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+public class FetchPolicy {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Maximum number of learned (host, extension) -> MIME type entries.
+  private static final int MAX_LEARNED = 64 * 1024;
+
+  private static final int MAX_EXTENSION_LENGTH = 8;
+
+  // MIME type of the URLs of the "src" attribute of the "img" tags.
+  public static final String IMAGE_HINT = "image/*";
+
+  // MIME types of the usual extensions.
+  private static final String[][] EXTENSIONS = {
+    {"html", "text/html"},
+    {"htm", "text/html"},
+    {"xhtml", "application/xhtml+xml"},
+    {"txt", "text/plain"},
+    {"css", "text/css"},
+    {"js", "application/javascript"},
+    {"json", "application/json"},
+    {"xml", "application/xml"},
+    {"rss", "application/rss+xml"},
+    {"jpg", "image/jpeg"},
+    {"jpeg", "image/jpeg"},
+    {"png", "image/png"},
+    {"gif", "image/gif"},
+    {"webp", "image/webp"},
+    {"svg", "image/svg+xml"},
+    {"ico", "image/x-icon"},
+    {"bmp", "image/bmp"},
+    {"tif", "image/tiff"},
+    {"tiff", "image/tiff"},
+    {"mp3", "audio/mpeg"},
+    {"ogg", "audio/ogg"},
+    {"wav", "audio/wav"},
+    {"mp4", "video/mp4"},
+    {"webm", "video/webm"},
+    {"avi", "video/x-msvideo"},
+    {"mov", "video/quicktime"},
+    {"pdf", "application/pdf"},
+    {"doc", "application/msword"},
+    {"docx", "application/vnd.openxmlformats-officedocument." +
+             "wordprocessingml.document"},
+    {"xls", "application/vnd.ms-excel"},
+    {"xlsx", "application/vnd.openxmlformats-officedocument." +
+             "spreadsheetml.sheet"},
+    {"ppt", "application/vnd.ms-powerpoint"},
+    {"zip", "application/zip"},
+    {"gz", "application/gzip"},
+    {"tgz", "application/gzip"},
+    {"bz2", "application/x-bzip2"},
+    {"xz", "application/x-xz"},
+    {"7z", "application/x-7z-compressed"},
+    {"rar", "application/vnd.rar"},
+    {"tar", "application/x-tar"},
+    {"exe", "application/octet-stream"},
+    {"msi", "application/octet-stream"},
+    {"dmg", "application/octet-stream"},
+    {"iso", "application/octet-stream"},
+    {"bin", "application/octet-stream"},
+    {"apk", "application/vnd.android.package-archive"},
+    {"woff", "font/woff"},
+    {"woff2", "font/woff2"},
+    {"ttf", "font/ttf"}
+  };
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Type declarations.                                                   ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  public enum Action {
+    STORE,   // Download and save the response.
+    DISCARD, // Request the URL but don't download the body.
+    SKIP     // Don't request the URLs predicted to be of this type.
+  };
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Data members.                                                        ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Actions by MIME type: "type/subtype", "type/*" or "*". Never modified
+  // once loaded.
+  private Map<String, Action> actions = new HashMap<String, Action>();
+
+  // Whether the URLs predicted to be discarded are checked with a HEAD
+  // request before being downloaded.
+  private boolean headFirst = false;
+
+  private Map<String, String> extensions = new HashMap<String, String>();
+
+  // MIME types seen for "<host> <extension>" (least recently added are
+  // evicted).
+  private LinkedHashMap<String, String> learned =
+    new LinkedHashMap<String, String>() {
+      protected boolean removeEldestEntry(Map.Entry<String, String> eldest)
+      {
+        return size() > MAX_LEARNED;
+      }
+    };
+
+  private Metrics metrics = null;
+  private LongAdder skippedLinks = null;
+  private LongAdder skippedFetches = null;
+  private LongAdder discarded = null;
+  private LongAdder headRequests = null;
+
+  private Log log = null;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: Constructor
+  // Description: sets the data members.
+  // Parameters:
+  //   - headFirst: whether the suspected binaries are checked with a HEAD
+  //                request first.
+  //   - metrics: metrics object.
+  //   - log: logger object.
+  //
+  // Returns: nothing.
+  public FetchPolicy(boolean headFirst, Metrics metrics, Log log)
+  {
+    this.headFirst = headFirst;
+    this.metrics = metrics;
+    this.log = log;
+  }
+
+
+  // Method: initialize
+  // Description: gets the metrics and fills the table of extensions. Without
+  //              rules, everything is stored.
+  //
+  // Parameters: none.
+  // Returns: true.
+  public boolean initialize()
+  {
+    skippedLinks = metrics.counter("policy.skipped_links");
+    skippedFetches = metrics.counter("policy.skipped_fetches");
+    discarded = metrics.counter("policy.discarded");
+    headRequests = metrics.counter("policy.head_requests");
+
+    for (String[] extension : EXTENSIONS) {
+      extensions.put(extension[0], extension[1]);
+    }
+
+    return true;
+  }
+
+
+  // Method: load
+  // Description: loads the rules. Format: one rule per line,
+  //              "<MIME type> store|discard|skip", where the MIME type can be
+  //              "type/subtype", "type/*" or "*"; lines starting with '#' are
+  //              comments.
+  //
+  // Parameters:
+  //   - filename: name of the file.
+  //
+  // Returns: true: the file could be loaded; false: otherwise.
+  public boolean load(String filename)
+  {
+    log.log(Level.INFO, "Loading fetch policy '" + filename + "'...");
+
+    try (BufferedReader reader = Files.newBufferedReader(
+                                   Paths.get(filename),
+                                   StandardCharsets.UTF_8)) {
+      int lineNumber = 0;
+
+      String line;
+      while ((line = reader.readLine()) != null) {
+        lineNumber++;
+
+        line = line.trim();
+        if ((line.isEmpty()) || (line.charAt(0) == '#')) {
+          continue;
+        }
+
+        String[] fields = line.split("\\s+");
+
+        Action action = null;
+        if (fields.length == 2) {
+          try {
+            action = Action.valueOf(fields[1].toUpperCase(Locale.ROOT));
+          } catch (IllegalArgumentException e) {
+          }
+        }
+
+        String mimeType = fields[0].toLowerCase(Locale.ROOT);
+
+        if ((action == null) ||
+            ((!mimeType.equals("*")) && (mimeType.indexOf('/') <= 0))) {
+          log.log(Level.SEVERE,
+                  "Invalid rule in fetch policy '" +
+                  filename +
+                  "' (line " +
+                  lineNumber +
+                  "): '" +
+                  line +
+                  "'.");
+
+          return false;
+        }
+
+        actions.put(mimeType, action);
+      }
+    } catch (IOException e) {
+      log.log(Level.SEVERE,
+              "Error loading fetch policy '" +
+              filename +
+              "' (" +
+              e.toString() +
+              ").");
+
+      return false;
+    }
+
+    log.log(Level.INFO, "Loaded " + actions.size() + " fetch policy rule(s).");
+
+    return true;
+  }
+
+
+  // Method: getAction
+  // Description: returns the action for a MIME type: the rule of the MIME
+  //              type, of its type ("type/*") or the default rule ("*").
+  //
+  // Parameters:
+  //   - contentType: value of the header "Content-Type" or MIME type (null:
+  //                  unknown).
+  //
+  // Returns: action (STORE if there is no rule).
+  public Action getAction(String contentType)
+  {
+    if (actions.isEmpty()) {
+      return Action.STORE;
+    }
+
+    Action action = null;
+
+    String mimeType;
+    if ((mimeType = getMimeType(contentType)) != null) {
+      if ((action = actions.get(mimeType)) == null) {
+        int pos = mimeType.indexOf('/');
+        action = actions.get(mimeType.substring(0, pos + 1) + "*");
+      }
+    }
+
+    if (action == null) {
+      action = actions.get("*");
+    }
+
+    return (action != null) ? action : Action.STORE;
+  }
+
+
+  // Method: skipLink
+  // Description: returns whether a link should not be added to the URLs to
+  //              visit because its predicted type has to be skipped (the
+  //              link is counted).
+  //
+  // Parameters:
+  //   - url: canonical URL.
+  //   - hint: MIME type suggested by the tag of the link (e.g. IMAGE_HINT);
+  //           null: none.
+  //
+  // Returns: true: the link should be skipped; false: otherwise.
+  public boolean skipLink(String url, String hint)
+  {
+    if (actions.isEmpty()) {
+      return false;
+    }
+
+    String predicted = predict(UrlCanonicalizer.getHost(url),
+                               getPath(url),
+                               hint);
+
+    if ((predicted != null) && (getAction(predicted) == Action.SKIP)) {
+      skippedLinks.increment();
+      return true;
+    }
+
+    return false;
+  }
+
+
+  // Method: skipFetch
+  // Description: returns whether a URL to visit should not be requested
+  //              because its predicted type has to be skipped (the URL is
+  //              counted). The URLs might have been added before the rules
+  //              or before the type of their extension was learned.
+  //
+  // Parameters:
+  //   - host: host of the URL.
+  //   - path: path of the URL.
+  //
+  // Returns: true: the URL should be skipped; false: otherwise.
+  public boolean skipFetch(String host, String path)
+  {
+    if (actions.isEmpty()) {
+      return false;
+    }
+
+    String predicted;
+    if (((predicted = predict(host, path, null)) != null) &&
+        (getAction(predicted) == Action.SKIP)) {
+      skippedFetches.increment();
+      return true;
+    }
+
+    return false;
+  }
+
+
+  // Method: checkWithHead
+  // Description: returns whether a URL should be checked with a HEAD request
+  //              before being downloaded: HEAD-first mode and its predicted
+  //              type is not stored.
+  //
+  // Parameters:
+  //   - host: host of the URL.
+  //   - path: path of the URL.
+  //
+  // Returns: true: a HEAD request should be sent first; false: otherwise.
+  public boolean checkWithHead(String host, String path)
+  {
+    if ((!headFirst) || (actions.isEmpty())) {
+      return false;
+    }
+
+    String predicted;
+    if (((predicted = predict(host, path, null)) != null) &&
+        (getAction(predicted) != Action.STORE)) {
+      headRequests.increment();
+      return true;
+    }
+
+    return false;
+  }
+
+
+  // Method: discard
+  // Description: counts a response which has not been downloaded because of
+  //              its type.
+  //
+  // Parameters: none.
+  // Returns: nothing.
+  public void discard()
+  {
+    discarded.increment();
+  }
+
+
+  // Method: learn
+  // Description: records the type of a response, so the URLs of the same
+  //              host with the same extension are predicted to have it.
+  //
+  // Parameters:
+  //   - host: host of the URL.
+  //   - path: path of the URL.
+  //   - contentType: value of the header "Content-Type".
+  //
+  // Returns: nothing.
+  public void learn(String host, String path, String contentType)
+  {
+    String extension;
+    String mimeType;
+
+    if ((host != null) &&
+        ((extension = getExtension(path)) != null) &&
+        ((mimeType = getMimeType(contentType)) != null)) {
+      String key = host + " " + extension;
+
+      synchronized (learned) {
+        if (!mimeType.equals(learned.get(key))) {
+          learned.put(key, mimeType);
+        }
+      }
+    }
+  }
+
+
+  // Method: predict
+  // Description: predicts the type of a URL: the type learned for its host
+  //              and extension, the usual type of the extension or the hint.
+  //
+  // Parameters:
+  //   - host: host of the URL.
+  //   - path: path of the URL.
+  //   - hint: MIME type suggested by the context (null: none).
+  //
+  // Returns: MIME type; null: unknown.
+  private String predict(String host, String path, String hint)
+  {
+    String extension;
+    if ((extension = getExtension(path)) != null) {
+      String mimeType;
+
+      if (host != null) {
+        synchronized (learned) {
+          mimeType = learned.get(host + " " + extension);
+        }
+
+        if (mimeType != null) {
+          return mimeType;
+        }
+      }
+
+      if ((mimeType = extensions.get(extension)) != null) {
+        return mimeType;
+      }
+    }
+
+    return hint;
+  }
+
+
+  // Method: getMimeType
+  // Description: returns the MIME type of a "Content-Type" (lowercase,
+  //              without parameters).
+  //
+  // Parameters:
+  //   - contentType: value of the header "Content-Type".
+  //
+  // Returns: MIME type; null: invalid or null "Content-Type".
+  private static String getMimeType(String contentType)
+  {
+    if (contentType == null) {
+      return null;
+    }
+
+    int pos;
+    if ((pos = contentType.indexOf(';')) != -1) {
+      contentType = contentType.substring(0, pos);
+    }
+
+    contentType = contentType.trim().toLowerCase(Locale.ROOT);
+
+    return (contentType.indexOf('/') > 0) ? contentType : null;
+  }
+
+
+  // Method: getExtension
+  // Description: returns the extension of the last segment of a path.
+  // Parameters:
+  //   - path: path (the query is ignored).
+  //
+  // Returns: extension (lowercase); null: no extension.
+  private static String getExtension(String path)
+  {
+    if (path == null) {
+      return null;
+    }
+
+    int end;
+    if ((end = path.indexOf('?')) == -1) {
+      end = path.length();
+    }
+
+    int slash = path.lastIndexOf('/', end - 1);
+    int dot = path.lastIndexOf('.', end - 1);
+
+    if ((dot <= slash) ||
+        (end - dot - 1 < 1) ||
+        (end - dot - 1 > MAX_EXTENSION_LENGTH)) {
+      return null;
+    }
+
+    String extension = path.substring(dot + 1, end).toLowerCase(Locale.ROOT);
+
+    for (int i = 0; i < extension.length(); i++) {
+      if (!Character.isLetterOrDigit(extension.charAt(i))) {
+        return null;
+      }
+    }
+
+    return extension;
+  }
+
+
+  // Method: getPath
+  // Description: returns the path (and query) of a URL.
+  // Parameters:
+  //   - url: URL.
+  //
+  // Returns: path; null: the URL has no path.
+  private static String getPath(String url)
+  {
+    int pos;
+    if ((pos = url.indexOf("://")) == -1) {
+      return null;
+    }
+
+    return ((pos = url.indexOf('/', pos + 3)) != -1) ? url.substring(pos) :
+                                                       null;
+  }
+}
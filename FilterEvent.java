@@ -0,0 +1,34 @@
+import java.util.concurrent.ThreadLocalRandom;
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// JFR event: URL checked by the URL filter. The filter is called for every
+// link, so only one call out of SAMPLE_RATE (system property
+// "crawler.filterEventSampleRate") is recorded.
+@Name("crawler.Filter")
+@Label("URL Filter")
+@Category("Crawler")
+@Description("URL checked by the URL filter (sampled)")
+@StackTrace(false)
+public class FilterEvent extends Event {
+  private static final int SAMPLE_RATE =
+            Math.max(Integer.getInteger("crawler.filterEventSampleRate", 1024),
+                     1);
+
+  @Label("URL")
+  String url = null;
+
+  @Label("Matches")
+  boolean matches = false;
+
+  // Returns whether the current call should be recorded.
+  static boolean sample()
+  {
+    return (SAMPLE_RATE == 1) ||
+           (ThreadLocalRandom.current().nextInt(SAMPLE_RATE) == 0);
+  }
+}
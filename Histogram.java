@@ -0,0 +1,234 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class Histogram {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Each power of two is divided in 2^SUB_BUCKET_BITS buckets (relative
+  // error < 1 / 2^SUB_BUCKET_BITS, about 3%).
+  private static final int SUB_BUCKET_BITS = 5;
+  private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+
+  // Enough buckets for any positive long.
+  private static final int NUMBER_BUCKETS =
+            (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKET_COUNT;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Type declarations.                                                   ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Consistent copy of the histogram.
+  public static class Snapshot {
+    private long[] counts = null;
+    private long count = 0;
+    private long sum = 0;
+    private long max = 0;
+
+    private Snapshot(long[] counts, long count, long sum, long max)
+    {
+      this.counts = counts;
+      this.count = count;
+      this.sum = sum;
+      this.max = max;
+    }
+
+    // Number of values.
+    public long getCount()
+    {
+      return count;
+    }
+
+    // Mean of the values.
+    public double getMean()
+    {
+      return (count > 0) ? (double) sum / count : 0;
+    }
+
+    // Highest value.
+    public long getMax()
+    {
+      return max;
+    }
+
+    // Value below which "percentile" percent of the values fall (upper
+    // bound of the bucket).
+    public long getPercentile(double percentile)
+    {
+      if (count == 0) {
+        return 0;
+      }
+
+      long rank = (long) Math.ceil(percentile / 100.0 * count);
+      if (rank < 1) {
+        rank = 1;
+      }
+
+      long accumulated = 0;
+      for (int i = 0; i < NUMBER_BUCKETS; i++) {
+        if ((accumulated += counts[i]) >= rank) {
+          return Math.min(highestValue(i), max);
+        }
+      }
+
+      return max;
+    }
+  }
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Data members.                                                        ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private String name = null;
+
+  private AtomicLongArray buckets = new AtomicLongArray(NUMBER_BUCKETS);
+
+  private LongAdder sum = new LongAdder();
+  private AtomicLong max = new AtomicLong();
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: Constructor
+  // Description: sets the data member "name".
+  // Parameters:
+  //   - name: name of the histogram.
+  //
+  // Returns: nothing.
+  public Histogram(String name)
+  {
+    this.name = name;
+  }
+
+
+  // Method: getName
+  // Description: returns the name of the histogram.
+  // Parameters: none.
+  // Returns: name of the histogram.
+  public String getName()
+  {
+    return name;
+  }
+
+
+  // Method: record
+  // Description: adds a value to the histogram (without locks).
+  // Parameters:
+  //   - value: value (negative values are recorded as 0).
+  //
+  // Returns: nothing.
+  public void record(long value)
+  {
+    if (value < 0) {
+      value = 0;
+    }
+
+    buckets.incrementAndGet(bucket(value));
+
+    sum.add(value);
+
+    long current;
+    while ((value > (current = max.get())) &&
+           (!max.compareAndSet(current, value)));
+  }
+
+
+  // Method: recordSince
+  // Description: adds to the histogram the number of nanoseconds elapsed
+  //              since "start".
+  //
+  // Parameters:
+  //   - start: value of System.nanoTime() at the beginning of the operation.
+  //
+  // Returns: nothing.
+  public void recordSince(long start)
+  {
+    record(System.nanoTime() - start);
+  }
+
+
+  // Method: getSnapshot
+  // Description: returns a copy of the histogram (the values recorded while
+  //              copying might be partially included).
+  //
+  // Parameters: none.
+  // Returns: copy of the histogram.
+  public Snapshot getSnapshot()
+  {
+    long[] counts = new long[NUMBER_BUCKETS];
+    long total = 0;
+
+    for (int i = 0; i < NUMBER_BUCKETS; i++) {
+      total += (counts[i] = buckets.get(i));
+    }
+
+    // Use the count of the buckets, so the percentiles are consistent.
+    return new Snapshot(counts, total, sum.sum(), max.get());
+  }
+
+
+  // Method: bucket
+  // Description: returns the bucket of a value: the values lower than
+  //              SUB_BUCKET_COUNT have their own bucket, the other ones are
+  //              grouped by their most significant bit and the next
+  //              SUB_BUCKET_BITS bits.
+  //
+  // Parameters:
+  //   - value: value (>= 0).
+  //
+  // Returns: index of the bucket.
+  private static int bucket(long value)
+  {
+    if (value < SUB_BUCKET_COUNT) {
+      return (int) value;
+    }
+
+    int msb = 63 - Long.numberOfLeadingZeros(value);
+    int shift = msb - SUB_BUCKET_BITS;
+
+    return ((shift + 1) << SUB_BUCKET_BITS) +
+           (int) ((value >>> shift) & (SUB_BUCKET_COUNT - 1));
+  }
+
+
+  // Method: highestValue
+  // Description: returns the highest value of a bucket.
+  // Parameters:
+  //   - bucket: index of the bucket.
+  //
+  // Returns: highest value of the bucket.
+  private static long highestValue(int bucket)
+  {
+    if (bucket < SUB_BUCKET_COUNT) {
+      return bucket;
+    }
+
+    int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+    long subBucket = bucket & (SUB_BUCKET_COUNT - 1);
+    long lowest = (SUB_BUCKET_COUNT + subBucket) << shift;
+
+    return lowest + (1L << shift) - 1;
+  }
+}
@@ -0,0 +1,309 @@
+public class HostIndex {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final int INITIAL_CAPACITY = 1024; // Power of two.
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Data members.                                                        ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Hash sets (open addressing) of the 64-bit hashes of the hosts and of the
+  // domains, 0 marks an empty slot.
+  // The names are hashed from right to left, so the hash of each suffix of a
+  // host ("com", "example.com", "www.example.com") is obtained in a single
+  // pass.
+  private long[] hosts = new long[INITIAL_CAPACITY];
+  private int numberHosts = 0;
+
+  private long[] domains = new long[INITIAL_CAPACITY];
+  private int numberDomains = 0;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: addHost
+  // Description: adds a host, which matches only itself.
+  // Parameters:
+  //   - host: host name.
+  //
+  // Returns: true: the host is valid; false: otherwise.
+  public boolean addHost(String host)
+  {
+    long hash;
+    if ((hash = hashName(host)) == 0) {
+      return false;
+    }
+
+    if (numberHosts + 1 > hosts.length / 2) {
+      hosts = resize(hosts);
+    }
+
+    if (insert(hosts, hash)) {
+      numberHosts++;
+    }
+
+    return true;
+  }
+
+
+  // Method: addDomain
+  // Description: adds a domain, which matches itself and its subdomains.
+  // Parameters:
+  //   - domain: domain name.
+  //
+  // Returns: true: the domain is valid; false: otherwise.
+  public boolean addDomain(String domain)
+  {
+    long hash;
+    if ((hash = hashName(domain)) == 0) {
+      return false;
+    }
+
+    if (numberDomains + 1 > domains.length / 2) {
+      domains = resize(domains);
+    }
+
+    if (insert(domains, hash)) {
+      numberDomains++;
+    }
+
+    return true;
+  }
+
+
+  // Method: isEmpty
+  // Description: returns whether there are no hosts and no domains.
+  // Parameters: none.
+  // Returns: true: the index is empty; false: otherwise.
+  public boolean isEmpty()
+  {
+    return ((numberHosts == 0) && (numberDomains == 0));
+  }
+
+
+  // Method: size
+  // Description: returns the number of hosts and domains.
+  // Parameters: none.
+  // Returns: number of hosts and domains.
+  public int size()
+  {
+    return numberHosts + numberDomains;
+  }
+
+
+  // Method: matches
+  // Description: checks whether the host of the URL is one of the hosts or
+  //              belongs to one of the domains.
+  //              The host is not extracted from the URL: its labels are
+  //              hashed from right to left and each suffix is looked up in
+  //              the set of domains (O(number of labels) lookups).
+  //
+  // Parameters:
+  //   - urlStr: URL to be checked.
+  //
+  // Returns: true: the host matches; false: otherwise.
+  public boolean matches(String urlStr)
+  {
+    if (isEmpty()) {
+      return false;
+    }
+
+    // Find the host.
+    int start = urlStr.indexOf("://");
+    if (start < 0) {
+      return false;
+    }
+
+    start += 3;
+
+    int len = urlStr.length();
+    int end = start;
+    int colon = -1;
+
+    while (end < len) {
+      char c = urlStr.charAt(end);
+
+      if ((c == '/') || (c == '?') || (c == '#') || (c == '\\')) {
+        break;
+      } else if (c == '@') {
+        // Skip user information.
+        start = end + 1;
+        colon = -1;
+      } else if ((c == ':') && (colon < 0)) {
+        colon = end;
+      }
+
+      end++;
+    }
+
+    if ((colon >= 0) && (urlStr.charAt(start) != '[')) {
+      end = colon;
+    }
+
+    if ((end > start) && (urlStr.charAt(end - 1) == '.')) {
+      end--;
+    }
+
+    if (end == start) {
+      return false;
+    }
+
+    // Hash from right to left.
+    long hash = FNV_OFFSET_BASIS;
+
+    for (int i = end - 1; i >= start; i--) {
+      hash = (hash ^ toLowerCase(urlStr.charAt(i))) * FNV_PRIME;
+
+      if (((i == start) || (urlStr.charAt(i - 1) == '.')) &&
+          (numberDomains > 0) &&
+          (contains(domains, hash))) {
+        return true;
+      }
+    }
+
+    return ((numberHosts > 0) && (contains(hosts, hash)));
+  }
+
+
+  // Method: hashName
+  // Description: hashes a host or domain name from right to left (ignoring
+  //              case and the trailing dot).
+  //
+  // Parameters:
+  //   - name: host or domain name.
+  //
+  // Returns: hash; 0 if the name is empty.
+  private static long hashName(String name)
+  {
+    int end = name.length();
+    if ((end > 0) && (name.charAt(end - 1) == '.')) {
+      end--;
+    }
+
+    if (end == 0) {
+      return 0;
+    }
+
+    long hash = FNV_OFFSET_BASIS;
+
+    for (int i = end - 1; i >= 0; i--) {
+      hash = (hash ^ toLowerCase(name.charAt(i))) * FNV_PRIME;
+    }
+
+    return hash;
+  }
+
+
+  // Method: toLowerCase
+  // Description: converts an ASCII character to lowercase.
+  // Parameters:
+  //   - c: character.
+  //
+  // Returns: lowercase character.
+  private static char toLowerCase(char c)
+  {
+    return ((c >= 'A') && (c <= 'Z')) ? (char) (c + ('a' - 'A')) : c;
+  }
+
+
+  // Method: slot
+  // Description: returns the initial slot of a hash (the FNV hash is mixed,
+  //              so the low bits are well distributed).
+  //
+  // Parameters:
+  //   - hash: hash.
+  //   - mask: size of the table - 1.
+  //
+  // Returns: slot.
+  private static int slot(long hash, int mask)
+  {
+    hash ^= (hash >>> 33);
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= (hash >>> 33);
+
+    return (int) hash & mask;
+  }
+
+
+  // Method: insert
+  // Description: inserts a hash in a table.
+  // Parameters:
+  //   - table: hash table.
+  //   - hash: hash (not 0).
+  //
+  // Returns: true: the hash has been inserted; false: it was already there.
+  private static boolean insert(long[] table, long hash)
+  {
+    int mask = table.length - 1;
+
+    for (int i = slot(hash, mask); ; i = (i + 1) & mask) {
+      if (table[i] == 0) {
+        table[i] = hash;
+        return true;
+      } else if (table[i] == hash) {
+        return false;
+      }
+    }
+  }
+
+
+  // Method: contains
+  // Description: checks whether a table contains a hash.
+  // Parameters:
+  //   - table: hash table.
+  //   - hash: hash.
+  //
+  // Returns: true: the table contains the hash; false: otherwise.
+  private static boolean contains(long[] table, long hash)
+  {
+    int mask = table.length - 1;
+
+    for (int i = slot(hash, mask); ; i = (i + 1) & mask) {
+      if (table[i] == hash) {
+        return true;
+      } else if (table[i] == 0) {
+        return false;
+      }
+    }
+  }
+
+
+  // Method: resize
+  // Description: doubles the size of a table.
+  // Parameters:
+  //   - table: hash table.
+  //
+  // Returns: new table.
+  private static long[] resize(long[] table)
+  {
+    long[] newTable = new long[table.length * 2];
+
+    for (long hash : table) {
+      if (hash != 0) {
+        insert(newTable, hash);
+      }
+    }
+
+    return newTable;
+  }
+}
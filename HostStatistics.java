@@ -0,0 +1,402 @@
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class HostStatistics {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Maximum number of hosts kept (the idle hosts are removed when the
+  // maximum is reached).
+  private static final int MAX_HOSTS = 10 * 1000;
+
+  // Window used for computing the number of pages per second.
+  private static final int RATE_WINDOW = 60; // Seconds.
+
+  // Minimum number of pages checked for reporting the near-duplicate rate
+  // of a host.
+  private static final int MIN_CHECKED_PAGES = 20;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Type declarations.                                                   ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Statistics of a host.
+  public static class Host {
+    private final String name;
+
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder aborts = new LongAdder();
+    private final LongAdder totalTime = new LongAdder(); // Nanoseconds.
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder checkedPages = new LongAdder();
+    private final LongAdder nearDuplicates = new LongAdder();
+
+    private Host(String name)
+    {
+      this.name = name;
+    }
+
+    public String getName()
+    {
+      return name;
+    }
+
+    public long getRequests()
+    {
+      return requests.sum();
+    }
+
+    public long getErrors()
+    {
+      return errors.sum();
+    }
+
+    // Requests aborted (timeouts, body too large, deadline, watchdog).
+    public long getAborts()
+    {
+      return aborts.sum();
+    }
+
+    public int getInFlight()
+    {
+      return inFlight.get();
+    }
+
+    // Mean duration of the requests (milliseconds).
+    public double getMeanTime()
+    {
+      long n = requests.sum();
+      return (n > 0) ? totalTime.sum() / 1000000.0 / n : 0;
+    }
+
+    // Pages checked for near-duplicates.
+    public long getCheckedPages()
+    {
+      return checkedPages.sum();
+    }
+
+    public long getNearDuplicates()
+    {
+      return nearDuplicates.sum();
+    }
+
+    // Near-duplicates / pages checked.
+    public double getNearDuplicateRate()
+    {
+      long n = checkedPages.sum();
+      return (n > 0) ? (double) nearDuplicates.sum() / n : 0;
+    }
+  }
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Data members.                                                        ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private ConcurrentHashMap<String, Host> hosts =
+    new ConcurrentHashMap<String, Host>();
+
+  private LongAdder requests = new LongAdder();
+  private LongAdder errors = new LongAdder();
+  private LongAdder aborts = new LongAdder();
+  private LongAdder checkedPages = new LongAdder();
+  private LongAdder nearDuplicates = new LongAdder();
+
+  // Number of pages fetched in each of the last RATE_WINDOW seconds
+  // (circular buffer indexed by second).
+  private AtomicLongArray pages = new AtomicLongArray(RATE_WINDOW);
+  private AtomicLongArray seconds = new AtomicLongArray(RATE_WINDOW);
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: startRequest
+  // Description: marks the beginning of a request to the host "host".
+  // Parameters:
+  //   - host: host.
+  //
+  // Returns: value of System.nanoTime() to be passed to endRequest().
+  public long startRequest(String host)
+  {
+    getHost(host).inFlight.incrementAndGet();
+
+    return System.nanoTime();
+  }
+
+
+  // Method: endRequest
+  // Description: marks the end of a request to the host "host".
+  // Parameters:
+  //   - host: host.
+  //   - start: value returned by startRequest().
+  //   - success: whether the request succeeded.
+  //
+  // Returns: nothing.
+  public void endRequest(String host, long start, boolean success)
+  {
+    long elapsed = System.nanoTime() - start;
+
+    Host h = getHost(host);
+
+    h.inFlight.decrementAndGet();
+    h.requests.increment();
+    h.totalTime.add(elapsed);
+
+    requests.increment();
+
+    if (!success) {
+      h.errors.increment();
+      errors.increment();
+    }
+
+    // Count the page in the current second.
+    long second = System.currentTimeMillis() / 1000;
+    int index = (int) (second % RATE_WINDOW);
+
+    long current;
+    if ((current = seconds.get(index)) != second) {
+      if (seconds.compareAndSet(index, current, second)) {
+        pages.set(index, 0);
+      }
+    }
+
+    pages.incrementAndGet(index);
+  }
+
+
+  // Method: abortRequest
+  // Description: counts a request to the host "host" which has been aborted
+  //              (the request is also counted as failed by endRequest()).
+  //
+  // Parameters:
+  //   - host: host.
+  //
+  // Returns: nothing.
+  public void abortRequest(String host)
+  {
+    getHost(host).aborts.increment();
+    aborts.increment();
+  }
+
+
+  // Method: checkedPage
+  // Description: counts a page of the host "host" which has been checked
+  //              for near-duplicates.
+  //
+  // Parameters:
+  //   - host: host.
+  //   - nearDuplicate: whether the page is a near-duplicate of another page
+  //                    of the host.
+  //
+  // Returns: nothing.
+  public void checkedPage(String host, boolean nearDuplicate)
+  {
+    Host h = getHost(host);
+
+    h.checkedPages.increment();
+    checkedPages.increment();
+
+    if (nearDuplicate) {
+      h.nearDuplicates.increment();
+      nearDuplicates.increment();
+    }
+  }
+
+
+  // Method: getPagesPerSecond
+  // Description: returns the number of pages per second during the last
+  //              RATE_WINDOW seconds (the current second is not included).
+  //
+  // Parameters: none.
+  // Returns: number of pages per second.
+  public double getPagesPerSecond()
+  {
+    long now = System.currentTimeMillis() / 1000;
+    long total = 0;
+
+    for (int i = 0; i < RATE_WINDOW; i++) {
+      long second = seconds.get(i);
+
+      if ((second < now) && (second >= now - RATE_WINDOW)) {
+        total += pages.get(i);
+      }
+    }
+
+    return (double) total / RATE_WINDOW;
+  }
+
+
+  // Method: getRequests
+  // Description: returns the number of requests.
+  // Parameters: none.
+  // Returns: number of requests.
+  public long getRequests()
+  {
+    return requests.sum();
+  }
+
+
+  // Method: getErrors
+  // Description: returns the number of failed requests.
+  // Parameters: none.
+  // Returns: number of failed requests.
+  public long getErrors()
+  {
+    return errors.sum();
+  }
+
+
+  // Method: getAborts
+  // Description: returns the number of aborted requests.
+  // Parameters: none.
+  // Returns: number of aborted requests.
+  public long getAborts()
+  {
+    return aborts.sum();
+  }
+
+
+  // Method: getCheckedPages
+  // Description: returns the number of pages checked for near-duplicates.
+  // Parameters: none.
+  // Returns: number of pages checked for near-duplicates.
+  public long getCheckedPages()
+  {
+    return checkedPages.sum();
+  }
+
+
+  // Method: getNearDuplicates
+  // Description: returns the number of near-duplicate pages.
+  // Parameters: none.
+  // Returns: number of near-duplicate pages.
+  public long getNearDuplicates()
+  {
+    return nearDuplicates.sum();
+  }
+
+
+  // Method: getInFlight
+  // Description: returns the hosts with requests in progress.
+  // Parameters: none.
+  // Returns: hosts with requests in progress.
+  public List<Host> getInFlight()
+  {
+    List<Host> list = new ArrayList<Host>();
+
+    for (Host h : hosts.values()) {
+      if (h.getInFlight() > 0) {
+        list.add(h);
+      }
+    }
+
+    return list;
+  }
+
+
+  // Method: getSlowestHosts
+  // Description: returns the hosts with the highest mean request duration
+  //              (only the hosts with completed requests).
+  //
+  // Parameters:
+  //   - count: maximum number of hosts.
+  //
+  // Returns: slowest hosts (slowest first).
+  public List<Host> getSlowestHosts(int count)
+  {
+    List<Host> list = new ArrayList<Host>();
+
+    for (Host h : hosts.values()) {
+      if (h.getRequests() > 0) {
+        list.add(h);
+      }
+    }
+
+    list.sort((h1, h2) -> Double.compare(h2.getMeanTime(), h1.getMeanTime()));
+
+    return (list.size() > count) ? list.subList(0, count) : list;
+  }
+
+
+  // Method: getNearDuplicateHosts
+  // Description: returns the hosts with the highest near-duplicate rate
+  //              (only the hosts with at least MIN_CHECKED_PAGES pages
+  //              checked), they are candidates to be spider traps.
+  //
+  // Parameters:
+  //   - count: maximum number of hosts.
+  //
+  // Returns: hosts with near-duplicates (highest rate first).
+  public List<Host> getNearDuplicateHosts(int count)
+  {
+    List<Host> list = new ArrayList<Host>();
+
+    for (Host h : hosts.values()) {
+      if ((h.getCheckedPages() >= MIN_CHECKED_PAGES) &&
+          (h.getNearDuplicates() > 0)) {
+        list.add(h);
+      }
+    }
+
+    list.sort((h1, h2) -> Double.compare(h2.getNearDuplicateRate(),
+                                         h1.getNearDuplicateRate()));
+
+    return (list.size() > count) ? list.subList(0, count) : list;
+  }
+
+
+  // Method: getHost
+  // Description: returns the statistics of a host (they are created if
+  //              needed). When there are too many hosts, the idle ones are
+  //              removed.
+  //
+  // Parameters:
+  //   - host: host.
+  //
+  // Returns: statistics of the host.
+  private Host getHost(String host)
+  {
+    Host h;
+    if ((h = hosts.get(host)) != null) {
+      return h;
+    }
+
+    if (hosts.size() >= MAX_HOSTS) {
+      Iterator<Map.Entry<String, Host>> it = hosts.entrySet().iterator();
+      while ((it.hasNext()) && (hosts.size() >= MAX_HOSTS * 9 / 10)) {
+        if (it.next().getValue().getInFlight() == 0) {
+          it.remove();
+        }
+      }
+    }
+
+    return hosts.computeIfAbsent(host, Host::new);
+  }
+}
@@ -1,5 +1,5 @@
+import java.util.Set;
 import java.util.logging.Level;
-import java.io.IOException;
 import java.net.URL;
 import javax.swing.text.html.HTMLEditorKit;
 import javax.swing.text.html.HTML;
@@ -14,11 +14,18 @@ public class HtmlParser extends HTMLEditorKit.ParserCallback {
   //////////////////////////////////////////////////////////////////////////////
   //////////////////////////////////////////////////////////////////////////////
 
-  private Database database = null;
+  private UrlCanonicalizer urlCanonicalizer = null;
   private UrlFilter urlFilter = null;
+  private FetchPolicy fetchPolicy = null;
 
   private URL contextUrl = null;
 
+  // Canonical URLs found in the document.
+  private Set<String> urls = null;
+
+  // Fingerprint of the text of the document (null: not computed).
+  private SimHash simHash = null;
+
   private Log log = null;
 
 
@@ -33,24 +40,53 @@ public class HtmlParser extends HTMLEditorKit.ParserCallback {
   // Method: Constructor
   // Description: sets the data members.
   // Parameters:
-  //   - database: database object.
+  //   - urlCanonicalizer: URL canonicalizer object.
   //   - urlFilter: URL filter object.
+  //   - fetchPolicy: fetch policy object.
   //   - contextUrl: context URL object.
+  //   - urls: set where to add the URLs found in the document.
+  //   - simHash: fingerprint where to add the text of the document (null:
+  //              none).
   //   - log: logger object.
   //
   // Returns: nothing.
-  public HtmlParser(Database database,
+  public HtmlParser(UrlCanonicalizer urlCanonicalizer,
                     UrlFilter urlFilter,
+                    FetchPolicy fetchPolicy,
                     URL contextUrl,
+                    Set<String> urls,
+                    SimHash simHash,
                     Log log)
   {
-    this.database = database;
+    this.urlCanonicalizer = urlCanonicalizer;
     this.urlFilter = urlFilter;
+    this.fetchPolicy = fetchPolicy;
     this.contextUrl = contextUrl;
+    this.urls = urls;
+    this.simHash = simHash;
     this.log = log;
   }
 
 
+  // Method: handleText
+  // Description: handles a block of text, it is added to the fingerprint of
+  //              the document (if any). The blocks are separated by tags, so
+  //              a word doesn't continue in the next block.
+  //
+  // Parameters:
+  //   - data: text.
+  //   - pos: position of the text.
+  //
+  // Returns: nothing.
+  public void handleText(char[] data, int pos)
+  {
+    if (simHash != null) {
+      simHash.addText(data, 0, data.length);
+      simHash.endWord();
+    }
+  }
+
+
   // Method: handleStartTag
   // Description: handles a start tag, it just calls the method handleTag().
   // Parameters:
@@ -82,9 +118,10 @@ public class HtmlParser extends HTMLEditorKit.ParserCallback {
   // Method: handleTag
   // Description: handles a tag:
   //                - If the tag is "a", calls the method addUrl() with
-  //                  the attribute "href" to add the URL to the database.
+  //                  the attribute "href" to add the URL to the set of URLs.
   //                - If the tag is "img", calls the method addUrl() with
-  //                  the attribute "src" to add the URL to the database.
+  //                  the attribute "src" to add the URL to the set of URLs
+  //                  (the URL is expected to be an image).
   //
   // Parameters:
   //   - t: HTML tag.
@@ -95,46 +132,52 @@ public class HtmlParser extends HTMLEditorKit.ParserCallback {
   private void handleTag(HTML.Tag t, MutableAttributeSet a, int pos)
   {
     if (HTML.Tag.A.equals(t)) {
-      addUrl((String) a.getAttribute(HTML.Attribute.HREF));
+      addUrl((String) a.getAttribute(HTML.Attribute.HREF), null);
     } else if (HTML.Tag.IMG.equals(t)) {
-      addUrl((String) a.getAttribute(HTML.Attribute.SRC));
+      addUrl((String) a.getAttribute(HTML.Attribute.SRC),
+             FetchPolicy.IMAGE_HINT);
     }
   }
 
 
   // Method: addUrl
-  // Description: adds the URL to the table of URLs to be visited only if the
-  //              URL starts with "http://" or "https://" and matches the URL
-  //              filter.
+  // Description: adds the canonical form of the URL to the set of URLs only
+  //              if the URL starts with "http://" or "https://" and its
+  //              canonical form matches the URL filter and its predicted
+  //              type is not skipped by the fetch policy.
+  //              The URLs are added to the database in a single batch once
+  //              the whole document has been parsed.
   //
   // Parameters:
   //   - urlStr: URL to be added.
+  //   - hint: MIME type suggested by the tag (null: none).
   //
   // Returns: true:
-  //            - The scheme is "HTTP" or "HTTPS", the URL matches the URL
-  //              filter, the URL is valid and could be added to the database
-  //              (if not already done);
+  //            - The scheme is "HTTP" or "HTTPS", the URL is valid and
+  //              matches the URL filter;
   //              or:
   //            - The URL has another scheme.
   //              or:
-  //            - The URL doesn't match the URL filter.
+  //            - The URL doesn't match the URL filter or is skipped by the
+  //              fetch policy.
   //          false: otherwise.
-  private boolean addUrl(String urlStr)
+  private boolean addUrl(String urlStr, String hint)
   {
-    // HTTP or HTTPS and matches the URL filter?
+    // HTTP or HTTPS?
     if ((urlStr != null) &&
         ((urlStr.regionMatches(true, 0, "http://", 0, 7)) ||
-         (urlStr.regionMatches(true, 0, "https://", 0, 8))) &&
-        (urlFilter.matches(urlStr))) {
-      try {
-        URL url = new URL(contextUrl, urlStr);
-
-        return database.addUrlToVisit(url);
-      } catch (IOException e) {
-        log.log(Level.WARNING, "Exception: '" + e.toString() + "'.");
+         (urlStr.regionMatches(true, 0, "https://", 0, 8)))) {
+      String canonicalUrl;
+      if ((canonicalUrl = urlCanonicalizer.canonicalize(urlStr)) == null) {
+        log.log(Level.WARNING, "Invalid URL '" + urlStr + "'.");
+        return false;
       }
 
-      return false;
+      // Matches the URL filter and not skipped by the fetch policy?
+      if ((urlFilter.matches(canonicalUrl)) &&
+          (!fetchPolicy.skipLink(canonicalUrl, hint))) {
+        urls.add(canonicalUrl);
+      }
     }
 
     return true;
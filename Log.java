@@ -5,8 +5,23 @@ import java.util.logging.FileHandler;
 import java.util.logging.SimpleFormatter;
 import java.util.logging.Level;
 import java.io.IOException;
+import java.util.function.Supplier;
 
 public class Log {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Source of the log records (set explicitly, otherwise the logger walks
+  // the stack of every record to find it).
+  private static final String SOURCE_CLASS = "Log";
+  private static final String SOURCE_METHOD = "log";
+
+
   //////////////////////////////////////////////////////////////////////////////
   //////////////////////////////////////////////////////////////////////////////
   ////                                                                      ////
@@ -16,6 +31,7 @@ public class Log {
   //////////////////////////////////////////////////////////////////////////////
 
   private Logger logger = null;
+  private Handler handler = null;
 
 
   //////////////////////////////////////////////////////////////////////////////
@@ -56,8 +72,29 @@ public class Log {
   //
   // Returns: true: the logger could be initialized; false: otherwise.
   public boolean initialize(String filename, Level level)
+  {
+    return initialize(filename, level, 0);
+  }
+
+
+  // Method: initialize
+  // Description: initializes the logger as a file logger.
+  // Parameters:
+  //   - filename: name of the log file.
+  //   - level: level used for logging.
+  //   - bufferSize: number of log records which can be waiting to be
+  //                 written by a background thread (0: the records are
+  //                 written by the thread which generates them).
+  //
+  // Returns: true: the logger could be initialized; false: otherwise.
+  public boolean initialize(String filename, Level level, int bufferSize)
   {
     try {
+      if (bufferSize > 0) {
+        // Create a handler which appends the logs from a background thread.
+        return initialize(new AsyncLogHandler(filename, bufferSize), level);
+      }
+
       // Create a file handler where logs will be appended.
       FileHandler handler = new FileHandler(filename, true);
 
@@ -90,6 +127,8 @@ public class Log {
       logger.addHandler(handler);
       logger.setLevel(level);
 
+      this.handler = handler;
+
       return true;
     } catch (SecurityException e) {
       System.out.println("Exception: '" + e.toString() + "'.");
@@ -99,6 +138,35 @@ public class Log {
   }
 
 
+  // Method: shutdown
+  // Description: writes the pending log records and closes the log handler.
+  // Parameters: none.
+  // Returns: nothing.
+  public void shutdown()
+  {
+    if (handler != null) {
+      logger.removeHandler(handler);
+      handler.close();
+
+      handler = null;
+    }
+  }
+
+
+  // Method: isLoggable
+  // Description: checks whether a message with level "level" would be logged.
+  //              Should be checked before building expensive messages.
+  //
+  // Parameters:
+  //   - level: log level.
+  //
+  // Returns: true: the message would be logged; false: otherwise.
+  public boolean isLoggable(Level level)
+  {
+    return logger.isLoggable(level);
+  }
+
+
   // Method: log
   // Description: generates a log message with level "level" and text "msg".
   // Parameters:
@@ -108,6 +176,142 @@ public class Log {
   // Returns: nothing.
   public void log(Level level, String msg)
   {
-    logger.log(level, msg);
+    logger.logp(level, SOURCE_CLASS, SOURCE_METHOD, msg);
+  }
+
+
+  // Method: log
+  // Description: generates a log message with level "level", the message is
+  //              only built if it is going to be logged.
+  //
+  // Parameters:
+  //   - level: log level.
+  //   - msgSupplier: function which builds the log message.
+  //
+  // Returns: nothing.
+  public void log(Level level, Supplier<String> msgSupplier)
+  {
+    if (logger.isLoggable(level)) {
+      logger.logp(level, SOURCE_CLASS, SOURCE_METHOD, msgSupplier.get());
+    }
+  }
+
+
+  // Method: log
+  // Description: generates a log message with level "level" from the
+  //              pattern "format", where "{0}" is replaced by "param0".
+  //              The message is only built if it is going to be logged.
+  //
+  // Parameters:
+  //   - level: log level.
+  //   - format: pattern of the log message.
+  //   - param0: parameter {0}.
+  //
+  // Returns: nothing.
+  public void log(Level level, String format, Object param0)
+  {
+    if (logger.isLoggable(level)) {
+      log(level, format(format, param0, null, null));
+    }
+  }
+
+
+  // Method: log
+  // Description: generates a log message with level "level" from the
+  //              pattern "format", where "{0}" and "{1}" are replaced by the
+  //              parameters.
+  //              The message is only built if it is going to be logged.
+  //
+  // Parameters:
+  //   - level: log level.
+  //   - format: pattern of the log message.
+  //   - param0: parameter {0}.
+  //   - param1: parameter {1}.
+  //
+  // Returns: nothing.
+  public void log(Level level, String format, Object param0, Object param1)
+  {
+    if (logger.isLoggable(level)) {
+      log(level, format(format, param0, param1, null));
+    }
+  }
+
+
+  // Method: log
+  // Description: generates a log message with level "level" from the
+  //              pattern "format", where "{0}", "{1}" and "{2}" are replaced
+  //              by the parameters.
+  //              The message is only built if it is going to be logged.
+  //
+  // Parameters:
+  //   - level: log level.
+  //   - format: pattern of the log message.
+  //   - param0: parameter {0}.
+  //   - param1: parameter {1}.
+  //   - param2: parameter {2}.
+  //
+  // Returns: nothing.
+  public void log(Level level,
+                  String format,
+                  Object param0,
+                  Object param1,
+                  Object param2)
+  {
+    if (logger.isLoggable(level)) {
+      log(level, format(format, param0, param1, param2));
+    }
+  }
+
+
+  // Method: format
+  // Description: replaces "{0}", "{1}" and "{2}" in "format" by the
+  //              parameters (unlike java.text.MessageFormat, quotes have no
+  //              special meaning).
+  //
+  // Parameters:
+  //   - format: pattern of the message.
+  //   - param0: parameter {0}.
+  //   - param1: parameter {1}.
+  //   - param2: parameter {2}.
+  //
+  // Returns: message.
+  private static String format(String format,
+                               Object param0,
+                               Object param1,
+                               Object param2)
+  {
+    StringBuilder sb = new StringBuilder(format.length() + 64);
+
+    int len = format.length();
+    int i = 0;
+    while (i < len) {
+      char c = format.charAt(i);
+
+      if ((c == '{') &&
+          (i + 2 < len) &&
+          (format.charAt(i + 1) >= '0') &&
+          (format.charAt(i + 1) <= '2') &&
+          (format.charAt(i + 2) == '}')) {
+        switch (format.charAt(i + 1)) {
+          case '0':
+            sb.append(param0);
+
+            break;
+          case '1':
+            sb.append(param1);
+
+            break;
+          default:
+            sb.append(param2);
+        }
+
+        i += 3;
+      } else {
+        sb.append(c);
+        i++;
+      }
+    }
+
+    return sb.toString();
   }
 }
@@ -0,0 +1,382 @@
+import java.util.ArrayList;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+
+public class Metrics implements DynamicMBean {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final String OBJECT_NAME = "crawler:type=Metrics";
+
+  // Percentiles reported for each histogram.
+  private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+  // The latencies are recorded in nanoseconds and reported in microseconds.
+  private static final double NANOS_PER_MICRO = 1000.0;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Data members.                                                        ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // The components get their counters and histograms once (at
+  // initialization), recording a value doesn't access the maps.
+  private ConcurrentHashMap<String, LongAdder> counters =
+    new ConcurrentHashMap<String, LongAdder>();
+
+  private ConcurrentHashMap<String, Histogram> latencies =
+    new ConcurrentHashMap<String, Histogram>();
+
+  private ObjectName objectName = null;
+
+  private Log log = null;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: Constructor
+  // Description: sets the data member "log".
+  // Parameters:
+  //   - log: logger object.
+  //
+  // Returns: nothing.
+  public Metrics(Log log)
+  {
+    this.log = log;
+  }
+
+
+  // Method: initialize
+  // Description: registers the metrics in the platform MBean server.
+  // Parameters: none.
+  // Returns: true: the metrics could be registered; false: otherwise.
+  public boolean initialize()
+  {
+    try {
+      MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+      objectName = new ObjectName(OBJECT_NAME);
+
+      if (server.isRegistered(objectName)) {
+        server.unregisterMBean(objectName);
+      }
+
+      server.registerMBean(this, objectName);
+
+      log.log(Level.INFO, "Registered MBean '" + OBJECT_NAME + "'.");
+
+      return true;
+    } catch (JMException e) {
+      log.log(Level.SEVERE, "Exception: '" + e.toString() + "'.");
+    }
+
+    return false;
+  }
+
+
+  // Method: shutdown
+  // Description: unregisters the metrics from the platform MBean server.
+  // Parameters: none.
+  // Returns: nothing.
+  public void shutdown()
+  {
+    try {
+      ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    } catch (JMException e) {
+      log.log(Level.WARNING, "Exception: '" + e.toString() + "'.");
+    }
+  }
+
+
+  // Method: counter
+  // Description: returns the counter "name" (it is created if needed).
+  // Parameters:
+  //   - name: name of the counter.
+  //
+  // Returns: counter.
+  public LongAdder counter(String name)
+  {
+    return counters.computeIfAbsent(name, k -> new LongAdder());
+  }
+
+
+  // Method: latency
+  // Description: returns the histogram of latencies "name" (it is created if
+  //              needed). The latencies are recorded in nanoseconds.
+  //
+  // Parameters:
+  //   - name: name of the histogram.
+  //
+  // Returns: histogram.
+  public Histogram latency(String name)
+  {
+    return latencies.computeIfAbsent(name, Histogram::new);
+  }
+
+
+  // Method: getValues
+  // Description: returns the current value of all the metrics, sorted by
+  //              name: the counters and, for each histogram, the count, the
+  //              mean, the percentiles and the maximum (in microseconds).
+  //
+  // Parameters: none.
+  // Returns: values of the metrics.
+  public Map<String, Object> getValues()
+  {
+    TreeMap<String, Object> values = new TreeMap<String, Object>();
+
+    for (Map.Entry<String, LongAdder> counter : counters.entrySet()) {
+      values.put(counter.getKey(), counter.getValue().sum());
+    }
+
+    for (Map.Entry<String, Histogram> latency : latencies.entrySet()) {
+      String name = latency.getKey();
+      Histogram.Snapshot snapshot = latency.getValue().getSnapshot();
+
+      values.put(name + ".count", snapshot.getCount());
+      values.put(name + ".mean_us", snapshot.getMean() / NANOS_PER_MICRO);
+
+      for (double percentile : PERCENTILES) {
+        values.put(name + ".p" + percentileName(percentile) + "_us",
+                   snapshot.getPercentile(percentile) / NANOS_PER_MICRO);
+      }
+
+      values.put(name + ".max_us", snapshot.getMax() / NANOS_PER_MICRO);
+    }
+
+    return values;
+  }
+
+
+  // Method: dump
+  // Description: writes the metrics to the file "filename" (one
+  //              "<name> <value>" per line). The file is replaced
+  //              atomically, so it can be read at any time.
+  //
+  // Parameters:
+  //   - filename: name of the file.
+  //
+  // Returns: true: the metrics could be written; false: otherwise.
+  public boolean dump(String filename)
+  {
+    Path path = Paths.get(filename).toAbsolutePath();
+    Path tempPath = path.resolveSibling(path.getFileName() + ".tmp");
+
+    try {
+      try (BufferedWriter writer = Files.newBufferedWriter(
+                                     tempPath,
+                                     StandardCharsets.US_ASCII)) {
+        writer.write("# " + new java.util.Date().toString() + "\n");
+
+        for (Map.Entry<String, Object> value : getValues().entrySet()) {
+          writer.write(value.getKey() +
+                       " " +
+                       format(value.getValue()) +
+                       "\n");
+        }
+      }
+
+      Files.move(tempPath,
+                 path,
+                 StandardCopyOption.REPLACE_EXISTING,
+                 StandardCopyOption.ATOMIC_MOVE);
+
+      return true;
+    } catch (IOException e) {
+      log.log(Level.WARNING,
+              "Cannot write metrics to '" +
+              filename +
+              "' (" +
+              e.toString() +
+              ").");
+    }
+
+    return false;
+  }
+
+
+  // Method: format
+  // Description: formats the value of a metric.
+  // Parameters:
+  //   - value: value (Long or Double).
+  //
+  // Returns: formatted value.
+  private static String format(Object value)
+  {
+    if (value instanceof Double) {
+      return String.format(Locale.ROOT, "%.1f", (Double) value);
+    }
+
+    return value.toString();
+  }
+
+
+  // Method: percentileName
+  // Description: returns the name of a percentile ("99.9" -> "999").
+  // Parameters:
+  //   - percentile: percentile.
+  //
+  // Returns: name of the percentile.
+  private static String percentileName(double percentile)
+  {
+    return (percentile == Math.rint(percentile)) ?
+             Long.toString((long) percentile) :
+             Double.toString(percentile).replace(".", "");
+  }
+
+
+  // Method: getAttribute
+  // Description: returns the value of a metric (JMX).
+  // Parameters:
+  //   - attribute: name of the metric.
+  //
+  // Returns: value of the metric.
+  @Override
+  public Object getAttribute(String attribute)
+    throws AttributeNotFoundException
+  {
+    Object value;
+    if ((value = getValues().get(attribute)) != null) {
+      return value;
+    }
+
+    throw new AttributeNotFoundException(attribute);
+  }
+
+
+  // Method: getAttributes
+  // Description: returns the values of some metrics (JMX).
+  // Parameters:
+  //   - attributes: names of the metrics.
+  //
+  // Returns: values of the metrics.
+  @Override
+  public AttributeList getAttributes(String[] attributes)
+  {
+    Map<String, Object> values = getValues();
+
+    AttributeList list = new AttributeList();
+    for (String attribute : attributes) {
+      Object value;
+      if ((value = values.get(attribute)) != null) {
+        list.add(new Attribute(attribute, value));
+      }
+    }
+
+    return list;
+  }
+
+
+  // Method: setAttribute
+  // Description: the metrics are read-only.
+  // Parameters:
+  //   - attribute: attribute.
+  //
+  // Returns: nothing.
+  @Override
+  public void setAttribute(Attribute attribute)
+    throws AttributeNotFoundException
+  {
+    throw new AttributeNotFoundException(attribute.getName());
+  }
+
+
+  // Method: setAttributes
+  // Description: the metrics are read-only.
+  // Parameters:
+  //   - attributes: attributes.
+  //
+  // Returns: empty list.
+  @Override
+  public AttributeList setAttributes(AttributeList attributes)
+  {
+    return new AttributeList();
+  }
+
+
+  // Method: invoke
+  // Description: there are no operations.
+  // Parameters:
+  //   - actionName: name of the operation.
+  //   - params: parameters.
+  //   - signature: signature.
+  //
+  // Returns: nothing (throws ReflectionException).
+  @Override
+  public Object invoke(String actionName, Object[] params, String[] signature)
+    throws ReflectionException
+  {
+    throw new ReflectionException(new NoSuchMethodException(actionName));
+  }
+
+
+  // Method: getMBeanInfo
+  // Description: describes the metrics (one read-only attribute per value,
+  //              the metrics created after the last call appear in the next
+  //              call).
+  //
+  // Parameters: none.
+  // Returns: description of the MBean.
+  @Override
+  public MBeanInfo getMBeanInfo()
+  {
+    ArrayList<MBeanAttributeInfo> attributes =
+      new ArrayList<MBeanAttributeInfo>();
+
+    for (Map.Entry<String, Object> value : getValues().entrySet()) {
+      attributes.add(new MBeanAttributeInfo(value.getKey(),
+                                            value.getValue()
+                                                 .getClass()
+                                                 .getName(),
+                                            value.getKey(),
+                                            true,
+                                            false,
+                                            false));
+    }
+
+    return new MBeanInfo(getClass().getName(),
+                         "Crawler metrics (latencies in microseconds).",
+                         attributes.toArray(
+                           new MBeanAttributeInfo[attributes.size()]),
+                         null,
+                         null,
+                         null);
+  }
+}
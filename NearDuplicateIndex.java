@@ -0,0 +1,205 @@
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class NearDuplicateIndex {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // With (distance + 1) blocks, the blocks have at least 9 bits: shorter
+  // blocks would be shared by most of the fingerprints of a host.
+  public static final int MAX_DISTANCE = 6; // Bits.
+
+  // Maximum number of fingerprints kept (the least recently used hosts are
+  // removed when the maximum is reached).
+  private static final int MAX_FINGERPRINTS = 256 * 1024;
+
+  // Maximum number of fingerprints per host (the pages of a host which has
+  // reached it are only compared with the pages already indexed).
+  private static final int MAX_HOST_FINGERPRINTS = 16 * 1024;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Type declarations.                                                   ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Fingerprints of the pages of a host.
+  private static class Host {
+    private long[] fingerprints = new long[16];
+    private int size = 0;
+
+    // Tables: indexes of the fingerprints by the value of each block, the key
+    // is (<block> << 32) | <value of the block>. The first element of each
+    // array is the number of indexes.
+    private HashMap<Long, int[]> tables = new HashMap<Long, int[]>();
+  }
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Data members.                                                        ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Maximum Hamming distance between near-duplicates.
+  private int distance = 0;
+
+  // The fingerprints are split in (distance + 1) blocks: two fingerprints
+  // within the distance have at least one identical block.
+  private int[] blockShifts = null;
+  private long[] blockMasks = null;
+
+  // Hosts in access order.
+  private LinkedHashMap<String, Host> hosts =
+    new LinkedHashMap<String, Host>(16, 0.75f, true);
+
+  private int numberFingerprints = 0;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: Constructor
+  // Description: sets the data members and computes the blocks.
+  // Parameters:
+  //   - distance: maximum Hamming distance between near-duplicates
+  //               (1 - MAX_DISTANCE).
+  //
+  // Returns: nothing.
+  public NearDuplicateIndex(int distance)
+  {
+    this.distance = distance;
+
+    int blocks = distance + 1;
+
+    blockShifts = new int[blocks];
+    blockMasks = new long[blocks];
+
+    int shift = 0;
+    for (int i = 0; i < blocks; i++) {
+      int width = 64 / blocks + ((i < 64 % blocks) ? 1 : 0);
+
+      blockShifts[i] = shift;
+      blockMasks[i] = (1L << width) - 1;
+
+      shift += width;
+    }
+  }
+
+
+  // Method: check
+  // Description: checks whether a page is a near-duplicate of a page of the
+  //              same host, otherwise adds its fingerprint to the index.
+  //
+  // Parameters:
+  //   - host: host of the page.
+  //   - fingerprint: SimHash of the page.
+  //
+  // Returns: true: the page is a near-duplicate; false: otherwise.
+  public synchronized boolean check(String host, long fingerprint)
+  {
+    Host h;
+    if ((h = hosts.get(host)) == null) {
+      hosts.put(host, h = new Host());
+    }
+
+    // Look for a fingerprint within the distance which has the same value
+    // in some block.
+    for (int i = 0; i < blockShifts.length; i++) {
+      int[] indexes;
+      if ((indexes = h.tables.get(getKey(fingerprint, i))) != null) {
+        for (int j = 1; j <= indexes[0]; j++) {
+          if (Long.bitCount(fingerprint ^ h.fingerprints[indexes[j]]) <=
+              distance) {
+            return true;
+          }
+        }
+      }
+    }
+
+    if (h.size < MAX_HOST_FINGERPRINTS) {
+      add(h, fingerprint);
+
+      // Remove the least recently used hosts.
+      if (numberFingerprints > MAX_FINGERPRINTS) {
+        Iterator<Map.Entry<String, Host>> it = hosts.entrySet().iterator();
+        while ((it.hasNext()) && (numberFingerprints > MAX_FINGERPRINTS)) {
+          Host eldest = it.next().getValue();
+          if (eldest != h) {
+            numberFingerprints -= eldest.size;
+            it.remove();
+          }
+        }
+      }
+    }
+
+    return false;
+  }
+
+
+  // Method: add
+  // Description: adds a fingerprint to the index of a host.
+  // Parameters:
+  //   - h: host.
+  //   - fingerprint: fingerprint.
+  //
+  // Returns: nothing.
+  private void add(Host h, long fingerprint)
+  {
+    if (h.size == h.fingerprints.length) {
+      h.fingerprints = Arrays.copyOf(h.fingerprints, h.size * 2);
+    }
+
+    int index = h.size++;
+    h.fingerprints[index] = fingerprint;
+
+    for (int i = 0; i < blockShifts.length; i++) {
+      Long key = getKey(fingerprint, i);
+
+      int[] indexes;
+      if ((indexes = h.tables.get(key)) == null) {
+        indexes = new int[2];
+      } else if (indexes[0] + 1 == indexes.length) {
+        indexes = Arrays.copyOf(indexes, indexes.length * 2);
+      }
+
+      indexes[++indexes[0]] = index;
+
+      h.tables.put(key, indexes);
+    }
+
+    numberFingerprints++;
+  }
+
+
+  // Method: getKey
+  // Description: returns the key of a block of a fingerprint.
+  // Parameters:
+  //   - fingerprint: fingerprint.
+  //   - block: block number.
+  //
+  // Returns: key.
+  private long getKey(long fingerprint, int block)
+  {
+    return ((long) block << 32) |
+           ((fingerprint >>> blockShifts[block]) & blockMasks[block]);
+  }
+}
@@ -0,0 +1,39 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+// JFR event: data file processed by the URLs extractor.
+@Name("crawler.Parse")
+@Label("Parse")
+@Category("Crawler")
+@Description("Data file processed by the URLs extractor")
+@StackTrace(false)
+public class ParseEvent extends Event {
+  @Label("Filename")
+  String filename = null;
+
+  @Label("URL")
+  String url = null;
+
+  @Label("Bytes")
+  @DataAmount
+  long bytes = 0;
+
+  @Label("HTML")
+  boolean html = false;
+
+  @Label("Links")
+  @Description("Number of links which passed the URL filter")
+  int links = 0;
+
+  @Label("Near-duplicate")
+  @Description("The links were not added (near-duplicate page)")
+  boolean nearDuplicate = false;
+
+  @Label("Success")
+  boolean success = false;
+}
@@ -0,0 +1,370 @@
+import java.util.ArrayList;
+import java.util.logging.Level;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ParserPool {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final long POLL_INTERVAL = 500; // Milliseconds.
+
+  public static final int MAX_THREADS = 256;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Type declarations.                                                   ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Notified by the parser threads when they have processed a file
+  // successfully (its URLs have been added to the database).
+  public interface Listener {
+    void processed(String filename);
+  }
+
+  // Parser thread, it exits (after processing the current file) when it is
+  // retired.
+  private class Worker extends Thread {
+    private volatile boolean retired = false;
+
+    private Worker(int number)
+    {
+      super("Parser-" + number);
+    }
+
+    public void run()
+    {
+      work(this);
+    }
+  }
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Data members.                                                        ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private UrlsExtractor urlsExtractor = null;
+
+  private volatile Listener listener = null;
+
+  private int numberThreads = 0;
+  private int queueSize = 0;
+
+  private BlockingQueue<String> queue = null;
+
+  // Running threads and threads which have been retired but might be still
+  // processing a file (threads are added and removed by setNumberThreads()).
+  private ArrayList<Worker> threads = new ArrayList<Worker>();
+  private ArrayList<Worker> retiredThreads = new ArrayList<Worker>();
+  private int nextThreadNumber = 0;
+
+  private volatile boolean running = false;
+
+  private AtomicLong processedFiles = new AtomicLong();
+  private AtomicLong blockedSubmissions = new AtomicLong();
+  private AtomicLong maxQueueDepth = new AtomicLong();
+
+  private Log log = null;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: Constructor
+  // Description: sets the data members.
+  // Parameters:
+  //   - urlsExtractor: URLs extractor object.
+  //   - numberThreads: number of parser threads.
+  //   - queueSize: maximum number of files waiting to be processed.
+  //   - log: logger object.
+  //
+  // Returns: nothing.
+  public ParserPool(UrlsExtractor urlsExtractor,
+                    int numberThreads,
+                    int queueSize,
+                    Log log)
+  {
+    this.urlsExtractor = urlsExtractor;
+    this.numberThreads = numberThreads;
+    this.queueSize = queueSize;
+    this.log = log;
+  }
+
+
+  // Method: initialize
+  // Description: creates the queue of files to be processed and starts the
+  //              parser threads.
+  //
+  // Parameters: none.
+  // Returns: true.
+  public synchronized boolean initialize()
+  {
+    queue = new ArrayBlockingQueue<String>(queueSize);
+
+    running = true;
+
+    for (int i = 0; i < numberThreads; i++) {
+      startThread();
+    }
+
+    log.log(Level.INFO,
+            "Started " +
+            numberThreads +
+            " parser thread(s), queue size: " +
+            queueSize +
+            ".");
+
+    return true;
+  }
+
+
+  // Method: shutdown
+  // Description: waits until the parser threads have processed the files in
+  //              the queue and stops them.
+  //
+  // Parameters: none.
+  // Returns: nothing.
+  public void shutdown()
+  {
+    ArrayList<Worker> list = new ArrayList<Worker>();
+
+    synchronized (this) {
+      running = false;
+
+      list.addAll(threads);
+      list.addAll(retiredThreads);
+    }
+
+    for (Thread thread : list) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+      }
+    }
+
+    log.log(Level.INFO, "Parser threads have been stopped.");
+  }
+
+
+  // Method: submit
+  // Description: adds a file to the queue of files to be processed.
+  //              If the queue is full, waits until the parser threads make
+  //              room for it, this way the fetcher is slowed down when the
+  //              parsers fall behind.
+  //
+  // Parameters:
+  //   - filename: name of the file to be processed.
+  //
+  // Returns: true: the file has been queued; false: otherwise.
+  public boolean submit(String filename)
+  {
+    try {
+      if (!queue.offer(filename)) {
+        blockedSubmissions.incrementAndGet();
+
+        log.log(Level.FINE,
+                "Parse queue is full, waiting for the parser threads...");
+
+        queue.put(filename);
+      }
+
+      long depth = queue.size();
+      long max;
+      while ((depth > (max = maxQueueDepth.get())) &&
+             (!maxQueueDepth.compareAndSet(max, depth)));
+
+      return true;
+    } catch (InterruptedException e) {
+      log.log(Level.WARNING,
+              "Interrupted while queueing file '" + filename + "'.");
+    }
+
+    return false;
+  }
+
+
+  // Method: setNumberThreads
+  // Description: changes the number of parser threads: starts new threads or
+  //              retires the last ones (a retired thread exits after
+  //              processing its current file).
+  //
+  // Parameters:
+  //   - n: number of parser threads (1 - MAX_THREADS).
+  //
+  // Returns: true: the number of threads has been changed; false: invalid
+  //          number or the pool is not running.
+  public synchronized boolean setNumberThreads(int n)
+  {
+    if ((n < 1) || (n > MAX_THREADS) || (!running)) {
+      return false;
+    }
+
+    // Forget the retired threads which have already exited.
+    retiredThreads.removeIf(thread -> !thread.isAlive());
+
+    while (threads.size() < n) {
+      startThread();
+    }
+
+    while (threads.size() > n) {
+      Worker thread = threads.remove(threads.size() - 1);
+      thread.retired = true;
+
+      retiredThreads.add(thread);
+    }
+
+    numberThreads = n;
+
+    log.log(Level.INFO, "Number of parser threads: " + n + ".");
+
+    return true;
+  }
+
+
+  // Method: setListener
+  // Description: sets the object notified when a file has been processed.
+  // Parameters:
+  //   - listener: listener (null: none).
+  //
+  // Returns: nothing.
+  public void setListener(Listener listener)
+  {
+    this.listener = listener;
+  }
+
+
+  // Method: getNumberThreads
+  // Description: returns the number of parser threads.
+  // Parameters: none.
+  // Returns: number of parser threads.
+  public synchronized int getNumberThreads()
+  {
+    return numberThreads;
+  }
+
+
+  // Method: startThread
+  // Description: starts a new parser thread.
+  // Parameters: none.
+  // Returns: nothing.
+  private void startThread()
+  {
+    Worker thread = new Worker(nextThreadNumber++);
+    threads.add(thread);
+
+    thread.start();
+  }
+
+
+  // Method: work
+  // Description: main loop of the parser threads: takes the next file from
+  //              the queue, extracts its URLs and, if it could be processed,
+  //              notifies the listener (if any).
+  //              When the pool is shut down, the threads finish processing
+  //              the files in the queue before exiting.
+  //
+  // Parameters:
+  //   - thread: current thread (it exits when it is retired).
+  //
+  // Returns: nothing.
+  private void work(Worker thread)
+  {
+    do {
+      try {
+        String filename;
+        if ((filename = queue.poll(POLL_INTERVAL,
+                                   TimeUnit.MILLISECONDS)) != null) {
+          boolean processed = urlsExtractor.processFile(filename);
+
+          processedFiles.incrementAndGet();
+
+          Listener l;
+          if ((processed) && ((l = listener) != null)) {
+            l.processed(filename);
+          }
+
+          if (thread.retired) {
+            return;
+          }
+        } else if ((!running) || (thread.retired)) {
+          return;
+        }
+      } catch (InterruptedException e) {
+      }
+    } while (true);
+  }
+
+
+  // Method: getQueueDepth
+  // Description: returns the number of files waiting to be processed.
+  // Parameters: none.
+  // Returns: number of files in the queue.
+  public int getQueueDepth()
+  {
+    return queue.size();
+  }
+
+
+  // Method: getQueueCapacity
+  // Description: returns the maximum number of files in the queue.
+  // Parameters: none.
+  // Returns: capacity of the queue.
+  public int getQueueCapacity()
+  {
+    return queueSize;
+  }
+
+
+  // Method: getMaxQueueDepth
+  // Description: returns the highest number of files which have been waiting
+  //              at the same time in the queue.
+  //
+  // Parameters: none.
+  // Returns: maximum depth of the queue.
+  public long getMaxQueueDepth()
+  {
+    return maxQueueDepth.get();
+  }
+
+
+  // Method: getBlockedSubmissions
+  // Description: returns how many times the fetcher had to wait because the
+  //              queue was full.
+  //
+  // Parameters: none.
+  // Returns: number of blocked submissions.
+  public long getBlockedSubmissions()
+  {
+    return blockedSubmissions.get();
+  }
+
+
+  // Method: getProcessedFiles
+  // Description: returns the number of files processed by the parser threads.
+  // Parameters: none.
+  // Returns: number of processed files.
+  public long getProcessedFiles()
+  {
+    return processedFiles.get();
+  }
+}
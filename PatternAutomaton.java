@@ -0,0 +1,1289 @@
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+public class PatternAutomaton {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Limits of the cache of DFA states, once reached the cache is flushed
+  // (the states are built again on demand).
+  private static final int MAX_DFA_STATES = 20000;
+  private static final long MAX_DFA_NFA_STATES = 4 * 1024 * 1024;
+
+  // Number of children of a node of the prefix tree from which they are
+  // indexed by element.
+  private static final int MIN_INDEXED_CHILDREN = 16;
+
+  // Maximum number of repetitions of a bounded quantifier.
+  private static final int MAX_REPETITIONS = 100;
+
+  // Number of transitions cached per DFA state (ASCII).
+  private static final int ALPHABET_SIZE = 128;
+
+  // Types of NFA states.
+  private static final byte CHAR = 0;
+  private static final byte SPLIT = 1;
+  private static final byte MATCH = 2;
+
+  private static final int[] ANY_CHAR = {
+    0x0000, 0x0009,
+    0x000b, 0x000c,
+    0x000e, 0x0084,
+    0x0086, 0x2027,
+    0x202a, 0xffff
+  };
+
+  private static final int[] DIGIT = {'0', '9'};
+
+  private static final int[] WORD = {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+
+  private static final int[] SPACE = {0x0009, 0x000d, ' ', ' '};
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Type declarations.                                                   ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Thrown when the pattern uses a feature which is not supported.
+  private static class UnsupportedPatternException extends Exception {
+    private static final long serialVersionUID = 1L;
+
+    UnsupportedPatternException()
+    {
+      super(null, null, false, false);
+    }
+  }
+
+  // Node of the syntax tree of a pattern.
+  private static class Node {
+    static final int CHARS = 0;       // Set of characters.
+    static final int CONCAT = 1;      // Concatenation of the children.
+    static final int ALTERNATION = 2; // Alternation of the children.
+    static final int REPEAT = 3;      // Repetition of the child.
+
+    int type;
+    int[] ranges;          // CHARS: sorted ranges of characters.
+    List<Node> children;   // CONCAT, ALTERNATION, REPEAT (one child).
+    int min;               // REPEAT: minimum number of repetitions.
+    int max;               // REPEAT: maximum (-1: unbounded).
+    int hash;              // 0: not computed yet.
+
+    Node(int type)
+    {
+      this.type = type;
+      this.children = new ArrayList<Node>();
+    }
+
+    Node(int[] ranges)
+    {
+      this.type = CHARS;
+      this.ranges = ranges;
+    }
+
+    // The nodes are compared by structure (once the pattern has been
+    // parsed).
+    public int hashCode()
+    {
+      if (hash == 0) {
+        int h = ((type * 31 + min) * 31 + max) * 31 + Arrays.hashCode(ranges);
+        if (children != null) {
+          h = h * 31 + children.hashCode();
+        }
+
+        hash = (h != 0) ? h : 1;
+      }
+
+      return hash;
+    }
+
+    public boolean equals(Object o)
+    {
+      if (!(o instanceof Node)) {
+        return false;
+      }
+
+      Node n = (Node) o;
+      return ((type == n.type) &&
+              (min == n.min) &&
+              (max == n.max) &&
+              (hashCode() == n.hashCode()) &&
+              (Arrays.equals(ranges, n.ranges)) &&
+              ((children == null) ? (n.children == null) :
+                                    (children.equals(n.children))));
+    }
+  }
+
+  // Node of the prefix tree of the patterns (sequences of elements): the
+  // patterns starting with the same elements share their NFA states, so
+  // the sets of NFA states of the DFA stay small.
+  private static class Prefix {
+    final Node element;    // null: root.
+    int pattern = -1;      // Index of the pattern ending here; -1 if none.
+    List<Prefix> children = new ArrayList<Prefix>();
+    HashMap<Node, Prefix> index = null; // Children by element (if many).
+
+    Prefix(Node element)
+    {
+      this.element = element;
+    }
+
+    // Returns the child for an element, adding it if needed.
+    Prefix child(Node element)
+    {
+      Prefix child;
+
+      if (index != null) {
+        if ((child = index.get(element)) != null) {
+          return child;
+        }
+      } else {
+        for (Prefix c : children) {
+          if (c.element.equals(element)) {
+            return c;
+          }
+        }
+      }
+
+      children.add(child = new Prefix(element));
+
+      if (index != null) {
+        index.put(element, child);
+      } else if (children.size() >= MIN_INDEXED_CHILDREN) {
+        index = new HashMap<Node, Prefix>();
+        for (Prefix c : children) {
+          index.put(c.element, c);
+        }
+      }
+
+      return child;
+    }
+  }
+
+  // State of the DFA.
+  private static class DfaState {
+    final int[] nfaStates;   // Sorted NFA states (CHAR and MATCH).
+    final int accept;        // Index of the matched pattern; -1 if none.
+    final DfaState[] next;   // Cached transitions (ASCII).
+
+    DfaState(int[] nfaStates, int accept)
+    {
+      this.nfaStates = nfaStates;
+      this.accept = accept;
+      this.next = new DfaState[ALPHABET_SIZE];
+    }
+  }
+
+  // Sets of NFA states of a thread computing a transition, reused by the
+  // next transitions: the NFA states visited (sparse set, cleared in
+  // constant time) and the CHAR and MATCH states reached.
+  private static class Scratch {
+    final int[] sparse;
+    int[] dense = new int[64];
+    int[] set = new int[64];
+    int visited = 0;
+
+    Scratch(int numberStates)
+    {
+      sparse = new int[numberStates];
+    }
+
+    // Marks a state as visited, returns false if it was already visited.
+    boolean visit(int s)
+    {
+      int i = sparse[s];
+      if ((i < visited) && (dense[i] == s)) {
+        return false;
+      }
+
+      if (visited == dense.length) {
+        dense = Arrays.copyOf(dense, visited * 2);
+        set = Arrays.copyOf(set, visited * 2);
+      }
+
+      sparse[s] = visited;
+      dense[visited++] = s;
+
+      return true;
+    }
+  }
+
+  // Key of the cache of DFA states.
+  private static class StateSet {
+    final int[] states;
+    final int hash;
+
+    StateSet(int[] states)
+    {
+      this.states = states;
+      this.hash = Arrays.hashCode(states);
+    }
+
+    public int hashCode()
+    {
+      return hash;
+    }
+
+    public boolean equals(Object o)
+    {
+      return ((o instanceof StateSet) &&
+              (Arrays.equals(states, ((StateSet) o).states)));
+    }
+  }
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Data members.                                                        ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // NFA.
+  private byte[] types = new byte[64];
+  private int[] out1 = new int[64];
+  private int[] out2 = new int[64];
+  private int[][] ranges = new int[64][];
+  private int numberStates = 0;
+
+  // Syntax tree of each pattern (until the NFA is built).
+  private List<Node> trees = new ArrayList<Node>();
+
+  // Patterns (used when the input contains supplementary characters).
+  private List<Pattern> patterns = new ArrayList<Pattern>();
+
+  // Parser state.
+  private String pattern = null;
+  private int pos = 0;
+
+  // DFA.
+  private volatile DfaState start = null;
+  private DfaState dead = null;
+  private volatile ConcurrentHashMap<StateSet, DfaState> dfaStates = null;
+  private AtomicInteger numberDfaStates = new AtomicInteger();
+  private AtomicLong numberDfaNfaStates = new AtomicLong();
+
+  // Sets of NFA states of each thread (the size of the NFA).
+  private ThreadLocal<Scratch> scratches =
+    ThreadLocal.withInitial(() -> new Scratch(numberStates));
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: add
+  // Description: parses a pattern and adds it to the automaton (the NFA is
+  //              built when the automaton is used for the first time).
+  //              Only a subset of the syntax of java.util.regex is supported
+  //              (no back references, lookarounds, flags, boundaries,
+  //              properties, possessive quantifiers, nested classes...).
+  //              The automaton cannot be modified once it has been used.
+  //
+  // Parameters:
+  //   - p: compiled pattern (it has to be a valid pattern).
+  //
+  // Returns: index of the pattern in the automaton; -1 if the pattern uses
+  //          features which are not supported.
+  public int add(Pattern p)
+  {
+    if (p.flags() != 0) {
+      return -1;
+    }
+
+    pattern = p.pattern();
+    pos = 0;
+
+    try {
+      Node node = parseAlternation();
+      if (pos != pattern.length()) {
+        throw new UnsupportedPatternException();
+      }
+
+      trees.add(node);
+      patterns.add(p);
+
+      return patterns.size() - 1;
+    } catch (UnsupportedPatternException | RuntimeException e) {
+      return -1;
+    } finally {
+      pattern = null;
+    }
+  }
+
+
+  // Method: size
+  // Description: returns the number of patterns of the automaton.
+  // Parameters: none.
+  // Returns: number of patterns.
+  public int size()
+  {
+    return patterns.size();
+  }
+
+
+  // Method: getPattern
+  // Description: returns a pattern of the automaton.
+  // Parameters:
+  //   - index: index of the pattern.
+  //
+  // Returns: pattern.
+  public Pattern getPattern(int index)
+  {
+    return patterns.get(index);
+  }
+
+
+  // Method: match
+  // Description: checks in a single pass over the input whether it matches
+  //              (as java.util.regex.Matcher.matches()) one of the patterns.
+  //              The states of the DFA (sets of NFA states) are built on
+  //              demand and their transitions for ASCII characters are
+  //              cached. If the input contains supplementary characters, the
+  //              patterns are checked one by one.
+  //
+  // Parameters:
+  //   - input: input to be checked.
+  //
+  // Returns: index of the first matching pattern; -1 if none matches.
+  public int match(String input)
+  {
+    if (patterns.isEmpty()) {
+      return -1;
+    }
+
+    DfaState state = start;
+    if (state == null) {
+      state = initialize();
+    }
+
+    int len = input.length();
+    for (int i = 0; i < len; i++) {
+      char c = input.charAt(i);
+
+      DfaState next;
+      if ((c >= ALPHABET_SIZE) || ((next = state.next[c]) == null)) {
+        if (Character.isSurrogate(c)) {
+          // The patterns work on code points.
+          return matchPatterns(input);
+        }
+
+        next = step(state, c);
+      }
+
+      if ((state = next) == dead) {
+        return -1;
+      }
+    }
+
+    return state.accept;
+  }
+
+
+  // Method: initialize
+  // Description: builds the NFA (Thompson construction) from the prefix tree
+  //              of the patterns and creates the start and the dead states
+  //              of the DFA.
+  //
+  // Parameters: none.
+  // Returns: start state.
+  private synchronized DfaState initialize()
+  {
+    if (start == null) {
+      Prefix root = new Prefix(null);
+
+      List<Node> sequence = new ArrayList<Node>();
+      for (int i = 0; i < trees.size(); i++) {
+        sequence.clear();
+        flatten(trees.get(i), sequence);
+
+        Prefix prefix = root;
+        for (Node element : sequence) {
+          prefix = prefix.child(element);
+        }
+
+        if (prefix.pattern == -1) {
+          prefix.pattern = i;
+        }
+      }
+
+      trees = null;
+
+      int s = compile(root);
+
+      dfaStates = new ConcurrentHashMap<StateSet, DfaState>();
+
+      dead = getDfaState(new int[0]);
+
+      Scratch scratch = scratches.get();
+      scratch.visited = 0;
+
+      // closure() might reallocate the set.
+      int size = closure(s, scratch, 0);
+      start = getDfaState(sort(scratch.set, size));
+    }
+
+    return start;
+  }
+
+
+  // Method: step
+  // Description: computes the transition of a DFA state for a character and
+  //              caches it (if the character is ASCII).
+  //
+  // Parameters:
+  //   - state: DFA state.
+  //   - c: character.
+  //
+  // Returns: next DFA state.
+  private DfaState step(DfaState state, char c)
+  {
+    Scratch scratch = scratches.get();
+    scratch.visited = 0;
+
+    int size = 0;
+
+    for (int s : state.nfaStates) {
+      if ((types[s] == CHAR) && (contains(ranges[s], c))) {
+        size = closure(out1[s], scratch, size);
+      }
+    }
+
+    DfaState next = (size == 0) ? dead : getDfaState(sort(scratch.set, size));
+
+    if (c < ALPHABET_SIZE) {
+      state.next[c] = next;
+    }
+
+    return next;
+  }
+
+
+  // Method: getDfaState
+  // Description: returns the DFA state for a set of NFA states, creating and
+  //              caching it if needed. If the limits of the cache have been
+  //              reached, it is flushed first.
+  //
+  // Parameters:
+  //   - set: sorted set of NFA states.
+  //
+  // Returns: DFA state.
+  private DfaState getDfaState(int[] set)
+  {
+    StateSet key = new StateSet(set);
+
+    DfaState state;
+    if ((state = dfaStates.get(key)) != null) {
+      return state;
+    }
+
+    int accept = -1;
+    for (int s : set) {
+      if ((types[s] == MATCH) && ((accept == -1) || (out1[s] < accept))) {
+        accept = out1[s];
+      }
+    }
+
+    if ((numberDfaStates.get() >= MAX_DFA_STATES) ||
+        (numberDfaNfaStates.get() >= MAX_DFA_NFA_STATES)) {
+      flush();
+    }
+
+    state = new DfaState(set, accept);
+
+    DfaState current;
+    if ((current = dfaStates.putIfAbsent(key, state)) != null) {
+      return current;
+    }
+
+    numberDfaStates.incrementAndGet();
+    numberDfaNfaStates.addAndGet(set.length);
+
+    return state;
+  }
+
+
+  // Method: flush
+  // Description: empties the cache of DFA states (the states in use by other
+  //              threads remain valid). The start and the dead states are
+  //              kept, without their transitions.
+  //
+  // Parameters: none.
+  // Returns: nothing.
+  private synchronized void flush()
+  {
+    if ((numberDfaStates.get() < MAX_DFA_STATES) &&
+        (numberDfaNfaStates.get() < MAX_DFA_NFA_STATES)) {
+      // Already flushed by another thread.
+      return;
+    }
+
+    ConcurrentHashMap<StateSet, DfaState> states =
+      new ConcurrentHashMap<StateSet, DfaState>();
+
+    for (DfaState state : new DfaState[] {dead, start}) {
+      if (state != null) {
+        Arrays.fill(state.next, null);
+        states.put(new StateSet(state.nfaStates), state);
+      }
+    }
+
+    numberDfaStates.set(states.size());
+    numberDfaNfaStates.set((start != null) ? start.nfaStates.length : 0);
+
+    dfaStates = states;
+  }
+
+
+  // Method: closure
+  // Description: adds to the set of the scratch the CHAR and MATCH states
+  //              reachable from the state "s" without consuming characters.
+  //
+  // Parameters:
+  //   - s: NFA state.
+  //   - scratch: NFA states already visited and set of NFA states.
+  //   - size: number of states in the set.
+  //
+  // Returns: new number of states in the set.
+  private int closure(int s, Scratch scratch, int size)
+  {
+    while (scratch.visit(s)) {
+      if (types[s] != SPLIT) {
+        scratch.set[size++] = s;
+        return size;
+      }
+
+      size = closure(out1[s], scratch, size);
+      s = out2[s];
+    }
+
+    return size;
+  }
+
+
+  // Method: matchPatterns
+  // Description: checks the input against each pattern.
+  // Parameters:
+  //   - input: input to be checked.
+  //
+  // Returns: index of the first matching pattern; -1 if none matches.
+  private int matchPatterns(String input)
+  {
+    for (int i = 0; i < patterns.size(); i++) {
+      if (patterns.get(i).matcher(input).matches()) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+
+  // Method: flatten
+  // Description: appends the elements of a concatenation to a sequence.
+  // Parameters:
+  //   - node: node of the syntax tree.
+  //   - sequence: sequence of elements.
+  //
+  // Returns: nothing.
+  private static void flatten(Node node, List<Node> sequence)
+  {
+    if (node.type == Node.CONCAT) {
+      for (Node child : node.children) {
+        flatten(child, sequence);
+      }
+    } else {
+      sequence.add(node);
+    }
+  }
+
+
+  // Method: compile
+  // Description: compiles the subtree of a node of the prefix tree into NFA
+  //              states: the alternatives are the pattern ending at the node
+  //              (if any) and its children (in order).
+  //
+  // Parameters:
+  //   - prefix: node of the prefix tree.
+  //
+  // Returns: first NFA state of the alternatives.
+  private int compile(Prefix prefix)
+  {
+    int s = -1;
+
+    for (int i = prefix.children.size() - 1; i >= 0; i--) {
+      Prefix child = prefix.children.get(i);
+
+      int first = compile(child.element, compile(child));
+      s = (s == -1) ? first : newState(SPLIT, first, s, null);
+    }
+
+    if (prefix.pattern >= 0) {
+      int match = newState(MATCH, prefix.pattern, -1, null);
+      s = (s == -1) ? match : newState(SPLIT, match, s, null);
+    }
+
+    return s;
+  }
+
+
+  // Method: compile
+  // Description: compiles a node of the syntax tree into NFA states.
+  // Parameters:
+  //   - node: node to be compiled.
+  //   - next: NFA state to go to after the node.
+  //
+  // Returns: first NFA state of the node.
+  private int compile(Node node, int next)
+  {
+    switch (node.type) {
+      case Node.CHARS:
+        return newState(CHAR, next, -1, node.ranges);
+      case Node.CONCAT:
+        for (int i = node.children.size() - 1; i >= 0; i--) {
+          next = compile(node.children.get(i), next);
+        }
+
+        return next;
+      case Node.ALTERNATION:
+        {
+          int s = compile(node.children.get(node.children.size() - 1), next);
+
+          for (int i = node.children.size() - 2; i >= 0; i--) {
+            s = newState(SPLIT, compile(node.children.get(i), next), s, null);
+          }
+
+          return s;
+        }
+      default:
+        {
+          Node child = node.children.get(0);
+
+          int s;
+          if (node.max < 0) {
+            // Loop.
+            s = newState(SPLIT, -1, next, null);
+
+            // The arrays of the NFA might be reallocated by compile().
+            int body = compile(child, s);
+            out1[s] = body;
+          } else {
+            s = next;
+            for (int i = node.min; i < node.max; i++) {
+              s = newState(SPLIT, compile(child, s), next, null);
+            }
+          }
+
+          for (int i = 0; i < node.min; i++) {
+            s = compile(child, s);
+          }
+
+          return s;
+        }
+    }
+  }
+
+
+  // Method: newState
+  // Description: adds a state to the NFA.
+  // Parameters:
+  //   - type: type of state.
+  //   - o1: first transition (index of the pattern for MATCH states).
+  //   - o2: second transition (SPLIT states).
+  //   - r: ranges of characters (CHAR states).
+  //
+  // Returns: index of the new state.
+  private int newState(byte type, int o1, int o2, int[] r)
+  {
+    if (numberStates == types.length) {
+      int capacity = numberStates * 2;
+
+      types = Arrays.copyOf(types, capacity);
+      out1 = Arrays.copyOf(out1, capacity);
+      out2 = Arrays.copyOf(out2, capacity);
+      ranges = Arrays.copyOf(ranges, capacity);
+    }
+
+    types[numberStates] = type;
+    out1[numberStates] = o1;
+    out2[numberStates] = o2;
+    ranges[numberStates] = r;
+
+    return numberStates++;
+  }
+
+
+  // Method: parseAlternation
+  // Description: parses: concatenation ('|' concatenation)*
+  // Parameters: none.
+  // Returns: node.
+  private Node parseAlternation() throws UnsupportedPatternException
+  {
+    Node node = parseConcatenation();
+
+    if ((pos < pattern.length()) && (pattern.charAt(pos) == '|')) {
+      Node alternation = new Node(Node.ALTERNATION);
+      alternation.children.add(node);
+
+      while ((pos < pattern.length()) && (pattern.charAt(pos) == '|')) {
+        pos++;
+        alternation.children.add(parseConcatenation());
+      }
+
+      return alternation;
+    }
+
+    return node;
+  }
+
+
+  // Method: parseConcatenation
+  // Description: parses a sequence of repetitions.
+  // Parameters: none.
+  // Returns: node.
+  private Node parseConcatenation() throws UnsupportedPatternException
+  {
+    Node concat = new Node(Node.CONCAT);
+
+    while (pos < pattern.length()) {
+      char c = pattern.charAt(pos);
+
+      if ((c == '|') || (c == ')')) {
+        break;
+      }
+
+      if (c == '^') {
+        // Only supported at the beginning of the pattern.
+        if (pos != 0) {
+          throw new UnsupportedPatternException();
+        }
+
+        pos++;
+      } else if (c == '$') {
+        // Only supported at the end of the pattern.
+        if (pos != pattern.length() - 1) {
+          throw new UnsupportedPatternException();
+        }
+
+        pos++;
+      } else if ((c == '\\') &&
+                 (pos + 1 < pattern.length()) &&
+                 (pattern.charAt(pos + 1) == 'Q')) {
+        // Quotation.
+        int end = pattern.indexOf("\\E", pos + 2);
+        if (end < 0) {
+          end = pattern.length();
+        }
+
+        for (int i = pos + 2; i < end; i++) {
+          concat.children.add(new Node(single(pattern.charAt(i))));
+        }
+
+        pos = Math.min(end + 2, pattern.length());
+      } else {
+        concat.children.add(parseRepetition());
+      }
+    }
+
+    return concat;
+  }
+
+
+  // Method: parseRepetition
+  // Description: parses an atom followed by quantifiers.
+  // Parameters: none.
+  // Returns: node.
+  private Node parseRepetition() throws UnsupportedPatternException
+  {
+    Node node = parseAtom();
+
+    while (pos < pattern.length()) {
+      char c = pattern.charAt(pos);
+
+      int min, max;
+      if (c == '*') {
+        min = 0;
+        max = -1;
+        pos++;
+      } else if (c == '+') {
+        min = 1;
+        max = -1;
+        pos++;
+      } else if (c == '?') {
+        min = 0;
+        max = 1;
+        pos++;
+      } else if (c == '{') {
+        pos++;
+
+        min = parseNumber();
+        if (pattern.charAt(pos) == ',') {
+          pos++;
+
+          max = (pattern.charAt(pos) == '}') ? -1 : parseNumber();
+        } else {
+          max = min;
+        }
+
+        if ((pattern.charAt(pos) != '}') || ((max >= 0) && (max < min))) {
+          throw new UnsupportedPatternException();
+        }
+
+        pos++;
+      } else {
+        break;
+      }
+
+      if (pos < pattern.length()) {
+        if (pattern.charAt(pos) == '?') {
+          // Reluctant quantifier: same result for matches().
+          pos++;
+        } else if (pattern.charAt(pos) == '+') {
+          // Possessive quantifier.
+          throw new UnsupportedPatternException();
+        }
+      }
+
+      Node repeat = new Node(Node.REPEAT);
+      repeat.children.add(node);
+      repeat.min = min;
+      repeat.max = max;
+
+      node = repeat;
+    }
+
+    return node;
+  }
+
+
+  // Method: parseNumber
+  // Description: parses the number of a bounded quantifier.
+  // Parameters: none.
+  // Returns: number.
+  private int parseNumber() throws UnsupportedPatternException
+  {
+    int n = 0;
+    int start = pos;
+
+    while ((pos < pattern.length()) &&
+           (Character.isDigit(pattern.charAt(pos)))) {
+      n = n * 10 + (pattern.charAt(pos++) - '0');
+
+      if (n > MAX_REPETITIONS) {
+        throw new UnsupportedPatternException();
+      }
+    }
+
+    if ((pos == start) || (pos == pattern.length())) {
+      throw new UnsupportedPatternException();
+    }
+
+    return n;
+  }
+
+
+  // Method: parseAtom
+  // Description: parses a group, a character class, '.', an escape sequence
+  //              or a literal character.
+  //
+  // Parameters: none.
+  // Returns: node.
+  private Node parseAtom() throws UnsupportedPatternException
+  {
+    char c = pattern.charAt(pos++);
+
+    switch (c) {
+      case '(':
+        if ((pos < pattern.length()) && (pattern.charAt(pos) == '?')) {
+          if (pattern.startsWith("?:", pos)) {
+            pos += 2;
+          } else if ((pattern.startsWith("?<", pos)) &&
+                     (pos + 2 < pattern.length()) &&
+                     (Character.isLetter(pattern.charAt(pos + 2)))) {
+            // Named group.
+            pos = pattern.indexOf('>', pos) + 1;
+          } else {
+            // Lookaround, flags, atomic group...
+            throw new UnsupportedPatternException();
+          }
+        }
+
+        {
+          Node node = parseAlternation();
+
+          if ((pos == pattern.length()) || (pattern.charAt(pos) != ')')) {
+            throw new UnsupportedPatternException();
+          }
+
+          pos++;
+
+          return node;
+        }
+      case '[':
+        return new Node(parseClass());
+      case '.':
+        return new Node(ANY_CHAR);
+      case '\\':
+        {
+          int[] r;
+          if ((r = parsePredefinedClass()) != null) {
+            return new Node(r);
+          }
+
+          return new Node(single(parseEscape()));
+        }
+      case '*':
+      case '+':
+      case '?':
+      case '{':
+        throw new UnsupportedPatternException();
+      default:
+        return new Node(single(c));
+    }
+  }
+
+
+  // Method: parseClass
+  // Description: parses a character class (after '[').
+  // Parameters: none.
+  // Returns: sorted ranges of characters.
+  private int[] parseClass() throws UnsupportedPatternException
+  {
+    boolean negated = false;
+    if ((pos < pattern.length()) && (pattern.charAt(pos) == '^')) {
+      negated = true;
+      pos++;
+    }
+
+    if ((pos < pattern.length()) && (pattern.charAt(pos) == ']')) {
+      throw new UnsupportedPatternException();
+    }
+
+    List<int[]> list = new ArrayList<int[]>();
+
+    while (true) {
+      if (pos >= pattern.length()) {
+        throw new UnsupportedPatternException();
+      }
+
+      char c = pattern.charAt(pos++);
+
+      if (c == ']') {
+        break;
+      }
+
+      if ((c == '[') ||
+          ((c == '&') &&
+           (pos < pattern.length()) &&
+           (pattern.charAt(pos) == '&'))) {
+        // Union or intersection.
+        throw new UnsupportedPatternException();
+      }
+
+      int lo;
+      if (c == '\\') {
+        int[] r;
+        if ((r = parsePredefinedClass()) != null) {
+          if ((pos < pattern.length()) && (pattern.charAt(pos) == '-') &&
+              (pos + 1 < pattern.length()) &&
+              (pattern.charAt(pos + 1) != ']')) {
+            throw new UnsupportedPatternException();
+          }
+
+          list.add(r);
+          continue;
+        }
+
+        lo = parseEscape();
+      } else {
+        lo = c;
+      }
+
+      int hi = lo;
+
+      if ((pos + 1 < pattern.length()) &&
+          (pattern.charAt(pos) == '-') &&
+          (pattern.charAt(pos + 1) != ']')) {
+        pos++;
+
+        c = pattern.charAt(pos++);
+        if ((c == '[') || (c == '&')) {
+          throw new UnsupportedPatternException();
+        }
+
+        if (c == '\\') {
+          if (parsePredefinedClass() != null) {
+            throw new UnsupportedPatternException();
+          }
+
+          hi = parseEscape();
+        } else {
+          hi = c;
+        }
+
+        if (hi < lo) {
+          throw new UnsupportedPatternException();
+        }
+      }
+
+      list.add(new int[] {lo, hi});
+    }
+
+    int[] r = union(list);
+
+    return negated ? complement(r) : r;
+  }
+
+
+  // Method: parsePredefinedClass
+  // Description: parses a predefined character class (after '\').
+  // Parameters: none.
+  // Returns: sorted ranges of characters; null if the escape sequence is not
+  //          a predefined character class.
+  private int[] parsePredefinedClass()
+  {
+    if (pos < pattern.length()) {
+      int[] r;
+
+      switch (pattern.charAt(pos)) {
+        case 'd':
+          r = DIGIT;
+          break;
+        case 'D':
+          r = complement(DIGIT);
+          break;
+        case 'w':
+          r = WORD;
+          break;
+        case 'W':
+          r = complement(WORD);
+          break;
+        case 's':
+          r = SPACE;
+          break;
+        case 'S':
+          r = complement(SPACE);
+          break;
+        default:
+          return null;
+      }
+
+      pos++;
+
+      return r;
+    }
+
+    return null;
+  }
+
+
+  // Method: parseEscape
+  // Description: parses an escaped character (after '\').
+  // Parameters: none.
+  // Returns: character.
+  private int parseEscape() throws UnsupportedPatternException
+  {
+    if (pos == pattern.length()) {
+      throw new UnsupportedPatternException();
+    }
+
+    char c = pattern.charAt(pos++);
+
+    switch (c) {
+      case 't':
+        return '\t';
+      case 'n':
+        return '\n';
+      case 'r':
+        return '\r';
+      case 'f':
+        return '\f';
+      case 'a':
+        return '\u0007';
+      case 'e':
+        return '\u001b';
+      case 'x':
+        if ((pos + 2 <= pattern.length()) && (pattern.charAt(pos) != '{')) {
+          return parseHex(2);
+        }
+
+        throw new UnsupportedPatternException();
+      case 'u':
+        if (pos + 4 <= pattern.length()) {
+          int u = parseHex(4);
+          if (!Character.isSurrogate((char) u)) {
+            return u;
+          }
+        }
+
+        throw new UnsupportedPatternException();
+      default:
+        if ((c < 0x80) && (!Character.isLetterOrDigit(c))) {
+          return c;
+        }
+
+        // Back references, boundaries, properties...
+        throw new UnsupportedPatternException();
+    }
+  }
+
+
+  // Method: parseHex
+  // Description: parses a hexadecimal number.
+  // Parameters:
+  //   - digits: number of digits.
+  //
+  // Returns: number.
+  private int parseHex(int digits) throws UnsupportedPatternException
+  {
+    int n = 0;
+
+    for (int i = 0; i < digits; i++) {
+      int d;
+      if ((d = Character.digit(pattern.charAt(pos++), 16)) < 0) {
+        throw new UnsupportedPatternException();
+      }
+
+      n = (n << 4) | d;
+    }
+
+    return n;
+  }
+
+
+  // Method: single
+  // Description: returns the ranges of a single character.
+  // Parameters:
+  //   - c: character.
+  //
+  // Returns: ranges of characters.
+  private static int[] single(int c) throws UnsupportedPatternException
+  {
+    if (Character.isSurrogate((char) c)) {
+      throw new UnsupportedPatternException();
+    }
+
+    return new int[] {c, c};
+  }
+
+
+  // Method: union
+  // Description: merges a list of ranges of characters.
+  // Parameters:
+  //   - list: list of ranges.
+  //
+  // Returns: sorted and disjoint ranges.
+  private static int[] union(List<int[]> list)
+  {
+    List<int[]> pairs = new ArrayList<int[]>();
+    for (int[] r : list) {
+      for (int i = 0; i < r.length; i += 2) {
+        pairs.add(new int[] {r[i], r[i + 1]});
+      }
+    }
+
+    pairs.sort((a, b) -> Integer.compare(a[0], b[0]));
+
+    int[] result = new int[pairs.size() * 2];
+    int n = 0;
+
+    for (int[] p : pairs) {
+      if ((n > 0) && (p[0] <= result[n - 1] + 1)) {
+        result[n - 1] = Math.max(result[n - 1], p[1]);
+      } else {
+        result[n++] = p[0];
+        result[n++] = p[1];
+      }
+    }
+
+    return Arrays.copyOf(result, n);
+  }
+
+
+  // Method: complement
+  // Description: returns the complement of sorted and disjoint ranges.
+  // Parameters:
+  //   - r: ranges of characters.
+  //
+  // Returns: complement.
+  private static int[] complement(int[] r)
+  {
+    int[] result = new int[r.length + 2];
+    int n = 0;
+    int next = 0;
+
+    for (int i = 0; i < r.length; i += 2) {
+      if (r[i] > next) {
+        result[n++] = next;
+        result[n++] = r[i] - 1;
+      }
+
+      next = r[i + 1] + 1;
+    }
+
+    if (next <= 0xffff) {
+      result[n++] = next;
+      result[n++] = 0xffff;
+    }
+
+    return Arrays.copyOf(result, n);
+  }
+
+
+  // Method: contains
+  // Description: checks whether the ranges contain the character.
+  // Parameters:
+  //   - r: sorted ranges of characters.
+  //   - c: character.
+  //
+  // Returns: true: the ranges contain the character; false: otherwise.
+  private static boolean contains(int[] r, char c)
+  {
+    for (int i = 0; i < r.length; i += 2) {
+      if (c < r[i]) {
+        return false;
+      }
+
+      if (c <= r[i + 1]) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+
+  // Method: sort
+  // Description: returns the sorted set of NFA states.
+  // Parameters:
+  //   - set: set of NFA states.
+  //   - size: number of states in the set.
+  //
+  // Returns: sorted set.
+  private static int[] sort(int[] set, int size)
+  {
+    int[] sorted = Arrays.copyOf(set, size);
+    Arrays.sort(sorted);
+
+    return sorted;
+  }
+}
@@ -0,0 +1,345 @@
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.MalformedURLException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+public class Preconnector {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // The servers of the URLs which can be visited in the next
+  // PRECONNECT_HORIZON milliseconds are warmed up, they are looked for every
+  // PRECONNECT_INTERVAL milliseconds.
+  private static final long PRECONNECT_INTERVAL = 250; // Milliseconds.
+  private static final long PRECONNECT_HORIZON = 1000; // Milliseconds.
+
+  // Maximum number of URLs checked in each round (the next URLs to be
+  // visited).
+  private static final int MAX_PRECONNECT_URLS = 16;
+
+  // A server is not warmed up again during WARM_INTERVAL milliseconds (its
+  // TLS session can be resumed meanwhile).
+  private static final long WARM_INTERVAL = 60 * 1000; // Milliseconds.
+
+  // Maximum number of servers remembered as warmed up.
+  private static final int MAX_WARMED_SERVERS = 16 * 1024;
+
+  // Servers waiting to be warmed up per thread.
+  private static final int QUEUE_SIZE_PER_THREAD = 16;
+
+  // Time to wait for the session tickets after a TLS 1.3 handshake (they are
+  // sent by the server after the handshake).
+  private static final int TICKET_WAIT = 200; // Milliseconds.
+
+  private static final int HTTPS_PORT = 443;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Data members.                                                        ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private int numberThreads = 0;
+  private int connectTimeout = 0; // Milliseconds.
+  private int readTimeout = 0; // Milliseconds.
+
+  private DnsResolver dnsResolver = null;
+  private TlsContext tlsContext = null;
+  private Database database = null;
+
+  // Same factory as the HTTPS connections, so they share the TLS sessions.
+  private SSLSocketFactory sslSocketFactory = null;
+
+  private ThreadPoolExecutor executor = null;
+
+  private Thread scheduler = null;
+
+  private volatile boolean running = false;
+
+  // Last time each server ("<host>:<port>") was warmed up
+  // (System.currentTimeMillis()), only used by the scheduler thread.
+  private HashMap<String, Long> warmed = new HashMap<String, Long>();
+
+  private Metrics metrics = null;
+  private Histogram connectLatency = null;
+  private Histogram handshakeLatency = null;
+  private LongAdder warmedServers = null;
+  private LongAdder skippedServers = null;
+  private LongAdder preconnectErrors = null;
+
+  private Log log = null;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: Constructor
+  // Description: sets the data members.
+  // Parameters:
+  //   - numberThreads: number of threads warming up the servers.
+  //   - connectTimeout: connect timeout in milliseconds (0: none).
+  //   - readTimeout: read timeout of the TLS handshake in milliseconds (0:
+  //                  none).
+  //   - dnsResolver: DNS resolver object.
+  //   - tlsContext: TLS context of the HTTPS connections.
+  //   - database: database where to look for the URLs about to be visited.
+  //   - metrics: metrics object.
+  //   - log: logger object.
+  //
+  // Returns: nothing.
+  public Preconnector(int numberThreads,
+                      int connectTimeout,
+                      int readTimeout,
+                      DnsResolver dnsResolver,
+                      TlsContext tlsContext,
+                      Database database,
+                      Metrics metrics,
+                      Log log)
+  {
+    this.numberThreads = numberThreads;
+    this.connectTimeout = connectTimeout;
+    this.readTimeout = readTimeout;
+    this.dnsResolver = dnsResolver;
+    this.tlsContext = tlsContext;
+    this.database = database;
+    this.metrics = metrics;
+    this.log = log;
+  }
+
+
+  // Method: initialize
+  // Description: gets the metrics and starts the threads warming up the
+  //              servers and the scheduler thread.
+  //
+  // Parameters: none.
+  // Returns: true.
+  public boolean initialize()
+  {
+    connectLatency = metrics.latency("preconnect.connect");
+    handshakeLatency = metrics.latency("preconnect.handshake");
+    warmedServers = metrics.counter("preconnect.warmed");
+    skippedServers = metrics.counter("preconnect.skipped");
+    preconnectErrors = metrics.counter("preconnect.errors");
+
+    sslSocketFactory = tlsContext.getSocketFactory();
+
+    AtomicInteger count = new AtomicInteger();
+
+    // The servers which don't fit in the queue are skipped.
+    executor = new ThreadPoolExecutor(
+                 numberThreads,
+                 numberThreads,
+                 0,
+                 TimeUnit.MILLISECONDS,
+                 new ArrayBlockingQueue<Runnable>(numberThreads *
+                                                  QUEUE_SIZE_PER_THREAD),
+                 r -> {
+                   Thread thread = new Thread(r,
+                                              "Preconnector-" +
+                                              count.getAndIncrement());
+
+                   thread.setDaemon(true);
+                   return thread;
+                 },
+                 (r, e) -> skippedServers.increment());
+
+    running = true;
+
+    scheduler = new Thread(this::schedule, "Preconnect scheduler");
+    scheduler.setDaemon(true);
+    scheduler.start();
+
+    log.log(Level.INFO,
+            "Started " + numberThreads + " preconnect thread(s).");
+
+    return true;
+  }
+
+
+  // Method: shutdown
+  // Description: stops the scheduler thread and the threads warming up the
+  //              servers.
+  //
+  // Parameters: none.
+  // Returns: nothing.
+  public void shutdown()
+  {
+    running = false;
+
+    scheduler.interrupt();
+
+    try {
+      scheduler.join();
+    } catch (InterruptedException e) {
+    }
+
+    executor.shutdownNow();
+  }
+
+
+  // Method: schedule
+  // Description: body of the scheduler thread: queues the HTTPS servers of
+  //              the URLs which can be visited in the next
+  //              PRECONNECT_HORIZON milliseconds, unless they have been
+  //              warmed up recently.
+  //
+  // Parameters: none.
+  // Returns: nothing.
+  private void schedule()
+  {
+    do {
+      try {
+        Thread.sleep(PRECONNECT_INTERVAL);
+      } catch (InterruptedException e) {
+        return;
+      }
+
+      List<String> urls;
+      if ((urls = database.getUpcomingUrls(PRECONNECT_HORIZON,
+                                           MAX_PRECONNECT_URLS)) == null) {
+        continue;
+      }
+
+      long now = System.currentTimeMillis();
+
+      for (String urlStr : urls) {
+        URL url;
+        try {
+          url = new URL(urlStr);
+        } catch (MalformedURLException e) {
+          continue;
+        }
+
+        // Only the TLS handshake can be reused by the connections.
+        if (!url.getProtocol().equalsIgnoreCase("https")) {
+          continue;
+        }
+
+        String host = url.getHost();
+        int port = (url.getPort() != -1) ? url.getPort() : HTTPS_PORT;
+        String server = host + ":" + port;
+
+        Long last;
+        if (((last = warmed.get(server)) != null) &&
+            (now - last < WARM_INTERVAL)) {
+          continue;
+        }
+
+        warmed.put(server, now);
+
+        executor.execute(() -> warmUp(host, port));
+      }
+
+      // Forget the servers warmed up long ago.
+      if (warmed.size() > MAX_WARMED_SERVERS) {
+        Iterator<Map.Entry<String, Long>> it = warmed.entrySet().iterator();
+        while (it.hasNext()) {
+          if (now - it.next().getValue() >= WARM_INTERVAL) {
+            it.remove();
+          }
+        }
+      }
+    } while (running);
+  }
+
+
+  // Method: warmUp
+  // Description: warms up an HTTPS server: resolves the host, connects and
+  //              performs the TLS handshake with the same socket factory and
+  //              parameters as the HTTPS connections. The TLS session is
+  //              kept in the client session cache, so the connection of the
+  //              fetch performs an abbreviated handshake. The socket is then
+  //              closed: a connection cannot be handed over to
+  //              HttpURLConnection.
+  //
+  // Parameters:
+  //   - host: host.
+  //   - port: port.
+  //
+  // Returns: nothing.
+  private void warmUp(String host, int port)
+  {
+    try {
+      InetAddress[] addresses = dnsResolver.resolve(host, connectTimeout);
+
+      try (Socket socket = new Socket()) {
+        long start = System.nanoTime();
+        socket.connect(new InetSocketAddress(addresses[0], port),
+                       connectTimeout);
+        connectLatency.recordSince(start);
+
+        try (SSLSocket sslSocket = (SSLSocket) sslSocketFactory.createSocket(
+                                                 socket,
+                                                 host,
+                                                 port,
+                                                 true)) {
+          // Same endpoint identification as the HTTPS connections (a
+          // session can only be resumed with the same one).
+          SSLParameters parameters = sslSocket.getSSLParameters();
+          parameters.setEndpointIdentificationAlgorithm("HTTPS");
+          sslSocket.setSSLParameters(parameters);
+
+          sslSocket.setSoTimeout(readTimeout);
+
+          start = System.nanoTime();
+          sslSocket.startHandshake();
+          handshakeLatency.recordSince(start);
+
+          // Receive the session tickets (TLS 1.3).
+          if (sslSocket.getSession().getProtocol().equals("TLSv1.3")) {
+            sslSocket.setSoTimeout(TICKET_WAIT);
+
+            try {
+              sslSocket.getInputStream().read();
+            } catch (SocketTimeoutException e) {
+            }
+          }
+        }
+      }
+
+      warmedServers.increment();
+
+      log.log(Level.FINEST, "Warmed up '{0}'.", host + ":" + port);
+    } catch (IOException e) {
+      log.log(Level.FINE,
+              "Cannot warm up '" +
+              host +
+              ":" +
+              port +
+              "' (" +
+              e.toString() +
+              ").");
+
+      preconnectErrors.increment();
+    }
+  }
+}
@@ -0,0 +1,147 @@
+public class SimHash {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+  private static final long FNV_PRIME = 0x100000001b3L;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Data members.                                                        ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Sum of the bits of the hashes of the features (+1 if the bit is set, -1
+  // otherwise).
+  private int[] counts = new int[64];
+
+  private int features = 0;
+
+  // Hash of the word being read (0: between words).
+  private long word = 0;
+
+  // Hash of the previous word (0: none).
+  private long previousWord = 0;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: addText
+  // Description: adds the words of a text. The features of the fingerprint
+  //              are the pairs of consecutive words (lowercase letters and
+  //              digits), so the order of the words is taken into account.
+  //              A word can continue in the next call.
+  //
+  // Parameters:
+  //   - data: text.
+  //   - off: offset of the text.
+  //   - len: length of the text.
+  //
+  // Returns: nothing.
+  public void addText(char[] data, int off, int len)
+  {
+    for (int i = off; i < off + len; i++) {
+      char c = data[i];
+
+      if (Character.isLetterOrDigit(c)) {
+        if (word == 0) {
+          word = FNV_OFFSET_BASIS;
+        }
+
+        word = (word ^ Character.toLowerCase(c)) * FNV_PRIME;
+      } else {
+        endWord();
+      }
+    }
+  }
+
+
+  // Method: endWord
+  // Description: ends the word being read (e.g. at the end of a block of
+  //              text), the pair it forms with the previous word is added
+  //              as a feature.
+  //
+  // Parameters: none.
+  // Returns: nothing.
+  public void endWord()
+  {
+    if (word == 0) {
+      return;
+    }
+
+    if (previousWord != 0) {
+      long hash = mix(previousWord * 31 + word);
+
+      for (int bit = 0; bit < 64; bit++) {
+        counts[bit] += (((hash >>> bit) & 1) != 0) ? 1 : -1;
+      }
+
+      features++;
+    }
+
+    previousWord = word;
+    word = 0;
+  }
+
+
+  // Method: getFeatures
+  // Description: returns the number of features (pairs of words).
+  // Parameters: none.
+  // Returns: number of features.
+  public int getFeatures()
+  {
+    return features;
+  }
+
+
+  // Method: getFingerprint
+  // Description: returns the fingerprint: each bit is set if it is set in
+  //              most of the hashes of the features.
+  //
+  // Parameters: none.
+  // Returns: fingerprint.
+  public long getFingerprint()
+  {
+    endWord();
+
+    long fingerprint = 0;
+
+    for (int bit = 0; bit < 64; bit++) {
+      if (counts[bit] > 0) {
+        fingerprint |= 1L << bit;
+      }
+    }
+
+    return fingerprint;
+  }
+
+
+  // Method: mix
+  // Description: spreads the bits of a hash (finalizer of SplitMix64), so
+  //              every bit of the fingerprint depends on the whole feature.
+  //
+  // Parameters:
+  //   - h: hash.
+  //
+  // Returns: mixed hash.
+  private static long mix(long h)
+  {
+    h = (h ^ (h >>> 30)) * 0xbf58476d1ce4e5b9L;
+    h = (h ^ (h >>> 27)) * 0x94d049bb133111ebL;
+    return h ^ (h >>> 31);
+  }
+}
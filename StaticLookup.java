@@ -0,0 +1,118 @@
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+public class StaticLookup implements DnsResolver.Lookup {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Data members.                                                        ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Addresses of the known hosts (the other hosts are unknown).
+  private ConcurrentHashMap<String, InetAddress[]> hosts =
+    new ConcurrentHashMap<String, InetAddress[]>();
+
+  // Simulated latency of the lookups.
+  private volatile long delay = 0; // Milliseconds.
+
+  // Number of lookups performed.
+  private LongAdder lookups = new LongAdder();
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: add
+  // Description: adds a host or replaces its addresses.
+  // Parameters:
+  //   - host: host.
+  //   - addresses: IP addresses (literals, e.g. "192.0.2.1" or "::1").
+  //
+  // Returns: nothing.
+  public void add(String host, String... addresses)
+    throws UnknownHostException
+  {
+    InetAddress[] array = new InetAddress[addresses.length];
+
+    for (int i = 0; i < addresses.length; i++) {
+      // The literals are not resolved.
+      array[i] = InetAddress.getByAddress(
+                   host,
+                   InetAddress.getByName(addresses[i]).getAddress());
+    }
+
+    hosts.put(host, array);
+  }
+
+
+  // Method: remove
+  // Description: removes a host (it becomes unknown).
+  // Parameters:
+  //   - host: host.
+  //
+  // Returns: nothing.
+  public void remove(String host)
+  {
+    hosts.remove(host);
+  }
+
+
+  // Method: setDelay
+  // Description: sets the simulated latency of the lookups.
+  // Parameters:
+  //   - delay: latency in milliseconds (0: none).
+  //
+  // Returns: nothing.
+  public void setDelay(long delay)
+  {
+    this.delay = delay;
+  }
+
+
+  // Method: getLookups
+  // Description: returns the number of lookups performed.
+  // Parameters: none.
+  // Returns: number of lookups.
+  public long getLookups()
+  {
+    return lookups.sum();
+  }
+
+
+  // Method: lookup
+  // Description: returns the addresses of a host after the simulated
+  //              latency.
+  //
+  // Parameters:
+  //   - host: host.
+  //
+  // Returns: addresses of the host.
+  public InetAddress[] lookup(String host) throws UnknownHostException
+  {
+    lookups.increment();
+
+    if (delay > 0) {
+      try {
+        Thread.sleep(delay);
+      } catch (InterruptedException e) {
+        throw new UnknownHostException(host);
+      }
+    }
+
+    InetAddress[] addresses;
+    if ((addresses = hosts.get(host)) == null) {
+      throw new UnknownHostException(host);
+    }
+
+    return addresses.clone();
+  }
+}
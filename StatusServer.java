@@ -0,0 +1,729 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.logging.Level;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+public class StatusServer {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Number of hosts in the list of slowest hosts.
+  private static final int NUMBER_SLOW_HOSTS = 10;
+
+  // Number of hosts with the highest near-duplicate rate in the status.
+  private static final int NUMBER_NEAR_DUPLICATE_HOSTS = 10;
+
+  // Maximum number of URLs which can be injected in a single request.
+  private static final int MAX_INJECTED_URLS = 10 * 1000;
+
+  // Header required by the control actions. A web page cannot send a
+  // custom header to another origin without a CORS preflight, which the
+  // server doesn't accept.
+  private static final String CONTROL_HEADER = "X-Crawler-Control";
+
+  // Seconds to wait for the requests in progress when stopping the server.
+  private static final int STOP_DELAY = 1;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Type declarations.                                                   ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Actions of the crawler which can be invoked from the status server.
+  public interface Control {
+    // Pauses (true) or resumes (false) fetching.
+    void setPaused(boolean paused);
+
+    // Whether fetching is paused.
+    boolean isPaused();
+  }
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Data members.                                                        ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private int port = 0;
+
+  private Control control = null;
+  private Database database = null;
+  private UrlCanonicalizer urlCanonicalizer = null;
+  private ParserPool parserPool = null; // null if the role is "fetcher".
+  private HostStatistics hostStatistics = null;
+  private Metrics metrics = null;
+
+  private HttpServer server = null;
+
+  private long startTime = 0;
+
+  private Log log = null;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: Constructor
+  // Description: sets the data members.
+  // Parameters:
+  //   - port: port where to listen (loopback interface).
+  //   - control: crawler actions (pause / resume).
+  //   - database: database object.
+  //   - urlCanonicalizer: URL canonicalizer object.
+  //   - parserPool: pool of parser threads (null if there is none).
+  //   - hostStatistics: statistics of the requests per host.
+  //   - metrics: metrics object.
+  //   - log: logger object.
+  //
+  // Returns: nothing.
+  public StatusServer(int port,
+                      Control control,
+                      Database database,
+                      UrlCanonicalizer urlCanonicalizer,
+                      ParserPool parserPool,
+                      HostStatistics hostStatistics,
+                      Metrics metrics,
+                      Log log)
+  {
+    this.port = port;
+    this.control = control;
+    this.database = database;
+    this.urlCanonicalizer = urlCanonicalizer;
+    this.parserPool = parserPool;
+    this.hostStatistics = hostStatistics;
+    this.metrics = metrics;
+    this.log = log;
+  }
+
+
+  // Method: initialize
+  // Description: starts the HTTP server. It only listens on the loopback
+  //              interface, as it doesn't authenticate the clients.
+  //              The requests are handled by a single thread.
+  //
+  // Parameters: none.
+  // Returns: true: the server could be started; false: otherwise.
+  public boolean initialize()
+  {
+    try {
+      server = HttpServer.create(
+                 new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+                 0);
+    } catch (IOException e) {
+      log.log(Level.SEVERE,
+              "Cannot start the status server on port " +
+              port +
+              " (" +
+              e.toString() +
+              ").");
+
+      return false;
+    }
+
+    server.createContext("/status", exchange -> handle(exchange, "status"));
+    server.createContext("/metrics", exchange -> handle(exchange, "metrics"));
+    server.createContext("/pause", exchange -> handle(exchange, "pause"));
+    server.createContext("/resume", exchange -> handle(exchange, "resume"));
+
+    server.createContext("/parser-threads",
+                         exchange -> handle(exchange, "parser-threads"));
+
+    server.createContext("/host-interval",
+                         exchange -> handle(exchange, "host-interval"));
+
+    server.createContext("/inject", exchange -> handle(exchange, "inject"));
+
+    startTime = System.currentTimeMillis();
+
+    server.start();
+
+    log.log(Level.INFO,
+            "Status server listening on " +
+            server.getAddress().getAddress().getHostAddress() +
+            ":" +
+            server.getAddress().getPort() +
+            ".");
+
+    return true;
+  }
+
+
+  // Method: shutdown
+  // Description: stops the HTTP server.
+  // Parameters: none.
+  // Returns: nothing.
+  public void shutdown()
+  {
+    server.stop(STOP_DELAY);
+
+    log.log(Level.INFO, "Status server has been stopped.");
+  }
+
+
+  // Method: handle
+  // Description: handles a request: GET for "status" and "metrics", POST for
+  //              the control actions (so they cannot be triggered by simply
+  //              opening a URL).
+  //              The server is only reachable from the local host, but a web
+  //              page open in a browser of the host could still send
+  //              requests to it: the requests with an "Origin" header (sent
+  //              by the browsers) are rejected and the control actions
+  //              require the header CONTROL_HEADER (which a page cannot
+  //              send to another origin, e.g. with a form).
+  //
+  // Parameters:
+  //   - exchange: HTTP exchange.
+  //   - action: name of the endpoint.
+  //
+  // Returns: nothing.
+  private void handle(HttpExchange exchange, String action) throws IOException
+  {
+    try {
+      String method = exchange.getRequestMethod();
+      boolean read = action.equals("status") || action.equals("metrics");
+
+      if (!method.equals(read ? "GET" : "POST")) {
+        exchange.getResponseHeaders().set("Allow", read ? "GET" : "POST");
+        send(exchange, 405, error("Method not allowed."));
+        return;
+      }
+
+      // Request from a web page or control action without the header?
+      if ((exchange.getRequestHeaders().containsKey("Origin")) ||
+          ((!read) &&
+           (exchange.getRequestHeaders().getFirst(CONTROL_HEADER) == null))) {
+        send(exchange,
+             403,
+             error("Forbidden (control actions require the header " +
+                   CONTROL_HEADER +
+                   ")."));
+
+        return;
+      }
+
+      // Path must match exactly (contexts match by prefix).
+      if (!exchange.getRequestURI().getPath().equals("/" + action)) {
+        send(exchange, 404, error("Not found."));
+        return;
+      }
+
+      Map<String, String> params = parseQuery(exchange.getRequestURI());
+
+      if (action.equals("status")) {
+        send(exchange, 200, status());
+      } else if (action.equals("metrics")) {
+        send(exchange, 200, metrics());
+      } else if (action.equals("pause")) {
+        control.setPaused(true);
+        send(exchange, 200, ok());
+      } else if (action.equals("resume")) {
+        control.setPaused(false);
+        send(exchange, 200, ok());
+      } else if (action.equals("parser-threads")) {
+        setParserThreads(exchange, params);
+      } else if (action.equals("host-interval")) {
+        setHostInterval(exchange, params);
+      } else {
+        inject(exchange, params);
+      }
+    } catch (RuntimeException e) {
+      log.log(Level.WARNING,
+              "Status server: error handling '" +
+              exchange.getRequestURI() +
+              "' (" +
+              e.toString() +
+              ").");
+
+      send(exchange, 500, error("Internal error."));
+    } finally {
+      exchange.close();
+    }
+  }
+
+
+  // Method: setParserThreads
+  // Description: changes the number of parser threads (parameter "count").
+  // Parameters:
+  //   - exchange: HTTP exchange.
+  //   - params: query parameters.
+  //
+  // Returns: nothing.
+  private void setParserThreads(HttpExchange exchange,
+                                Map<String, String> params) throws IOException
+  {
+    if (parserPool == null) {
+      send(exchange, 409, error("The crawler has no parser threads."));
+      return;
+    }
+
+    int count;
+    try {
+      count = Integer.parseInt(params.getOrDefault("count", ""));
+    } catch (NumberFormatException e) {
+      send(exchange, 400, error("Invalid number of parser threads."));
+      return;
+    }
+
+    if (parserPool.setNumberThreads(count)) {
+      send(exchange, 200, ok());
+    } else {
+      send(exchange,
+           400,
+           error("The number of parser threads must be between 1 and " +
+                 ParserPool.MAX_THREADS +
+                 "."));
+    }
+  }
+
+
+  // Method: setHostInterval
+  // Description: sets the visit interval of a host (parameters "host" and
+  //              "interval" in milliseconds; without "interval", the default
+  //              interval is restored).
+  //
+  // Parameters:
+  //   - exchange: HTTP exchange.
+  //   - params: query parameters.
+  //
+  // Returns: nothing.
+  private void setHostInterval(HttpExchange exchange,
+                               Map<String, String> params) throws IOException
+  {
+    String host = params.get("host");
+    if ((host == null) || (host.isEmpty())) {
+      send(exchange, 400, error("Missing host."));
+      return;
+    }
+
+    long interval = -1;
+
+    String value;
+    if ((value = params.get("interval")) != null) {
+      try {
+        interval = Long.parseLong(value);
+      } catch (NumberFormatException e) {
+        interval = -2;
+      }
+
+      if (interval < 0) {
+        send(exchange, 400, error("Invalid interval."));
+        return;
+      }
+    }
+
+    if (database.setHostVisitInterval(host, interval)) {
+      send(exchange, 200, ok());
+    } else {
+      send(exchange, 400, error("Interval too high."));
+    }
+  }
+
+
+  // Method: inject
+  // Description: adds URLs to the table of URLs to visit: the parameter "url"
+  //              and / or the body of the request (one URL per line). The URLs
+  //              are canonicalized but not filtered (they are added by the
+  //              operator).
+  //
+  // Parameters:
+  //   - exchange: HTTP exchange.
+  //   - params: query parameters.
+  //
+  // Returns: nothing.
+  private void inject(HttpExchange exchange, Map<String, String> params)
+    throws IOException
+  {
+    List<String> lines = new ArrayList<String>();
+
+    String param;
+    if ((param = params.get("url")) != null) {
+      lines.add(param);
+    }
+
+    try (BufferedReader reader = new BufferedReader(
+                                   new InputStreamReader(
+                                     exchange.getRequestBody(),
+                                     StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (lines.size() == MAX_INJECTED_URLS) {
+          send(exchange,
+               413,
+               error("Too many URLs (maximum: " + MAX_INJECTED_URLS + ")."));
+
+          return;
+        }
+
+        lines.add(line);
+      }
+    }
+
+    List<String> urls = new ArrayList<String>();
+    int invalid = 0;
+
+    for (String line : lines) {
+      line = line.trim();
+      if (line.isEmpty()) {
+        continue;
+      }
+
+      String url;
+      if ((url = urlCanonicalizer.canonicalize(line)) != null) {
+        urls.add(url);
+      } else {
+        invalid++;
+      }
+    }
+
+    if ((!urls.isEmpty()) && (!database.addUrlsToVisit(urls))) {
+      send(exchange, 500, error("Error adding the URLs to visit."));
+      return;
+    }
+
+    log.log(Level.INFO,
+            "Injected " + urls.size() + " URL(s), invalid: " + invalid + ".");
+
+    send(exchange,
+         200,
+         "{\"ok\":true,\"added\":" + urls.size() +
+         ",\"invalid\":" + invalid + "}");
+  }
+
+
+  // Method: status
+  // Description: returns the status of the crawler (JSON):
+  //                - Uptime, paused.
+  //                - Pages per second (last minute), requests, error rate.
+  //                - Frontier size (URLs to visit).
+  //                - In-flight requests per host.
+  //                - Parse queue.
+  //                - Slowest hosts (mean request duration).
+  //                - Hosts with the highest near-duplicate rate.
+  //                - Visit intervals.
+  //
+  // Parameters: none.
+  // Returns: status of the crawler.
+  private String status()
+  {
+    StringBuilder json = new StringBuilder();
+
+    long requests = hostStatistics.getRequests();
+    long errors = hostStatistics.getErrors();
+
+    json.append("{\"uptime_s\":")
+        .append((System.currentTimeMillis() - startTime) / 1000)
+        .append(",\"paused\":")
+        .append(control.isPaused())
+        .append(",\"pages_per_second\":")
+        .append(format(hostStatistics.getPagesPerSecond()))
+        .append(",\"requests\":")
+        .append(requests)
+        .append(",\"errors\":")
+        .append(errors)
+        .append(",\"aborts\":")
+        .append(hostStatistics.getAborts())
+        .append(",\"error_rate\":")
+        .append(format((requests > 0) ? (double) errors / requests : 0))
+        .append(",\"status_4xx\":")
+        .append(metrics.counter("fetch.status.4xx").sum())
+        .append(",\"status_5xx\":")
+        .append(metrics.counter("fetch.status.5xx").sum())
+        .append(",\"frontier_size\":")
+        .append(database.getNumberUrlsToVisit())
+        .append(",\"checked_pages\":")
+        .append(hostStatistics.getCheckedPages())
+        .append(",\"near_duplicates\":")
+        .append(hostStatistics.getNearDuplicates());
+
+    // In-flight requests.
+    json.append(",\"in_flight\":{");
+
+    boolean first = true;
+    for (HostStatistics.Host host : hostStatistics.getInFlight()) {
+      if (!first) {
+        json.append(',');
+      }
+
+      appendString(json, host.getName());
+      json.append(':').append(host.getInFlight());
+
+      first = false;
+    }
+
+    json.append('}');
+
+    // Parse queue.
+    if (parserPool != null) {
+      json.append(",\"parse_queue\":{\"depth\":")
+          .append(parserPool.getQueueDepth())
+          .append(",\"capacity\":")
+          .append(parserPool.getQueueCapacity())
+          .append(",\"max_depth\":")
+          .append(parserPool.getMaxQueueDepth())
+          .append(",\"blocked_submissions\":")
+          .append(parserPool.getBlockedSubmissions())
+          .append(",\"processed_files\":")
+          .append(parserPool.getProcessedFiles())
+          .append(",\"threads\":")
+          .append(parserPool.getNumberThreads())
+          .append('}');
+    }
+
+    // Slowest hosts.
+    json.append(",\"slow_hosts\":[");
+
+    first = true;
+    for (HostStatistics.Host host :
+           hostStatistics.getSlowestHosts(NUMBER_SLOW_HOSTS)) {
+      if (!first) {
+        json.append(',');
+      }
+
+      json.append("{\"host\":");
+      appendString(json, host.getName());
+      json.append(",\"requests\":")
+          .append(host.getRequests())
+          .append(",\"errors\":")
+          .append(host.getErrors())
+          .append(",\"aborts\":")
+          .append(host.getAborts())
+          .append(",\"mean_ms\":")
+          .append(format(host.getMeanTime()))
+          .append('}');
+
+      first = false;
+    }
+
+    json.append(']');
+
+    // Hosts with near-duplicates.
+    json.append(",\"near_duplicate_hosts\":[");
+
+    first = true;
+    for (HostStatistics.Host host :
+           hostStatistics.getNearDuplicateHosts(NUMBER_NEAR_DUPLICATE_HOSTS)) {
+      if (!first) {
+        json.append(',');
+      }
+
+      json.append("{\"host\":");
+      appendString(json, host.getName());
+      json.append(",\"checked_pages\":")
+          .append(host.getCheckedPages())
+          .append(",\"near_duplicates\":")
+          .append(host.getNearDuplicates())
+          .append(",\"rate\":")
+          .append(format(host.getNearDuplicateRate()))
+          .append('}');
+
+      first = false;
+    }
+
+    json.append(']');
+
+    // Visit intervals.
+    json.append(",\"host_visit_interval_ms\":")
+        .append(Database.getDefaultHostVisitInterval())
+        .append(",\"host_visit_intervals_ms\":{");
+
+    first = true;
+    for (Map.Entry<String, Long> interval :
+           database.getHostVisitIntervals().entrySet()) {
+      if (!first) {
+        json.append(',');
+      }
+
+      appendString(json, interval.getKey());
+      json.append(':').append(interval.getValue());
+
+      first = false;
+    }
+
+    json.append("}}");
+
+    return json.toString();
+  }
+
+
+  // Method: metrics
+  // Description: returns the metrics (JSON object, sorted by name).
+  // Parameters: none.
+  // Returns: metrics.
+  private String metrics()
+  {
+    StringBuilder json = new StringBuilder("{");
+
+    boolean first = true;
+    for (Map.Entry<String, Object> value : metrics.getValues().entrySet()) {
+      if (!first) {
+        json.append(',');
+      }
+
+      appendString(json, value.getKey());
+      json.append(':');
+
+      if (value.getValue() instanceof Double) {
+        json.append(format((Double) value.getValue()));
+      } else {
+        json.append(value.getValue());
+      }
+
+      first = false;
+    }
+
+    return json.append('}').toString();
+  }
+
+
+  // Method: parseQuery
+  // Description: parses the query string of a URI.
+  // Parameters:
+  //   - uri: URI.
+  //
+  // Returns: parameters (the last value is kept for repeated parameters).
+  private static Map<String, String> parseQuery(URI uri)
+  {
+    Map<String, String> params = new HashMap<String, String>();
+
+    String query;
+    if ((query = uri.getRawQuery()) != null) {
+      for (String param : query.split("&")) {
+        int pos = param.indexOf('=');
+
+        try {
+          if (pos > 0) {
+            params.put(URLDecoder.decode(param.substring(0, pos), "UTF-8"),
+                       URLDecoder.decode(param.substring(pos + 1), "UTF-8"));
+          } else if (pos < 0) {
+            params.put(URLDecoder.decode(param, "UTF-8"), "");
+          }
+        } catch (IllegalArgumentException |
+                 java.io.UnsupportedEncodingException e) {
+          // Ignore invalid parameter.
+        }
+      }
+    }
+
+    return params;
+  }
+
+
+  // Method: send
+  // Description: sends a JSON response.
+  // Parameters:
+  //   - exchange: HTTP exchange.
+  //   - code: HTTP status code.
+  //   - json: body of the response.
+  //
+  // Returns: nothing.
+  private static void send(HttpExchange exchange, int code, String json)
+    throws IOException
+  {
+    byte[] body = (json + "\n").getBytes(StandardCharsets.UTF_8);
+
+    exchange.getResponseHeaders().set("Content-Type",
+                                      "application/json; charset=utf-8");
+
+    exchange.getResponseHeaders().set("Cache-Control", "no-store");
+
+    exchange.sendResponseHeaders(code, body.length);
+
+    try (OutputStream out = exchange.getResponseBody()) {
+      out.write(body);
+    }
+  }
+
+
+  // Method: ok
+  // Description: returns the body of a successful control action.
+  // Parameters: none.
+  // Returns: JSON object.
+  private static String ok()
+  {
+    return "{\"ok\":true}";
+  }
+
+
+  // Method: error
+  // Description: returns the body of an error response.
+  // Parameters:
+  //   - message: error message.
+  //
+  // Returns: JSON object.
+  private static String error(String message)
+  {
+    StringBuilder json = new StringBuilder("{\"ok\":false,\"error\":");
+    appendString(json, message);
+
+    return json.append('}').toString();
+  }
+
+
+  // Method: format
+  // Description: formats a decimal number.
+  // Parameters:
+  //   - value: number.
+  //
+  // Returns: number with 3 decimals.
+  private static String format(double value)
+  {
+    return String.format(Locale.ROOT, "%.3f", value);
+  }
+
+
+  // Method: appendString
+  // Description: appends a JSON string (quoted and escaped).
+  // Parameters:
+  //   - json: where to append the string.
+  //   - s: string.
+  //
+  // Returns: nothing.
+  private static void appendString(StringBuilder json, String s)
+  {
+    json.append('"');
+
+    for (int i = 0; i < s.length(); i++) {
+      char c = s.charAt(i);
+
+      if ((c == '"') || (c == '\\')) {
+        json.append('\\').append(c);
+      } else if (c < 0x20) {
+        json.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+      } else {
+        json.append(c);
+      }
+    }
+
+    json.append('"');
+  }
+}
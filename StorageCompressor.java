@@ -0,0 +1,366 @@
+import java.util.ArrayList;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.zip.GZIPOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+
+public class StorageCompressor {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final long POLL_INTERVAL = 500; // Milliseconds.
+
+  // Files waiting to be compressed per thread.
+  private static final int QUEUE_SIZE_PER_THREAD = 32;
+
+  private static final int BUFFER_SIZE = 32 * 1024;
+
+  // Maximum size of the headers of a data file.
+  private static final int MAX_HEADER_SIZE = 64 * 1024;
+
+  private static final String COMPRESSED_SUFFIX = ".gz";
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Type declarations.                                                   ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Data file waiting to be compressed.
+  private static class Task {
+    private final String tempFilename;
+    private final String finalFilename;
+    private final boolean process;
+
+    private Task(String tempFilename, String finalFilename, boolean process)
+    {
+      this.tempFilename = tempFilename;
+      this.finalFilename = finalFilename;
+      this.process = process;
+    }
+  }
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Data members.                                                        ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private int numberThreads = 0;
+
+  private BlockingQueue<Task> queue = null;
+
+  private ArrayList<Thread> threads = new ArrayList<Thread>();
+
+  private volatile boolean running = false;
+
+  // Pool of parser threads where to queue the HTML files once they are in
+  // the final directory (null: the links are not extracted).
+  private ParserPool parserPool = null;
+
+  private Metrics metrics = null;
+  private Histogram compressLatency = null;
+  private LongAdder compressedFiles = null;
+  private LongAdder uncompressedFiles = null;
+  private LongAdder bytesIn = null;
+  private LongAdder bytesOut = null;
+  private LongAdder compressErrors = null;
+
+  private Log log = null;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: Constructor
+  // Description: sets the data members.
+  // Parameters:
+  //   - numberThreads: number of compression threads.
+  //   - metrics: metrics object.
+  //   - log: logger object.
+  //
+  // Returns: nothing.
+  public StorageCompressor(int numberThreads, Metrics metrics, Log log)
+  {
+    this.numberThreads = numberThreads;
+    this.metrics = metrics;
+    this.log = log;
+  }
+
+
+  // Method: initialize
+  // Description: gets the metrics, creates the queue of files to be
+  //              compressed and starts the compression threads.
+  //
+  // Parameters:
+  //   - parserPool: pool of parser threads where to queue the HTML files
+  //                 (null: none).
+  //
+  // Returns: true.
+  public synchronized boolean initialize(ParserPool parserPool)
+  {
+    this.parserPool = parserPool;
+
+    compressLatency = metrics.latency("storage.compress");
+    compressedFiles = metrics.counter("storage.compressed");
+    uncompressedFiles = metrics.counter("storage.uncompressed");
+    bytesIn = metrics.counter("storage.bytes_in");
+    bytesOut = metrics.counter("storage.bytes_out");
+    compressErrors = metrics.counter("storage.errors");
+
+    queue = new ArrayBlockingQueue<Task>(numberThreads *
+                                         QUEUE_SIZE_PER_THREAD);
+
+    running = true;
+
+    for (int i = 0; i < numberThreads; i++) {
+      Thread thread = new Thread("Compressor-" + i) {
+        public void run()
+        {
+          work();
+        }
+      };
+
+      threads.add(thread);
+      thread.start();
+    }
+
+    log.log(Level.INFO,
+            "Started " + numberThreads + " compression thread(s).");
+
+    return true;
+  }
+
+
+  // Method: shutdown
+  // Description: waits until the compression threads have compressed the
+  //              files in the queue and stops them.
+  //
+  // Parameters: none.
+  // Returns: nothing.
+  public void shutdown()
+  {
+    running = false;
+
+    for (Thread thread : threads) {
+      try {
+        thread.join();
+      } catch (InterruptedException e) {
+      }
+    }
+
+    log.log(Level.INFO, "Compression threads have been stopped.");
+  }
+
+
+  // Method: submit
+  // Description: adds a data file to the queue of files to be compressed.
+  //              The file is moved to the final directory once it has been
+  //              compressed and, if it has to be processed, queued in the
+  //              pool of parser threads.
+  //              The caller is never blocked: if the queue is full, the file
+  //              is not queued and has to be stored uncompressed.
+  //
+  // Parameters:
+  //   - tempFilename: name of the data file (temporary directory).
+  //   - finalFilename: name of the data file in the final directory.
+  //   - process: whether the file has to be processed.
+  //
+  // Returns: true: the file has been queued; false: otherwise.
+  public boolean submit(String tempFilename,
+                        String finalFilename,
+                        boolean process)
+  {
+    if ((running) &&
+        (queue.offer(new Task(tempFilename, finalFilename, process)))) {
+      return true;
+    }
+
+    uncompressedFiles.increment();
+
+    log.log(Level.FINE, "Compression queue is full, storing uncompressed.");
+
+    return false;
+  }
+
+
+  // Method: work
+  // Description: main loop of the compression threads: takes the next file
+  //              from the queue, compresses it and moves it to the final
+  //              directory (uncompressed if it couldn't be compressed).
+  //              When the compressor is shut down, the threads finish
+  //              compressing the files in the queue before exiting.
+  //
+  // Parameters: none.
+  // Returns: nothing.
+  private void work()
+  {
+    do {
+      try {
+        Task task;
+        if ((task = queue.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS)) != null) {
+          String filename;
+          if ((filename = compress(task.tempFilename)) == null) {
+            compressErrors.increment();
+            filename = task.tempFilename;
+          }
+
+          try {
+            // Move file to the final directory.
+            Files.move(Paths.get(filename),
+                       Paths.get(task.finalFilename),
+                       StandardCopyOption.ATOMIC_MOVE);
+
+            log.log(Level.FINER,
+                    "mv " +
+                    filename +
+                    " -> " +
+                    task.finalFilename);
+
+            if ((task.process) && (parserPool != null)) {
+              parserPool.submit(task.finalFilename);
+            }
+          } catch (IOException e) {
+            log.log(Level.WARNING, "Exception: '" + e.toString() + "'.");
+          }
+        } else if (!running) {
+          return;
+        }
+      } catch (InterruptedException e) {
+      }
+    } while (true);
+  }
+
+
+  // Method: compress
+  // Description: compresses the body of a data file with gzip. The headers
+  //              are kept as they are, except the header "Stored-Encoding",
+  //              so the compressed data files can still be indexed and
+  //              replayed without decompressing them. The bodies which are
+  //              already stored compressed are left as they are.
+  //
+  // Parameters:
+  //   - filename: name of the data file.
+  //
+  // Returns: name of the resulting file (the original file is removed if it
+  //          has been compressed); null: error.
+  private String compress(String filename)
+  {
+    Path path = Paths.get(filename);
+    Path compressedPath = Paths.get(filename + COMPRESSED_SUFFIX);
+
+    long start = System.nanoTime();
+
+    try (InputStream in = new BufferedInputStream(Files.newInputStream(path),
+                                                  BUFFER_SIZE)) {
+      // Copy the headers, replacing the encoding of the body.
+      // Format:
+      // URL: <URL>
+      // *(<message-header>)
+      // Stored-Encoding: <encoding>
+      // <empty-line>
+      ByteArrayOutputStream headers = new ByteArrayOutputStream();
+      String encoding = ContentEncoding.IDENTITY;
+
+      String line;
+      do {
+        if ((line = UrlsExtractor.readLine(in)) == null) {
+          log.log(Level.WARNING, "Invalid data file '" + filename + "'.");
+          return null;
+        }
+
+        int pos;
+        if (((pos = line.indexOf(':')) != -1) &&
+            (line.substring(0, pos).trim().equalsIgnoreCase(
+                                ContentEncoding.STORED_ENCODING_HEADER))) {
+          encoding = ContentEncoding.normalize(line.substring(pos + 1));
+
+          line = ContentEncoding.STORED_ENCODING_HEADER +
+                 ": " +
+                 ContentEncoding.GZIP;
+        }
+
+        headers.write((line + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+
+        if (headers.size() > MAX_HEADER_SIZE) {
+          log.log(Level.WARNING, "Invalid data file '" + filename + "'.");
+          return null;
+        }
+      } while (!line.isEmpty());
+
+      if (!encoding.equals(ContentEncoding.IDENTITY)) {
+        // Already compressed.
+        return filename;
+      }
+
+      try (OutputStream out = new BufferedOutputStream(
+                                Files.newOutputStream(compressedPath),
+                                BUFFER_SIZE)) {
+        headers.writeTo(out);
+
+        GZIPOutputStream gzip = new GZIPOutputStream(out, BUFFER_SIZE);
+
+        byte[] buf = new byte[BUFFER_SIZE];
+        int len;
+        while ((len = in.read(buf)) != -1) {
+          gzip.write(buf, 0, len);
+        }
+
+        gzip.finish();
+      }
+
+      bytesIn.add(Files.size(path));
+      bytesOut.add(Files.size(compressedPath));
+
+      Files.delete(path);
+
+      compressLatency.recordSince(start);
+      compressedFiles.increment();
+
+      return compressedPath.toString();
+    } catch (IOException e) {
+      log.log(Level.WARNING,
+              "Error compressing file '" +
+              filename +
+              "' (" +
+              e.toString() +
+              ").");
+
+      try {
+        Files.deleteIfExists(compressedPath);
+      } catch (IOException e2) {
+      }
+    }
+
+    return null;
+  }
+}
@@ -0,0 +1,308 @@
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.security.GeneralSecurityException;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+public class TlsContext {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Lifetime of the cached TLS sessions.
+  private static final int SESSION_TIMEOUT = 24 * 60 * 60; // Seconds.
+
+  // System property enabling the session tickets (RFC 5077) of TLS 1.2.
+  private static final String SESSION_TICKETS_PROPERTY =
+                                "jdk.tls.client.enableSessionTicketExtension";
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Type declarations.                                                   ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // TLS handshake of a connection.
+  public static class Handshake {
+    private final long time; // Nanoseconds.
+    private final boolean resumed;
+
+    private Handshake(long time, boolean resumed)
+    {
+      this.time = time;
+      this.resumed = resumed;
+    }
+
+    public long getTime()
+    {
+      return time;
+    }
+
+    // Whether the session has been resumed (abbreviated handshake).
+    public boolean isResumed()
+    {
+      return resumed;
+    }
+  }
+
+  // TLS socket created by the socket factory for the connection being
+  // established by a thread.
+  private static class Connect {
+    private SSLSocket socket = null;
+    private long start = 0; // System.nanoTime().
+    private long startMillis = 0; // System.currentTimeMillis().
+  }
+
+  // Socket factory of the HTTPS connections. Only layered sockets are
+  // created (unconnected sockets are not supported, so HttpURLConnection
+  // connects a plain socket and layers the TLS socket over it), so the
+  // handshake starts when the TLS socket is created.
+  private class Factory extends SSLSocketFactory {
+    private final SSLSocketFactory factory;
+
+    private Factory(SSLSocketFactory factory)
+    {
+      this.factory = factory;
+    }
+
+    public String[] getDefaultCipherSuites()
+    {
+      return factory.getDefaultCipherSuites();
+    }
+
+    public String[] getSupportedCipherSuites()
+    {
+      return factory.getSupportedCipherSuites();
+    }
+
+    public Socket createSocket(Socket s,
+                               String host,
+                               int port,
+                               boolean autoClose) throws IOException
+    {
+      return created(factory.createSocket(s, host, port, autoClose));
+    }
+
+    public Socket createSocket(String host, int port) throws IOException
+    {
+      return created(factory.createSocket(host, port));
+    }
+
+    public Socket createSocket(String host,
+                               int port,
+                               InetAddress localHost,
+                               int localPort) throws IOException
+    {
+      return created(factory.createSocket(host, port, localHost, localPort));
+    }
+
+    public Socket createSocket(InetAddress host, int port) throws IOException
+    {
+      return created(factory.createSocket(host, port));
+    }
+
+    public Socket createSocket(InetAddress address,
+                               int port,
+                               InetAddress localAddress,
+                               int localPort) throws IOException
+    {
+      return created(factory.createSocket(address,
+                                          port,
+                                          localAddress,
+                                          localPort));
+    }
+  }
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Data members.                                                        ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private int sessionCacheSize = 0;
+
+  private SSLContext sslContext = null;
+  private Factory socketFactory = null;
+
+  // Connection being established by each thread (only for the threads
+  // which called startConnect()).
+  private ThreadLocal<Connect> connects = new ThreadLocal<Connect>();
+
+  private Metrics metrics = null;
+  private Histogram fullHandshakeLatency = null;
+  private Histogram resumedHandshakeLatency = null;
+  private LongAdder fullHandshakes = null;
+  private LongAdder resumedHandshakes = null;
+
+  private Log log = null;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: Constructor
+  // Description: sets the data members.
+  // Parameters:
+  //   - sessionCacheSize: maximum number of cached TLS sessions (0: no
+  //                       limit).
+  //   - metrics: metrics object.
+  //   - log: logger object.
+  //
+  // Returns: nothing.
+  public TlsContext(int sessionCacheSize, Metrics metrics, Log log)
+  {
+    this.sessionCacheSize = sessionCacheSize;
+    this.metrics = metrics;
+    this.log = log;
+  }
+
+
+  // Method: initialize
+  // Description: initializes the TLS context:
+  //                - Enables the session tickets of TLS 1.2 (unless they
+  //                  have been configured).
+  //                - Creates the SSL context and sets the size and the
+  //                  timeout of its client session cache (the sessions are
+  //                  cached by host and port, TLS 1.3 sessions are resumed
+  //                  with the tickets sent by the servers).
+  //                - Makes its socket factory the default one of the HTTPS
+  //                  connections.
+  //                - Gets the metrics.
+  //
+  // Parameters: none.
+  // Returns: true: the TLS context could be initialized; false: otherwise.
+  public boolean initialize()
+  {
+    if (System.getProperty(SESSION_TICKETS_PROPERTY) == null) {
+      System.setProperty(SESSION_TICKETS_PROPERTY, "true");
+    }
+
+    try {
+      sslContext = SSLContext.getInstance("TLS");
+      sslContext.init(null, null, null);
+    } catch (GeneralSecurityException e) {
+      log.log(Level.SEVERE,
+              "Cannot create the SSL context: '" + e.toString() + "'.");
+
+      return false;
+    }
+
+    SSLSessionContext sessionContext = sslContext.getClientSessionContext();
+    sessionContext.setSessionCacheSize(sessionCacheSize);
+    sessionContext.setSessionTimeout(SESSION_TIMEOUT);
+
+    socketFactory = new Factory(sslContext.getSocketFactory());
+
+    HttpsURLConnection.setDefaultSSLSocketFactory(socketFactory);
+
+    fullHandshakeLatency = metrics.latency("tls.handshake.full");
+    resumedHandshakeLatency = metrics.latency("tls.handshake.resumed");
+    fullHandshakes = metrics.counter("tls.full_handshakes");
+    resumedHandshakes = metrics.counter("tls.resumed_handshakes");
+
+    log.log(Level.INFO,
+            "TLS session cache size: " + sessionCacheSize + ".");
+
+    return true;
+  }
+
+
+  // Method: getSocketFactory
+  // Description: returns the socket factory of the HTTPS connections.
+  // Parameters: none.
+  // Returns: socket factory.
+  public SSLSocketFactory getSocketFactory()
+  {
+    return socketFactory;
+  }
+
+
+  // Method: startConnect
+  // Description: marks the beginning of the establishment of a connection
+  //              by the current thread, the TLS socket created for it (if
+  //              any) is remembered until endConnect() is called.
+  //
+  // Parameters: none.
+  // Returns: nothing.
+  public void startConnect()
+  {
+    connects.set(new Connect());
+  }
+
+
+  // Method: endConnect
+  // Description: marks the end of the establishment of a connection by the
+  //              current thread (the handshake has completed) and counts its
+  //              TLS handshake. A session has been resumed if it was created
+  //              before the handshake.
+  //
+  // Parameters: none.
+  // Returns: TLS handshake; null: no handshake (HTTP connection or reused
+  //          connection).
+  public Handshake endConnect()
+  {
+    Connect connect = connects.get();
+    connects.remove();
+
+    if ((connect == null) || (connect.socket == null)) {
+      return null;
+    }
+
+    long time = System.nanoTime() - connect.start;
+    boolean resumed =
+      (connect.socket.getSession().getCreationTime() < connect.startMillis);
+
+    if (resumed) {
+      resumedHandshakeLatency.record(time);
+      resumedHandshakes.increment();
+    } else {
+      fullHandshakeLatency.record(time);
+      fullHandshakes.increment();
+    }
+
+    return new Handshake(time, resumed);
+  }
+
+
+  // Method: created
+  // Description: remembers the TLS socket created for the connection being
+  //              established by the current thread (if it called
+  //              startConnect()).
+  //
+  // Parameters:
+  //   - socket: TLS socket.
+  //
+  // Returns: the socket.
+  private Socket created(Socket socket)
+  {
+    Connect connect;
+    if ((connect = connects.get()) != null) {
+      connect.socket = (SSLSocket) socket;
+      connect.start = System.nanoTime();
+      connect.startMillis = System.currentTimeMillis();
+    }
+
+    return socket;
+  }
+}
@@ -0,0 +1,791 @@
+import java.util.Map;
+import java.util.HashMap;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.logging.Level;
+import java.util.concurrent.atomic.AtomicLong;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.net.IDN;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+public class UrlCanonicalizer {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final Charset DEFAULT_CHARSET = StandardCharsets.US_ASCII;
+
+  // Query parameters removed from the URLs of all the hosts (a trailing '*'
+  // matches any suffix).
+  private static final String[] DEFAULT_STRIPPED_PARAMETERS = {
+    "utm_*",
+    "gclid",
+    "fbclid",
+    "jsessionid",
+    "phpsessid",
+    "aspsessionid*",
+    "sessionid"
+  };
+
+  private static final String PATH_SESSION_ID = ";jsessionid=";
+
+  private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Data members.                                                        ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Parameters stripped for all the hosts.
+  private String[] parameters = null;
+
+  // Parameters stripped for a host (key: host).
+  private Map<String, String[]> hostParameters = null;
+
+  // Parameters stripped for a domain and its subdomains (key: domain).
+  private Map<String, String[]> domainParameters = null;
+
+  // Buffer used by each thread for building the canonical URL.
+  private ThreadLocal<StringBuilder> buffer = null;
+
+  private AtomicLong canonicalizedUrls = new AtomicLong();
+  private AtomicLong rewrittenUrls = new AtomicLong();
+  private AtomicLong strippedParameters = new AtomicLong();
+
+  private Log log = null;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: Constructor
+  // Description: sets the data member "log".
+  // Parameters:
+  //   - log: logger object.
+  //
+  // Returns: nothing.
+  public UrlCanonicalizer(Log log)
+  {
+    this.log = log;
+  }
+
+
+  // Method: initialize
+  // Description: sets the default parameters to be stripped.
+  // Parameters: none.
+  // Returns: true.
+  public boolean initialize()
+  {
+    parameters = DEFAULT_STRIPPED_PARAMETERS;
+
+    hostParameters = new HashMap<String, String[]>();
+    domainParameters = new HashMap<String, String[]>();
+
+    buffer = new ThreadLocal<StringBuilder>() {
+      protected StringBuilder initialValue()
+      {
+        return new StringBuilder(256);
+      }
+    };
+
+    return true;
+  }
+
+
+  // Method: load
+  // Description: loads the rules for stripping query parameters from the file
+  //              "filename".
+  //              Format of each line:
+  //                <host> <parameter> [<parameter> ...]
+  //
+  //              <host> can be "*" (all the hosts), a host name or a domain
+  //              name preceded by '.' (the domain and its subdomains).
+  //              A <parameter> ending with '*' matches any suffix.
+  //              Parameter names are case-insensitive.
+  //
+  // Parameters:
+  //   - filename: name of the file to be processed.
+  //
+  // Returns: true: the file could be processed; false: otherwise.
+  public boolean load(String filename)
+  {
+    log.log(Level.INFO,
+            "Loading canonicalization rules file '" + filename + "'...");
+
+    try (BufferedReader reader = Files.newBufferedReader(Paths.get(filename),
+                                                         DEFAULT_CHARSET)) {
+      List<String> global = new ArrayList<String>(Arrays.asList(parameters));
+
+      String line;
+      while ((line = reader.readLine()) != null) {
+        line = line.trim();
+
+        if ((line.isEmpty()) || (line.charAt(0) == '#')) {
+          continue;
+        }
+
+        String[] tokens = line.split("\\s+");
+        if (tokens.length < 2) {
+          log.log(Level.WARNING,
+                  "Ignored invalid canonicalization rule '" + line + "'.");
+
+          continue;
+        }
+
+        String host = tokens[0].toLowerCase();
+        String[] names = Arrays.copyOfRange(tokens, 1, tokens.length);
+
+        if (host.equals("*")) {
+          global.addAll(Arrays.asList(names));
+        } else {
+          Map<String, String[]> rules;
+          if (host.charAt(0) == '.') {
+            rules = domainParameters;
+            host = host.substring(1);
+          } else {
+            rules = hostParameters;
+          }
+
+          String[] current;
+          if ((current = rules.get(host)) != null) {
+            names = concat(current, names);
+          }
+
+          rules.put(host, names);
+        }
+
+        log.log(Level.FINEST, "Added canonicalization rule '" + line + "'.");
+      }
+
+      parameters = global.toArray(new String[global.size()]);
+
+      return true;
+    } catch (IOException e) {
+      log.log(Level.SEVERE, "Exception: '" + e.toString() + "'.");
+    }
+
+    log.log(Level.SEVERE, "Error processing file '" + filename + "'.");
+
+    return false;
+  }
+
+
+  // Method: canonicalize
+  // Description: returns the canonical form of an absolute HTTP or HTTPS URL:
+  //                - Lowercases the scheme and the host.
+  //                - Removes the trailing dot of the host.
+  //                - Removes the default port.
+  //                - Removes the dot segments ("/./" and "/../") and the
+  //                  session id of the path (";jsessionid=...").
+  //                - Decodes the percent-encoded unreserved characters,
+  //                  uppercases the other percent-encodings and encodes the
+  //                  characters which are not allowed.
+  //                - Removes the query parameters matching the rules and the
+  //                  empty ones.
+  //                - Removes the fragment.
+  //
+  //              The URL is processed as a string (no java.net.URL) in a
+  //              buffer reused by the thread; if the URL is already
+  //              canonical, it is returned as is.
+  //
+  // Parameters:
+  //   - urlStr: URL to be canonicalized.
+  //
+  // Returns: canonical URL; null if the URL is not a valid HTTP or HTTPS URL.
+  public String canonicalize(String urlStr)
+  {
+    String input = urlStr.trim();
+    int len = input.length();
+
+    // Scheme.
+    int pos;
+    boolean https;
+    if (input.regionMatches(true, 0, "http://", 0, 7)) {
+      https = false;
+      pos = 7;
+    } else if (input.regionMatches(true, 0, "https://", 0, 8)) {
+      https = true;
+      pos = 8;
+    } else {
+      return null;
+    }
+
+    StringBuilder sb = buffer.get();
+    sb.setLength(0);
+    sb.append(https ? "https://" : "http://");
+
+    // Authority.
+    int authorityEnd = pos;
+    while (authorityEnd < len) {
+      char c = input.charAt(authorityEnd);
+      if ((c == '/') || (c == '\\') || (c == '?') || (c == '#')) {
+        break;
+      }
+
+      authorityEnd++;
+    }
+
+    int hostStart = input.lastIndexOf('@', authorityEnd - 1) + 1;
+    if (hostStart > pos) {
+      // Keep the user information.
+      sb.append(input, pos, hostStart);
+    } else {
+      hostStart = pos;
+    }
+
+    int hostEnd;
+    if ((hostStart < authorityEnd) && (input.charAt(hostStart) == '[')) {
+      // IPv6 address.
+      if ((hostEnd = input.indexOf(']', hostStart)) < 0) {
+        return null;
+      }
+
+      hostEnd++;
+    } else {
+      hostEnd = input.indexOf(':', hostStart);
+      if ((hostEnd < 0) || (hostEnd > authorityEnd)) {
+        hostEnd = authorityEnd;
+      }
+    }
+
+    int sbHostStart = sb.length();
+    if (!appendHost(sb, input, hostStart, hostEnd)) {
+      return null;
+    }
+
+    String host = null;
+
+    // Port.
+    if (hostEnd < authorityEnd) {
+      if (input.charAt(hostEnd) != ':') {
+        return null;
+      }
+
+      int port = 0;
+      for (int i = hostEnd + 1; i < authorityEnd; i++) {
+        char c = input.charAt(i);
+        if ((c < '0') ||
+            (c > '9') ||
+            ((port = port * 10 + (c - '0')) > 65535)) {
+          return null;
+        }
+      }
+
+      if ((hostEnd + 1 < authorityEnd) && (port != (https ? 443 : 80))) {
+        host = sb.substring(sbHostStart);
+        sb.append(':').append(port);
+      }
+    }
+
+    // Path.
+    pos = authorityEnd;
+    int pathStart = sb.length();
+    sb.append('/');
+
+    if ((pos < len) && ((input.charAt(pos) == '/') ||
+                        (input.charAt(pos) == '\\'))) {
+      pos++;
+    }
+
+    while (pos < len) {
+      char c = input.charAt(pos);
+      if ((c == '?') || (c == '#')) {
+        break;
+      }
+
+      pos = appendChar(sb, input, pos, (c == '\\') ? '/' : c, false);
+    }
+
+    removeDotSegments(sb, pathStart);
+
+    // Query.
+    if ((pos < len) && (input.charAt(pos) == '?')) {
+      if (host == null) {
+        host = sb.substring(sbHostStart, sb.indexOf("/", sbHostStart));
+      }
+
+      pos = appendQuery(sb, input, pos + 1, host);
+    }
+
+    // The fragment is ignored.
+
+    canonicalizedUrls.incrementAndGet();
+
+    if ((sb.length() == urlStr.length()) && (sb.indexOf(urlStr) == 0)) {
+      return urlStr;
+    }
+
+    rewrittenUrls.incrementAndGet();
+
+    String canonicalUrl = sb.toString();
+
+    log.log(Level.FINEST,
+            "Canonicalized URL '{0}' -> '{1}'.",
+            urlStr,
+            canonicalUrl);
+
+    return canonicalUrl;
+  }
+
+
+  // Method: getHost
+  // Description: extracts the host of a canonical URL.
+  // Parameters:
+  //   - canonicalUrl: canonical URL.
+  //
+  // Returns: host of the URL.
+  public static String getHost(String canonicalUrl)
+  {
+    int start = canonicalUrl.indexOf("://") + 3;
+
+    int end = canonicalUrl.indexOf('/', start);
+    if (end < 0) {
+      end = canonicalUrl.length();
+    }
+
+    int at = canonicalUrl.lastIndexOf('@', end);
+    if (at >= start) {
+      start = at + 1;
+    }
+
+    if (canonicalUrl.charAt(start) == '[') {
+      return canonicalUrl.substring(start,
+                                    canonicalUrl.indexOf(']', start) + 1);
+    }
+
+    int colon = canonicalUrl.indexOf(':', start);
+    if ((colon >= 0) && (colon < end)) {
+      end = colon;
+    }
+
+    return canonicalUrl.substring(start, end);
+  }
+
+
+  // Method: getCanonicalizedUrls
+  // Description: returns the number of URLs which have been canonicalized.
+  // Parameters: none.
+  // Returns: number of canonicalized URLs.
+  public long getCanonicalizedUrls()
+  {
+    return canonicalizedUrls.get();
+  }
+
+
+  // Method: getRewrittenUrls
+  // Description: returns the number of URLs whose canonical form is different
+  //              from the original (whether or not the canonical URL had
+  //              already been queued or visited).
+  //
+  // Parameters: none.
+  // Returns: number of rewritten URLs.
+  public long getRewrittenUrls()
+  {
+    return rewrittenUrls.get();
+  }
+
+
+  // Method: getStrippedParameters
+  // Description: returns the number of query parameters which have been
+  //              removed.
+  //
+  // Parameters: none.
+  // Returns: number of stripped parameters.
+  public long getStrippedParameters()
+  {
+    return strippedParameters.get();
+  }
+
+
+  // Method: appendHost
+  // Description: appends the host in lowercase without the trailing dot.
+  //              International domain names are converted to ASCII.
+  //
+  // Parameters:
+  //   - sb: buffer where to append the host.
+  //   - input: URL.
+  //   - start: start of the host in the URL.
+  //   - end: end of the host in the URL.
+  //
+  // Returns: true: the host is valid; false: otherwise.
+  private static boolean appendHost(StringBuilder sb,
+                                    String input,
+                                    int start,
+                                    int end)
+  {
+    if ((end > start) && (input.charAt(end - 1) == '.')) {
+      end--;
+    }
+
+    if (start == end) {
+      return false;
+    }
+
+    int sbStart = sb.length();
+
+    for (int i = start; i < end; i++) {
+      char c = input.charAt(i);
+
+      if ((c >= 'A') && (c <= 'Z')) {
+        sb.append((char) (c + ('a' - 'A')));
+      } else if (((c >= 'a') && (c <= 'z')) ||
+                 ((c >= '0') && (c <= '9')) ||
+                 (c == '-') ||
+                 (c == '.') ||
+                 (c == '_') ||
+                 (c == '[') ||
+                 (c == ']') ||
+                 (c == ':')) {
+        sb.append(c);
+      } else if (c > 0x7f) {
+        // International domain name.
+        sb.setLength(sbStart);
+
+        try {
+          sb.append(IDN.toASCII(input.substring(start, end)).toLowerCase());
+          return true;
+        } catch (IllegalArgumentException e) {
+          return false;
+        }
+      } else {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+
+  // Method: appendQuery
+  // Description: appends the query, removing the parameters which match the
+  //              rules for the host and the empty ones.
+  //
+  // Parameters:
+  //   - sb: buffer where to append the query.
+  //   - input: URL.
+  //   - pos: start of the query in the URL.
+  //   - host: host of the URL.
+  //
+  // Returns: position after the query.
+  private int appendQuery(StringBuilder sb, String input, int pos, String host)
+  {
+    String[] hostRules = hostParameters.isEmpty() ?
+                           null :
+                           hostParameters.get(host);
+
+    String[] domainRules = domainParameters.isEmpty() ?
+                             null :
+                             getDomainParameters(host);
+
+    int len = input.length();
+    int queryStart = sb.length();
+
+    while ((pos < len) && (input.charAt(pos) != '#')) {
+      // Find the end of the parameter.
+      int end = pos;
+      while ((end < len) &&
+             (input.charAt(end) != '&') &&
+             (input.charAt(end) != '#')) {
+        end++;
+      }
+
+      if (end > pos) {
+        int nameEnd = input.indexOf('=', pos);
+        if ((nameEnd < 0) || (nameEnd > end)) {
+          nameEnd = end;
+        }
+
+        if ((matches(parameters, input, pos, nameEnd)) ||
+            (matches(hostRules, input, pos, nameEnd)) ||
+            (matches(domainRules, input, pos, nameEnd))) {
+          strippedParameters.incrementAndGet();
+        } else {
+          sb.append((sb.length() == queryStart) ? '?' : '&');
+
+          while (pos < end) {
+            pos = appendChar(sb, input, pos, input.charAt(pos), true);
+          }
+        }
+      }
+
+      pos = (end < len) && (input.charAt(end) == '&') ? end + 1 : end;
+    }
+
+    return pos;
+  }
+
+
+  // Method: getDomainParameters
+  // Description: returns the parameters to be stripped for the domains the
+  //              host belongs to.
+  //
+  // Parameters:
+  //   - host: host of the URL.
+  //
+  // Returns: parameters to be stripped; null if there are none.
+  private String[] getDomainParameters(String host)
+  {
+    String[] rules = null;
+
+    int pos = 0;
+    do {
+      String[] r;
+      if ((r = domainParameters.get(host.substring(pos))) != null) {
+        rules = (rules == null) ? r : concat(rules, r);
+      }
+
+      pos = host.indexOf('.', pos) + 1;
+    } while (pos > 0);
+
+    return rules;
+  }
+
+
+  // Method: matches
+  // Description: checks whether the parameter name matches one of the rules.
+  // Parameters:
+  //   - rules: parameter names (a trailing '*' matches any suffix).
+  //   - input: URL.
+  //   - start: start of the parameter name in the URL.
+  //   - end: end of the parameter name in the URL.
+  //
+  // Returns: true: the parameter name matches one of the rules;
+  //          false: otherwise.
+  private static boolean matches(String[] rules,
+                                 String input,
+                                 int start,
+                                 int end)
+  {
+    if (rules != null) {
+      int len = end - start;
+
+      for (String rule : rules) {
+        int ruleLen = rule.length();
+
+        if (rule.charAt(ruleLen - 1) == '*') {
+          if ((len >= ruleLen - 1) &&
+              (input.regionMatches(true, start, rule, 0, ruleLen - 1))) {
+            return true;
+          }
+        } else if ((len == ruleLen) &&
+                   (input.regionMatches(true, start, rule, 0, ruleLen))) {
+          return true;
+        }
+      }
+    }
+
+    return false;
+  }
+
+
+  // Method: appendChar
+  // Description: appends a character of the path or of the query normalizing
+  //              its percent-encoding.
+  //
+  // Parameters:
+  //   - sb: buffer where to append the character.
+  //   - input: URL.
+  //   - pos: position of the character in the URL.
+  //   - c: character to be appended.
+  //   - query: true if the character belongs to the query.
+  //
+  // Returns: position of the next character.
+  private static int appendChar(StringBuilder sb,
+                                String input,
+                                int pos,
+                                char c,
+                                boolean query)
+  {
+    if (c == '%') {
+      int hi, lo;
+      if ((pos + 2 < input.length()) &&
+          ((hi = Character.digit(input.charAt(pos + 1), 16)) >= 0) &&
+          ((lo = Character.digit(input.charAt(pos + 2), 16)) >= 0)) {
+        char decoded = (char) ((hi << 4) | lo);
+
+        if (isUnreserved(decoded)) {
+          sb.append(decoded);
+        } else {
+          appendEncoded(sb, decoded);
+        }
+
+        return pos + 3;
+      }
+
+      // Lone '%'.
+      appendEncoded(sb, '%');
+    } else if ((isUnreserved(c)) ||
+               ("!$&'()*+,;=:@/".indexOf(c) >= 0) ||
+               ((query) && (c == '?'))) {
+      sb.append(c);
+    } else if (c < 0x80) {
+      appendEncoded(sb, c);
+    } else {
+      // Encode the character in UTF-8.
+      int codePoint = input.codePointAt(pos);
+      byte[] bytes = new String(Character.toChars(codePoint))
+                       .getBytes(StandardCharsets.UTF_8);
+
+      for (byte b : bytes) {
+        appendEncoded(sb, b & 0xff);
+      }
+
+      return pos + Character.charCount(codePoint);
+    }
+
+    return pos + 1;
+  }
+
+
+  // Method: appendEncoded
+  // Description: appends a percent-encoded byte.
+  // Parameters:
+  //   - sb: buffer where to append the byte.
+  //   - b: byte to be appended.
+  //
+  // Returns: nothing.
+  private static void appendEncoded(StringBuilder sb, int b)
+  {
+    sb.append('%').append(HEX_DIGITS[b >> 4]).append(HEX_DIGITS[b & 0x0f]);
+  }
+
+
+  // Method: isUnreserved
+  // Description: checks whether the character is unreserved (RFC 3986).
+  // Parameters:
+  //   - c: character to be checked.
+  //
+  // Returns: true: the character is unreserved; false: otherwise.
+  private static boolean isUnreserved(char c)
+  {
+    return (((c >= 'a') && (c <= 'z')) ||
+            ((c >= 'A') && (c <= 'Z')) ||
+            ((c >= '0') && (c <= '9')) ||
+            (c == '-') ||
+            (c == '.') ||
+            (c == '_') ||
+            (c == '~'));
+  }
+
+
+  // Method: removeDotSegments
+  // Description: removes in place the dot segments of the path (RFC 3986,
+  //              section 5.2.4) and the session ids (";jsessionid=...").
+  //
+  // Parameters:
+  //   - sb: buffer containing the path.
+  //   - start: start of the path (always '/').
+  //
+  // Returns: nothing.
+  private static void removeDotSegments(StringBuilder sb, int start)
+  {
+    int len = sb.length();
+    int r = start;
+    int w = start;
+
+    while (r < len) {
+      // Find the end of the segment.
+      int end = r + 1;
+      while ((end < len) && (sb.charAt(end) != '/')) {
+        end++;
+      }
+
+      int segmentLen = end - r - 1;
+
+      if ((segmentLen == 1) && (sb.charAt(r + 1) == '.')) {
+        if (end == len) {
+          sb.setCharAt(w++, '/');
+        }
+      } else if ((segmentLen == 2) &&
+                 (sb.charAt(r + 1) == '.') &&
+                 (sb.charAt(r + 2) == '.')) {
+        // Remove the last segment.
+        while ((w > start) && (sb.charAt(--w) != '/'));
+
+        if (end == len) {
+          sb.setCharAt(w++, '/');
+        }
+      } else {
+        int copyEnd = end;
+
+        // Remove session id.
+        for (int i = r + 1; i < end; i++) {
+          if ((sb.charAt(i) == ';') &&
+              (i + PATH_SESSION_ID.length() <= end) &&
+              (regionMatches(sb, i, PATH_SESSION_ID))) {
+            copyEnd = i;
+            break;
+          }
+        }
+
+        while (r < copyEnd) {
+          sb.setCharAt(w++, sb.charAt(r++));
+        }
+      }
+
+      r = end;
+    }
+
+    if (w == start) {
+      sb.setCharAt(w++, '/');
+    }
+
+    sb.setLength(w);
+  }
+
+
+  // Method: regionMatches
+  // Description: checks (ignoring case) whether the buffer contains the
+  //              lowercase string "str" at the position "pos".
+  //
+  // Parameters:
+  //   - sb: buffer.
+  //   - pos: position in the buffer.
+  //   - str: lowercase string.
+  //
+  // Returns: true: the string is at the position; false: otherwise.
+  private static boolean regionMatches(StringBuilder sb, int pos, String str)
+  {
+    for (int i = 0; i < str.length(); i++) {
+      if (Character.toLowerCase(sb.charAt(pos + i)) != str.charAt(i)) {
+        return false;
+      }
+    }
+
+    return true;
+  }
+
+
+  // Method: concat
+  // Description: concatenates two arrays of parameter names.
+  // Parameters:
+  //   - a: first array.
+  //   - b: second array.
+  //
+  // Returns: concatenation of both arrays.
+  private static String[] concat(String[] a, String[] b)
+  {
+    String[] c = Arrays.copyOf(a, a.length + b.length);
+    System.arraycopy(b, 0, c, a.length, b.length);
+
+    return c;
+  }
+}
@@ -1,6 +1,35 @@
 import java.util.logging.Level;
 
 public class UrlFilter {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Type declarations.                                                   ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Compiled rules, never modified once published.
+  private static class RuleSet {
+    private final UrlMatcher exclude;
+    private final UrlMatcher include;
+
+    // Cache of decisions (null if disabled). The decisions are cached by
+    // host when there are only host/domain rules, by URL otherwise.
+    private final DecisionCache cache;
+    private final boolean keyByHost;
+
+    private RuleSet(UrlMatcher exclude, UrlMatcher include, int cacheSize)
+    {
+      this.exclude = exclude;
+      this.include = include;
+
+      cache = (cacheSize > 0) ? new DecisionCache(cacheSize) : null;
+      keyByHost = ((!exclude.hasPatterns()) && (!include.hasPatterns()));
+    }
+  }
+
+
   //////////////////////////////////////////////////////////////////////////////
   //////////////////////////////////////////////////////////////////////////////
   ////                                                                      ////
@@ -9,8 +38,22 @@ public class UrlFilter {
   //////////////////////////////////////////////////////////////////////////////
   //////////////////////////////////////////////////////////////////////////////
 
-  private UrlMatcher exclude = null;
-  private UrlMatcher include = null;
+  // Current rules. The matching threads read this reference once per URL,
+  // a reload builds a new rule set and replaces the reference.
+  private volatile RuleSet ruleSet = null;
+
+  private String excludeFilename = null;
+  private String includeFilename = null;
+
+  private int cacheSize = 0;
+
+  private Metrics metrics = null;
+  private Histogram filterLatency = null;
+
+  // Statistics of the caches of the previous rule sets.
+  private long previousCacheHits = 0;
+  private long previousCacheMisses = 0;
+  private long previousCacheEvictions = 0;
 
   private Log log = null;
 
@@ -24,32 +67,34 @@ public class UrlFilter {
   //////////////////////////////////////////////////////////////////////////////
 
   // Method: Constructor
-  // Description: sets the data member "log".
+  // Description: sets the data members.
   // Parameters:
+  //   - cacheSize: maximum number of cached decisions (0: no cache).
+  //   - metrics: metrics object.
   //   - log: logger object.
   //
   // Returns: nothing.
-  public UrlFilter(Log log)
+  public UrlFilter(int cacheSize, Metrics metrics, Log log)
   {
+    this.cacheSize = cacheSize;
+    this.metrics = metrics;
     this.log = log;
   }
 
 
   // Method: initialize
-  // Description: creates and initializes the URL matchers "exclude" and
-  //              "include".
-  //
+  // Description: gets the metrics and publishes an empty rule set.
   // Parameters: none.
-  // Returns: true: the URL matchers could be initialized; false: otherwise.
+  // Returns: true: the URL filter could be initialized; false: otherwise.
   public boolean initialize()
   {
-    exclude = new UrlMatcher("exclude", log);
-    if (exclude.initialize()) {
-      include = new UrlMatcher("include", log);
+    filterLatency = metrics.latency("filter.time");
 
-      if (include.initialize()) {
-        return true;
-      }
+    RuleSet rules;
+    if ((rules = build(false)) != null) {
+      ruleSet = rules;
+
+      return true;
     }
 
     log.log(Level.SEVERE, "Error initializing URL filter.");
@@ -59,7 +104,9 @@ public class UrlFilter {
 
 
   // Method: load
-  // Description: loads the exclude and include patterns.
+  // Description: loads the exclude and include patterns and publishes them
+  //              (the invalid patterns are ignored).
+  //
   // Parameters:
   //   - excludeFilename: name of the file containing the URLs to be excluded.
   //   - includeFilename: name of the file containing the URLs to be included.
@@ -67,28 +114,141 @@ public class UrlFilter {
   // Returns: true: the files could be processed; false: otherwise.
   public boolean load(String excludeFilename, String includeFilename)
   {
-    if (excludeFilename != null) {
-      if (!exclude.load(excludeFilename)) {
-        return false;
-      }
+    this.excludeFilename = excludeFilename;
+    this.includeFilename = includeFilename;
+
+    RuleSet rules;
+    if ((rules = build(false)) != null) {
+      publish(rules);
+
+      return true;
+    }
+
+    return false;
+  }
+
+
+  // Method: reload
+  // Description: loads again the exclude and include patterns.
+  //              The new rules replace the current ones only if all the
+  //              patterns are valid, otherwise the current rules are kept.
+  //              The matching threads are not blocked while the files are
+  //              loaded.
+  //
+  // Parameters: none.
+  // Returns: true: the new rules have been published; false: otherwise.
+  public synchronized boolean reload()
+  {
+    log.log(Level.INFO, "Reloading URL filter...");
+
+    RuleSet rules;
+    if ((rules = build(true)) != null) {
+      publish(rules);
+
+      log.log(Level.INFO, "URL filter has been reloaded.");
+
+      return true;
     }
 
-    if (includeFilename != null) {
-      if (!include.load(includeFilename)) {
-        return false;
+    log.log(Level.WARNING,
+            "URL filter has not been reloaded, the current rules are kept.");
+
+    return false;
+  }
+
+
+  // Method: getExcludeFilename
+  // Description: returns the name of the file containing the URLs to be
+  //              excluded.
+  //
+  // Parameters: none.
+  // Returns: name of the file; null if there is no file.
+  public String getExcludeFilename()
+  {
+    return excludeFilename;
+  }
+
+
+  // Method: getIncludeFilename
+  // Description: returns the name of the file containing the URLs to be
+  //              included.
+  //
+  // Parameters: none.
+  // Returns: name of the file; null if there is no file.
+  public String getIncludeFilename()
+  {
+    return includeFilename;
+  }
+
+
+  // Method: build
+  // Description: creates the URL matchers "exclude" and "include" and loads
+  //              the patterns files.
+  //
+  // Parameters:
+  //   - strict: if true, fails if some pattern is invalid.
+  //
+  // Returns: new rule set; null on error.
+  private RuleSet build(boolean strict)
+  {
+    UrlMatcher exclude = new UrlMatcher("exclude", log);
+    if (exclude.initialize()) {
+      if ((excludeFilename == null) ||
+          (exclude.load(excludeFilename, strict))) {
+        UrlMatcher include = new UrlMatcher("include", log);
+
+        if (include.initialize()) {
+          if ((includeFilename == null) ||
+              (include.load(includeFilename, strict))) {
+            return new RuleSet(exclude, include, cacheSize);
+          }
+        }
       }
     }
 
-    return true;
+    return null;
+  }
+
+
+  // Method: publish
+  // Description: replaces the current rule set (and thus the cached
+  //              decisions).
+  //
+  // Parameters:
+  //   - rules: new rule set.
+  //
+  // Returns: nothing.
+  private synchronized void publish(RuleSet rules)
+  {
+    RuleSet previous = ruleSet;
+
+    if ((previous != null) && (previous.cache != null)) {
+      previousCacheHits += previous.cache.getHits();
+      previousCacheMisses += previous.cache.getMisses();
+      previousCacheEvictions += previous.cache.getEvictions();
+    }
+
+    ruleSet = rules;
+
+    if (rules.cache != null) {
+      log.log(Level.INFO,
+              "Filter decisions cached by " +
+              (rules.keyByHost ? "host" : "URL") +
+              " (" +
+              cacheSize +
+              " entries at most).");
+    }
   }
 
 
   // Method: matches
   // Description: checks whether the URL "urlStr" matches one of the
   //              exclude or include patterns.
+  //              The decision is looked up in the cache first.
+  //              A sample of the calls are recorded as JFR events.
   //
   // Parameters:
-  //   - urlStr: URL to be checked.
+  //   - urlStr: URL (canonical form) to be checked.
   //
   // Returns: true: the URL doesn't match the exclude patterns and either
   //                matches one of the include patterns or there are no
@@ -96,17 +256,131 @@ public class UrlFilter {
   //          false: otherwise.
   public boolean matches(String urlStr)
   {
-    if ((!exclude.matches(urlStr)) &&
-        ((include.matches(urlStr)) ||
-         (include.isEmpty()))) {
-      log.log(Level.FINEST, "URL '" + urlStr + "' matches the URL filter.");
+    FilterEvent event = null;
+    if (FilterEvent.sample()) {
+      event = new FilterEvent();
+      event.begin();
+    }
+
+    long start = System.nanoTime();
+
+    boolean result = matches(ruleSet, urlStr);
+
+    filterLatency.recordSince(start);
+
+    if (event != null) {
+      event.url = urlStr;
+      event.matches = result;
+      event.commit();
+    }
+
+    return result;
+  }
+
+
+  // Method: matches
+  // Description: checks whether the URL "urlStr" matches the rule set
+  //              "rules" (looking up the decision in its cache first).
+  //
+  // Parameters:
+  //   - rules: rule set (the same one is used for the whole check).
+  //   - urlStr: URL to be checked.
+  //
+  // Returns: true: the URL matches the URL filter; false: otherwise.
+  private boolean matches(RuleSet rules, String urlStr)
+  {
+    if (rules.cache == null) {
+      return evaluate(rules, urlStr);
+    }
+
+    String key = rules.keyByHost ? UrlCanonicalizer.getHost(urlStr) : urlStr;
+
+    Boolean decision;
+    if ((decision = rules.cache.get(key)) != null) {
+      log.log(Level.FINEST,
+              "URL '{0}' {1} the URL filter (cached).",
+              urlStr,
+              decision ? "matches" : "doesn't match");
+
+      return decision;
+    }
+
+    boolean result = evaluate(rules, urlStr);
+
+    rules.cache.put(key, result);
+
+    return result;
+  }
+
+
+  // Method: evaluate
+  // Description: checks the URL "urlStr" against the exclude and include
+  //              patterns.
+  //
+  // Parameters:
+  //   - rules: rule set.
+  //   - urlStr: URL to be checked.
+  //
+  // Returns: true: the URL matches the URL filter; false: otherwise.
+  private boolean evaluate(RuleSet rules, String urlStr)
+  {
+    if ((!rules.exclude.matches(urlStr)) &&
+        ((rules.include.matches(urlStr)) ||
+         (rules.include.isEmpty()))) {
+      log.log(Level.FINEST, "URL '{0}' matches the URL filter.", urlStr);
 
       return true;
     } else {
       log.log(Level.FINEST,
-              "URL '" + urlStr + "' doesn't match the URL filter.");
+              "URL '{0}' doesn't match the URL filter.",
+              urlStr);
 
       return false;
     }
   }
+
+
+  // Method: getCacheHits
+  // Description: returns the number of decisions found in the cache.
+  // Parameters: none.
+  // Returns: number of cache hits.
+  public synchronized long getCacheHits()
+  {
+    DecisionCache cache = ruleSet.cache;
+    return previousCacheHits + ((cache != null) ? cache.getHits() : 0);
+  }
+
+
+  // Method: getCacheMisses
+  // Description: returns the number of decisions not found in the cache.
+  // Parameters: none.
+  // Returns: number of cache misses.
+  public synchronized long getCacheMisses()
+  {
+    DecisionCache cache = ruleSet.cache;
+    return previousCacheMisses + ((cache != null) ? cache.getMisses() : 0);
+  }
+
+
+  // Method: getCacheEvictions
+  // Description: returns the number of decisions evicted from the cache.
+  // Parameters: none.
+  // Returns: number of cache evictions.
+  public synchronized long getCacheEvictions()
+  {
+    DecisionCache cache = ruleSet.cache;
+    return previousCacheEvictions +
+           ((cache != null) ? cache.getEvictions() : 0);
+  }
+
+
+  // Method: getCacheSize
+  // Description: returns the number of cached decisions.
+  // Parameters: none.
+  // Returns: number of cached decisions.
+  public int getCacheSize()
+  {
+    DecisionCache cache = ruleSet.cache;
+    return (cache != null) ? cache.size() : 0;
+  }
 }
@@ -0,0 +1,197 @@
+import java.util.logging.Level;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.StandardWatchEventKinds;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+public class UrlFilterWatcher {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final long POLL_INTERVAL = 500; // Milliseconds.
+
+  // Time without changes before reloading (the file might still be being
+  // written).
+  private static final long RELOAD_DELAY = 1000; // Milliseconds.
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Data members.                                                        ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private UrlFilter urlFilter = null;
+
+  // Patterns files (absolute paths).
+  private Set<Path> files = null;
+
+  private WatchService watchService = null;
+  private Thread thread = null;
+
+  private volatile boolean running = false;
+
+  private Log log = null;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: Constructor
+  // Description: sets the data members.
+  // Parameters:
+  //   - urlFilter: URL filter whose patterns files have to be watched.
+  //   - log: logger object.
+  //
+  // Returns: nothing.
+  public UrlFilterWatcher(UrlFilter urlFilter, Log log)
+  {
+    this.urlFilter = urlFilter;
+    this.log = log;
+  }
+
+
+  // Method: initialize
+  // Description: starts watching the directories of the patterns files and
+  //              starts the thread which reloads the URL filter.
+  //
+  // Parameters: none.
+  // Returns: true: the files could be watched; false: otherwise.
+  public boolean initialize()
+  {
+    files = new HashSet<Path>();
+
+    if (urlFilter.getExcludeFilename() != null) {
+      files.add(Paths.get(urlFilter.getExcludeFilename()).toAbsolutePath());
+    }
+
+    if (urlFilter.getIncludeFilename() != null) {
+      files.add(Paths.get(urlFilter.getIncludeFilename()).toAbsolutePath());
+    }
+
+    try {
+      watchService = FileSystems.getDefault().newWatchService();
+
+      // Editors usually replace the file, watch the directory.
+      Set<Path> directories = new HashSet<Path>();
+      for (Path file : files) {
+        if (directories.add(file.getParent())) {
+          file.getParent().register(watchService,
+                                    StandardWatchEventKinds.ENTRY_CREATE,
+                                    StandardWatchEventKinds.ENTRY_MODIFY);
+        }
+      }
+    } catch (IOException e) {
+      log.log(Level.SEVERE,
+              "Cannot watch the patterns files (" + e.toString() + ").");
+
+      return false;
+    }
+
+    running = true;
+
+    thread = new Thread("Filter-Watcher") {
+      public void run()
+      {
+        work();
+      }
+    };
+
+    thread.setDaemon(true);
+    thread.start();
+
+    log.log(Level.INFO, "Watching " + files.size() + " patterns file(s).");
+
+    return true;
+  }
+
+
+  // Method: shutdown
+  // Description: stops the thread and stops watching the files.
+  // Parameters: none.
+  // Returns: nothing.
+  public void shutdown()
+  {
+    running = false;
+
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+    }
+
+    try {
+      watchService.close();
+    } catch (IOException e) {
+      log.log(Level.WARNING, "Exception: '" + e.toString() + "'.");
+    }
+  }
+
+
+  // Method: work
+  // Description: main loop of the thread: waits for changes in the patterns
+  //              files and reloads the URL filter once the files haven't
+  //              changed for RELOAD_DELAY milliseconds.
+  //
+  // Parameters: none.
+  // Returns: nothing.
+  private void work()
+  {
+    long lastChange = -1;
+
+    do {
+      WatchKey key = null;
+
+      try {
+        key = watchService.poll(POLL_INTERVAL, TimeUnit.MILLISECONDS);
+      } catch (InterruptedException e) {
+      }
+
+      if (key != null) {
+        Path directory = (Path) key.watchable();
+
+        for (WatchEvent<?> event : key.pollEvents()) {
+          if ((event.kind() == StandardWatchEventKinds.OVERFLOW) ||
+              (files.contains(directory.resolve((Path) event.context())))) {
+            log.log(Level.FINE, "Patterns files have changed.");
+
+            lastChange = System.currentTimeMillis();
+          }
+        }
+
+        if (!key.reset()) {
+          log.log(Level.SEVERE,
+                  "Directory '" +
+                  directory.toString() +
+                  "' cannot be watched anymore.");
+        }
+      }
+
+      if ((lastChange >= 0) &&
+          (System.currentTimeMillis() - lastChange >= RELOAD_DELAY)) {
+        lastChange = -1;
+
+        // The matching threads keep using the current rules meanwhile.
+        urlFilter.reload();
+      }
+    } while (running);
+  }
+}
@@ -1,7 +1,6 @@
 import java.util.logging.Level;
 import java.util.ArrayList;
 import java.util.regex.Pattern;
-import java.util.regex.Matcher;
 import java.util.regex.PatternSyntaxException;
 import java.io.BufferedReader;
 import java.io.IOException;
@@ -21,6 +20,9 @@ public class UrlMatcher {
 
   private static final Charset DEFAULT_CHARSET = StandardCharsets.US_ASCII;
 
+  private static final String HOST_PREFIX = "host:";
+  private static final String DOMAIN_PREFIX = "domain:";
+
 
   //////////////////////////////////////////////////////////////////////////////
   //////////////////////////////////////////////////////////////////////////////
@@ -34,6 +36,15 @@ public class UrlMatcher {
 
   private ArrayList<Pattern> patterns = null;
 
+  // All the supported patterns are combined in a single automaton, the
+  // other patterns are checked one by one.
+  private PatternAutomaton automaton = null;
+  private ArrayList<Pattern> fallbackPatterns = null;
+
+  // Rules "host:<host>" and "domain:<domain>" (the domain and its
+  // subdomains), checked before the patterns.
+  private HostIndex hostIndex = null;
+
   private Log log = null;
 
 
@@ -60,24 +71,38 @@ public class UrlMatcher {
 
 
   // Method: initialize
-  // Description: creates an empty list of patterns.
+  // Description: creates an empty list of patterns, an empty automaton and
+  //              an empty index of hosts and domains.
+  //
   // Parameters: none.
   // Returns: true.
   public boolean initialize()
   {
     patterns = new ArrayList<Pattern>();
 
+    automaton = new PatternAutomaton();
+    fallbackPatterns = new ArrayList<Pattern>();
+
+    hostIndex = new HostIndex();
+
     return true;
   }
 
 
   // Method: load
-  // Description: loads and compiles the patterns from the file "filename".
+  // Description: loads and compiles the patterns from the file "filename" and
+  //              adds them to the automaton (or to the list of fallback
+  //              patterns if the automaton doesn't support them).
+  //              The lines "host:<host>" and "domain:<domain>" are added to
+  //              the index of hosts and domains.
+  //
   // Parameters:
   //   - filename: name of the file to be processed.
+  //   - strict: if true, an invalid rule makes the whole file fail;
+  //             otherwise the invalid rules are ignored.
   //
   // Returns: true: the file could be processed; false: otherwise.
-  public boolean load(String filename)
+  public boolean load(String filename, boolean strict)
   {
     log.log(Level.INFO,
             "[" + name + "] Loading patterns file '" + filename + "'...");
@@ -90,6 +115,50 @@ public class UrlMatcher {
           String patternStr = line.trim();
 
           if ((!patternStr.isEmpty()) && (patternStr.charAt(0) != '#')) {
+            if (patternStr.startsWith(HOST_PREFIX)) {
+              String host = patternStr.substring(HOST_PREFIX.length()).trim();
+
+              if (!hostIndex.addHost(host)) {
+                log.log(Level.WARNING,
+                        "[" +
+                        name +
+                        "] Invalid host rule '" +
+                        patternStr +
+                        "'.");
+
+                if (strict) {
+                  return false;
+                }
+              }
+
+              continue;
+            } else if (patternStr.startsWith(DOMAIN_PREFIX)) {
+              String domain = patternStr.substring(DOMAIN_PREFIX.length())
+                                        .trim();
+
+              // Accept "*.example.com" and ".example.com" too.
+              if (domain.startsWith("*.")) {
+                domain = domain.substring(2);
+              } else if (domain.startsWith(".")) {
+                domain = domain.substring(1);
+              }
+
+              if (!hostIndex.addDomain(domain)) {
+                log.log(Level.WARNING,
+                        "[" +
+                        name +
+                        "] Invalid domain rule '" +
+                        patternStr +
+                        "'.");
+
+                if (strict) {
+                  return false;
+                }
+              }
+
+              continue;
+            }
+
             try {
               // Compile pattern.
               Pattern p = Pattern.compile(patternStr);
@@ -97,21 +166,46 @@ public class UrlMatcher {
               // Add pattern to the list of patterns.
               patterns.add(p);
 
+              // Add pattern to the automaton.
+              if (automaton.add(p) < 0) {
+                fallbackPatterns.add(p);
+
+                log.log(Level.FINE,
+                        "[" +
+                        name +
+                        "] Pattern '" +
+                        patternStr +
+                        "' is not supported by the automaton.");
+              }
+
               log.log(Level.FINEST,
                       "[" + name + "] Added pattern '" + patternStr + "'.");
             } catch (PatternSyntaxException e) {
               log.log(Level.WARNING,
                       "[" +
                       name +
-                      "] Ignored invalid pattern '" +
+                      "] Invalid pattern '" +
                       patternStr +
                       "'.");
+
+              if (strict) {
+                return false;
+              }
             }
           }
         }
       }
 
-      reader.close();
+      log.log(Level.INFO,
+              "[" +
+              name +
+              "] Loaded " +
+              patterns.size() +
+              " pattern(s), " +
+              automaton.size() +
+              " in the automaton, " +
+              hostIndex.size() +
+              " host/domain rule(s).");
 
       return true;
     } catch (IOException e) {
@@ -127,35 +221,58 @@ public class UrlMatcher {
 
 
   // Method: matches
-  // Description: checks whether the URL "urlStr" matches one of the patterns.
+  // Description: checks whether the URL "urlStr" matches one of the rules:
+  //              first the index of hosts and domains, then the automaton
+  //              (single pass over the URL) and then the fallback patterns.
+  //
   // Parameters:
   //   - urlStr: URL to be checked.
   //
   // Returns: true: the URL matches one of the patterns; false: otherwise.
   public boolean matches(String urlStr)
   {
+    if (hostIndex.matches(urlStr)) {
+      log.log(Level.FINEST,
+              "[{0}] URL '{1}' matches a host/domain rule.",
+              name,
+              urlStr);
+
+      return true;
+    }
+
     if (!patterns.isEmpty()) {
-      for (Pattern p: patterns) {
-        Matcher m = p.matcher(urlStr);
-        if (m.matches()) {
+      int index;
+      if ((index = automaton.match(urlStr)) >= 0) {
+        log.log(Level.FINEST,
+                "[{0}] URL '{1}' matches pattern '{2}'.",
+                name,
+                urlStr,
+                automaton.getPattern(index));
+
+        return true;
+      }
+
+      for (Pattern p: fallbackPatterns) {
+        if (p.matcher(urlStr).matches()) {
           log.log(Level.FINEST,
-                  "[" +
-                  name +
-                  "] URL '" +
-                  urlStr +
-                  "' matches pattern '" +
-                  p.toString() +
-                  "'.");
+                  "[{0}] URL '{1}' matches pattern '{2}'.",
+                  name,
+                  urlStr,
+                  p);
 
           return true;
         }
       }
 
       log.log(Level.FINEST,
-              "[" + name + "] No pattern matches URL '" + urlStr + "'.");
+              "[{0}] No pattern matches URL '{1}'.",
+              name,
+              urlStr);
     } else {
       log.log(Level.FINEST,
-              "[" + name + "] No patterns to match URL '" + urlStr + "'.");
+              "[{0}] No patterns to match URL '{1}'.",
+              name,
+              urlStr);
     }
 
     return false;
@@ -163,11 +280,25 @@ public class UrlMatcher {
 
 
   // Method: isEmpty
-  // Description: returns whether the list of patterns is empty.
+  // Description: returns whether there are no patterns and no host/domain
+  //              rules.
+  //
   // Parameters: none.
-  // Returns: true: the list of patterns is empty; false: otherwise.
+  // Returns: true: there are no rules; false: otherwise.
   public boolean isEmpty()
   {
-    return patterns.isEmpty();
+    return ((patterns.isEmpty()) && (hostIndex.isEmpty()));
+  }
+
+
+  // Method: hasPatterns
+  // Description: returns whether there are regular expressions (the decision
+  //              might depend on more than the host of the URL).
+  //
+  // Parameters: none.
+  // Returns: true: there are regular expressions; false: otherwise.
+  public boolean hasPatterns()
+  {
+    return !patterns.isEmpty();
   }
 }
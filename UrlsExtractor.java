@@ -1,6 +1,13 @@
+import java.util.Set;
+import java.util.LinkedHashSet;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.logging.Level;
+import java.io.File;
 import java.io.Reader;
 import java.io.BufferedReader;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.BufferedInputStream;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.nio.charset.StandardCharsets;
@@ -21,6 +28,13 @@ public class UrlsExtractor {
 
   private static final Charset DEFAULT_CHARSET = StandardCharsets.ISO_8859_1;
 
+  private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+  // Minimum number of features (pairs of words) of a page for checking
+  // whether it is a near-duplicate (the fingerprints of short pages are not
+  // reliable).
+  private static final int MIN_SIMHASH_FEATURES = 32;
+
 
   //////////////////////////////////////////////////////////////////////////////
   //////////////////////////////////////////////////////////////////////////////
@@ -31,7 +45,22 @@ public class UrlsExtractor {
   //////////////////////////////////////////////////////////////////////////////
 
   private Database database = null;
+  private UrlCanonicalizer urlCanonicalizer = null;
   private UrlFilter urlFilter = null;
+  private FetchPolicy fetchPolicy = null;
+
+  // Fingerprints of the pages already processed (null: the near-duplicates
+  // are not detected).
+  private NearDuplicateIndex nearDuplicateIndex = null;
+
+  private HostStatistics hostStatistics = null;
+
+  private Metrics metrics = null;
+  private Histogram parseLatency = null;
+  private LongAdder parsedFiles = null;
+  private LongAdder parseErrors = null;
+  private LongAdder extractedLinks = null;
+  private LongAdder nearDuplicates = null;
 
   private Log log = null;
 
@@ -48,77 +77,189 @@ public class UrlsExtractor {
   // Description: sets the data members.
   // Parameters:
   //   - database: database object.
+  //   - urlCanonicalizer: URL canonicalizer object.
   //   - urlFilter: URL filter object.
+  //   - fetchPolicy: fetch policy object.
+  //   - nearDuplicateIndex: index of the fingerprints of the pages (null:
+  //                         the near-duplicates are not detected).
+  //   - hostStatistics: statistics per host.
+  //   - metrics: metrics object.
   //   - log: logger object.
   //
   // Returns: nothing.
-  public UrlsExtractor(Database database, UrlFilter urlFilter, Log log)
+  public UrlsExtractor(Database database,
+                       UrlCanonicalizer urlCanonicalizer,
+                       UrlFilter urlFilter,
+                       FetchPolicy fetchPolicy,
+                       NearDuplicateIndex nearDuplicateIndex,
+                       HostStatistics hostStatistics,
+                       Metrics metrics,
+                       Log log)
   {
     this.database = database;
+    this.urlCanonicalizer = urlCanonicalizer;
     this.urlFilter = urlFilter;
+    this.fetchPolicy = fetchPolicy;
+    this.nearDuplicateIndex = nearDuplicateIndex;
+    this.hostStatistics = hostStatistics;
+    this.metrics = metrics;
     this.log = log;
   }
 
 
   // Method: initialize
-  // Description: nothing to initialize.
+  // Description: gets the metrics.
   // Parameters: none.
   // Returns: true.
   public boolean initialize()
   {
+    parseLatency = metrics.latency("parse.time");
+    parsedFiles = metrics.counter("parse.files");
+    parseErrors = metrics.counter("parse.errors");
+    extractedLinks = metrics.counter("parse.links");
+    nearDuplicates = metrics.counter("parse.near_duplicates");
+
     return true;
   }
 
 
   // Method: processBody
   // Description: parses the body of the data file, which is HTML, to extract
-  //              the URLs.
+  //              the URLs and adds them to the table of URLs to visit in a
+  //              single batch.
+  //              If the near-duplicates are detected, the SimHash of the
+  //              text is computed while parsing and the URLs are not added
+  //              if the page is within the maximum Hamming distance of a
+  //              page of the same host already processed.
   //
   // Parameters:
   //   - reader: reader to read the body.
   //   - url: context URL.
+  //   - event: JFR event where to save the number of links and whether the
+  //            page is a near-duplicate.
   //
-  // Returns: true: the body could be parsed; false: otherwise.
-  private boolean processBody(Reader reader, URL url)
+  // Returns: true: the body could be parsed and its URLs added; false:
+  //          otherwise.
+  private boolean processBody(Reader reader, URL url, ParseEvent event)
   {
     try {
-      HtmlParser htmlParser = new HtmlParser(database, urlFilter, url, log);
+      Set<String> urls = new LinkedHashSet<String>();
+
+      SimHash simHash = (nearDuplicateIndex != null) ? new SimHash() : null;
+
+      HtmlParser htmlParser = new HtmlParser(urlCanonicalizer,
+                                             urlFilter,
+                                             fetchPolicy,
+                                             url,
+                                             urls,
+                                             simHash,
+                                             log);
+
       ParserDelegator parserDelegator = new ParserDelegator();
 
+      long start = System.nanoTime();
+
       parserDelegator.parse(reader, htmlParser, true);
 
+      parseLatency.recordSince(start);
+      parsedFiles.increment();
+      extractedLinks.add(urls.size());
+
+      event.links = urls.size();
+
+      if ((simHash != null) &&
+          (simHash.getFeatures() >= MIN_SIMHASH_FEATURES)) {
+        String host = url.getHost();
+
+        boolean duplicate = nearDuplicateIndex.check(host,
+                                                     simHash.getFingerprint());
+
+        hostStatistics.checkedPage(host, duplicate);
+
+        if (duplicate) {
+          log.log(Level.FINE,
+                  "Skipped links of '" + url + "' (near-duplicate).");
+
+          nearDuplicates.increment();
+          event.nearDuplicate = true;
+
+          return true;
+        }
+      }
+
+      if ((!urls.isEmpty()) && (!database.addUrlsToVisit(urls))) {
+        log.log(Level.WARNING,
+                "Cannot add the links of '" + url + "' to the URLs to visit.");
+
+        return false;
+      }
+
       return true;
     } catch (IOException e) {
       log.log(Level.WARNING,
               "Exception while parsing HTML: '" + e.toString() + "'.");
+
+      parseErrors.increment();
     }
 
     return false;
   }
 
 
+  // Method: processFile
+  // Description: processes a file (calling the other method processFile())
+  //              and emits a JFR event (if enabled).
+  //
+  // Parameters:
+  //   - filename: name of the file to be processed.
+  //
+  // Returns: true: the file could be processed; false: otherwise.
+  public boolean processFile(String filename)
+  {
+    ParseEvent event = new ParseEvent();
+    event.begin();
+
+    boolean ret = processFile(filename, event);
+
+    event.end();
+
+    if (event.shouldCommit()) {
+      event.filename = filename;
+      event.bytes = new File(filename).length();
+      event.success = ret;
+      event.commit();
+    }
+
+    return ret;
+  }
+
+
   // Method: processFile
   // Description: processes a file:
   //                - Opens the file "filename".
   //                - Extracts the context URL from the first line.
   //                - Skips the HTTP headers.
-  //                - Calls the method processBody() to extract the URLs.
+  //                - If the Content-Type is "text/html", calls the method
+  //                  processBody() to extract the URLs (the body is decoded
+  //                  while it is parsed if it was stored compressed).
   //
   // Parameters:
   //   - filename: name of the file to be processed.
+  //   - event: JFR event where to save the URL and the number of links.
   //
   // Returns: true: the file could be processed; false: otherwise.
-  public boolean processFile(String filename)
+  private boolean processFile(String filename, ParseEvent event)
   {
-    log.log(Level.FINEST, "Processing file '" + filename + "'...");
+    log.log(Level.FINEST, "Processing file '{0}'...", filename);
 
-    try (BufferedReader reader = Files.newBufferedReader(Paths.get(filename),
-                                                         DEFAULT_CHARSET)) {
+    try (InputStream in = new BufferedInputStream(
+                            Files.newInputStream(Paths.get(filename)),
+                            READ_BUFFER_SIZE)) {
       // Read first line:
       // Format:
       // URL: <url>
       String line;
-      if (((line = reader.readLine()) != null) && (!line.isEmpty())) {
+      if (((line = readLine(in)) != null) && (!line.isEmpty())) {
         if (line.startsWith("URL:")) {
           try {
             // Create URI.
@@ -127,21 +268,68 @@ public class UrlsExtractor {
             // Convert URI to URL.
             URL url = uri.toURL();
 
-            // Skip headers.
-            while (((line = reader.readLine()) != null) && (!line.isEmpty()));
+            event.url = uri.toString();
+
+            // Skip headers (the files which are not HTML are only found
+            // when watching the directory of downloaded files).
+            boolean html = true;
+            String encoding = ContentEncoding.IDENTITY;
+            while (((line = readLine(in)) != null) && (!line.isEmpty())) {
+              if (line.regionMatches(true, 0, "Content-Type:", 0, 13)) {
+                html = line.substring(13).trim().startsWith("text/html");
+              } else if (line.regionMatches(
+                           true,
+                           0,
+                           ContentEncoding.STORED_ENCODING_HEADER + ":",
+                           0,
+                           ContentEncoding.STORED_ENCODING_HEADER.length() +
+                           1)) {
+                encoding = ContentEncoding.normalize(
+                             line.substring(
+                               ContentEncoding.STORED_ENCODING_HEADER.length() +
+                               1));
+              }
+            }
+
+            event.html = html;
+
+            if (!html) {
+              log.log(Level.FINEST,
+                      "Skipped file '{0}' (not HTML).",
+                      filename);
+
+              return true;
+            }
+
+            if (!ContentEncoding.isSupported(encoding)) {
+              log.log(Level.FINE,
+                      "Skipped file '" +
+                      filename +
+                      "' (unsupported encoding '" +
+                      encoding +
+                      "').");
 
-            boolean ret = processBody(reader, url);
+              return true;
+            }
 
-            reader.close();
+            // Decode the body while it is being parsed.
+            boolean processed;
+            try (Reader reader = new BufferedReader(
+                                   new InputStreamReader(
+                                     ContentEncoding.decode(in, encoding),
+                                     DEFAULT_CHARSET))) {
+              processed = processBody(reader, url, event);
+            }
 
-            log.log(Level.FINEST,
-                    "Finished processing file '" + filename + "'.");
+            if (processed) {
+              log.log(Level.FINEST,
+                      "Finished processing file '{0}'.",
+                      filename);
 
-            return true;
+              return true;
+            }
           } catch (Exception e) {
             log.log(Level.WARNING, "Exception: '" + e.toString() + "'.");
-
-            reader.close();
           }
         }
       }
@@ -153,4 +341,34 @@ public class UrlsExtractor {
 
     return false;
   }
+
+
+  // Method: readLine
+  // Description: reads a line of the headers of a data file (ISO-8859-1,
+  //              terminated by "\r\n" or "\n").
+  //
+  // Parameters:
+  //   - in: input stream.
+  //
+  // Returns: line without the line terminator; null: end of the stream.
+  public static String readLine(InputStream in) throws IOException
+  {
+    StringBuilder line = new StringBuilder();
+
+    int c;
+    while ((c = in.read()) != -1) {
+      if (c == '\n') {
+        int len;
+        if (((len = line.length()) > 0) && (line.charAt(len - 1) == '\r')) {
+          line.setLength(len - 1);
+        }
+
+        return line.toString();
+      }
+
+      line.append((char) c);
+    }
+
+    return (line.length() > 0) ? line.toString() : null;
+  }
 }
@@ -0,0 +1,195 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Pattern;
+
+public class AutomatonCheck {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final long DEFAULT_SEED = 1;
+
+  // Random pattern sets.
+  private static final int NUMBER_SETS = 2000;
+  private static final int MAX_PATTERNS = 200;
+  private static final int INPUTS_PER_SET = 100;
+  private static final int MAX_INPUT_LENGTH = 8;
+
+  // Elements of the random patterns and characters of the random inputs.
+  private static final String[] ATOMS = {
+    "a", "b", "c", "ab", "(a|b)", "[a-c]", "[^b]", ".", "a*", "b+", "c?",
+    "(ab)*", "(a|bc)?", "a{2}", "b{1,3}", "(?:ca)+", "\\.", "x", "[ab]{0,2}"
+  };
+
+  private static final String INPUT_CHARS = "abcx.\n";
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: main
+  // Description: checks PatternAutomaton.match() against the patterns
+  //              checked one by one with java.util.regex:
+  //                - Rule sets of the usual shapes (alternations of URLs,
+  //                  literals behind a loop), whose start states have
+  //                  hundreds of NFA states.
+  //                - Random sets of up to MAX_PATTERNS patterns sharing
+  //                  prefixes (and duplicates) with random inputs.
+  //
+  //              Exits with status 1 at the first mismatch.
+  //
+  // Parameters:
+  //   - args: [<seed>].
+  //
+  // Returns: nothing.
+  public static void main(String[] args)
+  {
+    long seed = (args.length > 0) ? Long.parseLong(args[0]) : DEFAULT_SEED;
+
+    Random random = new Random(seed);
+
+    long checks = 0;
+
+    // Alternations of URLs.
+    for (int n : new int[] {10, 200, 1000}) {
+      List<Pattern> patterns = new ArrayList<Pattern>();
+      List<String> inputs = new ArrayList<String>();
+
+      for (int i = 0; i < n; i++) {
+        patterns.add(Pattern.compile("(http|https)://(www\\.)?s" +
+                                     i +
+                                     "\\.com/.*|(http|https)://m\\.s" +
+                                     i +
+                                     "\\.com/.*"));
+
+        inputs.add("http://s" + i + ".com/a");
+        inputs.add("https://www.s" + i + ".com/");
+        inputs.add("https://m.s" + i + ".com/b/c");
+        inputs.add("https://x.s" + i + ".com/");
+      }
+
+      inputs.add("");
+
+      checks += check("urls " + n, patterns, inputs);
+    }
+
+    // Literals behind a loop.
+    for (int n : new int[] {40, 1000}) {
+      List<Pattern> patterns = new ArrayList<Pattern>();
+      List<String> inputs = new ArrayList<String>();
+
+      for (int i = 0; i < n; i++) {
+        patterns.add(Pattern.compile("[a-z]+" + i + "x|q" + i + "(a|b)|z" + i));
+
+        inputs.add("abc" + i + "x");
+        inputs.add("q" + i + "b");
+        inputs.add("z" + i);
+        inputs.add(i + "x");
+      }
+
+      inputs.add("");
+
+      checks += check("loops " + n, patterns, inputs);
+    }
+
+    // Random pattern sets.
+    for (int set = 0; set < NUMBER_SETS; set++) {
+      int n = 1 + random.nextInt((set % 2 == 0) ? 12 : MAX_PATTERNS);
+      String prefix = random.nextBoolean() ? "ab" : "";
+
+      List<Pattern> patterns = new ArrayList<Pattern>();
+      for (int i = 0; i < n; i++) {
+        StringBuilder sb = new StringBuilder(prefix);
+        for (int j = random.nextInt(5); j > 0; j--) {
+          sb.append(ATOMS[random.nextInt(ATOMS.length)]);
+        }
+
+        patterns.add(Pattern.compile(sb.toString()));
+
+        if (random.nextInt(4) == 0) {
+          patterns.add(Pattern.compile(sb.toString()));
+        }
+      }
+
+      List<String> inputs = new ArrayList<String>();
+      for (int i = 0; i < INPUTS_PER_SET; i++) {
+        StringBuilder sb = new StringBuilder();
+        for (int j = random.nextInt(MAX_INPUT_LENGTH + 1); j > 0; j--) {
+          sb.append(INPUT_CHARS.charAt(random.nextInt(INPUT_CHARS.length())));
+        }
+
+        inputs.add(sb.toString());
+      }
+
+      checks += check("random set " + set + " (seed " + seed + ")",
+                      patterns,
+                      inputs);
+    }
+
+    System.out.println("OK: " + checks + " checks.");
+  }
+
+
+  // Method: check
+  // Description: adds the patterns to an automaton and checks that it
+  //              returns for each input the index of the first pattern
+  //              matching it, exits with status 1 otherwise.
+  //
+  // Parameters:
+  //   - name: name of the case.
+  //   - patterns: patterns.
+  //   - inputs: inputs.
+  //
+  // Returns: number of inputs checked.
+  private static int check(String name,
+                           List<Pattern> patterns,
+                           List<String> inputs)
+  {
+    PatternAutomaton automaton = new PatternAutomaton();
+
+    // Indexes of the patterns in the automaton (-1: not supported).
+    int[] indexes = new int[patterns.size()];
+    for (int i = 0; i < patterns.size(); i++) {
+      indexes[i] = automaton.add(patterns.get(i));
+    }
+
+    for (String input : inputs) {
+      int expected = -1;
+      for (int i = 0; i < patterns.size(); i++) {
+        if ((indexes[i] >= 0) && (patterns.get(i).matcher(input).matches())) {
+          expected = indexes[i];
+          break;
+        }
+      }
+
+      int result;
+      if ((result = automaton.match(input)) != expected) {
+        System.out.println("Mismatch in " +
+                           name +
+                           ": input '" +
+                           input.replace("\n", "\\n") +
+                           "', expected " +
+                           expected +
+                           ", got " +
+                           result +
+                           ", patterns: " +
+                           patterns +
+                           ".");
+
+        System.exit(1);
+      }
+    }
+
+    return inputs.size();
+  }
+}
@@ -0,0 +1,217 @@
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+
+public class BenchmarkHarness {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final int WARMUP_ITERATIONS =
+            Integer.getInteger("benchmark.warmupIterations", 5);
+
+  private static final int ITERATIONS =
+            Integer.getInteger("benchmark.iterations", 10);
+
+  private static final long ITERATION_TIME =
+            Long.getLong("benchmark.iterationTime", 1000); // Milliseconds.
+
+  // Maximum number of operations between two checks of the clock (the
+  // batches start with one operation and double, so slow operations don't
+  // make the iterations much longer than ITERATION_TIME).
+  private static final int BATCH_SIZE = 1024;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Type declarations.                                                   ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  public interface Operation {
+    // Performs the operation number "i", returns a value which depends on
+    // the work done (so the JIT compiler cannot remove it).
+    Object run(int i) throws Exception;
+  }
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Data members.                                                        ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Values returned by the operations are stored here.
+  private static volatile Object sink = null;
+
+  // Bytes allocated per operation in the last call to run() (-1: unknown).
+  private static double allocatedBytes = -1;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: header
+  // Description: prints the header of the results table.
+  // Parameters: none.
+  // Returns: nothing.
+  public static void header()
+  {
+    System.out.println(String.format(Locale.ROOT,
+                                     "%-48s %14s %12s %14s %12s",
+                                     "Benchmark",
+                                     "ns/op",
+                                     "+/-",
+                                     "ops/s",
+                                     "B/op"));
+  }
+
+
+  // Method: run
+  // Description: runs WARMUP_ITERATIONS warmup iterations and ITERATIONS
+  //              measured iterations of ITERATION_TIME milliseconds each, and
+  //              prints the average time, the throughput and the bytes
+  //              allocated per operation.
+  //
+  // Parameters:
+  //   - name: name of the benchmark.
+  //   - operation: operation to be measured.
+  //
+  // Returns: average time per operation (nanoseconds).
+  public static double run(String name, Operation operation) throws Exception
+  {
+    int counter = 0;
+
+    for (int i = 0; i < WARMUP_ITERATIONS; i++) {
+      counter = iteration(operation, counter, null);
+    }
+
+    double[] results = new double[ITERATIONS];
+    long[] ops = new long[1];
+
+    long allocatedBefore = allocatedBytes();
+    long totalOps = 0;
+
+    for (int i = 0; i < ITERATIONS; i++) {
+      long start = System.nanoTime();
+      counter = iteration(operation, counter, ops);
+      results[i] = (double) (System.nanoTime() - start) / ops[0];
+
+      totalOps += ops[0];
+    }
+
+    long allocated = allocatedBytes() - allocatedBefore;
+
+    allocatedBytes = (allocated >= 0) ? (double) allocated / totalOps : -1;
+
+    double mean = 0;
+    for (double r : results) {
+      mean += r;
+    }
+
+    mean /= ITERATIONS;
+
+    double variance = 0;
+    for (double r : results) {
+      variance += (r - mean) * (r - mean);
+    }
+
+    double deviation = (ITERATIONS > 1) ?
+                         Math.sqrt(variance / (ITERATIONS - 1)) :
+                         0;
+
+    System.out.println(String.format(Locale.ROOT,
+                                     "%-48s %14.2f %12.2f %14.0f %12s",
+                                     name,
+                                     mean,
+                                     deviation,
+                                     1000000000.0 / mean,
+                                     (allocated >= 0) ?
+                                       String.format(Locale.ROOT,
+                                                     "%.1f",
+                                                     (double) allocated /
+                                                     totalOps) :
+                                       "n/a"));
+
+    return mean;
+  }
+
+
+  // Method: getAllocatedBytes
+  // Description: returns the bytes allocated per operation in the last call
+  //              to run().
+  //
+  // Parameters: none.
+  // Returns: bytes allocated per operation; -1 if not supported.
+  public static double getAllocatedBytes()
+  {
+    return allocatedBytes;
+  }
+
+
+  // Method: iteration
+  // Description: runs the operation during ITERATION_TIME milliseconds.
+  // Parameters:
+  //   - operation: operation to be measured.
+  //   - counter: number of the first operation.
+  //   - ops: if not null, the number of operations is saved in ops[0].
+  //
+  // Returns: number of the next operation.
+  private static int iteration(Operation operation, int counter, long[] ops)
+    throws Exception
+  {
+    long end = System.nanoTime() + ITERATION_TIME * 1000000L;
+    long count = 0;
+    int batch = 1;
+
+    do {
+      for (int i = 0; i < batch; i++) {
+        sink = operation.run(counter++);
+      }
+
+      count += batch;
+
+      if (batch < BATCH_SIZE) {
+        batch <<= 1;
+      }
+    } while (System.nanoTime() < end);
+
+    if (ops != null) {
+      ops[0] = count;
+    }
+
+    return counter;
+  }
+
+
+  // Method: allocatedBytes
+  // Description: returns the number of bytes allocated by the current thread
+  //              (if supported by the JVM).
+  //
+  // Parameters: none.
+  // Returns: number of allocated bytes; -1 if not supported.
+  private static long allocatedBytes()
+  {
+    java.lang.management.ThreadMXBean bean =
+      ManagementFactory.getThreadMXBean();
+
+    if (bean instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) bean)
+               .getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    return -1;
+  }
+}
@@ -0,0 +1,669 @@
+import java.util.Date;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.net.URL;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+
+public class DatabaseBenchmark {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final String DEFAULT_DATABASE_NAME = "benchmarkDB";
+  private static final long DEFAULT_URLS_TO_VISIT = 1000000;
+  private static final long DEFAULT_VISITED_URLS = 1000000;
+  private static final int DEFAULT_HOSTS = 10000;
+  private static final double DEFAULT_SKEW = 1.0;
+  private static final int DEFAULT_OPERATIONS = 1000;
+  private static final String DEFAULT_CSV_FILENAME = "database-benchmark.csv";
+
+  private static final String EMBEDDED_DRIVER =
+                              "org.apache.derby.jdbc.EmbeddedDriver";
+
+  private static final String CLIENT_DRIVER =
+                              "org.apache.derby.jdbc.ClientDriver";
+
+  private static final String FORMAT_EMBEDDED_CONNECTION_URL =
+                              "jdbc:derby:%s;create=true";
+
+  private static final String FORMAT_CLIENT_CONNECTION_URL =
+                              "jdbc:derby://%s:%d/%s;create=true";
+
+  // Rows inserted per transaction when filling the tables.
+  private static final int FILL_BATCH_SIZE = 10000;
+
+  // Rows between two progress messages when filling the tables.
+  private static final long FILL_PROGRESS = 1000000;
+
+  private static final String CSV_HEADER =
+            "date,mode,urls_to_visit,visited_urls,hosts,skew,operation," +
+            "operations,ops_per_sec,mean_us,p50_us,p99_us,max_us";
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Type declarations.                                                   ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private interface Operation {
+    // Performs the operation number "i".
+    boolean run(long i) throws Exception;
+  }
+
+  private interface RowSetter {
+    // Sets the parameters of the INSERT statement for the row number "i".
+    void set(PreparedStatement statement, long i) throws SQLException;
+  }
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Data members.                                                        ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private String mode = null;
+  private long urlsToVisit = 0;
+  private long visitedUrls = 0;
+  private int hosts = 0;
+  private double skew = 0;
+  private int operations = 0;
+  private String csvFilename = null;
+
+  // Cumulative distribution of the URLs among the hosts (Zipf).
+  private double[] hostDistribution = null;
+
+  private Database database = null;
+  private Connection conn = null;
+
+  private Log log = null;
+  private File logFile = null;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: Constructor
+  // Description: sets the data members.
+  // Parameters:
+  //   - mode: "embedded" or "network".
+  //   - urlsToVisit: number of rows of the table of URLs to visit.
+  //   - visitedUrls: number of rows of the table of visited URLs.
+  //   - hosts: number of hosts.
+  //   - skew: exponent of the Zipf distribution of the URLs among the hosts
+  //           (0: uniform).
+  //   - operations: number of measured operations of each kind.
+  //   - csvFilename: file where to append the results.
+  //
+  // Returns: nothing.
+  private DatabaseBenchmark(String mode,
+                            long urlsToVisit,
+                            long visitedUrls,
+                            int hosts,
+                            double skew,
+                            int operations,
+                            String csvFilename)
+  {
+    this.mode = mode;
+    this.urlsToVisit = urlsToVisit;
+    this.visitedUrls = visitedUrls;
+    this.hosts = hosts;
+    this.skew = skew;
+    this.operations = operations;
+    this.csvFilename = csvFilename;
+  }
+
+
+  // Method: initialize
+  // Description: creates the tables through the crawler's Database class and
+  //              opens a second connection for filling them.
+  //
+  // Parameters:
+  //   - host: host of the network server; null: embedded driver.
+  //   - port: port of the network server.
+  //   - databaseName: name of the database.
+  //
+  // Returns: true: the benchmark could be initialized; false: otherwise.
+  private boolean initialize(String host, int port, String databaseName)
+    throws Exception
+  {
+    // Kept if the database cannot be opened.
+    logFile = File.createTempFile("DatabaseBenchmark", ".log");
+
+    log = new Log();
+    if (!log.initialize(logFile.getPath(), Level.WARNING, 0)) {
+      return false;
+    }
+
+    database = new Database(new Metrics(log), log);
+
+    boolean initialized = (host != null) ?
+                            database.initialize(host, port, databaseName) :
+                            database.initialize(databaseName);
+
+    if (!initialized) {
+      System.out.println("Cannot open the database (see " + logFile + ").");
+      return false;
+    }
+
+    if (host != null) {
+      Class.forName(CLIENT_DRIVER);
+      conn = DriverManager.getConnection(
+               String.format(FORMAT_CLIENT_CONNECTION_URL,
+                             host,
+                             port,
+                             databaseName));
+    } else {
+      Class.forName(EMBEDDED_DRIVER);
+      conn = DriverManager.getConnection(
+               String.format(FORMAT_EMBEDDED_CONNECTION_URL, databaseName));
+    }
+
+    // Cumulative Zipf distribution.
+    hostDistribution = new double[hosts];
+
+    double sum = 0;
+    for (int i = 0; i < hosts; i++) {
+      hostDistribution[i] = (sum += 1.0 / Math.pow(i + 1, skew));
+    }
+
+    for (int i = 0; i < hosts; i++) {
+      hostDistribution[i] /= sum;
+    }
+
+    return true;
+  }
+
+
+  // Method: fill
+  // Description: adds rows to the tables until they have the requested
+  //              number of rows (the rows already there are kept, so the
+  //              same database can be grown between runs).
+  //
+  // Parameters: none.
+  // Returns: nothing.
+  private void fill() throws SQLException
+  {
+    long now = System.currentTimeMillis();
+
+    // Visited hosts (visited one hour ago, so their URLs can be visited).
+    long count = count("VISITED_HOSTS");
+    fill("INSERT INTO VISITED_HOSTS (HOST, TIMESTAMP, SERVER) " +
+         "VALUES (?, ?, ?)",
+         count,
+         hosts,
+         (statement, i) -> {
+           statement.setString(1, host((int) i));
+           statement.setTimestamp(2, new Timestamp(now - 3600 * 1000));
+           statement.setString(3, "nginx");
+         });
+
+    // URLs to visit (all of them can be visited now).
+    count = count("URLS_TO_VISIT");
+    fill("INSERT INTO URLS_TO_VISIT (URL, HOST, WHEN) VALUES (?, ?, ?)",
+         count,
+         urlsToVisit,
+         (statement, i) -> {
+           String host = host(hostOf(i));
+           statement.setString(1, "http://" + host + "/page/" + i + ".html");
+           statement.setString(2, host);
+           statement.setTimestamp(3, new Timestamp(now - 3600 * 1000 + i));
+         });
+
+    // Visited URLs.
+    count = count("VISITED_URLS");
+    fill("INSERT INTO VISITED_URLS (URL, TIMESTAMP, FILENAME) " +
+         "VALUES (?, ?, ?)",
+         count,
+         visitedUrls,
+         (statement, i) -> {
+           statement.setString(1,
+                               "http://" +
+                               host(hostOf(i)) +
+                               "/visited/" +
+                               i +
+                               ".html");
+
+           statement.setTimestamp(2, new Timestamp(now - 7200 * 1000));
+           statement.setString(3, String.format("%06d.bin", i % 1000000));
+         });
+  }
+
+
+  // Method: fill
+  // Description: inserts the rows "from" to "to" - 1 of a table in batches.
+  // Parameters:
+  //   - sql: INSERT statement.
+  //   - from: number of the first row.
+  //   - to: number of rows of the table.
+  //   - setter: sets the parameters of the row number "i".
+  //
+  // Returns: nothing.
+  private void fill(String sql, long from, long to, RowSetter setter)
+    throws SQLException
+  {
+    if (from >= to) {
+      return;
+    }
+
+    System.out.println("Filling: " + sql.split(" ")[2] +
+                       " (" + from + " -> " + to + " rows)...");
+
+    long start = System.currentTimeMillis();
+
+    conn.setAutoCommit(false);
+
+    try (PreparedStatement statement = conn.prepareStatement(sql)) {
+      for (long i = from; i < to; i++) {
+        setter.set(statement, i);
+        statement.addBatch();
+
+        if ((i + 1) % FILL_BATCH_SIZE == 0) {
+          statement.executeBatch();
+          conn.commit();
+        }
+
+        if ((i + 1) % FILL_PROGRESS == 0) {
+          System.out.println("  " + (i + 1) + " rows.");
+        }
+      }
+
+      statement.executeBatch();
+      conn.commit();
+    } finally {
+      conn.setAutoCommit(true);
+    }
+
+    System.out.println("  Done in " +
+                       (System.currentTimeMillis() - start) / 1000 +
+                       " s.");
+  }
+
+
+  // Method: count
+  // Description: returns the number of rows of a table.
+  // Parameters:
+  //   - table: name of the table.
+  //
+  // Returns: number of rows.
+  private long count(String table) throws SQLException
+  {
+    try (PreparedStatement statement = conn.prepareStatement(
+                                         "SELECT COUNT(*) FROM " + table);
+         ResultSet rs = statement.executeQuery()) {
+      return rs.next() ? rs.getLong(1) : 0;
+    }
+  }
+
+
+  // Method: run
+  // Description: measures the operations of the crawler on the filled
+  //              tables:
+  //                - getNextUrlToVisit.
+  //                - removeUrlToVisit (of the URLs returned by
+  //                  getNextUrlToVisit, as the crawler does).
+  //                - addUrlToVisit (hit: the URL is already in the table of
+  //                  URLs to visit).
+  //                - addUrlToVisit (hit: the URL has been visited).
+  //                - addUrlToVisit (miss: new URL, replaces the removed
+  //                  ones).
+  //                - addVisitedUrl (new URL).
+  //
+  // Parameters: none.
+  // Returns: nothing.
+  private void run() throws Exception
+  {
+    MutableLong wait = new MutableLong();
+    URL[] next = new URL[operations];
+
+    // Unique suffix, so the new URLs of each run are really new.
+    String runId = Long.toString(System.currentTimeMillis(), 36);
+
+    measure("getNextUrlToVisit", i -> {
+      // The URL is removed below, so each call returns a different one.
+      return (next[(int) i] = database.getNextUrlToVisit(wait)) != null;
+    }, true);
+
+    measure("removeUrlToVisit", i -> {
+      URL url = next[(int) i];
+      return (url != null) && (database.removeUrlToVisit(url));
+    }, false);
+
+    measure("addUrlToVisit (to visit)", i -> {
+      long n = urlsToVisit - 1 - (i * 7919) % (urlsToVisit / 2);
+      return database.addUrlToVisit(new URL("http://" +
+                                            host(hostOf(n)) +
+                                            "/page/" +
+                                            n +
+                                            ".html"));
+    }, false);
+
+    measure("addUrlToVisit (visited)", i -> {
+      long n = (i * 7919) % visitedUrls;
+      return database.addUrlToVisit(new URL("http://" +
+                                            host(hostOf(n)) +
+                                            "/visited/" +
+                                            n +
+                                            ".html"));
+    }, false);
+
+    measure("addUrlToVisit (new)", i -> {
+      return database.addUrlToVisit(new URL("http://" +
+                                            host(hostOf(i)) +
+                                            "/new/" +
+                                            runId +
+                                            "/" +
+                                            i +
+                                            ".html"));
+    }, false);
+
+    measure("addVisitedUrl", i -> {
+      return database.addVisitedUrl(new URL("http://" +
+                                            host(hostOf(i)) +
+                                            "/fetched/" +
+                                            runId +
+                                            "/" +
+                                            i +
+                                            ".html"),
+                                    "nginx",
+                                    String.format("%06d.bin", i));
+    }, false);
+  }
+
+
+  // Method: measure
+  // Description: runs an operation "operations" times (after a warmup of a
+  //              tenth of them, if requested), prints the results and appends
+  //              them to the CSV file.
+  //
+  // Parameters:
+  //   - name: name of the operation.
+  //   - operation: operation.
+  //   - warmup: whether to warm up (the operations which consume the
+  //             results of a previous one are not warmed up).
+  //
+  // Returns: nothing.
+  private void measure(String name, Operation operation, boolean warmup)
+    throws Exception
+  {
+    if (warmup) {
+      MutableLong wait = new MutableLong();
+      for (int i = 0; i < operations / 10; i++) {
+        // Leave the table unchanged.
+        database.getNextUrlToVisit(wait);
+      }
+    }
+
+    Histogram latency = new Histogram(name);
+    int failures = 0;
+
+    long start = System.nanoTime();
+
+    for (int i = 0; i < operations; i++) {
+      long t = System.nanoTime();
+
+      if (!operation.run(i)) {
+        failures++;
+      }
+
+      latency.recordSince(t);
+    }
+
+    double seconds = (System.nanoTime() - start) / 1000000000.0;
+
+    Histogram.Snapshot snapshot = latency.getSnapshot();
+
+    String result = String.format(Locale.ROOT,
+                                  "%.1f,%.1f,%.1f,%.1f,%.1f",
+                                  operations / seconds,
+                                  snapshot.getMean() / 1000,
+                                  snapshot.getPercentile(50) / 1000.0,
+                                  snapshot.getPercentile(99) / 1000.0,
+                                  snapshot.getMax() / 1000.0);
+
+    System.out.println(String.format(Locale.ROOT,
+                                     "%-28s %10.1f ops/s, mean: %10.1f us, " +
+                                     "p99: %10.1f us%s",
+                                     name,
+                                     operations / seconds,
+                                     snapshot.getMean() / 1000,
+                                     snapshot.getPercentile(99) / 1000.0,
+                                     (failures > 0) ?
+                                       ", failures: " + failures :
+                                       ""));
+
+    File csv = new File(csvFilename);
+    boolean header = !csv.exists();
+
+    try (PrintWriter writer = new PrintWriter(new FileWriter(csv, true))) {
+      if (header) {
+        writer.println(CSV_HEADER);
+      }
+
+      writer.println(String.format(Locale.ROOT,
+                                   "%tFT%<tT,%s,%d,%d,%d,%.2f,%s,%d,%s",
+                                   new Date(),
+                                   mode,
+                                   urlsToVisit,
+                                   visitedUrls,
+                                   hosts,
+                                   skew,
+                                   name,
+                                   operations,
+                                   result));
+    }
+  }
+
+
+  // Method: hostOf
+  // Description: returns the host of the URL number "i" (Zipf distribution,
+  //              the same URL always gets the same host).
+  //
+  // Parameters:
+  //   - i: number of the URL.
+  //
+  // Returns: number of the host.
+  private int hostOf(long i)
+  {
+    // Hash of "i" (SplitMix64) as a uniform number in [0, 1).
+    long z = i + 0x9e3779b97f4a7c15L;
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    z = z ^ (z >>> 31);
+
+    double u = (z >>> 11) * 0x1.0p-53;
+
+    int pos = java.util.Arrays.binarySearch(hostDistribution, u);
+    return Math.min((pos >= 0) ? pos : -pos - 1, hosts - 1);
+  }
+
+
+  // Method: host
+  // Description: returns the name of the host number "i".
+  // Parameters:
+  //   - i: number of the host.
+  //
+  // Returns: name of the host.
+  private static String host(int i)
+  {
+    return "www.host" + i + ".example.com";
+  }
+
+
+  // Method: shutdown
+  // Description: closes the connection, shuts the database down and deletes
+  //              the log file.
+  //
+  // Parameters: none.
+  // Returns: nothing.
+  private void shutdown()
+  {
+    try {
+      conn.close();
+    } catch (SQLException e) {
+    }
+
+    database.shutdown();
+    log.shutdown();
+
+    logFile.delete();
+  }
+
+
+  // Method: help
+  // Description: shows the usage.
+  // Parameters: none.
+  // Returns: nothing.
+  private static void help()
+  {
+    System.out.println("Options:");
+    System.out.println("\t--host <host> (network server mode)");
+    System.out.println("\t--port <port>");
+
+    System.out.println("\t--database-name <database-name> (default: " +
+                       DEFAULT_DATABASE_NAME +
+                       ").");
+
+    System.out.println("\t--urls-to-visit <number> (default: " +
+                       DEFAULT_URLS_TO_VISIT +
+                       ").");
+
+    System.out.println("\t--visited-urls <number> (default: " +
+                       DEFAULT_VISITED_URLS +
+                       ").");
+
+    System.out.println("\t--hosts <number> (default: " +
+                       DEFAULT_HOSTS +
+                       ").");
+
+    System.out.println("\t--skew <exponent> (default: " +
+                       DEFAULT_SKEW +
+                       ", 0: uniform).");
+
+    System.out.println("\t--operations <number> (default: " +
+                       DEFAULT_OPERATIONS +
+                       ").");
+
+    System.out.println("\t--csv <filename> (default: " +
+                       DEFAULT_CSV_FILENAME +
+                       ").");
+
+    System.out.println();
+  }
+
+
+  // Method: main
+  // Description: checks the command-line arguments, fills the database and
+  //              runs the benchmark.
+  //
+  // Parameters: array of command-line arguments.
+  // Returns: nothing.
+  public static void main(String[] args) throws Exception
+  {
+    String host = null;
+    int port = -1;
+    String databaseName = DEFAULT_DATABASE_NAME;
+    long urlsToVisit = DEFAULT_URLS_TO_VISIT;
+    long visitedUrls = DEFAULT_VISITED_URLS;
+    int hosts = DEFAULT_HOSTS;
+    double skew = DEFAULT_SKEW;
+    int operations = DEFAULT_OPERATIONS;
+    String csvFilename = DEFAULT_CSV_FILENAME;
+
+    // Check arguments (all the options have a value).
+    for (int i = 0; i < args.length; i += 2) {
+      // Last argument?
+      if (i + 1 == args.length) {
+        help();
+        return;
+      }
+
+      String value = args[i + 1];
+
+      try {
+        if (args[i].equals("--host")) {
+          host = value;
+        } else if (args[i].equals("--port")) {
+          port = Integer.parseInt(value);
+        } else if (args[i].equals("--database-name")) {
+          databaseName = value;
+        } else if (args[i].equals("--urls-to-visit")) {
+          urlsToVisit = Long.parseLong(value);
+        } else if (args[i].equals("--visited-urls")) {
+          visitedUrls = Long.parseLong(value);
+        } else if (args[i].equals("--hosts")) {
+          hosts = Integer.parseInt(value);
+        } else if (args[i].equals("--skew")) {
+          skew = Double.parseDouble(value);
+        } else if (args[i].equals("--operations")) {
+          operations = Integer.parseInt(value);
+        } else if (args[i].equals("--csv")) {
+          csvFilename = value;
+        } else {
+          help();
+          return;
+        }
+      } catch (NumberFormatException e) {
+        System.out.println("Invalid value '" + value + "' for " + args[i] +
+                           ".");
+
+        return;
+      }
+    }
+
+    if ((host != null) != (port != -1)) {
+      System.out.println("The host and the port have to be given together.");
+      return;
+    }
+
+    if ((urlsToVisit < 2L * operations) ||
+        (visitedUrls < 1) ||
+        (hosts < 1) ||
+        (skew < 0) ||
+        (operations < 1)) {
+      System.out.println("Invalid scale (the table of URLs to visit needs " +
+                         "at least twice the number of operations).");
+
+      return;
+    }
+
+    DatabaseBenchmark benchmark =
+      new DatabaseBenchmark((host != null) ? "network" : "embedded",
+                            urlsToVisit,
+                            visitedUrls,
+                            hosts,
+                            skew,
+                            operations,
+                            csvFilename);
+
+    if (benchmark.initialize(host, port, databaseName)) {
+      benchmark.fill();
+      benchmark.run();
+      benchmark.shutdown();
+
+      System.out.println("Results appended to '" + csvFilename + "'.");
+    }
+  }
+}
@@ -0,0 +1,187 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.logging.Level;
+import java.net.InetAddress;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+
+public class DnsCheck {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // TTLs of the lookups of the resolver (shortened for the check).
+  private static final long POSITIVE_TTL = 1000; // Milliseconds.
+  private static final long NEGATIVE_TTL = 500; // Milliseconds.
+
+  // Simulated latency of the lookups.
+  private static final long DELAY = 200; // Milliseconds.
+
+  // Number of threads resolving the same host at the same time.
+  private static final int NUMBER_CLIENTS = 16;
+
+  private static final int TIMEOUT = 5000; // Milliseconds.
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Data members.                                                        ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static int checks = 0;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: main
+  // Description: checks DnsResolver with a StaticLookup (offline):
+  //                - The concurrent lookups of a host are merged.
+  //                - The resolved hosts are cached until their TTL expires.
+  //                - The unknown hosts are cached (negative cache) until
+  //                  their shorter TTL expires.
+  //                - A lookup slower than the timeout fails with
+  //                  SocketTimeoutException.
+  //
+  //              Exits with status 1 at the first failed check.
+  //
+  // Parameters:
+  //   - args: none.
+  //
+  // Returns: nothing.
+  public static void main(String[] args) throws Exception
+  {
+    Log log = new Log();
+    log.initialize(Level.WARNING);
+
+    Metrics metrics = new Metrics(log);
+
+    StaticLookup lookup = new StaticLookup();
+    lookup.add("a.test", "192.0.2.1", "2001:db8::1");
+    lookup.setDelay(DELAY);
+
+    DnsResolver resolver = new DnsResolver(lookup, 4, 100, null, metrics, log);
+    resolver.setTtls(POSITIVE_TTL, NEGATIVE_TTL);
+    resolver.initialize();
+
+    // Merged lookups.
+    ExecutorService clients = Executors.newFixedThreadPool(NUMBER_CLIENTS);
+
+    List<Future<InetAddress[]>> futures =
+      new ArrayList<Future<InetAddress[]>>();
+    for (int i = 0; i < NUMBER_CLIENTS; i++) {
+      futures.add(clients.submit(() -> resolver.resolve("a.test", TIMEOUT)));
+    }
+
+    for (Future<InetAddress[]> future : futures) {
+      check("merged lookups: addresses", future.get().length == 2);
+    }
+
+    clients.shutdown();
+
+    check("merged lookups: " + lookup.getLookups() + " lookup(s)",
+          lookup.getLookups() == 1);
+
+    // Positive cache: the addresses are kept until the TTL expires.
+    lookup.add("a.test", "192.0.2.2");
+
+    check("positive cache: cached addresses",
+          resolver.resolve("a.test", TIMEOUT).length == 2);
+
+    check("positive cache: no lookup", lookup.getLookups() == 1);
+
+    Thread.sleep(POSITIVE_TTL);
+
+    check("positive TTL: new addresses",
+          resolver.resolve("a.test", TIMEOUT).length == 1);
+
+    check("positive TTL: lookup", lookup.getLookups() == 2);
+
+    // Negative cache: the host is unknown until the TTL expires.
+    check("negative cache: unknown host", !resolves(resolver, "b.test"));
+    check("negative cache: lookup", lookup.getLookups() == 3);
+
+    lookup.add("b.test", "192.0.2.3");
+
+    check("negative cache: cached unknown host",
+          !resolves(resolver, "b.test"));
+
+    check("negative cache: no lookup", lookup.getLookups() == 3);
+
+    Thread.sleep(NEGATIVE_TTL);
+
+    check("negative TTL: resolved host", resolves(resolver, "b.test"));
+    check("negative TTL: lookup", lookup.getLookups() == 4);
+
+    // Timeout.
+    lookup.add("c.test", "192.0.2.4");
+    lookup.setDelay(TIMEOUT);
+
+    boolean timedOut = false;
+    try {
+      resolver.resolve("c.test", (int) DELAY);
+    } catch (SocketTimeoutException e) {
+      timedOut = true;
+    }
+
+    check("timeout", timedOut);
+
+    resolver.shutdown();
+
+    System.out.println("OK: " + checks + " checks.");
+
+    System.exit(0);
+  }
+
+
+  // Method: resolves
+  // Description: returns whether a host can be resolved.
+  // Parameters:
+  //   - resolver: resolver.
+  //   - host: host.
+  //
+  // Returns: true: the host has been resolved; false: unknown host.
+  private static boolean resolves(DnsResolver resolver, String host)
+    throws SocketTimeoutException
+  {
+    try {
+      resolver.resolve(host, TIMEOUT);
+      return true;
+    } catch (UnknownHostException e) {
+      return false;
+    }
+  }
+
+
+  // Method: check
+  // Description: counts a check, exits with status 1 if it has failed.
+  // Parameters:
+  //   - name: name of the check.
+  //   - condition: result of the check.
+  //
+  // Returns: nothing.
+  private static void check(String name, boolean condition)
+  {
+    checks++;
+
+    if (!condition) {
+      System.out.println("Failed: " + name + ".");
+      System.exit(1);
+    }
+  }
+}
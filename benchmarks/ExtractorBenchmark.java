@@ -0,0 +1,473 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+public class ExtractorBenchmark {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final int NUMBER_SMALL_PAGES = 16; // Power of two.
+  private static final int SMALL_PAGE_SIZE = 16 * 1024;
+  private static final int LARGE_PAGE_SIZE = 5 * 1024 * 1024;
+  private static final int INDEX_PAGE_LINKS = 4000;
+
+  private static final int FILTER_CACHE_SIZE = 64 * 1024;
+
+  private static final long SEED = 42;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Type declarations.                                                   ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Database which only counts the URLs to visit.
+  private static class CountingDatabase extends Database {
+    private LongAdder links = new LongAdder();
+
+    private CountingDatabase(Metrics metrics, Log log)
+    {
+      super(metrics, log);
+    }
+
+    public synchronized boolean addUrlsToVisit(Collection<String> urls)
+    {
+      links.add(urls.size());
+      return true;
+    }
+  }
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: main
+  // Description: measures UrlsExtractor.processFile() (HTML parser, URL
+  //              canonicalizer and URL filter) with data files in the format
+  //              written by the downloader:
+  //                - small: 16 KB pages.
+  //                - large: 5 MB page.
+  //                - malformed: unclosed and misnested tags, unquoted
+  //                  attributes, stray '<', broken entities and comments.
+  //                - index: link-dense page (4000 links).
+  //                - stored: the files of a directory (if given).
+  //
+  //              For each workload, prints the throughput in MB/s and links/s
+  //              (links added to the URLs to visit: absolute, valid and
+  //              distinct within the page) and the allocation rate.
+  //
+  // Parameters:
+  //   - args: [<directory of data files>] (e.g. the final directory of the
+  //           crawler).
+  //
+  // Returns: nothing.
+  public static void main(String[] args) throws Exception
+  {
+    File dir = Files.createTempDirectory("ExtractorBenchmark").toFile();
+    dir.deleteOnExit();
+
+    Log log = new Log();
+    log.initialize(tempFile(dir, "benchmark.log").getPath(), Level.INFO, 0);
+
+    Metrics metrics = new Metrics(log);
+
+    CountingDatabase database = new CountingDatabase(metrics, log);
+
+    UrlCanonicalizer urlCanonicalizer = new UrlCanonicalizer(log);
+    urlCanonicalizer.initialize();
+
+    UrlFilter urlFilter = new UrlFilter(FILTER_CACHE_SIZE, metrics, log);
+    urlFilter.initialize();
+
+    // No rules: every link is kept.
+    FetchPolicy fetchPolicy = new FetchPolicy(false, metrics, log);
+    fetchPolicy.initialize();
+
+    UrlsExtractor urlsExtractor = new UrlsExtractor(database,
+                                                    urlCanonicalizer,
+                                                    urlFilter,
+                                                    fetchPolicy,
+                                                    null,
+                                                    new HostStatistics(),
+                                                    metrics,
+                                                    log);
+
+    urlsExtractor.initialize();
+
+    Random random = new Random(SEED);
+
+    List<File> small = new ArrayList<File>();
+    for (int i = 0; i < NUMBER_SMALL_PAGES; i++) {
+      small.add(write(dir,
+                      "small-" + i,
+                      "http://www.example.com/section" + i + "/",
+                      page(random, SMALL_PAGE_SIZE)));
+    }
+
+    List<File> large = new ArrayList<File>();
+    large.add(write(dir,
+                    "large",
+                    "http://www.example.com/archive/all.html",
+                    page(random, LARGE_PAGE_SIZE)));
+
+    List<File> malformed = new ArrayList<File>();
+    malformed.add(write(dir,
+                        "malformed",
+                        "http://www.example.com/broken/page.html",
+                        malformedPage(random)));
+
+    List<File> index = new ArrayList<File>();
+    index.add(write(dir,
+                    "index",
+                    "http://www.example.com/sitemap/",
+                    indexPage(random)));
+
+    BenchmarkHarness.header();
+
+    run("small", small, urlsExtractor, database);
+    run("large", large, urlsExtractor, database);
+    run("malformed", malformed, urlsExtractor, database);
+    run("index", index, urlsExtractor, database);
+
+    if (args.length > 0) {
+      List<File> stored = new ArrayList<File>();
+
+      File[] files;
+      if ((files = new File(args[0]).listFiles()) != null) {
+        for (File file : files) {
+          if (file.isFile()) {
+            stored.add(file);
+          }
+        }
+      }
+
+      if (!stored.isEmpty()) {
+        run("stored", stored, urlsExtractor, database);
+      }
+    }
+
+    log.shutdown();
+  }
+
+
+  // Method: run
+  // Description: measures the processing of a set of files and prints the
+  //              throughput and the allocation rate.
+  //
+  // Parameters:
+  //   - name: name of the workload.
+  //   - files: data files (processed in turn).
+  //   - urlsExtractor: URLs extractor.
+  //   - database: counting database.
+  //
+  // Returns: nothing.
+  private static void run(String name,
+                          List<File> files,
+                          UrlsExtractor urlsExtractor,
+                          CountingDatabase database) throws Exception
+  {
+    final String[] filenames = new String[files.size()];
+    final long[] sizes = new long[files.size()];
+
+    for (int i = 0; i < filenames.length; i++) {
+      filenames[i] = files.get(i).getPath();
+      sizes[i] = files.get(i).length();
+    }
+
+    final long[] bytes = new long[1];
+    final long[] ops = new long[1];
+
+    long linksBefore = database.links.sum();
+
+    double ns = BenchmarkHarness.run("UrlsExtractor " + name, i -> {
+      int n = i % filenames.length;
+
+      bytes[0] += sizes[n];
+      ops[0]++;
+
+      return urlsExtractor.processFile(filenames[n]);
+    });
+
+    double bytesPerOp = (double) bytes[0] / ops[0];
+    double linksPerOp = (double) (database.links.sum() - linksBefore) /
+                        ops[0];
+
+    double allocated = BenchmarkHarness.getAllocatedBytes();
+
+    System.out.println(String.format(
+                         Locale.ROOT,
+                         "    %.1f KB/file, %.0f links/file: %.1f MB/s, " +
+                         "%.0f links/s, allocation: %s",
+                         bytesPerOp / 1024,
+                         linksPerOp,
+                         bytesPerOp / ns * 1000,
+                         linksPerOp / ns * 1000000000,
+                         (allocated >= 0) ?
+                           String.format(Locale.ROOT,
+                                         "%.1f MB/s (%.1f bytes/byte)",
+                                         allocated / ns * 1000,
+                                         allocated / bytesPerOp) :
+                           "n/a"));
+  }
+
+
+  // Method: page
+  // Description: generates a well-formed HTML page with a navigation bar,
+  //              paragraphs containing links (absolute, relative, with query
+  //              strings and fragments) and a footer.
+  //
+  // Parameters:
+  //   - random: random number generator.
+  //   - size: approximate size of the page (bytes).
+  //
+  // Returns: page.
+  private static String page(Random random, int size)
+  {
+    StringBuilder sb = new StringBuilder(size + 4096);
+
+    sb.append("<!DOCTYPE html>\n<html lang=\"en\">\n<head>\n")
+      .append("<meta charset=\"utf-8\">\n<title>Example page</title>\n")
+      .append("<link rel=\"stylesheet\" href=\"/css/site.css\">\n")
+      .append("<script src=\"/js/site.js\"></script>\n</head>\n<body>\n")
+      .append("<nav><ul>\n");
+
+    for (int i = 0; i < 20; i++) {
+      sb.append("<li><a href=\"/section").append(i).append("/\">Section ")
+        .append(i).append("</a></li>\n");
+    }
+
+    sb.append("</ul></nav>\n<main>\n");
+
+    while (sb.length() < size) {
+      sb.append("<article class=\"post\">\n<h2><a href=\"")
+        .append(link(random))
+        .append("\">Article title</a></h2>\n<p>");
+
+      for (int i = 0; i < 8; i++) {
+        sb.append(text(random)).append(' ');
+
+        if (random.nextInt(4) == 0) {
+          sb.append("<a href=\"").append(link(random)).append("\">")
+            .append("related</a> ");
+        }
+      }
+
+      sb.append("</p>\n<img src=\"/img/").append(random.nextInt(1000))
+        .append(".jpg\" alt=\"\">\n</article>\n");
+    }
+
+    sb.append("</main>\n<footer>\n");
+
+    for (int i = 0; i < 10; i++) {
+      sb.append("<a href=\"https://www.example.org/about/").append(i)
+        .append("\">About ").append(i).append("</a>\n");
+    }
+
+    return sb.append("</footer>\n</body>\n</html>\n").toString();
+  }
+
+
+  // Method: malformedPage
+  // Description: generates an HTML page with the usual errors found in the
+  //              wild.
+  //
+  // Parameters:
+  //   - random: random number generator.
+  //
+  // Returns: page.
+  private static String malformedPage(Random random)
+  {
+    StringBuilder sb = new StringBuilder();
+
+    sb.append("<HTML><Head><TITLE>Broken</title>\n<BODY bgcolor=#ffffff>\n");
+
+    for (int i = 0; i < 200; i++) {
+      switch (i % 10) {
+        case 0:
+          sb.append("<p>unclosed paragraph <b>bold <i>misnested</b></i>\n");
+          break;
+        case 1:
+          sb.append("<a href=").append(link(random)).append(">unquoted</a>\n");
+          break;
+        case 2:
+          sb.append("<A HREF='").append(link(random))
+            .append("' target=_blank>single quotes</A>\n");
+
+          break;
+        case 3:
+          sb.append("<a href=\"").append(link(random))
+            .append("\">unclosed anchor\n");
+
+          break;
+        case 4:
+          sb.append("text with a stray < and 3 < 4 && 5 > 2 &nbsp &amp\n");
+          break;
+        case 5:
+          sb.append("<table><tr><td>cell<td>cell<tr><td><a href=\"")
+            .append(link(random)).append("\">in table</a></table>\n");
+
+          break;
+        case 6:
+          sb.append("<!-- comment with <a href=\"/hidden\">link</a> -- >\n")
+            .append("-->\n");
+
+          break;
+        case 7:
+          sb.append("<script>document.write('<a href=\"/js\">');")
+            .append("if (a < b) {}</script>\n");
+
+          break;
+        case 8:
+          sb.append("<a href=\"javascript:void(0)\">js</a> ")
+            .append("<a href=\"mailto:info@example.com\">mail</a> ")
+            .append("<a href=\"  ").append(link(random))
+            .append("  \">spaces</a>\n");
+
+          break;
+        default:
+          sb.append("<div><span><a href=\"").append(link(random))
+            .append("\" href=\"/duplicate\" disabled>attr</a></div>\n");
+      }
+    }
+
+    // Missing </body> and </html>.
+    return sb.toString();
+  }
+
+
+  // Method: indexPage
+  // Description: generates a link-dense page (sitemap, directory listing)
+  //              with absolute links (the HTML parser ignores the relative
+  //              ones).
+  //
+  // Parameters:
+  //   - random: random number generator.
+  //
+  // Returns: page.
+  private static String indexPage(Random random)
+  {
+    StringBuilder sb = new StringBuilder();
+
+    sb.append("<!DOCTYPE html>\n<html><head><title>Index</title></head>\n")
+      .append("<body>\n<table>\n");
+
+    for (int i = 0; i < INDEX_PAGE_LINKS; i++) {
+      sb.append("<tr><td><a href=\"http://www.example.com/item/")
+        .append(i).append("/")
+        .append(random.nextInt(100000)).append(".html\">Item ").append(i)
+        .append("</a></td><td>").append(random.nextInt(10000))
+        .append("</td></tr>\n");
+    }
+
+    return sb.append("</table>\n</body>\n</html>\n").toString();
+  }
+
+
+  // Method: link
+  // Description: returns a random link.
+  // Parameters:
+  //   - random: random number generator.
+  //
+  // Returns: link.
+  private static String link(Random random)
+  {
+    int n = random.nextInt(100000);
+
+    switch (random.nextInt(5)) {
+      case 0:
+        return "/news/" + n + ".html";
+      case 1:
+        return "../archive/" + n + "/index.html";
+      case 2:
+        return "https://www.example.org/article?id=" + n + "&utm_source=rss";
+      case 3:
+        return "http://blog.example.net/" + n + "#comments";
+      default:
+        return "page" + n + ".html;jsessionid=ABC" + n;
+    }
+  }
+
+
+  // Method: text
+  // Description: returns a random sentence.
+  // Parameters:
+  //   - random: random number generator.
+  //
+  // Returns: sentence.
+  private static String text(Random random)
+  {
+    return "Lorem ipsum dolor sit amet, consectetur adipiscing elit " +
+           random.nextInt(1000) +
+           ", sed do eiusmod tempor incididunt ut labore et dolore.";
+  }
+
+
+  // Method: write
+  // Description: writes a data file in the format of the downloader: URL,
+  //              HTTP headers, empty line and body.
+  //
+  // Parameters:
+  //   - dir: directory.
+  //   - name: name of the file.
+  //   - url: URL of the page.
+  //   - body: body of the page.
+  //
+  // Returns: file.
+  private static File write(File dir, String name, String url, String body)
+    throws IOException
+  {
+    File file = tempFile(dir, name + ".bin");
+
+    try (OutputStream out = new FileOutputStream(file)) {
+      out.write(("URL: " + url + "\r\n" +
+                 "Content-Type: text/html; charset=UTF-8\r\n" +
+                 "Server: ExtractorBenchmark\r\n" +
+                 "\r\n").getBytes(StandardCharsets.US_ASCII));
+
+      out.write(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    return file;
+  }
+
+
+  // Method: tempFile
+  // Description: returns a file in the temporary directory, which is deleted
+  //              when the JVM exits.
+  //
+  // Parameters:
+  //   - dir: temporary directory.
+  //   - name: name of the file.
+  //
+  // Returns: file.
+  private static File tempFile(File dir, String name)
+  {
+    File file = new File(dir, name);
+    file.deleteOnExit();
+
+    return file;
+  }
+}
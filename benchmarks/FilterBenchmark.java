@@ -0,0 +1,410 @@
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.regex.Pattern;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+public class FilterBenchmark {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final int NUMBER_URLS = 4096; // Power of two.
+
+  // Sizes of the rule sets (system property "benchmark.rules").
+  private static final String DEFAULT_RULE_COUNTS = "10,100,1000,10000,100000";
+
+  // Fraction of URLs matching a rule.
+  private static final double HIT_HEAVY = 0.9;
+  private static final double MISS_HEAVY = 0.1;
+
+  private static final int FILTER_CACHE_SIZE = 64 * 1024;
+
+  private static final long SEED = 42;
+
+  private static final String[] SYLLABLES = {
+    "ba", "co", "de", "fi", "go", "ka", "la", "me",
+    "no", "pa", "ri", "sa", "to", "ve", "xu", "zo"
+  };
+
+  private static final String[] TLDS = {"com", "org", "net", "io"};
+
+  private static final String[] SUBDOMAINS = {"www", "blog", "shop", "m"};
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Type declarations.                                                   ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private enum Kind {
+    REGEX, // Regular expressions (automaton).
+    HOST   // "domain:" rules (index of hosts).
+  };
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: main
+  // Description: measures UrlMatcher.matches() and UrlFilter.matches() (with
+  //              its cache of decisions) for rule sets of different sizes
+  //              (regular expressions and "domain:" rules) and two
+  //              synthetic workloads: hit-heavy (90% of the URLs match a
+  //              rule) and miss-heavy (10%). The regular expressions are also
+  //              checked one by one with java.util.regex, the baseline of the
+  //              automaton.
+  //              If a file of URLs is given, the rules also cover half of its
+  //              hosts and it is measured as a third workload.
+  //
+  // Parameters:
+  //   - args: [<file of URLs>]: one URL per line or the output of
+  //           "Database --view-table-visited-urls".
+  //
+  // Returns: nothing.
+  public static void main(String[] args) throws Exception
+  {
+    List<String> corpus = new ArrayList<String>();
+    if (args.length > 0) {
+      corpus = readUrls(args[0]);
+    }
+
+    List<String> corpusHosts = new ArrayList<String>();
+    for (String url : corpus) {
+      String host;
+      if (((host = UrlCanonicalizer.getHost(url)) != null) &&
+          (!corpusHosts.contains(host))) {
+        corpusHosts.add(host);
+      }
+    }
+
+    File dir = Files.createTempDirectory("FilterBenchmark").toFile();
+    dir.deleteOnExit();
+
+    Log log = new Log();
+    log.initialize(tempFile(dir, "benchmark.log"), Level.INFO, 0);
+
+    Metrics metrics = new Metrics(log);
+
+    BenchmarkHarness.header();
+
+    String counts = System.getProperty("benchmark.rules", DEFAULT_RULE_COUNTS);
+
+    for (Kind kind : Kind.values()) {
+      for (String count : counts.split(",")) {
+        int n = Integer.parseInt(count.trim());
+
+        // Hosts of the rules: half of the hosts of the corpus, then
+        // synthetic hosts.
+        List<String> hosts = new ArrayList<String>();
+        for (int i = 0; (i < corpusHosts.size()) && (hosts.size() < n / 2);
+             i += 2) {
+          hosts.add(corpusHosts.get(i));
+        }
+
+        for (int i = 0; hosts.size() < n; i++) {
+          hosts.add(host(i));
+        }
+
+        List<Pattern> patterns = new ArrayList<Pattern>();
+
+        String rulesFilename = tempFile(dir, "rules.txt");
+        try (PrintWriter writer = new PrintWriter(rulesFilename, "UTF-8")) {
+          for (int i = 0; i < n; i++) {
+            String rule = rule(kind, i, hosts.get(i));
+
+            if (kind == Kind.REGEX) {
+              patterns.add(Pattern.compile(rule));
+            }
+
+            writer.println(rule);
+          }
+        }
+
+        UrlMatcher matcher = new UrlMatcher("benchmark", log);
+        matcher.initialize();
+        matcher.load(rulesFilename, true);
+
+        UrlFilter filter = new UrlFilter(FILTER_CACHE_SIZE, metrics, log);
+        filter.initialize();
+        filter.load(rulesFilename, null);
+
+        new File(rulesFilename).delete();
+
+        String prefix = kind.name().toLowerCase() + " " + n + " ";
+
+        Random random = new Random(SEED);
+
+        run(prefix + "hit-heavy",
+            urls(kind, hosts, HIT_HEAVY, random),
+            matcher,
+            filter,
+            patterns);
+
+        run(prefix + "miss-heavy",
+            urls(kind, hosts, MISS_HEAVY, random),
+            matcher,
+            filter,
+            patterns);
+
+        if (!corpus.isEmpty()) {
+          String[] urls = new String[NUMBER_URLS];
+          for (int i = 0; i < NUMBER_URLS; i++) {
+            urls[i] = corpus.get(random.nextInt(corpus.size()));
+          }
+
+          run(prefix + "corpus", urls, matcher, filter, patterns);
+        }
+      }
+    }
+
+    log.shutdown();
+  }
+
+
+  // Method: run
+  // Description: measures the matcher, the filter and the patterns checked
+  //              one by one (if any) with a set of URLs.
+  //
+  // Parameters:
+  //   - name: name of the workload.
+  //   - urls: NUMBER_URLS URLs.
+  //   - matcher: URL matcher.
+  //   - filter: URL filter.
+  //   - patterns: patterns of the rules (empty: "domain:" rules).
+  //
+  // Returns: nothing.
+  private static void run(String name,
+                          String[] urls,
+                          UrlMatcher matcher,
+                          UrlFilter filter,
+                          List<Pattern> patterns) throws Exception
+  {
+    BenchmarkHarness.run("UrlMatcher " + name,
+                         i -> matcher.matches(urls[i & (NUMBER_URLS - 1)]));
+
+    BenchmarkHarness.run("UrlFilter " + name,
+                         i -> filter.matches(urls[i & (NUMBER_URLS - 1)]));
+
+    if (!patterns.isEmpty()) {
+      BenchmarkHarness.run("Patterns " + name,
+                           i -> matches(patterns,
+                                        urls[i & (NUMBER_URLS - 1)]));
+    }
+  }
+
+
+  // Method: matches
+  // Description: checks the URL against each pattern (the way the rules were
+  //              checked before the automaton).
+  //
+  // Parameters:
+  //   - patterns: patterns.
+  //   - url: URL.
+  //
+  // Returns: true: the URL matches one of the patterns; false: otherwise.
+  private static boolean matches(List<Pattern> patterns, String url)
+  {
+    for (Pattern p : patterns) {
+      if (p.matcher(url).matches()) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+
+  // Method: rule
+  // Description: returns the rule number "i" for the host "host". The regular
+  //              expressions follow the usual shapes of exclusion lists:
+  //              whole domain, sections, file types and session URLs.
+  //
+  // Parameters:
+  //   - kind: kind of rules.
+  //   - i: number of the rule.
+  //   - host: host.
+  //
+  // Returns: rule.
+  private static String rule(Kind kind, int i, String host)
+  {
+    if (kind == Kind.HOST) {
+      return "domain:" + host;
+    }
+
+    String h = host.replace(".", "\\.");
+
+    switch (i % 4) {
+      case 0:
+        return "https?://([^/]+\\.)?" + h + "/.*";
+      case 1:
+        return "https?://(www\\.)?" + h + "/(news|blog)/.*";
+      case 2:
+        return "https?://" + h + "/.*\\.(pdf|zip)";
+      default:
+        return "https?://" + h + "/.*[?&]sessionid=.*";
+    }
+  }
+
+
+  // Method: urls
+  // Description: generates NUMBER_URLS URLs, a fraction "hits" of them match
+  //              one of the rules.
+  //
+  // Parameters:
+  //   - kind: kind of rules.
+  //   - hosts: hosts of the rules.
+  //   - hits: fraction of URLs matching a rule.
+  //   - random: random number generator.
+  //
+  // Returns: URLs.
+  private static String[] urls(Kind kind,
+                               List<String> hosts,
+                               double hits,
+                               Random random)
+  {
+    String[] urls = new String[NUMBER_URLS];
+
+    for (int i = 0; i < NUMBER_URLS; i++) {
+      String path = "section" +
+                    random.nextInt(16) +
+                    "/article-" +
+                    random.nextInt(100000) +
+                    ".html";
+
+      if (random.nextDouble() < hits) {
+        int rule = random.nextInt(hosts.size());
+        String host = hosts.get(rule);
+
+        if (kind == Kind.HOST) {
+          urls[i] = "https://" +
+                    SUBDOMAINS[random.nextInt(SUBDOMAINS.length)] +
+                    "." +
+                    host +
+                    "/" +
+                    path;
+        } else {
+          switch (rule % 4) {
+            case 0:
+              urls[i] = "http://" +
+                        SUBDOMAINS[random.nextInt(SUBDOMAINS.length)] +
+                        "." +
+                        host +
+                        "/" +
+                        path;
+
+              break;
+            case 1:
+              urls[i] = "https://www." + host + "/news/" + path;
+              break;
+            case 2:
+              urls[i] = "https://" + host + "/files/report.pdf";
+              break;
+            default:
+              urls[i] = "http://" + host + "/page?id=3&sessionid=abc";
+          }
+        }
+      } else {
+        // Host which is not in the rules.
+        urls[i] = "https://www." +
+                  host(hosts.size() + random.nextInt(100000)) +
+                  "/" +
+                  path;
+      }
+    }
+
+    return urls;
+  }
+
+
+  // Method: host
+  // Description: returns the synthetic host number "i" (five syllables and a
+  //              top-level domain, unique for i < 2^20).
+  //
+  // Parameters:
+  //   - i: number of the host.
+  //
+  // Returns: host.
+  private static String host(int i)
+  {
+    StringBuilder sb = new StringBuilder();
+
+    for (int j = 0, n = i; j < 5; j++, n >>>= 4) {
+      sb.append(SYLLABLES[n & 15]);
+    }
+
+    return sb.append('.').append(TLDS[(i >>> 20) & 3]).toString();
+  }
+
+
+  // Method: readUrls
+  // Description: reads the URLs of a file: one URL per line or the output of
+  //              "Database --view-table-visited-urls" ("[n] URL: '...'").
+  //
+  // Parameters:
+  //   - filename: name of the file.
+  //
+  // Returns: URLs (canonical form is assumed).
+  private static List<String> readUrls(String filename) throws IOException
+  {
+    Set<String> urls = new LinkedHashSet<String>();
+
+    try (BufferedReader reader = Files.newBufferedReader(
+                                   Paths.get(filename),
+                                   StandardCharsets.UTF_8)) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        int pos;
+        if ((pos = line.indexOf("URL: '")) != -1) {
+          int end;
+          if ((end = line.indexOf('\'', pos + 6)) != -1) {
+            urls.add(line.substring(pos + 6, end));
+          }
+        } else if ((line = line.trim()).startsWith("http")) {
+          urls.add(line);
+        }
+      }
+    }
+
+    return new ArrayList<String>(urls);
+  }
+
+
+  // Method: tempFile
+  // Description: returns the name of a file in the temporary directory,
+  //              which is deleted when the JVM exits.
+  //
+  // Parameters:
+  //   - dir: temporary directory.
+  //   - name: name of the file.
+  //
+  // Returns: name of the file.
+  private static String tempFile(File dir, String name)
+  {
+    File file = new File(dir, name);
+    file.deleteOnExit();
+
+    return file.getPath();
+  }
+}
@@ -0,0 +1,649 @@
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+public class LoadTest {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final int DEFAULT_HOSTS = 100;
+  private static final int DEFAULT_PAGES_PER_HOST = 1000;
+  private static final int DEFAULT_OUT_DEGREE = 10;
+  private static final double DEFAULT_EXTERNAL_LINKS = 0.2;
+  private static final String DEFAULT_PAGE_SIZE = "uniform:4096-65536";
+  private static final String DEFAULT_LATENCY = "exponential:20";
+  private static final double DEFAULT_REDIRECT_RATE = 0.05;
+  private static final int DEFAULT_REDIRECT_CHAIN = 2;
+  private static final double DEFAULT_ERROR_RATE = 0.01;
+  private static final long DEFAULT_HOST_INTERVAL = 1000; // Milliseconds.
+  private static final int DEFAULT_DURATION = 60; // Seconds.
+
+  private static final String DATABASE_NAME = "loadTestDB";
+  private static final String LOG_LEVEL = "INFO";
+
+  // Maximum time for the crawler to start.
+  private static final long STARTUP_TIMEOUT = 120 * 1000; // Milliseconds.
+
+  // Maximum time for the crawler to exit.
+  private static final long SHUTDOWN_TIMEOUT = 60 * 1000; // Milliseconds.
+
+  private static final long POLL_INTERVAL = 500; // Milliseconds.
+  private static final long PROGRESS_INTERVAL = 10 * 1000; // Milliseconds.
+
+  // Must not be greater than StatusServer.MAX_INJECTED_URLS.
+  private static final int INJECT_BATCH_SIZE = 1000;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Data members.                                                        ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private SyntheticWeb web = null;
+  private int hosts = 0;
+  private long hostInterval = 0;
+  private int duration = 0;
+  private Path workDir = null;
+  private List<String> crawlerArgs = null;
+
+  private int statusPort = 0;
+  private Process crawler = null;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: Constructor
+  // Description: sets the data members.
+  // Parameters:
+  //   - web: synthetic web (started).
+  //   - hosts: number of hosts of the synthetic web.
+  //   - hostInterval: visit interval of the hosts (milliseconds).
+  //   - duration: duration of the measurement (seconds).
+  //   - workDir: working directory of the crawler.
+  //   - crawlerArgs: additional arguments for the crawler.
+  //
+  // Returns: nothing.
+  private LoadTest(SyntheticWeb web,
+                   int hosts,
+                   long hostInterval,
+                   int duration,
+                   Path workDir,
+                   List<String> crawlerArgs)
+  {
+    this.web = web;
+    this.hosts = hosts;
+    this.hostInterval = hostInterval;
+    this.duration = duration;
+    this.workDir = workDir;
+    this.crawlerArgs = crawlerArgs;
+  }
+
+
+  // Method: startCrawler
+  // Description: starts the crawler in its own JVM (so its CPU time can be
+  //              measured and it is stopped as in production, with its
+  //              shutdown hook) and waits for its status server.
+  //
+  // Parameters: none.
+  // Returns: true: the crawler has been started; false: otherwise.
+  private boolean startCrawler() throws IOException, InterruptedException
+  {
+    try (ServerSocket socket = new ServerSocket(
+                                 0,
+                                 0,
+                                 InetAddress.getLoopbackAddress())) {
+      statusPort = socket.getLocalPort();
+    }
+
+    List<String> command = new ArrayList<String>();
+    command.add(System.getProperty("java.home") + "/bin/java");
+    command.add("-cp");
+    command.add(System.getProperty("java.class.path"));
+    command.add("Crawler");
+    command.add("--database-name");
+    command.add(DATABASE_NAME);
+    command.add("--log-level");
+    command.add(LOG_LEVEL);
+    command.add("--status-port");
+    command.add(Integer.toString(statusPort));
+
+    // The additional arguments can override the previous ones.
+    command.addAll(crawlerArgs);
+
+    File output = workDir.resolve("crawler.out").toFile();
+
+    crawler = new ProcessBuilder(command).directory(workDir.toFile())
+                                         .redirectErrorStream(true)
+                                         .redirectOutput(output)
+                                         .start();
+
+    long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT;
+
+    do {
+      if (!crawler.isAlive()) {
+        System.out.println("The crawler has exited (see '" + output + "').");
+        return false;
+      }
+
+      try {
+        if (request("GET", "/status", null) == 200) {
+          return true;
+        }
+      } catch (IOException e) {
+        // Not listening yet.
+      }
+
+      Thread.sleep(POLL_INTERVAL);
+    } while (System.currentTimeMillis() < deadline);
+
+    System.out.println("The crawler has not started (see '" + output + "').");
+
+    return false;
+  }
+
+
+  // Method: seed
+  // Description: sets the visit interval of every host and injects the first
+  //              page of every host.
+  //
+  // Parameters: none.
+  // Returns: true: the crawler has been seeded; false: otherwise.
+  private boolean seed() throws IOException
+  {
+    StringBuilder urls = new StringBuilder();
+
+    for (int i = 0; i < hosts; i++) {
+      if (request("POST",
+                  "/host-interval?host=" +
+                  URLEncoder.encode(SyntheticWeb.host(i), "UTF-8") +
+                  "&interval=" +
+                  hostInterval,
+                  null) != 200) {
+        System.out.println("Cannot set the visit interval of the hosts.");
+        return false;
+      }
+
+      urls.append(web.url(i, 0)).append('\n');
+
+      if (((i + 1) % INJECT_BATCH_SIZE == 0) || (i + 1 == hosts)) {
+        if (request("POST", "/inject", urls.toString()) != 200) {
+          System.out.println("Cannot inject the seeds.");
+          return false;
+        }
+
+        urls.setLength(0);
+      }
+    }
+
+    return true;
+  }
+
+
+  // Method: measure
+  // Description: lets the crawler run for "duration" seconds, printing the
+  //              progress, stops it and prints the report.
+  //
+  // Parameters: none.
+  // Returns: nothing.
+  private void measure() throws InterruptedException
+  {
+    long start = System.currentTimeMillis();
+    long startCpu = cpuTime();
+    long startPages = web.getPages();
+    long startBytes = web.getBytes();
+
+    long end = start + duration * 1000L;
+    long lastProgress = start;
+    long lastPages = startPages;
+
+    long now;
+    while (((now = System.currentTimeMillis()) < end) && (crawler.isAlive())) {
+      Thread.sleep(Math.min(end - now, POLL_INTERVAL));
+
+      if ((now = System.currentTimeMillis()) - lastProgress >=
+          PROGRESS_INTERVAL) {
+        long pages = web.getPages();
+
+        System.out.println(String.format(
+                             Locale.ROOT,
+                             "%4d s: %8d pages, %8.1f pages/s, " +
+                             "%d politeness violations.",
+                             (now - start) / 1000,
+                             pages - startPages,
+                             (pages - lastPages) * 1000.0 /
+                               (now - lastProgress),
+                             web.getViolations()));
+
+        lastProgress = now;
+        lastPages = pages;
+      }
+    }
+
+    if (!crawler.isAlive()) {
+      System.out.println("The crawler has exited before the end of the test.");
+    }
+
+    long cpu = cpuTime() - startCpu;
+    double seconds = (System.currentTimeMillis() - start) / 1000.0;
+    long pages = web.getPages() - startPages;
+    long bytes = web.getBytes() - startBytes;
+    long fetches = web.getFetches();
+
+    System.out.println();
+    System.out.println(String.format(Locale.ROOT,
+                                     "Duration:              %.1f s",
+                                     seconds));
+
+    System.out.println(String.format(Locale.ROOT,
+                                     "Pages:                 %d " +
+                                     "(%.1f pages/s)",
+                                     pages,
+                                     pages / seconds));
+
+    System.out.println(String.format(Locale.ROOT,
+                                     "Bytes:                 %d " +
+                                     "(%.2f MB/s)",
+                                     bytes,
+                                     bytes / seconds / (1024 * 1024)));
+
+    System.out.println(String.format(Locale.ROOT,
+                                     "Requests:              %d " +
+                                     "(redirections: %d, errors: %d, " +
+                                     "not found: %d)",
+                                     web.getRequests(),
+                                     web.getRedirects(),
+                                     web.getErrors(),
+                                     web.getNotFound()));
+
+    System.out.println(String.format(Locale.ROOT,
+                                     "Crawler CPU per page:  %s",
+                                     ((cpu >= 0) && (pages > 0)) ?
+                                       String.format(Locale.ROOT,
+                                                     "%.2f ms",
+                                                     cpu / 1e6 / pages) :
+                                       "n/a"));
+
+    System.out.println(String.format(Locale.ROOT,
+                                     "Politeness violations: %d of %d " +
+                                     "fetches (%.2f%%)%s",
+                                     web.getViolations(),
+                                     fetches,
+                                     (fetches > 0) ?
+                                       web.getViolations() * 100.0 / fetches :
+                                       0.0,
+                                     (web.getMinGap() >= 0) ?
+                                       ", shortest gap: " +
+                                       web.getMinGap() +
+                                       " ms (interval: " +
+                                       hostInterval +
+                                       " ms)" :
+                                       ""));
+  }
+
+
+  // Method: stopCrawler
+  // Description: stops the crawler (SIGTERM, the crawler waits for its
+  //              parser threads) and kills it if it does not exit in time.
+  //
+  // Parameters: none.
+  // Returns: nothing.
+  private void stopCrawler() throws InterruptedException
+  {
+    crawler.destroy();
+
+    if (!crawler.waitFor(SHUTDOWN_TIMEOUT,
+                         TimeUnit.MILLISECONDS)) {
+      System.out.println("The crawler has not exited, killing it...");
+      crawler.destroyForcibly().waitFor();
+    }
+  }
+
+
+  // Method: cpuTime
+  // Description: returns the CPU time consumed by the crawler.
+  // Parameters: none.
+  // Returns: nanoseconds; -1: not available on this platform.
+  private long cpuTime()
+  {
+    return crawler.info()
+                  .totalCpuDuration()
+                  .map(Duration::toNanos)
+                  .orElse(-1L);
+  }
+
+
+  // Method: request
+  // Description: sends a request to the status server of the crawler.
+  // Parameters:
+  //   - method: "GET" or "POST".
+  //   - path: path and query.
+  //   - body: body of the request (null: no body).
+  //
+  // Returns: status code.
+  private int request(String method, String path, String body)
+    throws IOException
+  {
+    URL url = new URL("http://127.0.0.1:" + statusPort + path);
+
+    HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+    conn.setRequestMethod(method);
+
+    // Required by the control actions of the status server.
+    conn.setRequestProperty("X-Crawler-Control", "1");
+
+    if (body != null) {
+      conn.setDoOutput(true);
+
+      try (OutputStream out = conn.getOutputStream()) {
+        out.write(body.getBytes(StandardCharsets.UTF_8));
+      }
+    }
+
+    int statusCode = conn.getResponseCode();
+
+    // Consume the response, so the connection can be reused.
+    try (InputStream in = (statusCode < 400) ? conn.getInputStream() :
+                                               conn.getErrorStream()) {
+      if (in != null) {
+        in.readAllBytes();
+      }
+    }
+
+    return statusCode;
+  }
+
+
+  // Method: run
+  // Description: starts and seeds the crawler, measures it and stops it.
+  // Parameters: none.
+  // Returns: nothing.
+  private void run() throws IOException, InterruptedException
+  {
+    System.out.println("Working directory: '" + workDir + "'.");
+    System.out.println("Starting the crawler...");
+
+    if (startCrawler()) {
+      try {
+        if (seed()) {
+          System.out.println("Crawling for " + duration + " s...");
+          measure();
+        }
+      } finally {
+        stopCrawler();
+      }
+    } else if (crawler != null) {
+      stopCrawler();
+    }
+  }
+
+
+  // Method: deleteDirectory
+  // Description: deletes a directory and its contents.
+  // Parameters:
+  //   - dir: directory.
+  //
+  // Returns: nothing.
+  private static void deleteDirectory(Path dir) throws IOException
+  {
+    try (Stream<Path> paths = Files.walk(dir)) {
+      paths.sorted(Comparator.reverseOrder())
+           .map(Path::toFile)
+           .forEach(File::delete);
+    }
+  }
+
+
+  // Method: help
+  // Description: shows the usage.
+  // Parameters: none.
+  // Returns: nothing.
+  private static void help()
+  {
+    System.out.println("Usage: LoadTest [<options>] [-- <crawler options>]");
+    System.out.println();
+    System.out.println("Options:");
+
+    System.out.println("\t--hosts <number> (default: " +
+                       DEFAULT_HOSTS +
+                       ").");
+
+    System.out.println("\t--pages-per-host <number> (default: " +
+                       DEFAULT_PAGES_PER_HOST +
+                       ").");
+
+    System.out.println("\t--out-degree <number> (default: " +
+                       DEFAULT_OUT_DEGREE +
+                       ").");
+
+    System.out.println("\t--external-links <fraction> (default: " +
+                       DEFAULT_EXTERNAL_LINKS +
+                       ").");
+
+    System.out.println("\t--page-size <distribution> (bytes, default: " +
+                       DEFAULT_PAGE_SIZE +
+                       ").");
+
+    System.out.println("\t--latency <distribution> (milliseconds, " +
+                       "default: " +
+                       DEFAULT_LATENCY +
+                       ").");
+
+    System.out.println("\t--redirect-rate <fraction> (default: " +
+                       DEFAULT_REDIRECT_RATE +
+                       ").");
+
+    System.out.println("\t--redirect-chain <number> (default: " +
+                       DEFAULT_REDIRECT_CHAIN +
+                       ").");
+
+    System.out.println("\t--error-rate <fraction> (default: " +
+                       DEFAULT_ERROR_RATE +
+                       ").");
+
+    System.out.println("\t--host-interval <milliseconds> (default: " +
+                       DEFAULT_HOST_INTERVAL +
+                       ").");
+
+    System.out.println("\t--duration <seconds> (default: " +
+                       DEFAULT_DURATION +
+                       ").");
+
+    System.out.println("\t--port <port> (default: any free port).");
+
+    System.out.println("\t--work-dir <directory> (default: temporary " +
+                       "directory, deleted at the end).");
+
+    System.out.println();
+    System.out.println("Distributions: fixed:<n>, uniform:<min>-<max>, " +
+                       "exponential:<mean>.");
+
+    System.out.println();
+  }
+
+
+  // Method: main
+  // Description: checks the command-line arguments, starts the synthetic web
+  //              and runs the load test.
+  //
+  // Parameters: array of command-line arguments.
+  // Returns: nothing.
+  public static void main(String[] args) throws Exception
+  {
+    int hosts = DEFAULT_HOSTS;
+    int pagesPerHost = DEFAULT_PAGES_PER_HOST;
+    int outDegree = DEFAULT_OUT_DEGREE;
+    double externalLinks = DEFAULT_EXTERNAL_LINKS;
+    SyntheticWeb.Distribution pageSize =
+      SyntheticWeb.Distribution.parse(DEFAULT_PAGE_SIZE);
+    SyntheticWeb.Distribution latency =
+      SyntheticWeb.Distribution.parse(DEFAULT_LATENCY);
+    double redirectRate = DEFAULT_REDIRECT_RATE;
+    int redirectChain = DEFAULT_REDIRECT_CHAIN;
+    double errorRate = DEFAULT_ERROR_RATE;
+    long hostInterval = DEFAULT_HOST_INTERVAL;
+    int duration = DEFAULT_DURATION;
+    int port = 0;
+    String workDir = null;
+    List<String> crawlerArgs = new ArrayList<String>();
+
+    // Check arguments (all the options have a value).
+    int i = 0;
+    while (i < args.length) {
+      if (args[i].equals("--")) {
+        for (i++; i < args.length; i++) {
+          crawlerArgs.add(args[i]);
+        }
+
+        break;
+      }
+
+      // Last argument?
+      if (i + 1 == args.length) {
+        help();
+        return;
+      }
+
+      String option = args[i];
+      String value = args[i + 1];
+      boolean valid;
+
+      try {
+        if (option.equals("--hosts")) {
+          hosts = Integer.parseInt(value);
+          valid = (hosts >= 1) && (hosts <= SyntheticWeb.MAX_HOSTS);
+        } else if (option.equals("--pages-per-host")) {
+          pagesPerHost = Integer.parseInt(value);
+          valid = pagesPerHost >= 1;
+        } else if (option.equals("--out-degree")) {
+          outDegree = Integer.parseInt(value);
+          valid = outDegree >= 0;
+        } else if (option.equals("--external-links")) {
+          externalLinks = Double.parseDouble(value);
+          valid = (externalLinks >= 0) && (externalLinks <= 1);
+        } else if (option.equals("--page-size")) {
+          valid = (pageSize = SyntheticWeb.Distribution.parse(value)) != null;
+        } else if (option.equals("--latency")) {
+          valid = (latency = SyntheticWeb.Distribution.parse(value)) != null;
+        } else if (option.equals("--redirect-rate")) {
+          redirectRate = Double.parseDouble(value);
+          valid = (redirectRate >= 0) && (redirectRate <= 1);
+        } else if (option.equals("--redirect-chain")) {
+          redirectChain = Integer.parseInt(value);
+          valid = redirectChain >= 0;
+        } else if (option.equals("--error-rate")) {
+          errorRate = Double.parseDouble(value);
+          valid = (errorRate >= 0) && (errorRate <= 1);
+        } else if (option.equals("--host-interval")) {
+          hostInterval = Long.parseLong(value);
+          valid = hostInterval >= 0;
+        } else if (option.equals("--duration")) {
+          duration = Integer.parseInt(value);
+          valid = duration >= 1;
+        } else if (option.equals("--port")) {
+          port = Integer.parseInt(value);
+          valid = (port >= 0) && (port <= 65535);
+        } else if (option.equals("--work-dir")) {
+          workDir = value;
+          valid = true;
+        } else {
+          help();
+          return;
+        }
+      } catch (NumberFormatException e) {
+        valid = false;
+      }
+
+      if (!valid) {
+        System.out.println("Invalid value '" + value + "' for " + option + ".");
+        return;
+      }
+
+      i += 2;
+    }
+
+    SyntheticWeb web = new SyntheticWeb(port,
+                                        hosts,
+                                        pagesPerHost,
+                                        outDegree,
+                                        externalLinks,
+                                        pageSize,
+                                        latency,
+                                        redirectRate,
+                                        redirectChain,
+                                        errorRate,
+                                        hostInterval);
+
+    if (!web.initialize()) {
+      return;
+    }
+
+    System.out.println(String.format(Locale.ROOT,
+                                     "Synthetic web: %d hosts (%s - %s), " +
+                                     "%d pages per host, out-degree: %d " +
+                                     "(%.0f%% external), page size: %s, " +
+                                     "latency: %s, redirections: %.1f%% " +
+                                     "(chain: %d), errors: %.1f%%, " +
+                                     "port: %d.",
+                                     hosts,
+                                     SyntheticWeb.host(0),
+                                     SyntheticWeb.host(hosts - 1),
+                                     pagesPerHost,
+                                     outDegree,
+                                     externalLinks * 100,
+                                     pageSize,
+                                     latency,
+                                     redirectRate * 100,
+                                     redirectChain,
+                                     errorRate * 100,
+                                     web.getPort()));
+
+    Path dir = (workDir != null) ?
+                 Files.createDirectories(new File(workDir).toPath()) :
+                 Files.createTempDirectory("LoadTest");
+
+    try {
+      new LoadTest(web,
+                   hosts,
+                   hostInterval,
+                   duration,
+                   dir,
+                   crawlerArgs).run();
+    } finally {
+      web.shutdown();
+
+      if (workDir == null) {
+        deleteDirectory(dir);
+      }
+    }
+  }
+}
@@ -0,0 +1,179 @@
+import java.util.logging.Level;
+import java.io.File;
+
+public class LogBenchmark {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final int NUMBER_URLS = 1024; // Power of two.
+
+  private static final int LOG_BUFFER_SIZE = 64 * 1024;
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: main
+  // Description: measures the cost of a typical FINEST message of
+  //              UrlMatcher.matches():
+  //                - When FINEST is disabled: string concatenation (old call
+  //                  sites), isLoggable() check, parameterized message and
+  //                  Supplier.
+  //                - When FINEST is enabled: synchronous file handler and
+  //                  asynchronous handler (cost for the logging thread).
+  //
+  // Parameters:
+  //   - args: [<directory for the log files>] (default: temporary
+  //           directory).
+  //
+  // Returns: nothing.
+  public static void main(String[] args) throws Exception
+  {
+    File dir = new File((args.length > 0) ?
+                          args[0] :
+                          System.getProperty("java.io.tmpdir"));
+
+    final String name = "include";
+    final String pattern = "https?://([^/]+\\.)?example\\.com/.*";
+
+    final String[] urls = new String[NUMBER_URLS];
+    for (int i = 0; i < NUMBER_URLS; i++) {
+      urls[i] = "http://www.example.com/section" + (i % 32) + "/page" + i;
+    }
+
+    BenchmarkHarness.header();
+
+    // FINEST disabled.
+    final Log disabled = new Log();
+    disabled.initialize(logFile(dir, "disabled"), Level.INFO, 0);
+
+    BenchmarkHarness.run("disabled: concatenation", i -> {
+      String url = urls[i & (NUMBER_URLS - 1)];
+
+      disabled.log(Level.FINEST,
+                   "[" +
+                   name +
+                   "] URL '" +
+                   url +
+                   "' matches pattern '" +
+                   pattern +
+                   "'.");
+
+      return url;
+    });
+
+    BenchmarkHarness.run("disabled: isLoggable", i -> {
+      String url = urls[i & (NUMBER_URLS - 1)];
+
+      if (disabled.isLoggable(Level.FINEST)) {
+        disabled.log(Level.FINEST,
+                     "[" +
+                     name +
+                     "] URL '" +
+                     url +
+                     "' matches pattern '" +
+                     pattern +
+                     "'.");
+      }
+
+      return url;
+    });
+
+    BenchmarkHarness.run("disabled: parameterized", i -> {
+      String url = urls[i & (NUMBER_URLS - 1)];
+
+      disabled.log(Level.FINEST,
+                   "[{0}] URL '{1}' matches pattern '{2}'.",
+                   name,
+                   url,
+                   pattern);
+
+      return url;
+    });
+
+    BenchmarkHarness.run("disabled: supplier", i -> {
+      String url = urls[i & (NUMBER_URLS - 1)];
+
+      disabled.log(Level.FINEST,
+                   () -> "[" +
+                         name +
+                         "] URL '" +
+                         url +
+                         "' matches pattern '" +
+                         pattern +
+                         "'.");
+
+      return url;
+    });
+
+    disabled.shutdown();
+
+    // FINEST enabled, synchronous file handler.
+    final Log sync = new Log();
+    sync.initialize(logFile(dir, "sync"), Level.FINEST, 0);
+
+    BenchmarkHarness.run("enabled: file handler", i -> {
+      String url = urls[i & (NUMBER_URLS - 1)];
+
+      sync.log(Level.FINEST,
+               "[{0}] URL '{1}' matches pattern '{2}'.",
+               name,
+               url,
+               pattern);
+
+      return url;
+    });
+
+    sync.shutdown();
+
+    // FINEST enabled, asynchronous handler.
+    final Log async = new Log();
+    async.initialize(logFile(dir, "async"), Level.FINEST, LOG_BUFFER_SIZE);
+
+    BenchmarkHarness.run("enabled: async handler", i -> {
+      String url = urls[i & (NUMBER_URLS - 1)];
+
+      async.log(Level.FINEST,
+                "[{0}] URL '{1}' matches pattern '{2}'.",
+                name,
+                url,
+                pattern);
+
+      return url;
+    });
+
+    async.shutdown();
+
+    System.out.println();
+    System.out.println("The asynchronous handler drops records below INFO " +
+                       "when its buffer is full (a warning with the number " +
+                       "of dropped records is written to the log file).");
+  }
+
+
+  // Method: logFile
+  // Description: returns the name of a new log file.
+  // Parameters:
+  //   - dir: directory.
+  //   - name: name of the benchmark.
+  //
+  // Returns: name of the log file.
+  private static String logFile(File dir, String name)
+  {
+    File file = new File(dir, "LogBenchmark-" + name + ".log");
+    file.delete();
+    file.deleteOnExit();
+
+    return file.getPath();
+  }
+}
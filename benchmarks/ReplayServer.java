@@ -0,0 +1,706 @@
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// HTTP server replaying the data files of a crawl (final directory): the
+// files are indexed by URL and the stored response (headers and body) is
+// sent for the requests of the same URL. The bodies are sent with
+// FileChannel.transferTo() (sendfile(), no copy through the JVM).
+//
+// The crawler uses it as HTTP proxy:
+//   java -Dhttp.proxyHost=127.0.0.1 -Dhttp.proxyPort=<port> ... Crawler ...
+//
+// Requests with a path (not an absolute URL) are looked up with the "Host"
+// header. A URL stored as "https://..." is also served when it is requested
+// as "http://..." (HTTPS cannot be replayed through a proxy).
+public class ReplayServer {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private static final int DEFAULT_PORT = 8080;
+  private static final String DEFAULT_LATENCY = "fixed:0";
+
+  // Maximum size of the headers of a data file and of a request.
+  private static final int MAX_HEADER_SIZE = 64 * 1024;
+
+  private static final int INDEX_PROGRESS = 100000; // Files.
+
+  private static final byte[] END_OF_LINE = {'\r', '\n'};
+  private static final byte[] END_OF_HEADERS = {'\r', '\n', '\r', '\n'};
+
+  // Stored headers which are not sent (the body is sent with its length).
+  private static final String[] HOP_BY_HOP_HEADERS = {
+    "content-length",
+    "transfer-encoding",
+    "connection",
+    "keep-alive",
+    "proxy-connection"
+  };
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Type declarations.                                                   ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Stored response.
+  private static class Entry {
+    Path path = null;
+    int headerLength = 0; // Offset of the body.
+    long lastModified = 0;
+
+    Entry(Path path, int headerLength, long lastModified)
+    {
+      this.path = path;
+      this.headerLength = headerLength;
+      this.lastModified = lastModified;
+    }
+  }
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Data members.                                                        ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private String dataDir = null;
+  private String address = null;
+  private int port = 0;
+  private SyntheticWeb.Distribution latency = null;
+
+  // Stored responses by URL.
+  private Map<String, Entry> index = new HashMap<String, Entry>();
+
+  private ServerSocketChannel server = null;
+  private ExecutorService executor = null;
+
+  // Statistics.
+  private LongAdder requests = new LongAdder();
+  private LongAdder hits = new LongAdder();
+  private LongAdder misses = new LongAdder();
+  private LongAdder bytes = new LongAdder();
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: Constructor
+  // Description: sets the data members.
+  // Parameters:
+  //   - dataDir: directory of the data files.
+  //   - address: address where to listen.
+  //   - port: port where to listen.
+  //   - latency: distribution of the artificial latency (milliseconds).
+  //
+  // Returns: nothing.
+  private ReplayServer(String dataDir,
+                       String address,
+                       int port,
+                       SyntheticWeb.Distribution latency)
+  {
+    this.dataDir = dataDir;
+    this.address = address;
+    this.port = port;
+    this.latency = latency;
+  }
+
+
+  // Method: initialize
+  // Description: indexes the data files and opens the listening socket.
+  // Parameters: none.
+  // Returns: true: the server could be initialized; false: otherwise.
+  private boolean initialize()
+  {
+    if (!index()) {
+      return false;
+    }
+
+    try {
+      server = ServerSocketChannel.open();
+      server.bind(new InetSocketAddress(InetAddress.getByName(address), port));
+    } catch (IOException e) {
+      System.out.println("Cannot listen on " +
+                         address +
+                         ":" +
+                         port +
+                         " (" +
+                         e.toString() +
+                         ").");
+
+      return false;
+    }
+
+    // The artificial latency is simulated by sleeping.
+    executor = Executors.newCachedThreadPool();
+
+    return true;
+  }
+
+
+  // Method: index
+  // Description: indexes the data files of the data directory (and its
+  //              subdirectories) by URL. If a URL has been downloaded several
+  //              times, the newest file is used.
+  //
+  // Parameters: none.
+  // Returns: true: the directory could be indexed; false: otherwise.
+  private boolean index()
+  {
+    System.out.println("Indexing '" + dataDir + "'...");
+
+    long start = System.currentTimeMillis();
+
+    int files = 0;
+    int invalid = 0;
+
+    try (Stream<Path> paths = Files.walk(Paths.get(dataDir))) {
+      for (Path path : (Iterable<Path>) paths::iterator) {
+        if (!Files.isRegularFile(path)) {
+          continue;
+        }
+
+        if (++files % INDEX_PROGRESS == 0) {
+          System.out.println("  " + files + " files.");
+        }
+
+        try (FileChannel channel = FileChannel.open(path,
+                                                    StandardOpenOption.READ)) {
+          ByteBuffer buf = ByteBuffer.allocate(
+                             (int) Math.min(channel.size(), MAX_HEADER_SIZE));
+
+          while ((buf.hasRemaining()) && (channel.read(buf) != -1)) {
+          }
+
+          // Format: "URL: <URL>\r\n" *(<message-header>) "\r\n".
+          int end = indexOf(buf.array(), buf.position(), END_OF_HEADERS);
+          int eol = indexOf(buf.array(), buf.position(), END_OF_LINE);
+
+          if ((end != -1) &&
+              (buf.position() > 5) &&
+              (new String(buf.array(), 0, 5, StandardCharsets.US_ASCII)
+                 .equals("URL: "))) {
+            String url = new String(buf.array(),
+                                    5,
+                                    eol - 5,
+                                    StandardCharsets.US_ASCII);
+
+            Entry entry = new Entry(path,
+                                    end + END_OF_HEADERS.length,
+                                    Files.getLastModifiedTime(path)
+                                         .toMillis());
+
+            Entry previous;
+            if (((previous = index.get(url)) == null) ||
+                (previous.lastModified < entry.lastModified)) {
+              index.put(url, entry);
+            }
+          } else {
+            invalid++;
+          }
+        } catch (IOException e) {
+          invalid++;
+        }
+      }
+    } catch (IOException | UncheckedIOException e) {
+      System.out.println("Cannot index '" +
+                         dataDir +
+                         "' (" +
+                         e.toString() +
+                         ").");
+
+      return false;
+    }
+
+    System.out.println("Indexed " +
+                       index.size() +
+                       " URLs (" +
+                       files +
+                       " files, " +
+                       invalid +
+                       " invalid) in " +
+                       (System.currentTimeMillis() - start) +
+                       " ms.");
+
+    return true;
+  }
+
+
+  // Method: run
+  // Description: accepts connections until the server is closed, each
+  //              connection is served by a thread of the pool.
+  //
+  // Parameters: none.
+  // Returns: nothing.
+  private void run()
+  {
+    try {
+      System.out.println("Listening on " + server.getLocalAddress() + ".");
+    } catch (IOException e) {
+    }
+
+    do {
+      try {
+        SocketChannel channel = server.accept();
+        executor.execute(() -> serve(channel));
+      } catch (ClosedChannelException e) {
+        break;
+      } catch (IOException e) {
+        System.out.println("Error accepting connection (" +
+                           e.toString() +
+                           ").");
+      }
+    } while (true);
+  }
+
+
+  // Method: shutdown
+  // Description: closes the listening socket, stops the threads and prints
+  //              the statistics.
+  //
+  // Parameters: none.
+  // Returns: nothing.
+  private void shutdown()
+  {
+    try {
+      server.close();
+    } catch (IOException e) {
+    }
+
+    executor.shutdownNow();
+
+    System.out.println(String.format(Locale.ROOT,
+                                     "Requests: %d, hits: %d, misses: %d, " +
+                                     "body bytes sent: %d.",
+                                     requests.sum(),
+                                     hits.sum(),
+                                     misses.sum(),
+                                     bytes.sum()));
+  }
+
+
+  // Method: serve
+  // Description: serves the requests of a connection (keep-alive).
+  // Parameters:
+  //   - channel: connection.
+  //
+  // Returns: nothing.
+  private void serve(SocketChannel channel)
+  {
+    ByteBuffer in = ByteBuffer.allocate(MAX_HEADER_SIZE);
+
+    try (channel) {
+      do {
+        // Read the headers of the request.
+        int end;
+        while ((end = indexOf(in.array(),
+                              in.position(),
+                              END_OF_HEADERS)) == -1) {
+          if (!in.hasRemaining()) {
+            send(channel, 431, "Request Header Fields Too Large", false);
+            return;
+          }
+
+          if (channel.read(in) == -1) {
+            return;
+          }
+        }
+
+        String request = new String(in.array(),
+                                    0,
+                                    end,
+                                    StandardCharsets.ISO_8859_1);
+
+        // Keep the bytes of the next request (pipelining; the requests have
+        // no body).
+        int next = end + END_OF_HEADERS.length;
+        System.arraycopy(in.array(),
+                         next,
+                         in.array(),
+                         0,
+                         in.position() - next);
+
+        in.position(in.position() - next);
+
+        if (!respond(channel, request)) {
+          return;
+        }
+      } while (true);
+    } catch (IOException e) {
+      // Connection closed by the client.
+    }
+  }
+
+
+  // Method: respond
+  // Description: sends the response to a request.
+  // Parameters:
+  //   - channel: connection.
+  //   - request: request line and headers.
+  //
+  // Returns: true: the connection can be reused; false: otherwise.
+  private boolean respond(SocketChannel channel, String request)
+    throws IOException
+  {
+    requests.increment();
+
+    String[] lines = request.split("\r\n");
+    String[] requestLine = lines[0].split(" ");
+
+    if (requestLine.length != 3) {
+      send(channel, 400, "Bad Request", false);
+      return false;
+    }
+
+    String method = requestLine[0];
+    String target = requestLine[1];
+    String version = requestLine[2];
+
+    String host = null;
+    String connection = null;
+
+    for (int i = 1; i < lines.length; i++) {
+      int pos;
+      if ((pos = lines[i].indexOf(':')) != -1) {
+        String name = lines[i].substring(0, pos).trim();
+        String value = lines[i].substring(pos + 1).trim();
+
+        if (name.equalsIgnoreCase("Host")) {
+          host = value;
+        } else if ((name.equalsIgnoreCase("Connection")) ||
+                   (name.equalsIgnoreCase("Proxy-Connection"))) {
+          connection = value;
+        }
+      }
+    }
+
+    boolean keepAlive = version.equals("HTTP/1.1") ?
+                          !"close".equalsIgnoreCase(connection) :
+                          "keep-alive".equalsIgnoreCase(connection);
+
+    boolean head = method.equals("HEAD");
+
+    if ((!head) && (!method.equals("GET"))) {
+      send(channel, 405, "Method Not Allowed", keepAlive);
+      return keepAlive;
+    }
+
+    // Absolute URL (proxy) or path.
+    String url = target.startsWith("/") ?
+                   "http://" + ((host != null) ? host : "") + target :
+                   target;
+
+    Entry entry;
+    if (((entry = index.get(url)) == null) && (url.startsWith("http://"))) {
+      entry = index.get("https://" + url.substring(7));
+    }
+
+    long ms;
+    if ((ms = latency.sample(ThreadLocalRandom.current())) > 0) {
+      try {
+        Thread.sleep(ms);
+      } catch (InterruptedException e) {
+        return false;
+      }
+    }
+
+    if (entry == null) {
+      misses.increment();
+
+      send(channel, 404, "Not Found", keepAlive);
+      return keepAlive;
+    }
+
+    hits.increment();
+
+    try (FileChannel file = FileChannel.open(entry.path,
+                                             StandardOpenOption.READ)) {
+      long size = file.size();
+
+      ByteBuffer storedHeaders = ByteBuffer.allocate(entry.headerLength);
+      while ((storedHeaders.hasRemaining()) &&
+             (file.read(storedHeaders) != -1)) {
+      }
+
+      // Skip the line "URL: ..." and the empty line.
+      String[] stored = new String(storedHeaders.array(),
+                                   0,
+                                   storedHeaders.position(),
+                                   StandardCharsets.ISO_8859_1)
+                          .split("\r\n");
+
+      StringBuilder headers = new StringBuilder("HTTP/1.1 200 OK\r\n");
+
+      // The body is sent as stored: "Content-Encoding" is the encoding of the
+      // stored body (older data files don't have "Stored-Encoding").
+      String contentEncoding = null;
+      String storedEncoding = null;
+
+      for (int i = 1; i < stored.length; i++) {
+        int pos;
+        if ((pos = stored[i].indexOf(':')) != -1) {
+          String name = stored[i].substring(0, pos).trim();
+
+          if (name.equalsIgnoreCase(ContentEncoding.STORED_ENCODING_HEADER)) {
+            storedEncoding = stored[i].substring(pos + 1);
+          } else if (name.equalsIgnoreCase("Content-Encoding")) {
+            contentEncoding = stored[i].substring(pos + 1);
+          } else if (!isHopByHop(name)) {
+            headers.append(stored[i]).append("\r\n");
+          }
+        }
+      }
+
+      String encoding = ContentEncoding.normalize((storedEncoding != null) ?
+                                                    storedEncoding :
+                                                    contentEncoding);
+
+      if (!encoding.equals(ContentEncoding.IDENTITY)) {
+        headers.append("Content-Encoding: ").append(encoding).append("\r\n");
+      }
+
+      headers.append("Content-Length: ")
+             .append(size - entry.headerLength)
+             .append("\r\n");
+
+      if (!keepAlive) {
+        headers.append("Connection: close\r\n");
+      }
+
+      headers.append("\r\n");
+
+      write(channel, headers.toString());
+
+      if (!head) {
+        // Zero-copy.
+        long position = entry.headerLength;
+        while (position < size) {
+          position += file.transferTo(position, size - position, channel);
+        }
+
+        bytes.add(size - entry.headerLength);
+      }
+    }
+
+    return keepAlive;
+  }
+
+
+  // Method: send
+  // Description: sends a response without body.
+  // Parameters:
+  //   - channel: connection.
+  //   - statusCode: status code.
+  //   - reason: reason phrase.
+  //   - keepAlive: whether the connection will be reused.
+  //
+  // Returns: nothing.
+  private static void send(SocketChannel channel,
+                           int statusCode,
+                           String reason,
+                           boolean keepAlive) throws IOException
+  {
+    write(channel,
+          "HTTP/1.1 " + statusCode + " " + reason + "\r\n" +
+          ((statusCode == 405) ? "Allow: GET, HEAD\r\n" : "") +
+          "Content-Length: 0\r\n" +
+          (keepAlive ? "" : "Connection: close\r\n") +
+          "\r\n");
+  }
+
+
+  // Method: write
+  // Description: writes a string (ISO-8859-1) to a connection.
+  // Parameters:
+  //   - channel: connection.
+  //   - str: string.
+  //
+  // Returns: nothing.
+  private static void write(SocketChannel channel, String str)
+    throws IOException
+  {
+    ByteBuffer buf = ByteBuffer.wrap(str.getBytes(StandardCharsets.ISO_8859_1));
+    while (buf.hasRemaining()) {
+      channel.write(buf);
+    }
+  }
+
+
+  // Method: isHopByHop
+  // Description: returns whether a stored header must not be sent.
+  // Parameters:
+  //   - name: name of the header.
+  //
+  // Returns: true: the header must not be sent; false: otherwise.
+  private static boolean isHopByHop(String name)
+  {
+    for (String header : HOP_BY_HOP_HEADERS) {
+      if (header.equalsIgnoreCase(name.trim())) {
+        return true;
+      }
+    }
+
+    return false;
+  }
+
+
+  // Method: indexOf
+  // Description: searches a sequence of bytes.
+  // Parameters:
+  //   - buf: buffer.
+  //   - len: number of bytes of the buffer.
+  //   - seq: sequence to search.
+  //
+  // Returns: position of the sequence; -1: not found.
+  private static int indexOf(byte[] buf, int len, byte[] seq)
+  {
+    for (int i = 0; i + seq.length <= len; i++) {
+      int j = 0;
+      while ((j < seq.length) && (buf[i + j] == seq[j])) {
+        j++;
+      }
+
+      if (j == seq.length) {
+        return i;
+      }
+    }
+
+    return -1;
+  }
+
+
+  // Method: help
+  // Description: shows the usage.
+  // Parameters: none.
+  // Returns: nothing.
+  private static void help()
+  {
+    System.out.println("Usage: ReplayServer --data-dir <directory> " +
+                       "[<options>]");
+
+    System.out.println();
+    System.out.println("Options:");
+    System.out.println("\t--address <address> (default: 127.0.0.1).");
+
+    System.out.println("\t--port <port> (default: " + DEFAULT_PORT + ").");
+
+    System.out.println("\t--latency <distribution> (milliseconds, " +
+                       "default: " +
+                       DEFAULT_LATENCY +
+                       ").");
+
+    System.out.println();
+    System.out.println("Distributions: fixed:<n>, uniform:<min>-<max>, " +
+                       "exponential:<mean>.");
+
+    System.out.println();
+  }
+
+
+  // Method: main
+  // Description: checks the command-line arguments, indexes the data files
+  //              and serves them until the process is stopped.
+  //
+  // Parameters: array of command-line arguments.
+  // Returns: nothing.
+  public static void main(String[] args)
+  {
+    String dataDir = null;
+    String address = "127.0.0.1";
+    int port = DEFAULT_PORT;
+    SyntheticWeb.Distribution latency =
+      SyntheticWeb.Distribution.parse(DEFAULT_LATENCY);
+
+    // Check arguments (all the options have a value).
+    for (int i = 0; i < args.length; i += 2) {
+      // Last argument?
+      if (i + 1 == args.length) {
+        help();
+        return;
+      }
+
+      String value = args[i + 1];
+
+      if (args[i].equals("--data-dir")) {
+        dataDir = value;
+      } else if (args[i].equals("--address")) {
+        address = value;
+      } else if (args[i].equals("--port")) {
+        try {
+          port = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+          port = -1;
+        }
+
+        if ((port < 1) || (port > 65535)) {
+          System.out.println("Invalid port '" + value + "'.");
+          return;
+        }
+      } else if (args[i].equals("--latency")) {
+        if ((latency = SyntheticWeb.Distribution.parse(value)) == null) {
+          System.out.println("Invalid latency '" + value + "'.");
+          return;
+        }
+      } else {
+        help();
+        return;
+      }
+    }
+
+    if (dataDir == null) {
+      help();
+      return;
+    }
+
+    ReplayServer replayServer = new ReplayServer(dataDir,
+                                                 address,
+                                                 port,
+                                                 latency);
+
+    if (replayServer.initialize()) {
+      // Stop with Ctrl-C.
+      Runtime.getRuntime().addShutdownHook(new Thread() {
+        public void run()
+        {
+          replayServer.shutdown();
+        }
+      });
+
+      replayServer.run();
+    }
+  }
+}
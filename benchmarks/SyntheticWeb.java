@@ -0,0 +1,710 @@
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+// Web server serving a generated web graph: every host is a loopback address
+// (127.x.y.z, Linux routes the whole 127.0.0.0/8 block to the loopback
+// interface), so the crawler sees many hosts on a single machine.
+//
+// Paths:
+//   - /p/<n>.html: page number "n" of the host (or the first redirection of
+//                  its redirect chain).
+//   - /r/<n>/<i>.html: redirection number "i" of the chain of the page "n".
+//   - /t/<n>.html: target of the redirect chain of the page "n".
+//
+// The server also checks the politeness of the crawler: a request which
+// starts a fetch (anything but following a redirection just sent) is a
+// violation if it arrives less than the visit interval after the last
+// response of the same host.
+public class SyntheticWeb {
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Constants.                                                           ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  public static final int MAX_HOSTS = 1 << 20;
+
+  // Timestamps of the database have millisecond precision.
+  private static final long POLITENESS_TOLERANCE = 5; // Milliseconds.
+
+  private static final int STOP_DELAY = 1; // Seconds.
+
+  private static final String FILLER =
+    "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do " +
+    "eiusmod tempor incididunt ut labore et dolore magna aliqua. ";
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Type declarations.                                                   ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Distribution of a random value: "fixed:<n>", "uniform:<min>-<max>" or
+  // "exponential:<mean>".
+  public static class Distribution {
+    private enum Kind {FIXED, UNIFORM, EXPONENTIAL};
+
+    private Kind kind = null;
+    private long a = 0;
+    private long b = 0;
+
+    private Distribution(Kind kind, long a, long b)
+    {
+      this.kind = kind;
+      this.a = a;
+      this.b = b;
+    }
+
+    // Parses a distribution; returns null if it is not valid.
+    public static Distribution parse(String str)
+    {
+      try {
+        if (str.startsWith("fixed:")) {
+          long n = Long.parseLong(str.substring(6));
+          return (n >= 0) ? new Distribution(Kind.FIXED, n, n) : null;
+        } else if (str.startsWith("uniform:")) {
+          int pos;
+          if ((pos = str.indexOf('-', 8)) != -1) {
+            long min = Long.parseLong(str.substring(8, pos));
+            long max = Long.parseLong(str.substring(pos + 1));
+
+            if ((min >= 0) && (min <= max)) {
+              return new Distribution(Kind.UNIFORM, min, max);
+            }
+          }
+        } else if (str.startsWith("exponential:")) {
+          long mean = Long.parseLong(str.substring(12));
+          return (mean >= 0) ? new Distribution(Kind.EXPONENTIAL, mean, 0) :
+                               null;
+        }
+      } catch (NumberFormatException e) {
+      }
+
+      return null;
+    }
+
+    // Returns a random value.
+    public long sample(Random random)
+    {
+      switch (kind) {
+        case FIXED:
+          return a;
+        case UNIFORM:
+          return a + (long) (random.nextDouble() * (b - a + 1));
+        default:
+          return (long) (-a * Math.log(1.0 - random.nextDouble()));
+      }
+    }
+
+    public String toString()
+    {
+      switch (kind) {
+        case FIXED:
+          return "fixed:" + a;
+        case UNIFORM:
+          return "uniform:" + a + "-" + b;
+        default:
+          return "exponential:" + a;
+      }
+    }
+  }
+
+  // State of a host for checking the politeness.
+  private static class Host {
+    long lastResponse = 0; // Milliseconds, 0: no response yet.
+    String pendingRedirect = null; // Path of the redirection just sent.
+  }
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Data members.                                                        ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  private int port = 0;
+  private int hosts = 0;
+  private int pagesPerHost = 0;
+  private int outDegree = 0;
+  private double externalLinks = 0;
+  private Distribution pageSize = null;
+  private Distribution latency = null;
+  private double redirectRate = 0;
+  private int redirectChain = 0;
+  private double errorRate = 0;
+  private long hostInterval = 0;
+
+  private HttpServer server = null;
+  private ExecutorService executor = null;
+
+  private ConcurrentHashMap<String, Host> hostStates =
+    new ConcurrentHashMap<String, Host>();
+
+  // Statistics.
+  private LongAdder requests = new LongAdder();
+  private LongAdder pages = new LongAdder();
+  private LongAdder redirects = new LongAdder();
+  private LongAdder errors = new LongAdder();
+  private LongAdder notFound = new LongAdder();
+  private LongAdder bytes = new LongAdder();
+  private LongAdder fetches = new LongAdder();
+  private LongAdder violations = new LongAdder();
+  private AtomicLong minGap = new AtomicLong(Long.MAX_VALUE);
+
+
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+  ////                                                                      ////
+  //// Methods.                                                             ////
+  ////                                                                      ////
+  //////////////////////////////////////////////////////////////////////////////
+  //////////////////////////////////////////////////////////////////////////////
+
+  // Method: Constructor
+  // Description: sets the data members.
+  // Parameters:
+  //   - port: port where to listen (0: any free port).
+  //   - hosts: number of hosts.
+  //   - pagesPerHost: number of pages of each host.
+  //   - outDegree: number of links of each page.
+  //   - externalLinks: fraction of the links pointing to other hosts.
+  //   - pageSize: distribution of the sizes of the pages (bytes).
+  //   - latency: distribution of the response times (milliseconds).
+  //   - redirectRate: fraction of the pages behind a redirect chain.
+  //   - redirectChain: number of redirections of a redirect chain.
+  //   - errorRate: fraction of the requests answered with 500.
+  //   - hostInterval: visit interval the crawler should respect
+  //                   (milliseconds).
+  //
+  // Returns: nothing.
+  public SyntheticWeb(int port,
+                      int hosts,
+                      int pagesPerHost,
+                      int outDegree,
+                      double externalLinks,
+                      Distribution pageSize,
+                      Distribution latency,
+                      double redirectRate,
+                      int redirectChain,
+                      double errorRate,
+                      long hostInterval)
+  {
+    this.port = port;
+    this.hosts = hosts;
+    this.pagesPerHost = pagesPerHost;
+    this.outDegree = outDegree;
+    this.externalLinks = externalLinks;
+    this.pageSize = pageSize;
+    this.latency = latency;
+    this.redirectRate = redirectRate;
+    this.redirectChain = redirectChain;
+    this.errorRate = errorRate;
+    this.hostInterval = hostInterval;
+  }
+
+
+  // Method: initialize
+  // Description: starts the HTTP server. It listens on all the addresses
+  //              (a socket cannot be bound to the whole loopback block) but
+  //              only answers requests coming from the loopback interface.
+  //
+  // Parameters: none.
+  // Returns: true: the server could be started; false: otherwise.
+  public boolean initialize()
+  {
+    try {
+      server = HttpServer.create(new InetSocketAddress(port), 0);
+    } catch (IOException e) {
+      System.out.println("Cannot start the web server (" + e.toString() + ").");
+      return false;
+    }
+
+    // The response times are simulated by sleeping.
+    executor = Executors.newCachedThreadPool();
+
+    server.setExecutor(executor);
+    server.createContext("/", this::handle);
+    server.start();
+
+    port = server.getAddress().getPort();
+
+    return true;
+  }
+
+
+  // Method: shutdown
+  // Description: stops the HTTP server.
+  // Parameters: none.
+  // Returns: nothing.
+  public void shutdown()
+  {
+    server.stop(STOP_DELAY);
+    executor.shutdownNow();
+  }
+
+
+  // Method: getPort
+  // Description: returns the port where the server is listening.
+  // Parameters: none.
+  // Returns: port.
+  public int getPort()
+  {
+    return port;
+  }
+
+
+  // Method: host
+  // Description: returns the address of the host number "i".
+  // Parameters:
+  //   - i: number of the host (less than MAX_HOSTS).
+  //
+  // Returns: address (127.x.y.z, never 127.0.0.0).
+  public static String host(int i)
+  {
+    return "127." + (1 + (i >>> 16)) + "." + ((i >>> 8) & 0xff) + "." +
+           (i & 0xff);
+  }
+
+
+  // Method: url
+  // Description: returns the URL of a page.
+  // Parameters:
+  //   - host: number of the host.
+  //   - page: number of the page.
+  //
+  // Returns: URL.
+  public String url(int host, int page)
+  {
+    return "http://" + host(host) + ":" + port + "/p/" + page + ".html";
+  }
+
+
+  // Method: handle
+  // Description: answers a request: checks the politeness, sleeps the
+  //              simulated response time and sends the page, a redirection
+  //              or an error.
+  //
+  // Parameters:
+  //   - exchange: HTTP exchange.
+  //
+  // Returns: nothing.
+  private void handle(HttpExchange exchange) throws IOException
+  {
+    try {
+      if (!exchange.getRemoteAddress().getAddress().isLoopbackAddress()) {
+        send(exchange, 403, "text/plain", new byte[0]);
+        return;
+      }
+
+      requests.increment();
+
+      // Host without the port.
+      String host = exchange.getLocalAddress().getAddress().getHostAddress();
+      String path = exchange.getRequestURI().getPath();
+
+      checkPoliteness(host, path);
+
+      ThreadLocalRandom random = ThreadLocalRandom.current();
+
+      long ms;
+      if ((ms = latency.sample(random)) > 0) {
+        try {
+          Thread.sleep(ms);
+        } catch (InterruptedException e) {
+          return;
+        }
+      }
+
+      int hostNumber = hostNumber(host);
+      int page;
+
+      if ((hostNumber == -1) || ((page = pageNumber(path)) == -1)) {
+        notFound.increment();
+        send(exchange, 404, "text/plain", new byte[0]);
+      } else if (random.nextDouble() < errorRate) {
+        errors.increment();
+        send(exchange, 500, "text/plain", new byte[0]);
+      } else {
+        String redirect = redirect(page, path);
+
+        if (redirect != null) {
+          redirects.increment();
+
+          synchronized (hostState(host)) {
+            hostState(host).pendingRedirect = redirect;
+          }
+
+          exchange.getResponseHeaders().set(
+            "Location",
+            "http://" + host + ":" + port + redirect);
+
+          send(exchange, 301, "text/plain", new byte[0]);
+        } else {
+          byte[] body = page(hostNumber, page);
+
+          pages.increment();
+          bytes.add(body.length);
+
+          send(exchange, 200, "text/html; charset=UTF-8", body);
+        }
+      }
+
+      synchronized (hostState(host)) {
+        hostState(host).lastResponse = System.currentTimeMillis();
+      }
+    } finally {
+      exchange.close();
+    }
+  }
+
+
+  // Method: checkPoliteness
+  // Description: counts a fetch and checks the time since the last response
+  //              of the host (following a redirection just sent is not a new
+  //              fetch).
+  //
+  // Parameters:
+  //   - host: address of the host.
+  //   - path: requested path.
+  //
+  // Returns: nothing.
+  private void checkPoliteness(String host, String path)
+  {
+    Host state = hostState(host);
+
+    synchronized (state) {
+      boolean followingRedirect = path.equals(state.pendingRedirect);
+      state.pendingRedirect = null;
+
+      if (!followingRedirect) {
+        fetches.increment();
+
+        if (state.lastResponse != 0) {
+          long gap = System.currentTimeMillis() - state.lastResponse;
+
+          if (gap < hostInterval - POLITENESS_TOLERANCE) {
+            violations.increment();
+            minGap.accumulateAndGet(gap, Math::min);
+          }
+        }
+      }
+    }
+  }
+
+
+  // Method: hostState
+  // Description: returns the state of a host (created if needed).
+  // Parameters:
+  //   - host: address of the host.
+  //
+  // Returns: state of the host.
+  private Host hostState(String host)
+  {
+    return hostStates.computeIfAbsent(host, h -> new Host());
+  }
+
+
+  // Method: redirect
+  // Description: returns the next step of the redirect chain of a page.
+  // Parameters:
+  //   - page: number of the page.
+  //   - path: requested path.
+  //
+  // Returns: path to redirect to; null: the page has to be sent.
+  private String redirect(int page, String path)
+  {
+    if (path.startsWith("/t/")) {
+      return null;
+    }
+
+    if (path.startsWith("/p/")) {
+      if ((redirectChain == 0) ||
+          (uniform(0x5eed, page) >= redirectRate)) {
+        return null;
+      }
+
+      return (redirectChain == 1) ? "/t/" + page + ".html" :
+                                    "/r/" + page + "/1.html";
+    }
+
+    // "/r/<page>/<i>.html".
+    int i = Integer.parseInt(path.substring(path.lastIndexOf('/') + 1,
+                                            path.length() - 5));
+
+    return (i + 1 < redirectChain) ? "/r/" + page + "/" + (i + 1) + ".html" :
+                                     "/t/" + page + ".html";
+  }
+
+
+  // Method: page
+  // Description: generates a page: "outDegree" absolute links (a fraction
+  //              "externalLinks" of them to other hosts) and text up to its
+  //              size. The same page is always the same.
+  //
+  // Parameters:
+  //   - host: number of the host.
+  //   - page: number of the page.
+  //
+  // Returns: body of the page.
+  private byte[] page(int host, int page)
+  {
+    Random random = new Random(((long) host << 32) | page);
+
+    long size = pageSize.sample(random);
+
+    StringBuilder sb = new StringBuilder((int) Math.min(size, 1 << 24) + 256);
+
+    sb.append("<!DOCTYPE html>\n<html><head><title>Host ")
+      .append(host)
+      .append(", page ")
+      .append(page)
+      .append("</title></head>\n<body>\n");
+
+    for (int i = 0; i < outDegree; i++) {
+      int h = (random.nextDouble() < externalLinks) ? random.nextInt(hosts) :
+                                                      host;
+
+      sb.append("<a href=\"")
+        .append(url(h, random.nextInt(pagesPerHost)))
+        .append("\">Link ")
+        .append(i)
+        .append("</a>\n");
+    }
+
+    sb.append("<p>");
+    while (sb.length() < size - 20) {
+      int len = (int) Math.min(FILLER.length(), size - 20 - sb.length());
+      sb.append(FILLER, 0, len);
+    }
+
+    sb.append("</p>\n</body></html>\n");
+
+    return sb.toString().getBytes(StandardCharsets.UTF_8);
+  }
+
+
+  // Method: hostNumber
+  // Description: returns the number of a host.
+  // Parameters:
+  //   - host: address of the host.
+  //
+  // Returns: number of the host; -1: the address is not one of the hosts.
+  private int hostNumber(String host)
+  {
+    String[] parts = host.split("\\.");
+    if ((parts.length != 4) || (!parts[0].equals("127"))) {
+      return -1;
+    }
+
+    try {
+      int i = ((Integer.parseInt(parts[1]) - 1) << 16) |
+              (Integer.parseInt(parts[2]) << 8) |
+              Integer.parseInt(parts[3]);
+
+      return ((i >= 0) && (i < hosts)) ? i : -1;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+
+  // Method: pageNumber
+  // Description: returns the number of the page of a path.
+  // Parameters:
+  //   - path: "/p/<n>.html", "/t/<n>.html" or "/r/<n>/<i>.html".
+  //
+  // Returns: number of the page; -1: invalid path.
+  private int pageNumber(String path)
+  {
+    if ((path.length() < 9) || (!path.endsWith(".html"))) {
+      return -1;
+    }
+
+    int end = path.startsWith("/r/") ? path.indexOf('/', 3) :
+              (path.startsWith("/p/") || path.startsWith("/t/")) ?
+                path.length() - 5 :
+                -1;
+
+    if (end <= 3) {
+      return -1;
+    }
+
+    try {
+      int page = Integer.parseInt(path.substring(3, end));
+
+      if (path.startsWith("/r/")) {
+        int i = Integer.parseInt(path.substring(end + 1, path.length() - 5));
+        if ((i < 1) || (i >= redirectChain)) {
+          return -1;
+        }
+      }
+
+      return ((page >= 0) && (page < pagesPerHost)) ? page : -1;
+    } catch (NumberFormatException e) {
+      return -1;
+    }
+  }
+
+
+  // Method: uniform
+  // Description: returns a number in [0, 1) which only depends on the
+  //              parameters (SplitMix64).
+  //
+  // Parameters:
+  //   - seed: seed.
+  //   - n: number.
+  //
+  // Returns: number in [0, 1).
+  private static double uniform(long seed, long n)
+  {
+    long z = seed * 0x9e3779b97f4a7c15L + n;
+    z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+    z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+    z = z ^ (z >>> 31);
+
+    return (z >>> 11) * 0x1.0p-53;
+  }
+
+
+  // Method: send
+  // Description: sends a response.
+  // Parameters:
+  //   - exchange: HTTP exchange.
+  //   - statusCode: status code.
+  //   - contentType: Content-Type.
+  //   - body: body.
+  //
+  // Returns: nothing.
+  private static void send(HttpExchange exchange,
+                           int statusCode,
+                           String contentType,
+                           byte[] body) throws IOException
+  {
+    exchange.getResponseHeaders().set("Content-Type", contentType);
+    exchange.getResponseHeaders().set("Server", "SyntheticWeb");
+
+    exchange.sendResponseHeaders(statusCode,
+                                 (body.length > 0) ? body.length : -1);
+
+    if (body.length > 0) {
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(body);
+      }
+    }
+  }
+
+
+  // Method: getRequests
+  // Description: returns the number of requests.
+  // Parameters: none.
+  // Returns: number of requests.
+  public long getRequests()
+  {
+    return requests.sum();
+  }
+
+
+  // Method: getPages
+  // Description: returns the number of pages sent (status 200).
+  // Parameters: none.
+  // Returns: number of pages sent.
+  public long getPages()
+  {
+    return pages.sum();
+  }
+
+
+  // Method: getRedirects
+  // Description: returns the number of redirections sent.
+  // Parameters: none.
+  // Returns: number of redirections sent.
+  public long getRedirects()
+  {
+    return redirects.sum();
+  }
+
+
+  // Method: getErrors
+  // Description: returns the number of errors sent (status 500).
+  // Parameters: none.
+  // Returns: number of errors sent.
+  public long getErrors()
+  {
+    return errors.sum();
+  }
+
+
+  // Method: getNotFound
+  // Description: returns the number of requests for unknown hosts or paths.
+  // Parameters: none.
+  // Returns: number of requests for unknown hosts or paths.
+  public long getNotFound()
+  {
+    return notFound.sum();
+  }
+
+
+  // Method: getBytes
+  // Description: returns the number of bytes of the pages sent.
+  // Parameters: none.
+  // Returns: number of bytes of the pages sent.
+  public long getBytes()
+  {
+    return bytes.sum();
+  }
+
+
+  // Method: getFetches
+  // Description: returns the number of fetches (requests which are not
+  //              following a redirection).
+  //
+  // Parameters: none.
+  // Returns: number of fetches.
+  public long getFetches()
+  {
+    return fetches.sum();
+  }
+
+
+  // Method: getViolations
+  // Description: returns the number of fetches which arrived before the end
+  //              of the visit interval of their host.
+  //
+  // Parameters: none.
+  // Returns: number of politeness violations.
+  public long getViolations()
+  {
+    return violations.sum();
+  }
+
+
+  // Method: getMinGap
+  // Description: returns the shortest time between the last response of a
+  //              host and a fetch violating its visit interval.
+  //
+  // Parameters: none.
+  // Returns: milliseconds; -1: no violations.
+  public long getMinGap()
+  {
+    long gap = minGap.get();
+    return (gap == Long.MAX_VALUE) ? -1 : gap;
+  }
+}
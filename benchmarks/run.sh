@@ -0,0 +1,22 @@
+#!/bin/bash
+
+# Usage: benchmarks/run.sh <benchmark class> [<arguments>]
+#
+# Options of the harness (Java system properties, set with JAVA_OPTS):
+#   -Dbenchmark.warmupIterations=<number> (default: 5).
+#   -Dbenchmark.iterations=<number> (default: 10).
+#   -Dbenchmark.iterationTime=<milliseconds> (default: 1000).
+
+if [ $# -lt 1 ]; then
+  echo "Usage: $0 <benchmark class> [<arguments>]"
+  exit 1
+fi
+
+DIR=$(cd "$(dirname "$0")" && pwd)
+BUILD="$DIR/build"
+
+mkdir -p "$BUILD"
+
+javac -d "$BUILD" -cp "$CLASSPATH" "$DIR"/../*.java "$DIR"/*.java || exit 1
+
+java $JAVA_OPTS -cp "$BUILD:$CLASSPATH" "$@"